@@ -0,0 +1,50 @@
+#!/bin/sh
+# Compiles the compiler, then for each benchmark program checks that every
+# engine prints the same output and times the engines with `Main bench`.
+# With --compare=OPTION each program is also compiled with that compile
+# option (such as --no-fold), checked against the default output and timed.
+# usage: bench/run.sh [program.cpy...] [--runs=N] [--compare=OPTION]
+#        (default: bench/*.cpy)
+set -e
+cd "$(dirname "$0")/.."
+work=$(mktemp -d)
+trap 'rm -rf "$work"' EXIT
+javac -encoding UTF-8 -d "$work/classes" $(find src -name '*.java')
+
+runs=--runs=5
+compare=
+programs=
+for arg in "$@"; do
+    case "$arg" in
+        --runs=*) runs=$arg ;;
+        --compare=*) compare=${arg#--compare=} ;;
+        *) programs="$programs $arg" ;;
+    esac
+done
+[ -n "$programs" ] || programs=$(ls bench/*.cpy)
+
+# compile_and_check NAME [OPTION]: compiles $work/NAME.cpy into
+# $work/NAME.cpyc and checks every engine against $work/NAME.expected
+compile_and_check() {
+    java -cp "$work/classes" Main compile "$work/$1.cpy" $2 > /dev/null
+    for engine in vm closure jvm; do
+        java -cp "$work/classes" Main run "$work/$1.cpyc" --engine=$engine > "$work/$1.$engine"
+        [ -f "$work/$1.expected" ] || cp "$work/$1.vm" "$work/$1.expected"
+        if ! cmp -s "$work/$1.expected" "$work/$1.$engine"; then
+            echo "$1${2:+ ($2)}: $engine output differs" >&2
+            exit 1
+        fi
+    done
+}
+
+for program in $programs; do
+    name=$(basename "$program" .cpy)
+    cp "$program" "$work/$name.cpy"
+    compile_and_check "$name"
+    java -cp "$work/classes" Main bench "$work/$name.cpyc" $runs
+    if [ -n "$compare" ]; then
+        compile_and_check "$name" "$compare"
+        echo "with $compare:"
+        java -cp "$work/classes" Main bench "$work/$name.cpyc" $runs
+    fi
+done
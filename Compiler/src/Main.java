@@ -1,17 +1,24 @@
-import lexer.Lexer;
-import lexer.Token;
-import parser.Parser;
-import ast.Stmt;
-import semantic.SemanticAnalyzer;
-import compiler.BytecodeCompiler;
-import compiler.BytecodeWriter;
+import compiler.BatchCompiler;
 import compiler.BytecodeReader;
-import compiler.Instruction;
-import vm.VM;
+import compiler.BytecodeWriter;
+import compiler.Chunk;
+import compiler.CompileCache;
+import compiler.Isa;
+import compiler.MappedChunk;
+import compiler.Pipeline;
+import vm.Engine;
+import vm.JvmEngine;
+import vm.Linker;
+import vm.OutputSink;
+import vm.Program;
 
 import java.io.IOException;
+import java.nio.file.AccessDeniedException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 
 public class Main {
@@ -26,13 +33,25 @@ public class Main {
 
         switch (command) {
             case "compile":
-                if (args.length < 2) { System.err.println("Usage: cpy compile <file.cpy>"); System.exit(1); }
-                compile(args[1]);
+                if (args.length < 2) { System.err.println("Usage: cpy compile <file.cpy|dir|glob>... [--no-fold] [--no-hoist] [--no-iv] [--no-bce] [--no-cse] [--isa=stack|register] [--format=binary|text] [--jobs=N] [--force]"); System.exit(1); }
+                List<String> sources = positional(args);
+                if (sources.size() == 1 && Files.isRegularFile(Paths.get(sources.get(0)))) {
+                    compile(sources.get(0), args);
+                } else {
+                    compileBatch(sources, args);
+                }
                 break;
 
             case "run":
-                if (args.length < 2) { System.err.println("Usage: cpy run <file.cpyc>"); System.exit(1); }
-                run(args[1]);
+                if (args.length < 2) { System.err.println("Usage: cpy run <file.cpyc|file.cpy> [--engine=vm|closure|jvm] [--output=FILE] [--buffer=N] [--no-verify] [--cache=DIR] [--cache-size=MB] [--no-cache]"); System.exit(1); }
+                run(args[1], args, option(args, "--engine=", "vm"), option(args, "--output=", null),
+                    Integer.parseInt(option(args, "--buffer=", String.valueOf(OutputSink.DEFAULT_BUFFER_SIZE))),
+                    !flag(args, "--no-verify"));
+                break;
+
+            case "bench":
+                if (args.length < 2) { System.err.println("Usage: cpy bench <file.cpyc> [--runs=N]"); System.exit(1); }
+                bench(args[1], Integer.parseInt(option(args, "--runs=", "10")));
                 break;
 
             default:
@@ -45,28 +64,20 @@ public class Main {
 
     // ── Compile: .cpy → .cpyc ──────────────────────────────
 
-    private static void compile(String sourceFile) {
+    private static void compile(String sourceFile, String[] args) {
         String source = readFile(sourceFile);
 
         try {
-            // 1. Lex
-            List<Token> tokens = new Lexer(source).scanTokens();
+            BytecodeWriter.Format format = BytecodeWriter.Format.fromName(option(args, "--format=", "binary"));
+            Pipeline.Options options = compileOptions(args);
+            Chunk bytecode = Pipeline.compile(source, options);
 
-            // 2. Parse
-            List<Stmt> stmts = new Parser(tokens).parse();
-
-            // 3. Semantic check
-            new SemanticAnalyzer().analyze(stmts);
-
-            // 4. Compile to bytecode
-            List<Instruction> bytecode = new BytecodeCompiler().compile(stmts);
-
-            // 5. Write .cpyc file
+            // Write .cpyc file, recording what it was compiled from
             String outFile = sourceFile.replaceAll("\\.cpy$", ".cpyc");
-            BytecodeWriter.write(bytecode, outFile);
+            BytecodeWriter.write(bytecode, outFile, format, CompileCache.key(source, options));
 
             System.out.println("Compiled: " + sourceFile + " -> " + outFile);
-            System.out.println(bytecode.size() + " instructions generated.");
+            System.out.println(bytecode.code.size() + " instructions generated.");
 
         } catch (RuntimeException e) {
             System.err.println(e.getMessage());
@@ -77,15 +88,80 @@ public class Main {
         }
     }
 
-    // ── Run: execute .cpyc bytecode ─────────────────────────
+    /** Compiles every source named by patterns (files, directories, globs) in parallel. */
+    private static void compileBatch(List<String> patterns, String[] args) {
+        BatchCompiler batch;
+        List<Path> sources;
+        int jobs;
+        try {
+            batch = new BatchCompiler(compileOptions(args),
+                    BytecodeWriter.Format.fromName(option(args, "--format=", "binary")), flag(args, "--force"));
+            int processors = Runtime.getRuntime().availableProcessors();
+            jobs = Integer.parseInt(option(args, "--jobs=", String.valueOf(processors)));
+            sources = BatchCompiler.sources(patterns);
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+            return;
+        } catch (RuntimeException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
 
-    private static void run(String bytecodeFile) {
+        int[] counts = new int[BatchCompiler.Status.values().length];
+        batch.compile(sources, jobs, result -> {
+            counts[result.status.ordinal()]++;
+            switch (result.status) {
+                case COMPILED:
+                    System.out.println("Compiled: " + result.source + " -> " + result.output
+                            + " (" + result.instructions + " instructions)");
+                    break;
+                case FAILED:
+                    System.out.flush();
+                    System.err.println("Error in " + result.source + ":");
+                    System.err.println(result.message);
+                    System.err.flush();
+                    break;
+                default:
+                    break;
+            }
+        });
+
+        System.out.println(counts[BatchCompiler.Status.COMPILED.ordinal()] + " compiled, "
+                + counts[BatchCompiler.Status.UP_TO_DATE.ordinal()] + " up to date, "
+                + counts[BatchCompiler.Status.FAILED.ordinal()] + " failed.");
+        if (counts[BatchCompiler.Status.FAILED.ordinal()] > 0) System.exit(1);
+    }
+
+    // ── Run: execute .cpyc bytecode or .cpy source ─────────
+
+    private static void run(String file, String[] args, String engine, String outputFile, int bufferSize,
+                            boolean verify) {
+        Program program;
         try {
-            List<Instruction> bytecode = BytecodeReader.read(bytecodeFile);
-            new VM(bytecode).run();
+            program = file.endsWith(".cpy") ? compileForRun(file, args, verify) : load(file, verify);
+        } catch (IOException e) {
+            System.err.println("Error reading bytecode: " + describe(e));
+            System.exit(1);
+            return;
+        } catch (RuntimeException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        try {
+            OutputSink out = outputFile != null ? OutputSink.file(Paths.get(outputFile), bufferSize)
+                                                : OutputSink.stdout(bufferSize);
+            try {
+                Engine.create(engine, program, out).run();
+            } finally {
+                out.close();
+            }
 
         } catch (IOException e) {
-            System.err.println("Error reading bytecode: " + e.getMessage());
+            System.err.println("Error opening output: " + e.getMessage());
             System.exit(1);
         } catch (RuntimeException e) {
             System.err.println(e.getMessage());
@@ -93,11 +169,122 @@ public class Main {
         }
     }
 
+    private static Program load(String bytecodeFile, boolean verify) throws IOException {
+        // Binary files are mapped, verified from their structure and linked as they run
+        MappedChunk mapped = BytecodeReader.map(bytecodeFile);
+        return mapped != null ? Linker.linkLazily(mapped, verify) : Linker.link(BytecodeReader.read(bytecodeFile));
+    }
+
+    /** Compiles a source file for run: through the compile cache, or in memory with --no-cache. */
+    private static Program compileForRun(String sourceFile, String[] args, boolean verify) throws IOException {
+        String source = readFile(sourceFile);
+        Pipeline.Options options = compileOptions(args);
+        if (flag(args, "--no-cache")) return Linker.link(Pipeline.compile(source, options));
+
+        Path dir = Paths.get(option(args, "--cache=", CompileCache.defaultDirectory().toString()));
+        long megabytes = Long.parseLong(option(args, "--cache-size=", String.valueOf(CompileCache.DEFAULT_MAX_BYTES >> 20)));
+        CompileCache cache = new CompileCache(dir, megabytes << 20);
+        String key = CompileCache.key(source, options);
+        Path entry = cache.lookup(key);
+        if (entry == null) entry = cache.store(key, Pipeline.compile(source, options));
+        return load(entry.toString(), verify);
+    }
+
+    // ── Bench: compare execution engines ───────────────────
+
+    private static final String[] ENGINES = { "vm", "closure", "jvm" };
+
+    private static void bench(String bytecodeFile, int runs) {
+        Program program;
+        try {
+            program = Linker.link(BytecodeReader.read(bytecodeFile));
+        } catch (IOException e) {
+            System.err.println("Error reading bytecode: " + describe(e));
+            System.exit(1);
+            return;
+        }
+
+        OutputSink discard = OutputSink.discard();
+        System.out.println("Benchmark: " + bytecodeFile + " (" + runs + " runs per engine, output discarded)");
+
+        String[] engines = program.isa() == Isa.REGISTER ? new String[] { "vm" } : ENGINES;
+        for (String engine : engines) {
+            long best = Long.MAX_VALUE;
+            long total = 0;
+            long dispatched;
+            boolean fellBack;
+            try {
+                for (int i = 0; i < 3; i++) {                 // warm-up
+                    Engine.create(engine, program, discard).run();
+                }
+                for (int i = 0; i < runs; i++) {
+                    long start = System.nanoTime();
+                    Engine instance = Engine.create(engine, program, discard);
+                    instance.run();
+                    long elapsed = System.nanoTime() - start;
+                    best = Math.min(best, elapsed);
+                    total += elapsed;
+                }
+                Engine counted = Engine.create(engine, program, discard);   // counting is not timed
+                counted.countInstructions();
+                counted.run();
+                dispatched = counted.executedInstructions();
+                fellBack = counted instanceof JvmEngine && !((JvmEngine) counted).isCompiled();
+            } catch (RuntimeException e) {
+                System.err.println(engine + ": " + e.getMessage());
+                System.exit(1);
+                return;
+            }
+            System.out.printf("  %-8s best %8.2f ms   mean %8.2f ms", engine, best / 1e6, total / 1e6 / runs);
+            if (dispatched >= 0) System.out.printf("   %,d instructions executed", dispatched);
+            if (fellBack) System.out.print("   (not compilable, ran on vm)");
+            System.out.println();
+        }
+    }
+
     // ── Helpers ─────────────────────────────────────────────
 
+    /** The arguments after the command that are not options. */
+    private static List<String> positional(String[] args) {
+        List<String> positional = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            if (!args[i].startsWith("--")) positional.add(args[i]);
+        }
+        return positional;
+    }
+
+    /** Returns the value of a "--name=value" argument, or the default. */
+    private static String option(String[] args, String prefix, String defaultValue) {
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].startsWith(prefix)) return args[i].substring(prefix.length());
+        }
+        return defaultValue;
+    }
+
+    /** The compile options given by the --no-* and --isa= arguments. */
+    private static Pipeline.Options compileOptions(String[] args) {
+        return new Pipeline.Options(!flag(args, "--no-fold"), !flag(args, "--no-hoist"), !flag(args, "--no-iv"),
+                !flag(args, "--no-bce"), !flag(args, "--no-cse"), Isa.fromDirective(option(args, "--isa=", "stack")));
+    }
+
+    /** True if the "--name" flag is present. */
+    private static boolean flag(String[] args, String name) {
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].equals(name)) return true;
+        }
+        return false;
+    }
+
+    /** The message of an I/O error, with the reason java.nio leaves out: "x.cpyc (No such file or directory)". */
+    private static String describe(IOException e) {
+        if (e instanceof NoSuchFileException) return e.getMessage() + " (No such file or directory)";
+        if (e instanceof AccessDeniedException) return e.getMessage() + " (Permission denied)";
+        return e.getMessage();
+    }
+
     private static String readFile(String filename) {
         try {
-            return new String(Files.readAllBytes(Paths.get(filename)));
+            return Pipeline.readSource(Paths.get(filename));
         } catch (IOException e) {
             System.err.println("Error: Could not read file '" + filename + "'");
             System.exit(1);
@@ -109,6 +296,27 @@ public class Main {
         System.out.println("=== CPY Compiler ===");
         System.out.println("Usage:");
         System.out.println("  java -cp out Main compile <file.cpy>   Compile to bytecode");
+        System.out.println("  java -cp out Main compile <dir|glob>...  Compile many files in parallel, skipping");
+        System.out.println("                                          up-to-date outputs");
+        System.out.println("      --no-fold                           Disable constant folding and propagation");
+        System.out.println("      --no-hoist                          Disable loop-invariant code motion");
+        System.out.println("      --no-iv                             Disable induction-variable strength reduction");
+        System.out.println("      --no-bce                            Disable bounds-check elimination");
+        System.out.println("      --no-cse                            Disable common subexpression elimination");
+        System.out.println("      --isa=stack|register                Instruction set (default: stack)");
+        System.out.println("      --format=binary|text                .cpyc file format (default: binary)");
+        System.out.println("      --jobs=N                            Parallel compiles (default: available processors)");
+        System.out.println("      --force                             Compile up-to-date files too");
         System.out.println("  java -cp out Main run <file.cpyc>      Execute bytecode");
+        System.out.println("  java -cp out Main run <file.cpy>       Compile (through the cache) and execute;");
+        System.out.println("                                          takes the compile options above too");
+        System.out.println("      --engine=vm|closure|jvm             Execution engine (default: vm)");
+        System.out.println("      --output=FILE                       Write program output to FILE");
+        System.out.println("      --buffer=N                          Output buffer size in chars (default: 8192)");
+        System.out.println("      --no-verify                         Trust the file: skip verification, which reads all of its code");
+        System.out.println("      --cache=DIR                         Compile cache directory (default: ~/.cache/cpy)");
+        System.out.println("      --cache-size=MB                     Compile cache size bound (default: 64)");
+        System.out.println("      --no-cache                          Compile in memory, without the cache");
+        System.out.println("  java -cp out Main bench <file.cpyc>    Compare engines (--runs=N)");
     }
 }
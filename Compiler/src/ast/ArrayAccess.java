@@ -4,13 +4,20 @@ import lexer.Token;
 
 /**
  * Array element access:  arr[index]
+ * checked is false when the index is proven in range (see optimizer.BoundsCheckEliminator).
  */
 public class ArrayAccess extends Expr {
     public final Token name;
     public final Expr index;
+    public final boolean checked;
 
     public ArrayAccess(Token name, Expr index) {
+        this(name, index, true);
+    }
+
+    public ArrayAccess(Token name, Expr index, boolean checked) {
         this.name = name;
         this.index = index;
+        this.checked = checked;
     }
 }
@@ -4,15 +4,22 @@ import lexer.Token;
 
 /**
  * Array element assignment:  arr[index] = value;
+ * checked is false when the index is proven in range (see optimizer.BoundsCheckEliminator).
  */
 public class ArrayAssignment extends Stmt {
     public final Token name;
     public final Expr index;
     public final Expr value;
+    public final boolean checked;
 
     public ArrayAssignment(Token name, Expr index, Expr value) {
+        this(name, index, value, true);
+    }
+
+    public ArrayAssignment(Token name, Expr index, Expr value, boolean checked) {
         this.name = name;
         this.index = index;
         this.value = value;
+        this.checked = checked;
     }
 }
@@ -0,0 +1,21 @@
+package ast;
+
+import lexer.Token;
+
+/**
+ * Compiler-generated loop guard, never parsed: true if variable array holds an
+ * array and bound + offset is a whole number below its length (with no bound,
+ * offset alone). Reads both variables without failing, even if undefined.
+ * Created by optimizer.BoundsCheckEliminator.
+ */
+public class BoundsGuard extends Expr {
+    public final Token array;
+    public final Token bound;      // nullable
+    public final double offset;
+
+    public BoundsGuard(Token array, Token bound, double offset) {
+        this.array = array;
+        this.bound = bound;
+        this.offset = offset;
+    }
+}
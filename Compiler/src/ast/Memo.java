@@ -0,0 +1,18 @@
+package ast;
+
+import lexer.Token;
+
+/**
+ * Compiler-generated, never parsed: evaluates value, saves it in the variable
+ * temp and yields it. Later occurrences of the same expression read temp
+ * instead. Created by optimizer.CommonSubexpressionEliminator.
+ */
+public class Memo extends Expr {
+    public final Token temp;
+    public final Expr value;
+
+    public Memo(Token temp, Expr value) {
+        this.temp = temp;
+        this.value = value;
+    }
+}
@@ -0,0 +1,204 @@
+package compiler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compiles many source files in one process, in parallel on a ForkJoinPool.
+ * Each file goes through its own {@link Pipeline}, so no compiler state is
+ * shared between files.
+ *
+ * A file whose output is up to date is skipped. A binary output records the
+ * key (see {@link CompileCache#key}) of the source, compiler and options it
+ * came from, and is up to date while that key still matches. A text output
+ * has no room for a key and is up to date while it is newer than its source.
+ *
+ * Results come back in the order of the sorted source paths, whatever order
+ * the files finish in, so the diagnostics of a build are the same on every
+ * run.
+ */
+public final class BatchCompiler {
+
+    public enum Status { COMPILED, UP_TO_DATE, FAILED }
+
+    /** The outcome for one source file. */
+    public static final class Result {
+        public final Path source;
+        public final Path output;
+        public final Status status;
+        public final int instructions;   // COMPILED only
+        public final String message;     // FAILED only
+
+        Result(Path source, Path output, Status status, int instructions, String message) {
+            this.source = source;
+            this.output = output;
+            this.status = status;
+            this.instructions = instructions;
+            this.message = message;
+        }
+    }
+
+    private final Pipeline.Options options;
+    private final BytecodeWriter.Format format;
+    private final boolean force;
+
+    /** force compiles every file, up to date or not. */
+    public BatchCompiler(Pipeline.Options options, BytecodeWriter.Format format, boolean force) {
+        this.options = options;
+        this.format = format;
+        this.force = force;
+    }
+
+    // ── Sources ─────────────────────────────────────────────
+
+    /**
+     * The source files named by patterns, sorted and without duplicates: a
+     * directory stands for every .cpy file under it, a pattern with * ? [ or {
+     * is a glob (** crosses directories), and anything else names a file.
+     */
+    public static List<Path> sources(List<String> patterns) throws IOException {
+        TreeSet<Path> sources = new TreeSet<>();
+        for (String pattern : patterns) {
+            if (isGlob(pattern)) {
+                Path base = globBase(pattern);
+                PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+                List<Path> matches = walk(base, matcher::matches);
+                if (matches.isEmpty()) throw new IOException("no source files match '" + pattern + "'");
+                sources.addAll(matches);
+            } else {
+                Path path = Paths.get(pattern);
+                if (Files.isDirectory(path)) {
+                    sources.addAll(walk(path, file -> true));
+                } else {
+                    sources.add(path.normalize());   // a missing file fails when compiled
+                }
+            }
+        }
+        return new ArrayList<>(sources);
+    }
+
+    private static boolean isGlob(String pattern) {
+        return firstWildcard(pattern) >= 0;
+    }
+
+    private static int firstWildcard(String pattern) {
+        for (int i = 0; i < pattern.length(); i++) {
+            if ("*?[{".indexOf(pattern.charAt(i)) >= 0) return i;
+        }
+        return -1;
+    }
+
+    /** The directory part of a glob before its first wildcard; empty for the working directory. */
+    private static Path globBase(String pattern) {
+        int slash = pattern.lastIndexOf('/', firstWildcard(pattern));
+        return slash < 0 ? Paths.get("") : Paths.get(slash == 0 ? "/" : pattern.substring(0, slash));
+    }
+
+    /** The .cpy files under base that pass filter, as paths that start with base. */
+    private static List<Path> walk(Path base, Predicate<Path> filter) throws IOException {
+        Path root = base.toString().isEmpty() ? Paths.get(".") : base;
+        if (!Files.isDirectory(root)) return List.of();
+        try (Stream<Path> files = Files.walk(root)) {
+            return files.filter(Files::isRegularFile)
+                        .map(file -> root == base ? file : root.relativize(file))
+                        .filter(file -> file.toString().endsWith(".cpy") && filter.test(file))
+                        .map(Path::normalize)
+                        .collect(Collectors.toList());
+        }
+    }
+
+    // ── Compiling ───────────────────────────────────────────
+
+    /**
+     * Compiles sources on a pool of the given parallelism, passing each
+     * result to report in source order as soon as it and every result before
+     * it are done; returns the results in the same order.
+     */
+    public List<Result> compile(List<Path> sources, int parallelism, Consumer<Result> report) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<Future<Result>> pending = new ArrayList<>(sources.size());
+            for (Path source : sources) pending.add(pool.submit(() -> compile(source)));
+
+            List<Result> results = new ArrayList<>(sources.size());
+            for (int i = 0; i < sources.size(); i++) {
+                Result result;
+                try {
+                    result = pending.get(i).get();
+                } catch (ExecutionException e) {
+                    // Errors a stage did not catch, such as a stack overflow on a deeply nested program
+                    result = failed(sources.get(i), "Internal compiler error: " + e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while compiling", e);
+                }
+                results.add(result);
+                report.accept(result);
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Compiles one source file unless its output is up to date. */
+    public Result compile(Path source) {
+        if (!source.toString().endsWith(".cpy")) return failed(source, "not a .cpy file");
+        Path output = output(source);
+        try {
+            String text = Pipeline.readSource(source);
+            String key = CompileCache.key(text, options);
+            if (!force && isUpToDate(source, output, key)) {
+                return new Result(source, output, Status.UP_TO_DATE, 0, null);
+            }
+            Chunk chunk = Pipeline.compile(text, options);
+            BytecodeWriter.write(chunk, output.toString(), format, key);
+            return new Result(source, output, Status.COMPILED, chunk.code.size(), null);
+        } catch (NoSuchFileException e) {
+            return failed(source, "Could not read file '" + source + "'");
+        } catch (IOException e) {
+            return failed(source, "I/O error: " + e.getMessage());
+        } catch (RuntimeException e) {
+            return failed(source, e.getMessage());
+        }
+    }
+
+    private boolean isUpToDate(Path source, Path output, String key) throws IOException {
+        if (!Files.exists(output)) return false;
+        if (format == BytecodeWriter.Format.BINARY) return key.equals(BytecodeReader.sourceKey(output));
+        return !isBinary(output)
+                && Files.getLastModifiedTime(output).compareTo(Files.getLastModifiedTime(source)) >= 0;
+    }
+
+    private static boolean isBinary(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return BytecodeFormat.isBinary(ByteBuffer.wrap(in.readNBytes(BytecodeFormat.MAGIC.length)));
+        }
+    }
+
+    /** foo.cpy compiles to foo.cpyc beside it. */
+    public static Path output(Path source) {
+        return source.resolveSibling(source.getFileName() + "c");
+    }
+
+    private static Result failed(Path source, String message) {
+        return new Result(source, output(source), Status.FAILED, 0, message);
+    }
+}
@@ -1,27 +1,58 @@
 package compiler;
 
 import ast.*;
+import ir.ControlFlowGraph;
 import lexer.Token;
 import lexer.TokenType;
+import semantic.SymbolTable;
+import semantic.Type;
+import semantic.TypeInference;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * Compiles a validated AST into a linear sequence of bytecode instructions.
  * Uses jump-patching for control flow (if/else, while, for).
+ * Variables are addressed by the slot indices assigned by the SemanticAnalyzer.
+ *
+ * Where {@link TypeInference} proves the operand types of an operation, the
+ * typed form is emitted instead of the generic one. Arithmetic and ordering
+ * comparisons of proven numbers, compare-and-branch included, get the
+ * *_NUM_UNCHECKED forms, which run without a type test; a string operand makes
+ * ADD a CONCAT; a proven boolean condition gets JUMP_IF_FALSE_BOOL.
+ *
+ * Conditions of if/while/for compile to jumps rather than to a boolean: a
+ * comparison becomes a single compare-and-branch (JLT, JGTE, JEQ, ...) and
+ * "not" swaps the two exits. "and" and "or" short-circuit, in conditions and
+ * in values alike: the right operand is only evaluated when the left one does
+ * not decide the result, so in "i < n and a[i] > 0" a[i] is never read once
+ * i reaches n. Either way the value of and/or is a boolean.
  */
 public class BytecodeCompiler {
     private final List<Instruction> instructions = new ArrayList<>();
+    private final SymbolTable symbols;
+    private TypeInference types = new TypeInference();
+
+    public BytecodeCompiler(SymbolTable symbols) {
+        this.symbols = symbols;
+    }
 
     // ── Public API ──────────────────────────────────────────
 
-    public List<Instruction> compile(List<Stmt> statements) {
+    public Chunk compile(List<Stmt> statements) {
+        types = new TypeInference().infer(statements);
         for (Stmt stmt : statements) {
             compileStmt(stmt);
         }
         emit(OpCode.HALT);
-        return instructions;
+        return new Chunk(instructions, symbols.names(), StackDepth.compute(instructions));
+    }
+
+    /** Compiles to a control-flow graph, for the optimization passes in {@link ir}. */
+    public ControlFlowGraph compileGraph(List<Stmt> statements) {
+        return ControlFlowGraph.build(compile(statements));
     }
 
     // ── Statement compilation ───────────────────────────────
@@ -30,18 +61,18 @@ public class BytecodeCompiler {
         if (stmt instanceof VarDecl) {
             VarDecl v = (VarDecl) stmt;
             compileExpr(v.initializer);
-            emit(OpCode.STORE, v.name.lexeme);
+            emit(OpCode.STORE_SLOT, slot(v.name));
 
         } else if (stmt instanceof Assignment) {
             Assignment a = (Assignment) stmt;
             compileExpr(a.value);
-            emit(OpCode.STORE, a.name.lexeme);
+            emit(OpCode.STORE_SLOT, slot(a.name));
 
         } else if (stmt instanceof ArrayAssignment) {
             ArrayAssignment aa = (ArrayAssignment) stmt;
             compileExpr(aa.value);
             compileExpr(aa.index);
-            emit(OpCode.ARRAY_STORE, aa.name.lexeme);
+            emit(aa.checked ? OpCode.ARRAY_STORE_SLOT : OpCode.ARRAY_STORE_UNCHECKED, slot(aa.name));
 
         } else if (stmt instanceof PrintStmt) {
             compileExpr(((PrintStmt) stmt).expression);
@@ -66,11 +97,8 @@ public class BytecodeCompiler {
     // ── Control flow ────────────────────────────────────────
 
     private void compileIf(IfStmt stmt) {
-        // Compile condition
-        compileExpr(stmt.condition);
-
-        // Jump past then-branch if false
-        int jumpToElse = emitJump(OpCode.JUMP_IF_FALSE);
+        // Compile condition, jumping past then-branch if false
+        List<Integer> jumpsToElse = jumpsUnless(stmt.condition);
 
         // Compile then-branch
         compileStmt(stmt.thenBranch);
@@ -78,11 +106,11 @@ public class BytecodeCompiler {
         if (stmt.elseBranch != null) {
             // Jump past else-branch after then completes
             int jumpPastElse = emitJump(OpCode.JUMP);
-            patchJump(jumpToElse);         // else starts here
+            patchJumps(jumpsToElse);       // else starts here
             compileStmt(stmt.elseBranch);
             patchJump(jumpPastElse);       // after else
         } else {
-            patchJump(jumpToElse);
+            patchJumps(jumpsToElse);
         }
     }
 
@@ -90,14 +118,13 @@ public class BytecodeCompiler {
         int loopStart = currentIndex();
 
         // Compile condition
-        compileExpr(stmt.condition);
-        int jumpExit = emitJump(OpCode.JUMP_IF_FALSE);
+        List<Integer> jumpsExit = jumpsUnless(stmt.condition);
 
         // Compile body
         compileStmt(stmt.body);
         emit(OpCode.JUMP, String.valueOf(loopStart));
 
-        patchJump(jumpExit);
+        patchJumps(jumpsExit);
     }
 
     private void compileFor(ForStmt stmt) {
@@ -107,12 +134,13 @@ public class BytecodeCompiler {
         int loopStart = currentIndex();
 
         // Condition
+        List<Integer> jumpsExit;
         if (stmt.condition != null) {
-            compileExpr(stmt.condition);
+            jumpsExit = jumpsUnless(stmt.condition);
         } else {
             emit(OpCode.CONST_BOOL, "true");
+            jumpsExit = Collections.singletonList(emitJump(OpCode.JUMP_IF_FALSE_BOOL));
         }
-        int jumpExit = emitJump(OpCode.JUMP_IF_FALSE);
 
         // Body
         compileStmt(stmt.body);
@@ -121,7 +149,85 @@ public class BytecodeCompiler {
         if (stmt.increment != null) compileStmt(stmt.increment);
 
         emit(OpCode.JUMP, String.valueOf(loopStart));
-        patchJump(jumpExit);
+        patchJumps(jumpsExit);
+    }
+
+    // ── Conditions ──────────────────────────────────────────
+
+    /** Compiles condition as jumps; returns the jumps taken when it is false, to be patched. */
+    private List<Integer> jumpsUnless(Expr condition) {
+        if (condition instanceof BinaryExpr) {
+            BinaryExpr b = (BinaryExpr) condition;
+            if (b.operator.type == TokenType.AND) {
+                List<Integer> jumps = jumpsUnless(b.left);
+                jumps.addAll(jumpsUnless(b.right));
+                return jumps;
+            }
+            if (b.operator.type == TokenType.OR) {
+                List<Integer> leftTrue = jumpsIf(b.left);
+                List<Integer> jumps = jumpsUnless(b.right);
+                patchJumps(leftTrue);          // the condition holds from here
+                return jumps;
+            }
+            OpCode branch = compareBranch(b.operator.type);
+            if (branch != null) {
+                compileExpr(b.left);
+                compileExpr(b.right);
+                return jumps(emitJump(numbers(b) ? uncheckedBranch(branch) : branch));
+            }
+        }
+        if (isNot(condition)) return jumpsIf(((UnaryExpr) condition).operand);
+        compileExpr(condition);
+        return jumps(emitJump(jumpIfFalse(condition)));
+    }
+
+    /** Compiles condition as jumps; returns the jumps taken when it is true, to be patched. */
+    private List<Integer> jumpsIf(Expr condition) {
+        if (condition instanceof BinaryExpr) {
+            BinaryExpr b = (BinaryExpr) condition;
+            if (b.operator.type == TokenType.OR) {
+                List<Integer> jumps = jumpsIf(b.left);
+                jumps.addAll(jumpsIf(b.right));
+                return jumps;
+            }
+            if (b.operator.type == TokenType.AND) {
+                List<Integer> leftFalse = jumpsUnless(b.left);
+                List<Integer> jumps = jumpsIf(b.right);
+                patchJumps(leftFalse);         // the condition fails from here
+                return jumps;
+            }
+        }
+        if (isNot(condition)) return jumpsUnless(((UnaryExpr) condition).operand);
+        compileExpr(condition);
+        return jumps(emitJump(OpCode.JUMP_IF_TRUE));
+    }
+
+    /** The compare-and-branch for a comparison operator, or null for any other operator. */
+    private static OpCode compareBranch(TokenType operator) {
+        switch (operator) {
+            case EQUAL_EQUAL:   return OpCode.JEQ;
+            case BANG_EQUAL:    return OpCode.JNEQ;
+            case GREATER:       return OpCode.JGT;
+            case GREATER_EQUAL: return OpCode.JGTE;
+            case LESS:          return OpCode.JLT;
+            case LESS_EQUAL:    return OpCode.JLTE;
+            default:            return null;
+        }
+    }
+
+    /** The unchecked form of a compare-and-branch on proven numbers; JEQ and JNEQ make no type test. */
+    private static OpCode uncheckedBranch(OpCode branch) {
+        switch (branch) {
+            case JGT:  return OpCode.JGT_NUM_UNCHECKED;
+            case JGTE: return OpCode.JGTE_NUM_UNCHECKED;
+            case JLT:  return OpCode.JLT_NUM_UNCHECKED;
+            case JLTE: return OpCode.JLTE_NUM_UNCHECKED;
+            default:   return branch;
+        }
+    }
+
+    private static boolean isNot(Expr expr) {
+        return expr instanceof UnaryExpr && ((UnaryExpr) expr).operator.type == TokenType.NOT;
     }
 
     // ── Expression compilation ──────────────────────────────
@@ -142,34 +248,48 @@ public class BytecodeCompiler {
             }
 
         } else if (expr instanceof Variable) {
-            emit(OpCode.LOAD, ((Variable) expr).name.lexeme);
+            emit(OpCode.LOAD_SLOT, slot(((Variable) expr).name));
 
         } else if (expr instanceof UnaryExpr) {
             UnaryExpr u = (UnaryExpr) expr;
             compileExpr(u.operand);
             switch (u.operator.type) {
-                case MINUS: emit(OpCode.NEG); break;
+                case MINUS: emit(isOnly(u.operand, Type.NUMBER) ? OpCode.NEG_NUM_UNCHECKED : OpCode.NEG); break;
                 case NOT:   emit(OpCode.NOT); break;
                 default: break;
             }
 
+        } else if (expr instanceof BinaryExpr
+                && (((BinaryExpr) expr).operator.type == TokenType.AND
+                    || ((BinaryExpr) expr).operator.type == TokenType.OR)) {
+            // Short-circuits like a condition, then materializes the boolean
+            List<Integer> whenFalse = jumpsUnless(expr);
+            emit(OpCode.CONST_BOOL, "true");
+            int jumpPastFalse = emitJump(OpCode.JUMP);
+            patchJumps(whenFalse);
+            emit(OpCode.CONST_BOOL, "false");
+            patchJump(jumpPastFalse);
+
         } else if (expr instanceof BinaryExpr) {
             BinaryExpr b = (BinaryExpr) expr;
             compileExpr(b.left);
             compileExpr(b.right);
+            boolean numbers = numbers(b);
             switch (b.operator.type) {
-                case PLUS:          emit(OpCode.ADD); break;
-                case MINUS:         emit(OpCode.SUB); break;
-                case STAR:          emit(OpCode.MUL); break;
-                case SLASH:         emit(OpCode.DIV); break;
+                case PLUS:
+                    if (numbers) emit(OpCode.ADD_NUM_UNCHECKED);
+                    else if (isOnly(b.left, Type.STRING) || isOnly(b.right, Type.STRING)) emit(OpCode.CONCAT);
+                    else emit(OpCode.ADD);
+                    break;
+                case MINUS:         emit(numbers ? OpCode.SUB_NUM_UNCHECKED : OpCode.SUB); break;
+                case STAR:          emit(numbers ? OpCode.MUL_NUM_UNCHECKED : OpCode.MUL); break;
+                case SLASH:         emit(numbers ? OpCode.DIV_NUM_UNCHECKED : OpCode.DIV); break;
                 case EQUAL_EQUAL:   emit(OpCode.EQ);  break;
                 case BANG_EQUAL:    emit(OpCode.NEQ); break;
-                case GREATER:       emit(OpCode.GT);  break;
-                case GREATER_EQUAL: emit(OpCode.GTE); break;
-                case LESS:          emit(OpCode.LT);  break;
-                case LESS_EQUAL:    emit(OpCode.LTE); break;
-                case AND:           emit(OpCode.AND); break;
-                case OR:            emit(OpCode.OR);  break;
+                case GREATER:       emit(numbers ? OpCode.GT_NUM_UNCHECKED  : OpCode.GT);  break;
+                case GREATER_EQUAL: emit(numbers ? OpCode.GTE_NUM_UNCHECKED : OpCode.GTE); break;
+                case LESS:          emit(numbers ? OpCode.LT_NUM_UNCHECKED  : OpCode.LT);  break;
+                case LESS_EQUAL:    emit(numbers ? OpCode.LTE_NUM_UNCHECKED : OpCode.LTE); break;
                 default: break;
             }
 
@@ -182,14 +302,42 @@ public class BytecodeCompiler {
 
         } else if (expr instanceof ArrayAccess) {
             ArrayAccess aa = (ArrayAccess) expr;
-            emit(OpCode.LOAD, aa.name.lexeme);
+            emit(OpCode.LOAD_SLOT, slot(aa.name));
             compileExpr(aa.index);
-            emit(OpCode.ARRAY_LOAD);
+            emit(aa.checked ? OpCode.ARRAY_LOAD : OpCode.ARRAY_LOAD_UNCHECKED);
+
+        } else if (expr instanceof BoundsGuard) {
+            BoundsGuard g = (BoundsGuard) expr;
+            String offset = String.valueOf(g.offset);
+            if (g.bound != null) {
+                emit(OpCode.GUARD_INDEX_VAR, slot(g.array) + " " + slot(g.bound) + " " + offset);
+            } else {
+                emit(OpCode.GUARD_INDEX_CONST, slot(g.array) + " " + offset);
+            }
+
+        } else if (expr instanceof Memo) {
+            Memo m = (Memo) expr;
+            compileExpr(m.value);
+            emit(OpCode.DUP);
+            emit(OpCode.STORE_SLOT, slot(m.temp));
         }
     }
 
     // ── Helpers ─────────────────────────────────────────────
 
+    private boolean isOnly(Expr expr, Type type) {
+        return types.typeOf(expr).isOnly(type);
+    }
+
+    /** True if both operands of b are proven numbers. */
+    private boolean numbers(BinaryExpr b) {
+        return isOnly(b.left, Type.NUMBER) && isOnly(b.right, Type.NUMBER);
+    }
+
+    private OpCode jumpIfFalse(Expr condition) {
+        return isOnly(condition, Type.BOOL) ? OpCode.JUMP_IF_FALSE_BOOL : OpCode.JUMP_IF_FALSE;
+    }
+
     private void emit(OpCode op) {
         instructions.add(new Instruction(op));
     }
@@ -198,6 +346,14 @@ public class BytecodeCompiler {
         instructions.add(new Instruction(op, operand));
     }
 
+    private String slot(Token name) {
+        int slot = symbols.slotOf(name.lexeme);
+        if (slot < 0) {
+            throw new RuntimeException("Compile error: no slot for variable '" + name.lexeme + "' (line " + name.line + ")");
+        }
+        return String.valueOf(slot);
+    }
+
     private int currentIndex() {
         return instructions.size();
     }
@@ -217,4 +373,14 @@ public class BytecodeCompiler {
     private void patchJump(int instructionIndex) {
         instructions.get(instructionIndex).operand = String.valueOf(instructions.size());
     }
+
+    private void patchJumps(List<Integer> instructionIndices) {
+        for (int index : instructionIndices) patchJump(index);
+    }
+
+    private static List<Integer> jumps(int instructionIndex) {
+        List<Integer> jumps = new ArrayList<>();
+        jumps.add(instructionIndex);
+        return jumps;
+    }
 }
@@ -0,0 +1,160 @@
+package compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Layout of binary .cpyc files (v2.3), shared by the writer and readers.
+ *
+ * Header:
+ *   magic      4 bytes   0x89 'C' 'P' 'Y'  (text files start with '#')
+ *   version    2 bytes   major, minor
+ *   sections   1 byte    count, then per section its id (1 byte), offset from
+ *                        the start of the file (4 bytes) and length (4 bytes)
+ *
+ * Fixed-width values are big-endian. All other integers are varints: 7 bits
+ * per byte, low group first, the high bit set on every byte but the last.
+ * Signed values are zigzag-encoded first, so small negatives stay short.
+ *
+ * Sections, found through the table (a reader skips ids it does not know):
+ *   META     instruction set (1 byte: 0 stack, 1 register),
+ *            max stack depth (signed, -1 if unknown)
+ *   POOL     count, then per entry a tag (1 byte) and the value:
+ *              NUMBER  8-byte double; used for constants whose text is
+ *                      exactly Double.toString of the value
+ *              STRING  byte length, then UTF-8 bytes
+ *   OPCODES  count, then the pool index of each opcode name. Instructions
+ *            refer to opcodes by position in this table, so files do not
+ *            depend on the order of the OpCode enum.
+ *   SLOTS    count, then the pool index of each slot name
+ *   CODE     count, then per instruction its opcode (1 byte) and operands
+ *            as given by {@link #layout}
+ *   INDEX    block size B (4 bytes), then the offset in CODE of instructions
+ *            0, B, 2B, ... (4 bytes each), so a block of instructions can be
+ *            decoded without decoding the ones before it (since 2.1)
+ *   POOL_INDEX  the offset in POOL of each entry (4 bytes each) (since 2.1)
+ *   SOURCE   optional: the key (see CompileCache#key) of the source and
+ *            options the file was compiled from, as ASCII hex, so a build
+ *            can tell the file is up to date (since 2.2)
+ *   CHECKSUM the CRC-32 of the other sections, in ascending id order (4
+ *            bytes), so a reader can tell two files apart by their content
+ *            without reading them (since 2.3)
+ */
+public final class BytecodeFormat {
+    static final byte[] MAGIC = { (byte) 0x89, 'C', 'P', 'Y' };
+    static final int MAJOR = 2;
+    static final int MINOR = 3;
+
+    static final int META = 1;
+    static final int POOL = 2;
+    static final int OPCODES = 3;
+    static final int SLOTS = 4;
+    static final int CODE = 5;
+    static final int INDEX = 6;
+    static final int POOL_INDEX = 7;
+    static final int SOURCE = 8;
+    static final int CHECKSUM = 9;
+
+    /** Instructions per INDEX entry. */
+    static final int BLOCK_SIZE = 32;
+
+    static final int NUMBER = 1;
+    static final int STRING = 2;
+
+    private BytecodeFormat() { }
+
+    /** True if bytes start with the binary format's magic number. */
+    public static boolean isBinary(ByteBuffer bytes) {
+        if (bytes.remaining() < MAGIC.length) return false;
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (bytes.get(bytes.position() + i) != MAGIC[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Operand layout of op in the CODE section, one letter per space-separated
+     * operand:
+     *   i : integer (slot, register, count or jump target), signed varint
+     *   c : constant, as a pool index; as the last operand it takes the rest
+     *       of the operand text, spaces included
+     *   * : any number of integers, as a count and the integers (last only)
+     */
+    public static String layout(OpCode op) {
+        if (RegisterOperands.isRegisterOp(op)) {
+            return RegisterOperands.layout(op).replace('d', 'i').replace('s', 'i')
+                    .replace('t', 'i').replace('k', 'c');
+        }
+        switch (op) {
+            case CONST_NUM:
+            case CONST_STR:
+            case CONST_CHAR:
+            case CONST_BOOL:
+            case LOAD:
+            case STORE:
+            case ARRAY_STORE:
+            case ADD_CONST:
+                return "c";
+            case LOAD_SLOT:
+            case STORE_SLOT:
+            case ARRAY_STORE_SLOT:
+            case ARRAY_STORE_UNCHECKED:
+            case MAKE_ARRAY:
+            case JUMP:
+            case JUMP_IF_FALSE:
+            case JUMP_IF_FALSE_BOOL:
+            case JUMP_IF_TRUE:
+            case JEQ: case JNEQ: case JGT: case JGTE: case JLT: case JLTE:
+            case JGT_NUM_UNCHECKED: case JGTE_NUM_UNCHECKED: case JLT_NUM_UNCHECKED: case JLTE_NUM_UNCHECKED:
+                return "i";
+            case INC_VAR:
+            case LOAD_CONST_ADD:
+            case LOAD_CONST_MUL:
+            case LOAD_ARRAY_CONST:
+            case GUARD_INDEX_CONST:
+                return "ic";
+            case LOAD_LOAD_ADD:
+            case LOAD_ARRAY_VAR:
+            case LOAD_ARRAY_VAR_UNCHECKED:
+                return "ii";
+            case JLT_VAR_CONST:
+                return "ici";
+            case JLT_VAR_VAR:
+                return "iii";
+            case GUARD_INDEX_VAR:
+                return "iic";
+            default:
+                return "";
+        }
+    }
+
+    // ── Varints ─────────────────────────────────────────────
+
+    static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    static void writeSigned(ByteArrayOutputStream out, int value) {
+        writeVarint(out, (value << 1) ^ (value >> 31));
+    }
+
+    static int readVarint(ByteBuffer in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IOException("Invalid bytecode file: malformed varint");
+    }
+
+    static int readSigned(ByteBuffer in) throws IOException {
+        int value = readVarint(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -1,20 +1,67 @@
 package compiler;
 
 import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.StringReader;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
 
 /**
- * Deserializes a .cpyc bytecode file back into a list of Instructions.
+ * Deserializes a .cpyc bytecode file back into a Chunk. The format, binary
+ * (see {@link BytecodeFormat}) or text, is detected from the header.
+ *
+ * Text files: v1.0 files have no slot table or max stack depth and use name-addressed
+ * LOAD/STORE/ARRAY_STORE; the Linker resolves those to slots and computes the depth.
+ * Files without an .isa directive hold stack code.
+ *
+ * The unchecked array and number instructions are read as the checked ones
+ * they replace (see {@link #checkedForm}): their safety rests on the
+ * compiler's proof of the operands' types and ranges, which a file does not
+ * carry.
  */
 public class BytecodeReader {
 
-    public static List<Instruction> read(String filename) throws IOException {
+    public static Chunk read(String filename) throws IOException {
+        byte[] bytes = Files.readAllBytes(Paths.get(filename));
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (BytecodeFormat.isBinary(buffer)) return readBinary(buffer);
+        return readText(new BufferedReader(new StringReader(new String(bytes, StandardCharsets.UTF_8))));
+    }
+
+    /**
+     * The source key a binary file records (see {@link BytecodeFormat}); null
+     * for a text file, a file without one, or a file that is not valid bytecode.
+     */
+    public static String sourceKey(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (!BytecodeFormat.isBinary(buffer)) return null;
+        try {
+            ByteBuffer source = sections(buffer).get(BytecodeFormat.SOURCE);
+            return source != null ? StandardCharsets.US_ASCII.decode(source).toString() : null;
+        } catch (IOException | BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    // ── Text ────────────────────────────────────────────────
+
+    private static Chunk readText(BufferedReader source) throws IOException {
         List<Instruction> instructions = new ArrayList<>();
+        List<String> slotNames = new ArrayList<>();
+        int maxStack = -1;
+        Isa isa = Isa.STACK;
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
+        try (BufferedReader reader = source) {
             String line = reader.readLine();
 
             // Validate header
@@ -26,20 +73,48 @@ public class BytecodeReader {
                 line = line.trim();
                 if (line.isEmpty()) continue;
 
+                // Slot table:  .slots a b c
+                if (line.startsWith(".slots")) {
+                    for (String name : line.substring(".slots".length()).trim().split(" ")) {
+                        if (!name.isEmpty()) slotNames.add(name);
+                    }
+                    continue;
+                }
+
+                // Instruction set:  .isa register
+                if (line.startsWith(".isa ")) {
+                    try {
+                        isa = Isa.fromDirective(line.substring(".isa ".length()).trim());
+                    } catch (IllegalArgumentException e) {
+                        throw new IOException(e.getMessage());
+                    }
+                    continue;
+                }
+
+                // Maximum stack depth:  .max_stack 4
+                if (line.startsWith(".max_stack ")) {
+                    maxStack = Integer.parseInt(line.substring(".max_stack ".length()).trim());
+                    continue;
+                }
+
                 int spaceIdx = line.indexOf(' ');
                 if (spaceIdx == -1) {
                     // No operand
-                    OpCode op = OpCode.valueOf(line);
+                    OpCode op = checkedForm(OpCode.valueOf(line));
                     instructions.add(new Instruction(op));
                 } else {
                     String opName = line.substring(0, spaceIdx);
                     String operand = line.substring(spaceIdx + 1);
-                    OpCode op = OpCode.valueOf(opName);
+                    OpCode op = checkedForm(OpCode.valueOf(opName));
 
                     // Strings are quoted — strip quotes and unescape
                     if (op == OpCode.CONST_STR) {
                         operand = operand.substring(1, operand.length() - 1); // remove quotes
                         operand = unescapeString(operand);
+                    } else if (op == OpCode.R_STR) {
+                        int quote = operand.indexOf(' ');
+                        operand = operand.substring(0, quote) + " "
+                                + unescapeString(operand.substring(quote + 2, operand.length() - 1));
                     }
 
                     instructions.add(new Instruction(op, operand));
@@ -47,14 +122,275 @@ public class BytecodeReader {
             }
         }
 
-        return instructions;
+        return new Chunk(instructions, slotNames, maxStack, isa);
+    }
+
+    // ── Binary ──────────────────────────────────────────────
+
+    /** Decodes a binary .cpyc file held in file, from its start; file's position is left unchanged. */
+    public static Chunk readBinary(ByteBuffer file) throws IOException {
+        try {
+            Map<Integer, ByteBuffer> sections = sections(file);
+            Integer checksum = checksum(sections);
+            if (checksum != null && checksum != computeChecksum(sections)) throw invalid("checksum mismatch");
+            String[] entries = readPool(section(sections, BytecodeFormat.POOL, "POOL"));
+            ConstantPool pool = index -> constant(entries, index);
+
+            ByteBuffer meta = section(sections, BytecodeFormat.META, "META");
+            Isa isa = readIsa(meta);
+            int maxStack = BytecodeFormat.readSigned(meta);
+            OpCode[] opcodes = readOpcodes(section(sections, BytecodeFormat.OPCODES, "OPCODES"), pool);
+            String[] layouts = layouts(opcodes);
+            List<String> slotNames = readSlots(section(sections, BytecodeFormat.SLOTS, "SLOTS"), pool);
+
+            ByteBuffer code = section(sections, BytecodeFormat.CODE, "CODE");
+            int n = count(code);
+            List<Instruction> instructions = new ArrayList<>(n);
+            StringBuilder operand = new StringBuilder();
+            for (int i = 0; i < n; i++) {
+                instructions.add(decodeInstruction(code, opcodes, layouts, pool, operand, i));
+            }
+            return new Chunk(instructions, slotNames, maxStack, isa);
+        } catch (BufferUnderflowException e) {
+            throw invalid("truncated file");
+        }
+    }
+
+    /**
+     * Maps a binary .cpyc file into memory for decoding on demand (see
+     * {@link MappedChunk}). Returns null for a file that cannot be decoded
+     * that way (text, or written before 2.1): read it instead.
+     */
+    public static MappedChunk map(String filename) throws IOException {
+        return MappedChunk.open(Paths.get(filename));
+    }
+
+    // ── Binary sections ─────────────────────────────────────
+
+    /** Checks the header of a binary file and returns its sections by id, each as a buffer of its own. */
+    static Map<Integer, ByteBuffer> sections(ByteBuffer file) throws IOException {
+        ByteBuffer header = file.duplicate();
+        header.position(BytecodeFormat.MAGIC.length);
+        int major = header.get() & 0xFF;
+        int minor = header.get() & 0xFF;
+        if (major != BytecodeFormat.MAJOR) {
+            throw new IOException("Unsupported bytecode version " + major + "." + minor
+                    + " (expected " + BytecodeFormat.MAJOR + ".x)");
+        }
+        Map<Integer, ByteBuffer> sections = new HashMap<>();
+        int count = header.get() & 0xFF;
+        for (int s = 0; s < count; s++) {
+            int id = header.get() & 0xFF;
+            int offset = header.getInt();
+            int length = header.getInt();
+            if (offset < 0 || length < 0 || offset > file.limit() - length) {
+                throw invalid("section " + id + " lies outside the file");
+            }
+            ByteBuffer section = file.duplicate();
+            section.position(offset).limit(offset + length);
+            sections.put(id, section.slice());
+        }
+        return sections;
+    }
+
+    /** The checksum a file records, or null if it was written before 2.3. */
+    static Integer checksum(Map<Integer, ByteBuffer> sections) throws IOException {
+        ByteBuffer checksum = sections.get(BytecodeFormat.CHECKSUM);
+        if (checksum == null) return null;
+        if (checksum.limit() != 4) throw invalid("CHECKSUM section is not 4 bytes");
+        return checksum.getInt(0);
+    }
+
+    /** The CRC-32 of every section but CHECKSUM, in ascending id order. */
+    static int computeChecksum(Map<Integer, ByteBuffer> sections) {
+        CRC32 crc = new CRC32();
+        for (int id : new TreeSet<>(sections.keySet())) {
+            if (id != BytecodeFormat.CHECKSUM) crc.update(sections.get(id).duplicate());
+        }
+        return (int) crc.getValue();
+    }
+
+    static ByteBuffer section(Map<Integer, ByteBuffer> sections, int id, String name) throws IOException {
+        ByteBuffer section = sections.get(id);
+        if (section == null) throw invalid("missing " + name + " section");
+        return section;
+    }
+
+    static Isa readIsa(ByteBuffer meta) throws IOException {
+        int isa = meta.get();
+        if (isa != 0 && isa != 1) throw invalid("unknown instruction set " + isa);
+        return isa == 1 ? Isa.REGISTER : Isa.STACK;
+    }
+
+    static OpCode[] readOpcodes(ByteBuffer names, ConstantPool pool) throws IOException {
+        OpCode[] opcodes = new OpCode[count(names)];
+        for (int i = 0; i < opcodes.length; i++) {
+            String name = pool.get(BytecodeFormat.readVarint(names));
+            try {
+                opcodes[i] = checkedForm(OpCode.valueOf(name));
+            } catch (IllegalArgumentException e) {
+                throw invalid("unknown opcode '" + name + "'");
+            }
+        }
+        return opcodes;
+    }
+
+    static String[] layouts(OpCode[] opcodes) {
+        String[] layouts = new String[opcodes.length];
+        for (int i = 0; i < opcodes.length; i++) layouts[i] = BytecodeFormat.layout(opcodes[i]);
+        return layouts;
+    }
+
+    static List<String> readSlots(ByteBuffer slots, ConstantPool pool) throws IOException {
+        List<String> names = new ArrayList<>();
+        for (int i = count(slots); i > 0; i--) names.add(pool.get(BytecodeFormat.readVarint(slots)));
+        return names;
+    }
+
+    private static String[] readPool(ByteBuffer in) throws IOException {
+        String[] pool = new String[count(in)];
+        for (int i = 0; i < pool.length; i++) pool[i] = decodeConstant(in, i);
+        return pool;
+    }
+
+    /** Decodes pool entry i, starting at in's position. */
+    static String decodeConstant(ByteBuffer in, int i) throws IOException {
+        int tag = in.get();
+        if (tag == BytecodeFormat.NUMBER) return Double.toString(in.getDouble());
+        if (tag != BytecodeFormat.STRING) throw invalid("constant " + i + " has unknown tag " + tag);
+        byte[] utf8 = new byte[count(in)];
+        in.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The instruction a program read from a file runs for op. The unchecked
+     * forms of bounds-check elimination and of proven number types become
+     * checked instructions with the same operands and stack effect (the
+     * quickened form where there is one); every other opcode is its own.
+     */
+    static OpCode checkedForm(OpCode op) {
+        switch (op) {
+            case ARRAY_LOAD_UNCHECKED:     return OpCode.ARRAY_LOAD;
+            case ARRAY_STORE_UNCHECKED:    return OpCode.ARRAY_STORE_SLOT;
+            case LOAD_ARRAY_VAR_UNCHECKED: return OpCode.LOAD_ARRAY_VAR;
+            case ADD_NUM_UNCHECKED:        return OpCode.ADD_NUM;
+            case SUB_NUM_UNCHECKED:        return OpCode.SUB;
+            case MUL_NUM_UNCHECKED:        return OpCode.MUL;
+            case DIV_NUM_UNCHECKED:        return OpCode.DIV;
+            case NEG_NUM_UNCHECKED:        return OpCode.NEG;
+            case GT_NUM_UNCHECKED:         return OpCode.GT_NUM;
+            case GTE_NUM_UNCHECKED:        return OpCode.GTE_NUM;
+            case LT_NUM_UNCHECKED:         return OpCode.LT_NUM;
+            case LTE_NUM_UNCHECKED:        return OpCode.LTE_NUM;
+            case JGT_NUM_UNCHECKED:        return OpCode.JGT;
+            case JGTE_NUM_UNCHECKED:       return OpCode.JGTE;
+            case JLT_NUM_UNCHECKED:        return OpCode.JLT;
+            case JLTE_NUM_UNCHECKED:       return OpCode.JLTE;
+            default:                       return op;
+        }
+    }
+
+    /** A pool entry by index; may throw IOException for a bad index. */
+    interface ConstantPool {
+        String get(int index) throws IOException;
+    }
+
+    /** Decodes instruction i, starting at code's position; opcodes and layouts come from the OPCODES section. */
+    static Instruction decodeInstruction(ByteBuffer code, OpCode[] opcodes, String[] layouts, ConstantPool pool,
+                                         StringBuilder operand, int i) throws IOException {
+        int opcode = code.get() & 0xFF;
+        if (opcode >= opcodes.length) throw invalid("instruction " + i + " has unknown opcode " + opcode);
+        String layout = layouts[opcode];
+        if (layout.isEmpty()) return new Instruction(opcodes[opcode]);
+
+        operand.setLength(0);
+        for (int p = 0; p < layout.length(); p++) {
+            switch (layout.charAt(p)) {
+                case 'c':
+                    if (p > 0) operand.append(' ');
+                    operand.append(pool.get(BytecodeFormat.readVarint(code)));
+                    break;
+                case '*':
+                    for (int k = BytecodeFormat.readVarint(code); k > 0; k--) {
+                        operand.append(' ').append(BytecodeFormat.readSigned(code));
+                    }
+                    break;
+                default:
+                    if (p > 0) operand.append(' ');
+                    operand.append(BytecodeFormat.readSigned(code));
+                    break;
+            }
+        }
+        return new Instruction(opcodes[opcode], operand.toString());
+    }
+
+    /**
+     * Decodes the opcode and integer operands of instruction i, starting at
+     * code's position, without decoding its constants: the opcode goes to
+     * ops[i] and the k-th integer operand to ints[k][i] (those past the last
+     * array are skipped). For checks of a whole program's structure that
+     * need no constants (see MappedChunk#decodeIntegers).
+     */
+    static void decodeIntegers(ByteBuffer code, OpCode[] opcodes, String[] layouts, OpCode[] ops, int[][] ints,
+                               int i) throws IOException {
+        int opcode = code.get() & 0xFF;
+        if (opcode >= opcodes.length) throw invalid("instruction " + i + " has unknown opcode " + opcode);
+        ops[i] = opcodes[opcode];
+        String layout = layouts[opcode];
+        int k = 0;
+        for (int p = 0; p < layout.length(); p++) {
+            switch (layout.charAt(p)) {
+                case 'c':
+                    BytecodeFormat.readVarint(code);
+                    break;
+                case '*':
+                    for (int count = BytecodeFormat.readVarint(code); count > 0; count--) BytecodeFormat.readSigned(code);
+                    break;
+                default: {
+                    int value = BytecodeFormat.readSigned(code);
+                    if (k < ints.length) ints[k++][i] = value;
+                    break;
+                }
+            }
+        }
+    }
+
+    /** A count of entries that each take at least a byte of in. */
+    static int count(ByteBuffer in) throws IOException {
+        int count = BytecodeFormat.readVarint(in);
+        if (count < 0 || count > in.remaining()) throw invalid("count " + count + " exceeds its section");
+        return count;
+    }
+
+    static String constant(String[] pool, int index) throws IOException {
+        if (index < 0 || index >= pool.length) throw invalid("constant index " + index + " out of range");
+        return pool[index];
+    }
+
+    static IOException invalid(String reason) {
+        return new IOException("Invalid bytecode file: " + reason);
     }
 
+    // ── Helpers ─────────────────────────────────────────────
+
+    /** Undoes BytecodeWriter's escapes in one pass, so an escaped backslash before n stays a backslash. */
     private static String unescapeString(String s) {
-        return s.replace("\\n", "\n")
-                .replace("\\r", "\r")
-                .replace("\\t", "\t")
-                .replace("\\\"", "\"")
-                .replace("\\\\", "\\");
+        StringBuilder out = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c != '\\' || i + 1 == s.length()) {
+                out.append(c);
+                continue;
+            }
+            char next = s.charAt(++i);
+            switch (next) {
+                case 'n': out.append('\n'); break;
+                case 'r': out.append('\r'); break;
+                case 't': out.append('\t'); break;
+                default:  out.append(next); break;   // \" and \\
+            }
+        }
+        return out.toString();
     }
 }
@@ -1,32 +1,94 @@
 package compiler;
 
 import java.io.BufferedWriter;
-import java.io.FileWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
 
 /**
- * Serializes compiled bytecode instructions to a .cpyc file.
+ * Serializes compiled bytecode instructions to a .cpyc file, in the compact
+ * binary format (see {@link BytecodeFormat}) or as text.
  *
- * Format (text-based, one instruction per line):
- *   Line 1:  #CPY_BYTECODE v1.0
+ * Text format (one instruction per line):
+ *   Line 1:  #CPY_BYTECODE v1.1
+ *   Line 2:  .slots <name> <name> ...     (variable name of each slot, in slot order)
+ *   Line 3:  .isa stack|register           (instruction set, see {@link Isa})
+ *   Line 4:  .max_stack <depth>            (maximum operand stack depth; stack code only)
  *   Line N:  OPCODE
  *         or OPCODE <operand>
  *         or OPCODE "string with spaces"
+ *         or R_STR <register> "string with spaces"
  */
 public class BytecodeWriter {
 
-    public static void write(List<Instruction> instructions, String filename) throws IOException {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filename))) {
-            writer.write("#CPY_BYTECODE v1.0");
+    /** Output format of a .cpyc file. */
+    public enum Format {
+        BINARY,
+        TEXT;
+
+        public static Format fromName(String name) {
+            for (Format format : values()) {
+                if (format.name().toLowerCase().equals(name)) return format;
+            }
+            throw new IllegalArgumentException("Unknown bytecode format '" + name + "' (expected binary or text)");
+        }
+    }
+
+    public static void write(Chunk chunk, String filename) throws IOException {
+        write(chunk, filename, Format.BINARY);
+    }
+
+    public static void write(Chunk chunk, String filename, Format format) throws IOException {
+        write(chunk, filename, format, null);
+    }
+
+    /** Writes chunk; a binary file also records sourceKey, if not null (text files have no room for it). */
+    public static void write(Chunk chunk, String filename, Format format, String sourceKey) throws IOException {
+        if (format == Format.BINARY) {
+            writeBinary(chunk, filename, sourceKey);
+        } else {
+            writeText(chunk, filename);
+        }
+    }
+
+    // ── Text ────────────────────────────────────────────────
+
+    public static void writeText(Chunk chunk, String filename) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(filename), StandardCharsets.UTF_8)) {
+            writer.write("#CPY_BYTECODE v1.1");
             writer.newLine();
 
-            for (Instruction instr : instructions) {
+            writer.write(".slots");
+            for (String name : chunk.slotNames) {
+                writer.write(" " + name);
+            }
+            writer.newLine();
+
+            writer.write(".isa " + chunk.isa.directive());
+            writer.newLine();
+
+            if (chunk.isa == Isa.STACK) {
+                writer.write(".max_stack " + chunk.maxStack);
+                writer.newLine();
+            }
+
+            for (Instruction instr : chunk.code) {
                 if (instr.operand == null) {
                     writer.write(instr.opCode.name());
                 } else if (instr.opCode == OpCode.CONST_STR) {
                     // Strings are quoted to preserve spaces
                     writer.write(instr.opCode.name() + " \"" + escapeString(instr.operand) + "\"");
+                } else if (instr.opCode == OpCode.R_STR) {
+                    String[] parts = RegisterOperands.split(instr);
+                    writer.write(instr.opCode.name() + " " + parts[0] + " \"" + escapeString(parts[1]) + "\"");
                 } else {
                     writer.write(instr.opCode.name() + " " + instr.operand);
                 }
@@ -35,6 +97,177 @@ public class BytecodeWriter {
         }
     }
 
+    // ── Binary ──────────────────────────────────────────────
+
+    /**
+     * Writes a new file and renames it over filename, so a process that has
+     * the old file mapped (see {@link MappedChunk}) keeps seeing it intact.
+     */
+    public static void writeBinary(Chunk chunk, String filename) throws IOException {
+        writeBinary(chunk, filename, null);
+    }
+
+    public static void writeBinary(Chunk chunk, String filename, String sourceKey) throws IOException {
+        Path target = Paths.get(filename).toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + "." + ProcessHandle.current().pid()
+                + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            Files.write(temp, toBinary(chunk, sourceKey));
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    public static byte[] toBinary(Chunk chunk) throws IOException {
+        return toBinary(chunk, null);
+    }
+
+    public static byte[] toBinary(Chunk chunk, String sourceKey) throws IOException {
+        Map<String, Integer> pool = new LinkedHashMap<>();
+        Map<OpCode, Integer> opcodes = new LinkedHashMap<>();
+
+        ByteArrayOutputStream code = new ByteArrayOutputStream();
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        writeInt(index, BytecodeFormat.BLOCK_SIZE);
+        BytecodeFormat.writeVarint(code, chunk.code.size());
+        for (int i = 0; i < chunk.code.size(); i++) {
+            Instruction instr = chunk.code.get(i);
+            if (i % BytecodeFormat.BLOCK_SIZE == 0) writeInt(index, code.size());
+            Integer opcode = opcodes.get(instr.opCode);
+            if (opcode == null) {
+                opcode = opcodes.size();
+                if (opcode > 0xFF) throw new IOException("Cannot write bytecode: more than 256 distinct opcodes");
+                opcodes.put(instr.opCode, opcode);
+                intern(pool, instr.opCode.name());
+            }
+            code.write(opcode);
+            writeOperands(code, pool, instr, i);
+        }
+
+        ByteArrayOutputStream slots = new ByteArrayOutputStream();
+        BytecodeFormat.writeVarint(slots, chunk.slotNames.size());
+        for (String name : chunk.slotNames) BytecodeFormat.writeVarint(slots, intern(pool, name));
+
+        ByteArrayOutputStream names = new ByteArrayOutputStream();
+        BytecodeFormat.writeVarint(names, opcodes.size());
+        for (OpCode op : opcodes.keySet()) BytecodeFormat.writeVarint(names, pool.get(op.name()));
+
+        ByteArrayOutputStream meta = new ByteArrayOutputStream();
+        meta.write(chunk.isa == Isa.REGISTER ? 1 : 0);
+        BytecodeFormat.writeSigned(meta, chunk.maxStack);
+
+        ByteArrayOutputStream constants = new ByteArrayOutputStream();
+        ByteArrayOutputStream poolIndex = new ByteArrayOutputStream();
+        BytecodeFormat.writeVarint(constants, pool.size());
+        for (String text : pool.keySet()) {
+            writeInt(poolIndex, constants.size());
+            if (isNumber(text)) {
+                constants.write(BytecodeFormat.NUMBER);
+                constants.write(ByteBuffer.allocate(8).putDouble(Double.parseDouble(text)).array());
+            } else {
+                byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+                constants.write(BytecodeFormat.STRING);
+                BytecodeFormat.writeVarint(constants, utf8.length);
+                constants.write(utf8);
+            }
+        }
+
+        Map<Integer, ByteArrayOutputStream> sections = new LinkedHashMap<>();
+        sections.put(BytecodeFormat.META, meta);
+        sections.put(BytecodeFormat.POOL, constants);
+        sections.put(BytecodeFormat.OPCODES, names);
+        sections.put(BytecodeFormat.SLOTS, slots);
+        sections.put(BytecodeFormat.CODE, code);
+        sections.put(BytecodeFormat.INDEX, index);
+        sections.put(BytecodeFormat.POOL_INDEX, poolIndex);
+        if (sourceKey != null) {
+            ByteArrayOutputStream source = new ByteArrayOutputStream();
+            source.write(sourceKey.getBytes(StandardCharsets.US_ASCII));
+            sections.put(BytecodeFormat.SOURCE, source);
+        }
+        CRC32 crc = new CRC32();   // the sections above are in ascending id order
+        for (ByteArrayOutputStream section : sections.values()) crc.update(section.toByteArray());
+        ByteArrayOutputStream checksum = new ByteArrayOutputStream();
+        writeInt(checksum, (int) crc.getValue());
+        sections.put(BytecodeFormat.CHECKSUM, checksum);
+
+        int headerSize = BytecodeFormat.MAGIC.length + 3 + 9 * sections.size();
+        ByteBuffer header = ByteBuffer.allocate(headerSize);
+        header.put(BytecodeFormat.MAGIC).put((byte) BytecodeFormat.MAJOR).put((byte) BytecodeFormat.MINOR);
+        header.put((byte) sections.size());
+        int offset = headerSize;
+        for (Map.Entry<Integer, ByteArrayOutputStream> section : sections.entrySet()) {
+            header.put((byte) (int) section.getKey()).putInt(offset).putInt(section.getValue().size());
+            offset += section.getValue().size();
+        }
+
+        ByteArrayOutputStream file = new ByteArrayOutputStream(offset);
+        file.write(header.array());
+        for (ByteArrayOutputStream section : sections.values()) section.writeTo(file);
+        return file.toByteArray();
+    }
+
+    private static void writeOperands(ByteArrayOutputStream out, Map<String, Integer> pool, Instruction instr, int i)
+            throws IOException {
+        String layout = BytecodeFormat.layout(instr.opCode);
+        if (layout.isEmpty()) return;
+        if (instr.operand == null) throw cannotWrite(instr, i, "missing operand");
+
+        boolean variadic = layout.endsWith("*");
+        String[] parts = instr.operand.split(" ", variadic ? -1 : layout.length());
+        int fixed = variadic ? layout.length() - 1 : layout.length();
+        if (parts.length < fixed || (!variadic && parts.length != fixed)) throw cannotWrite(instr, i, "wrong operand count");
+
+        for (int p = 0; p < fixed; p++) {
+            if (layout.charAt(p) == 'c') {
+                BytecodeFormat.writeVarint(out, intern(pool, parts[p]));
+            } else {
+                BytecodeFormat.writeSigned(out, integer(parts[p], instr, i));
+            }
+        }
+        if (variadic) {
+            BytecodeFormat.writeVarint(out, parts.length - fixed);
+            for (int p = fixed; p < parts.length; p++) BytecodeFormat.writeSigned(out, integer(parts[p], instr, i));
+        }
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private static int intern(Map<String, Integer> pool, String text) {
+        return pool.computeIfAbsent(text, t -> pool.size());
+    }
+
+    /** True if text is exactly how Double.toString writes its value, so a NUMBER entry restores it. */
+    private static boolean isNumber(String text) {
+        try {
+            return Double.toString(Double.parseDouble(text)).equals(text);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static int integer(String text, Instruction instr, int i) throws IOException {
+        try {
+            int value = Integer.parseInt(text);
+            if (Integer.toString(value).equals(text)) return value;
+        } catch (NumberFormatException e) {
+            // fall through
+        }
+        throw cannotWrite(instr, i, "'" + text + "' is not an integer");
+    }
+
+    private static IOException cannotWrite(Instruction instr, int i, String reason) {
+        return new IOException("Cannot write instruction " + i + " (" + instr + "): " + reason);
+    }
+
+    // ── Helpers ─────────────────────────────────────────────
+
     private static String escapeString(String s) {
         return s.replace("\\", "\\\\")
                 .replace("\"", "\\\"")
@@ -0,0 +1,28 @@
+package compiler;
+
+import java.util.List;
+
+/**
+ * A compiled program: its instructions plus the slot name table.
+ * slotNames.get(i) is the source name of the variable stored in slot i; it is
+ * only used for diagnostics (e.g. "Undefined variable 'x'").
+ * maxStack is the maximum operand stack depth, or -1 if unknown (v1.0 files
+ * and register code). isa is the instruction set the code uses.
+ */
+public class Chunk {
+    public final List<Instruction> code;
+    public final List<String> slotNames;
+    public final int maxStack;
+    public final Isa isa;
+
+    public Chunk(List<Instruction> code, List<String> slotNames, int maxStack) {
+        this(code, slotNames, maxStack, Isa.STACK);
+    }
+
+    public Chunk(List<Instruction> code, List<String> slotNames, int maxStack, Isa isa) {
+        this.code = code;
+        this.slotNames = slotNames;
+        this.maxStack = maxStack;
+        this.isa = isa;
+    }
+}
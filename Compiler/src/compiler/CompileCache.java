@@ -0,0 +1,197 @@
+package compiler;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed cache of compiled programs in a local directory.
+ *
+ * An entry is a binary .cpyc file named by the SHA-256 of the source text,
+ * the compiler version and the compile options, so an entry never goes stale:
+ * a changed source, compiler or option just looks up a different name. The
+ * compiler version is a fingerprint of the class files of the packages that
+ * decide what the compiler emits (their names, sizes and modification times),
+ * taken once per process, so a rebuilt compiler starts afresh.
+ *
+ * Entries are written to a temporary file and renamed into place (see
+ * BytecodeWriter), so a reader sees a whole entry or none, and several
+ * processes may share a directory. A hit marks the entry used by updating its
+ * modification time; after each store the least recently used entries are
+ * deleted until the directory holds at most maxBytes of entries.
+ */
+public final class CompileCache {
+    public static final long DEFAULT_MAX_BYTES = 64L << 20;
+
+    private static final String SUFFIX = ".cpyc";
+
+    /** Packages whose classes decide what the compiler emits; vm only runs the result. */
+    private static final String[] COMPILER_PACKAGES = { "lexer", "parser", "ast", "semantic", "optimizer", "ir", "compiler" };
+    /** Classes outside those packages that the compiler calls: ConstantFolder formats numbers with Value. */
+    private static final String[] COMPILER_CLASSES = { "vm/Value.class" };
+    private static String compilerVersion;   // computed on first use
+
+    private final Path directory;
+    private final long maxBytes;
+
+    public CompileCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /** $XDG_CACHE_HOME/cpy, or ~/.cache/cpy. */
+    public static Path defaultDirectory() {
+        String cacheHome = System.getenv("XDG_CACHE_HOME");
+        Path base = cacheHome != null && !cacheHome.isEmpty() ? Paths.get(cacheHome)
+                                                               : Paths.get(System.getProperty("user.home"), ".cache");
+        return base.resolve("cpy");
+    }
+
+    // ── Lookup and store ────────────────────────────────────
+
+    /** The cache key of source compiled with options. */
+    public static String key(String source, Pipeline.Options options) throws IOException {
+        MessageDigest digest = sha256();
+        digest.update(("cpy " + BytecodeFormat.MAJOR + "." + BytecodeFormat.MINOR + "\n").getBytes(StandardCharsets.UTF_8));
+        digest.update((compilerVersion() + "\n").getBytes(StandardCharsets.UTF_8));
+        digest.update((options + "\n").getBytes(StandardCharsets.UTF_8));
+        digest.update(source.getBytes(StandardCharsets.UTF_8));
+        return hex(digest.digest());
+    }
+
+    /** The entry for key, marked as used; null on a miss. */
+    public Path lookup(String key) throws IOException {
+        Path entry = entry(key);
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            return entry;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /** Stores chunk as the entry for key, then evicts entries over the size bound; returns the entry. */
+    public Path store(String key, Chunk chunk) throws IOException {
+        Files.createDirectories(directory);
+        Path entry = entry(key);
+        BytecodeWriter.write(chunk, entry.toString(), BytecodeWriter.Format.BINARY);
+        evict(entry);
+        return entry;
+    }
+
+    private Path entry(String key) {
+        return directory.resolve(key + SUFFIX);
+    }
+
+    /** Deletes least recently used entries, other than keep, until the entries fit in maxBytes. */
+    private void evict(Path keep) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        long total = 0;
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(f -> f.getFileName().toString().endsWith(SUFFIX))
+                                  .collect(Collectors.toList())) {
+                try {
+                    Entry e = new Entry(file, Files.size(file), Files.getLastModifiedTime(file));
+                    entries.add(e);
+                    total += e.size;
+                } catch (NoSuchFileException e) {
+                    // evicted by another process meanwhile
+                }
+            }
+        }
+        if (total <= maxBytes) return;
+
+        entries.sort(Comparator.comparing((Entry e) -> e.used));
+        for (Entry e : entries) {
+            if (total <= maxBytes) break;
+            if (e.file.equals(keep)) continue;
+            Files.deleteIfExists(e.file);
+            total -= e.size;
+        }
+    }
+
+    private static final class Entry {
+        final Path file;
+        final long size;
+        final FileTime used;
+
+        Entry(Path file, long size, FileTime used) {
+            this.file = file;
+            this.size = size;
+            this.used = used;
+        }
+    }
+
+    // ── Compiler version ────────────────────────────────────
+
+    /**
+     * Fingerprint of the compiler's class files: those directly in
+     * COMPILER_PACKAGES plus COMPILER_CLASSES when loaded from a directory,
+     * else the jar.
+     */
+    private static synchronized String compilerVersion() throws IOException {
+        if (compilerVersion != null) return compilerVersion;
+        CodeSource source = CompileCache.class.getProtectionDomain().getCodeSource();
+        if (source == null) throw new IOException("cannot locate the compiler's class files");
+        Path location;
+        try {
+            location = Paths.get(source.getLocation().toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            throw new IOException("cannot locate the compiler's class files: " + e.getMessage());
+        }
+
+        MessageDigest digest = sha256();
+        List<Path> files = new ArrayList<>();
+        if (Files.isDirectory(location)) {
+            for (String name : COMPILER_PACKAGES) {
+                Path dir = location.resolve(name);
+                if (!Files.isDirectory(dir)) continue;
+                try (Stream<Path> list = Files.list(dir)) {
+                    list.filter(f -> f.toString().endsWith(".class")).sorted().forEach(files::add);
+                }
+            }
+            for (String name : COMPILER_CLASSES) {
+                Path file = location.resolve(name);
+                if (Files.isRegularFile(file)) files.add(file);
+            }
+        } else {
+            files.add(location);
+        }
+        for (Path file : files) {
+            String line = location.relativize(file) + " " + Files.size(file) + " "
+                    + Files.getLastModifiedTime(file).toMillis() + "\n";
+            digest.update(line.getBytes(StandardCharsets.UTF_8));
+        }
+        compilerVersion = hex(digest.digest());
+        return compilerVersion;
+    }
+
+    // ── Helpers ─────────────────────────────────────────────
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) hex.append(String.format("%02x", b));
+        return hex.toString();
+    }
+}
@@ -5,7 +5,7 @@ package compiler;
  */
 public class Instruction {
     public final OpCode opCode;
-    public String operand;   // mutable for jump patching
+    public String operand;   // mutable for jump patching and remapping
 
     public Instruction(OpCode opCode) {
         this.opCode = opCode;
@@ -17,6 +17,51 @@ public class Instruction {
         this.operand = operand;
     }
 
+    // ── Jumps ───────────────────────────────────────────────
+    // The jump target is always the last space-separated operand.
+
+    /** True if this instruction can transfer control to its jump target. */
+    public boolean isJump() {
+        switch (opCode) {
+            case JUMP:
+            case JUMP_IF_FALSE:
+            case JUMP_IF_FALSE_BOOL:
+            case JUMP_IF_TRUE:
+            case JEQ:
+            case JNEQ:
+            case JGT:
+            case JGTE:
+            case JLT:
+            case JLTE:
+            case JGT_NUM_UNCHECKED:
+            case JGTE_NUM_UNCHECKED:
+            case JLT_NUM_UNCHECKED:
+            case JLTE_NUM_UNCHECKED:
+            case JLT_VAR_CONST:
+            case JLT_VAR_VAR:
+            case R_JUMP:
+            case R_JUMP_IF_FALSE:
+            case R_JUMP_IF_TRUE:
+            case R_JLT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /** True for jumps that may also fall through to the next instruction. */
+    public boolean isConditionalJump() {
+        return isJump() && opCode != OpCode.JUMP && opCode != OpCode.R_JUMP;
+    }
+
+    public int jumpTarget() {
+        return Integer.parseInt(operand.substring(operand.lastIndexOf(' ') + 1));
+    }
+
+    public void setJumpTarget(int target) {
+        operand = operand.substring(0, operand.lastIndexOf(' ') + 1) + target;
+    }
+
     @Override
     public String toString() {
         return operand != null ? opCode + " " + operand : opCode.toString();
@@ -0,0 +1,23 @@
+package compiler;
+
+/**
+ * Instruction set a compiled program uses, recorded in the .cpyc file:
+ *   stack    : the operand-stack instructions run by vm.VM and the other stack engines
+ *   register : the three-address R_* instructions run by vm.RegisterVM
+ */
+public enum Isa {
+    STACK,
+    REGISTER;
+
+    /** Name used in the .isa directive. */
+    public String directive() {
+        return name().toLowerCase();
+    }
+
+    public static Isa fromDirective(String name) {
+        for (Isa isa : values()) {
+            if (isa.directive().equals(name)) return isa;
+        }
+        throw new IllegalArgumentException("Unknown instruction set '" + name + "' (expected stack or register)");
+    }
+}
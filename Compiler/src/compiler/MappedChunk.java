@@ -0,0 +1,227 @@
+package compiler;
+
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A binary .cpyc file (v2.1 or later) mapped into memory with
+ * FileChannel.map and decoded on demand instead of up front.
+ *
+ * Opening one reads the header and the small META, OPCODES and SLOTS
+ * sections. Instructions are decoded a block at a time (see
+ * {@link BytecodeFormat#BLOCK_SIZE}), located through the INDEX section, and
+ * pool entries when an instruction or name first needs them, located through
+ * POOL_INDEX. Decoded pool entries are kept. The cost of opening a file does
+ * not depend on the size of its code.
+ *
+ * Mappings are cached per file while some program still uses them: every
+ * program loaded from the same unchanged file in a process shares one mapping,
+ * and so one copy of its pages. The cache holds its chunks weakly, so a
+ * mapping no program refers to any more is released. A file counts as
+ * unchanged while its length, modification time and recorded checksum (see
+ * {@link BytecodeFormat}) all match; files written before 2.3 have no
+ * checksum and are never shared. Binary files are replaced by renaming (see
+ * BytecodeWriter), never rewritten in place, so a mapping stays valid while a
+ * newer version is loaded beside it.
+ *
+ * Opening a file costs the same whatever the size of its code, but running it
+ * verified does not: the verifier (see vm.Linker#linkLazily) reads the opcodes
+ * and integer operands of the whole file before the first instruction runs.
+ * Only skipping verification keeps startup independent of the code size.
+ *
+ * Safe for use from several threads.
+ */
+public final class MappedChunk {
+    private static final Map<Path, CacheEntry> CACHE = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<MappedChunk> RELEASED = new ReferenceQueue<>();
+
+    public final Isa isa;
+    public final int maxStack;
+    public final List<String> slotNames;
+
+    private final Path path;
+    private final long length;
+    private final FileTime modified;
+    private final Integer checksum;   // null before 2.3
+
+    private final int size;
+    private final ByteBuffer code;        // CODE section
+    private final ByteBuffer index;       // INDEX section
+    private final int blockSize;
+    private final ByteBuffer pool;        // POOL section
+    private final ByteBuffer poolIndex;   // POOL_INDEX section
+    private final String[] constants;     // decoded pool entries, null until needed
+    private final OpCode[] opcodes;
+    private final String[] layouts;
+
+    private MappedChunk(Path path, long length, FileTime modified, Map<Integer, ByteBuffer> sections)
+            throws IOException {
+        this.path = path;
+        this.length = length;
+        this.modified = modified;
+        this.checksum = BytecodeReader.checksum(sections);
+
+        this.pool = BytecodeReader.section(sections, BytecodeFormat.POOL, "POOL");
+        this.poolIndex = BytecodeReader.section(sections, BytecodeFormat.POOL_INDEX, "POOL_INDEX");
+        int entries = BytecodeReader.count(pool.duplicate());
+        if (poolIndex.limit() != 4 * entries) throw BytecodeReader.invalid("POOL_INDEX does not match POOL");
+        this.constants = new String[entries];
+
+        ByteBuffer meta = BytecodeReader.section(sections, BytecodeFormat.META, "META").duplicate();
+        this.isa = BytecodeReader.readIsa(meta);
+        this.maxStack = BytecodeFormat.readSigned(meta);
+        this.opcodes = BytecodeReader.readOpcodes(
+                BytecodeReader.section(sections, BytecodeFormat.OPCODES, "OPCODES").duplicate(), this::constant);
+        this.layouts = BytecodeReader.layouts(opcodes);
+        this.slotNames = Collections.unmodifiableList(BytecodeReader.readSlots(
+                BytecodeReader.section(sections, BytecodeFormat.SLOTS, "SLOTS").duplicate(), this::constant));
+
+        this.code = BytecodeReader.section(sections, BytecodeFormat.CODE, "CODE");
+        this.size = BytecodeReader.count(code.duplicate());
+        this.index = BytecodeReader.section(sections, BytecodeFormat.INDEX, "INDEX");
+        this.blockSize = index.getInt(0);
+        if (blockSize <= 0 || index.limit() != 4 + 4 * blocks()) throw BytecodeReader.invalid("INDEX does not match CODE");
+    }
+
+    /**
+     * The mapped file at path, shared with earlier callers while the file is
+     * unchanged; null if it is not a binary file with an INDEX section.
+     */
+    public static MappedChunk open(Path path) throws IOException {
+        purgeReleased();
+        Path key = path.toAbsolutePath().normalize();
+        long length = Files.size(path);   // errors name the file as given
+        FileTime modified = Files.getLastModifiedTime(path);
+        if (length > Integer.MAX_VALUE) return null;
+
+        MappedByteBuffer file;
+        try (FileChannel channel = FileChannel.open(key, StandardOpenOption.READ)) {
+            file = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        }
+        if (!BytecodeFormat.isBinary(file)) return null;
+        try {
+            Map<Integer, ByteBuffer> sections = BytecodeReader.sections(file);
+            if (!sections.containsKey(BytecodeFormat.INDEX) || !sections.containsKey(BytecodeFormat.POOL_INDEX)) {
+                return null;
+            }
+            Integer checksum = BytecodeReader.checksum(sections);
+            CacheEntry entry = CACHE.get(key);
+            MappedChunk cached = entry != null ? entry.get() : null;
+            if (cached != null && checksum != null && checksum.equals(cached.checksum)
+                    && cached.length == length && cached.modified.equals(modified)) {
+                return cached;   // the new mapping is dropped; cached already holds these pages
+            }
+            MappedChunk chunk = new MappedChunk(key, length, modified, sections);
+            if (checksum != null) CACHE.put(key, new CacheEntry(key, chunk));
+            return chunk;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw BytecodeReader.invalid("truncated file");
+        }
+    }
+
+    /** Drops the cache entries of chunks that have been collected. */
+    private static void purgeReleased() {
+        Reference<? extends MappedChunk> released;
+        while ((released = RELEASED.poll()) != null) {
+            CacheEntry entry = (CacheEntry) released;
+            CACHE.remove(entry.key, entry);
+        }
+    }
+
+    private static final class CacheEntry extends WeakReference<MappedChunk> {
+        final Path key;
+
+        CacheEntry(Path key, MappedChunk chunk) {
+            super(chunk, RELEASED);
+            this.key = key;
+        }
+    }
+
+    // ── Instructions ────────────────────────────────────────
+
+    /** Number of instructions. */
+    public int size() {
+        return size;
+    }
+
+    /** Instructions per block: block b holds instructions b * blockSize() up to the next block. */
+    public int blockSize() {
+        return blockSize;
+    }
+
+    public int blocks() {
+        return (size + blockSize - 1) / blockSize;
+    }
+
+    /** Decodes the instructions of block b. */
+    public List<Instruction> block(int b) throws IOException {
+        int first = b * blockSize;
+        int end = Math.min(size, first + blockSize);
+        List<Instruction> instructions = new ArrayList<>(end - first);
+        try {
+            ByteBuffer in = code.duplicate();
+            in.position(index.getInt(4 + 4 * b));
+            StringBuilder operand = new StringBuilder();
+            for (int i = first; i < end; i++) {
+                instructions.add(BytecodeReader.decodeInstruction(in, opcodes, layouts, this::constant, operand, i));
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw BytecodeReader.invalid("truncated block " + b + " in " + path);
+        }
+        return instructions;
+    }
+
+    /**
+     * Decodes just the opcodes and integer operands (slots, counts, jump
+     * targets) of every instruction, leaving constants in the pool: the
+     * opcode of instruction i goes to code[i] and its k-th integer operand to
+     * ints[k][i]. Enough to verify the program before it is linked lazily.
+     */
+    public void decodeIntegers(OpCode[] code, int[][] ints) throws IOException {
+        if (size == 0) return;
+        try {
+            ByteBuffer in = this.code.duplicate();
+            in.position(index.getInt(4));
+            for (int i = 0; i < size; i++) BytecodeReader.decodeIntegers(in, opcodes, layouts, code, ints, i);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw BytecodeReader.invalid("truncated code in " + path);
+        }
+    }
+
+    /** Decodes the whole file. */
+    public Chunk toChunk() throws IOException {
+        List<Instruction> instructions = new ArrayList<>(size);
+        for (int b = 0; b < blocks(); b++) instructions.addAll(block(b));
+        return new Chunk(instructions, new ArrayList<>(slotNames), maxStack, isa);
+    }
+
+    // ── Constant pool ───────────────────────────────────────
+
+    private String constant(int i) throws IOException {
+        if (i < 0 || i >= constants.length) throw BytecodeReader.invalid("constant index " + i + " out of range");
+        String constant = constants[i];
+        if (constant == null) {
+            // Decoding twice on a race is harmless: both threads get equal strings
+            ByteBuffer in = pool.duplicate();
+            in.position(poolIndex.getInt(4 * i));
+            constant = BytecodeReader.decodeConstant(in, i);
+            constants[i] = constant;
+        }
+        return constant;
+    }
+}
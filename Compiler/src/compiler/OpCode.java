@@ -11,10 +11,14 @@ public enum OpCode {
     CONST_CHAR,     // push char:        operand = "A"
     CONST_BOOL,     // push boolean:     operand = "true" / "false"
     CONST_NULL,     // push null
+    POP,            // discard top of stack
+    DUP,            // push a copy of top of stack
 
     // Variables
-    LOAD,           // push variable:    operand = variable name
-    STORE,          // pop into variable: operand = variable name
+    LOAD_SLOT,      // push variable:    operand = slot index
+    STORE_SLOT,     // pop into variable: operand = slot index
+    LOAD,           // name-addressed LOAD_SLOT  (v1.0 files; resolved by the Linker)
+    STORE,          // name-addressed STORE_SLOT (v1.0 files; resolved by the Linker)
 
     // Arithmetic (pop 2, push result)
     ADD,
@@ -34,13 +38,26 @@ public enum OpCode {
     LT,
     LTE,
 
-    // Logical (pop 2, push boolean)
+    // Logical (pop 2, push boolean) — no longer emitted: and/or short-circuit
+    // through jumps; kept so v1.x files still run
     AND,
     OR,
 
     // Control flow
     JUMP,           // unconditional:    operand = target instruction index
     JUMP_IF_FALSE,  // conditional:      operand = target instruction index
+    JUMP_IF_TRUE,   // pop; if truthy, jump: operand = target instruction index
+
+    // Compare-and-branch — emitted for comparisons in conditions. Each pops b,
+    // pops a, and jumps unless a <op> b holds, failing like the comparison it
+    // replaces. "Unless" matters for NaN: JLT jumps on NaN, where a jump on
+    // a >= b would not.
+    JEQ,            // unless a == b, jump: operand = target instruction index
+    JNEQ,           // unless a != b, jump
+    JGT,            // unless a > b, jump
+    JGTE,           // unless a >= b, jump
+    JLT,            // unless a < b, jump
+    JLTE,           // unless a <= b, jump
 
     // I/O
     PRINT,          // pop and print to stdout
@@ -48,8 +65,99 @@ public enum OpCode {
     // Arrays
     MAKE_ARRAY,     // operand = element count; pops N elements, pushes array
     ARRAY_LOAD,     // pop index, pop array → push array[index]
-    ARRAY_STORE,    // pop index, pop value; operand = var name → var[index]=value
+    ARRAY_STORE_SLOT, // pop index, pop value; operand = slot index → var[index]=value
+    ARRAY_STORE,    // name-addressed ARRAY_STORE_SLOT (v1.0 files; resolved by the Linker)
+
+    // Bounds-check elimination — emitted for accesses the BoundsCheckEliminator
+    // proved in range; the guards select between the two versions of a loop
+    ARRAY_LOAD_UNCHECKED,  // ARRAY_LOAD without type or range checks
+    ARRAY_STORE_UNCHECKED, // ARRAY_STORE_SLOT without type or range checks: operand = slot index
+    GUARD_INDEX_VAR,    // push whether var a is an array with whole index var b + k below its length: operand = "a b k"
+    GUARD_INDEX_CONST,  // push whether var a is an array with index k below its length: operand = "a k"
 
     // Program
-    HALT            // stop execution
+    HALT,           // stop execution
+
+    // Superinstructions — emitted by PeepholeOptimizer; operands are space-separated
+    INC_VAR,        // var += const:              operand = "slot const"
+    LOAD_CONST_ADD, // push var + const:          operand = "slot const"
+    LOAD_CONST_MUL, // push var * const:          operand = "slot const"
+    LOAD_LOAD_ADD,  // push var1 + var2:          operand = "slot1 slot2"
+    LOAD_ARRAY_VAR, // push arr[idx]:             operand = "arraySlot indexSlot"
+    LOAD_ARRAY_VAR_UNCHECKED, // LOAD_ARRAY_VAR without type or range checks
+    LOAD_ARRAY_CONST, // push arr[const]:         operand = "arraySlot const"
+    ADD_CONST,      // top + const:               operand = "const"
+    JLT_VAR_CONST,  // unless var < const, jump:  operand = "slot const target"
+    JLT_VAR_VAR,    // unless var1 < var2, jump:  operand = "slot1 slot2 target"
+
+    // Quickened forms — installed by the VM at run time once an instruction has
+    // seen its operand types. Each one checks a cheap guard and falls back to
+    // (de-quickens into) its generic form. The compiler emits the ones marked *
+    // for proven types where it has no unchecked form.
+    ADD_NUM,        // ADD of two numbers
+    ADD_STR,        // ADD with at least one string operand (concatenation)
+    GT_NUM,         // GT  of two numbers
+    GTE_NUM,        // GTE of two numbers
+    LT_NUM,         // LT  of two numbers
+    LTE_NUM,        // LTE of two numbers
+    ARRAY_LOAD_NUM, // ARRAY_LOAD from an all-number array with a number index
+    JUMP_IF_FALSE_BOOL, // JUMP_IF_FALSE on a boolean condition *
+
+    // Typed forms — emitted by the compiler where type inference proves the
+    // operand types; never installed by the VM. CONCAT is safe on any operands.
+    // The number forms skip the type test, so like the unchecked array forms
+    // they rely on the compiler's proof: BytecodeReader reads them as their
+    // checked forms (the quickened form where there is one).
+    CONCAT,         // ADD with a proven string operand: concatenation, with no checks
+    ADD_NUM_UNCHECKED,  // ADD of proven numbers, with no checks
+    SUB_NUM_UNCHECKED,  // SUB of proven numbers, with no checks
+    MUL_NUM_UNCHECKED,  // MUL of proven numbers, with no checks
+    DIV_NUM_UNCHECKED,  // DIV of proven numbers: checks only for division by zero
+    NEG_NUM_UNCHECKED,  // NEG of a proven number, with no checks
+    GT_NUM_UNCHECKED,   // GT  of proven numbers, with no checks
+    GTE_NUM_UNCHECKED,  // GTE of proven numbers, with no checks
+    LT_NUM_UNCHECKED,   // LT  of proven numbers, with no checks
+    LTE_NUM_UNCHECKED,  // LTE of proven numbers, with no checks
+    JGT_NUM_UNCHECKED,  // JGT  of proven numbers, with no checks: operand = target instruction index
+    JGTE_NUM_UNCHECKED, // JGTE of proven numbers, with no checks
+    JLT_NUM_UNCHECKED,  // JLT  of proven numbers, with no checks
+    JLTE_NUM_UNCHECKED, // JLTE of proven numbers, with no checks
+
+    // Verified forms — installed by the VM in its copy of a verified program's
+    // code (see vm.Verifier); never in files
+    LOAD_SLOT_UNCHECKED, // LOAD_SLOT of a variable assigned on every path to it: no undefined check
+
+    // Register instruction set — emitted by RegisterCompiler, run by vm.RegisterVM.
+    // Operands are registers (r), constants (k) and jump targets (t); see
+    // RegisterOperands. Only R_MOVE checks for an undefined variable.
+    R_MOVE,         // rd = rs
+    R_NUM,          // rd = number constant:      operand = "rd k"
+    R_STR,          // rd = string constant:      operand = "rd k"
+    R_CHAR,         // rd = char constant:        operand = "rd k"
+    R_BOOL,         // rd = boolean constant:     operand = "rd k"
+    R_NULL,         // rd = null
+    R_ADD,          // rd = ra + rb               (and likewise for the binary ops below)
+    R_SUB,
+    R_MUL,
+    R_DIV,
+    R_EQ,
+    R_NEQ,
+    R_GT,
+    R_GTE,
+    R_LT,
+    R_LTE,
+    R_AND,          // not emitted since and/or short-circuit; still run
+    R_OR,
+    R_ADDK,         // rd = ra + number constant: operand = "rd ra k"
+    R_NEG,          // rd = -ra
+    R_NOT,          // rd = not ra
+    R_JUMP,         // unconditional:             operand = "t"
+    R_JUMP_IF_FALSE,// unless ra is truthy, jump: operand = "ra t"
+    R_JUMP_IF_TRUE, // if ra is truthy, jump:     operand = "ra t"
+    R_JLT,          // unless ra < rb, jump:      operand = "ra rb t"
+    R_PRINT,        // print ra
+    R_MAKE_ARRAY,   // rd = [r1, r2, ...]:        operand = "rd r1 r2 ..."
+    R_ARRAY_LOAD,   // rd = ra[rb]
+    R_ARRAY_STORE,  // ra[rb] = rc; ra is always a variable's register
+    R_HALT          // stop execution
 }
@@ -0,0 +1,143 @@
+package compiler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Peephole pass run after BytecodeCompiler: fuses common instruction
+ * sequences into superinstructions so hot loops need fewer dispatches.
+ *
+ *   LOAD_SLOT s; CONST_NUM c; ADD; STORE_SLOT s     → INC_VAR s c
+ *   LOAD_SLOT s; CONST_NUM c; JLT t                 → JLT_VAR_CONST s c t
+ *   LOAD_SLOT a; LOAD_SLOT b; JLT t                 → JLT_VAR_VAR a b t
+ *   LOAD_SLOT s; CONST_NUM c; ADD                   → LOAD_CONST_ADD s c
+ *   LOAD_SLOT s; CONST_NUM c; MUL                   → LOAD_CONST_MUL s c
+ *   LOAD_SLOT a; CONST_NUM k; ARRAY_LOAD            → LOAD_ARRAY_CONST a k
+ *   LOAD_SLOT a; LOAD_SLOT b; ADD                   → LOAD_LOAD_ADD a b
+ *   LOAD_SLOT a; LOAD_SLOT i; ARRAY_LOAD            → LOAD_ARRAY_VAR a i
+ *   LOAD_SLOT a; LOAD_SLOT i; ARRAY_LOAD_UNCHECKED  → LOAD_ARRAY_VAR_UNCHECKED a i
+ *   CONST_NUM c; ADD                                → ADD_CONST c
+ *
+ * The typed forms the compiler emits (ADD_NUM_UNCHECKED, MUL_NUM_UNCHECKED,
+ * JLT_NUM_UNCHECKED) match where their generic forms do; the superinstruction
+ * keeps its checks. A sequence is only fused when no jump lands inside it. Jump targets are remapped to the new instruction indices
+ * afterwards.
+ */
+public class PeepholeOptimizer {
+
+    public static Chunk optimize(Chunk chunk) {
+        List<Instruction> code = chunk.code;
+        int n = code.size();
+
+        boolean[] isTarget = new boolean[n + 1];
+        for (Instruction instr : code) {
+            if (instr.isJump()) isTarget[instr.jumpTarget()] = true;
+        }
+
+        List<Instruction> out = new ArrayList<>();
+        int[] newIndex = new int[n + 1];
+        int i = 0;
+        while (i < n) {
+            int start = out.size();
+            int length = fuse(code, i, isTarget, out);
+            if (length == 0) {
+                Instruction instr = code.get(i);
+                out.add(new Instruction(instr.opCode, instr.operand));
+                length = 1;
+            }
+            for (int k = 0; k < length; k++) newIndex[i + k] = start;
+            i += length;
+        }
+        newIndex[n] = out.size();
+
+        for (Instruction instr : out) {
+            if (instr.isJump()) instr.setJumpTarget(newIndex[instr.jumpTarget()]);
+        }
+
+        return new Chunk(out, chunk.slotNames, StackDepth.compute(out));
+    }
+
+    // ── Pattern matching ────────────────────────────────────
+
+    /**
+     * Tries to fuse the sequence starting at i; appends the superinstruction
+     * and returns the number of instructions consumed, or 0 if nothing matched.
+     */
+    private static int fuse(List<Instruction> code, int i, boolean[] isTarget, List<Instruction> out) {
+        if (is(code, i, OpCode.CONST_NUM) && is(code, i + 1, OpCode.ADD) && free(isTarget, i, 2)) {
+            out.add(new Instruction(OpCode.ADD_CONST, code.get(i).operand));
+            return 2;
+        }
+        if (!is(code, i, OpCode.LOAD_SLOT)) return 0;
+        String first = code.get(i).operand;
+
+        if (is(code, i + 1, OpCode.CONST_NUM) && free(isTarget, i, 2)) {
+            String constant = code.get(i + 1).operand;
+
+            if (is(code, i + 2, OpCode.ADD) && is(code, i + 3, OpCode.STORE_SLOT)
+                    && first.equals(code.get(i + 3).operand) && free(isTarget, i, 4)) {
+                out.add(new Instruction(OpCode.INC_VAR, first + " " + constant));
+                return 4;
+            }
+            if (is(code, i + 2, OpCode.JLT) && free(isTarget, i, 3)) {
+                out.add(new Instruction(OpCode.JLT_VAR_CONST, first + " " + constant + " " + code.get(i + 2).operand));
+                return 3;
+            }
+            if (is(code, i + 2, OpCode.ADD) && free(isTarget, i, 3)) {
+                out.add(new Instruction(OpCode.LOAD_CONST_ADD, first + " " + constant));
+                return 3;
+            }
+            if (is(code, i + 2, OpCode.MUL) && free(isTarget, i, 3)) {
+                out.add(new Instruction(OpCode.LOAD_CONST_MUL, first + " " + constant));
+                return 3;
+            }
+            if (is(code, i + 2, OpCode.ARRAY_LOAD) && free(isTarget, i, 3)) {
+                out.add(new Instruction(OpCode.LOAD_ARRAY_CONST, first + " " + constant));
+                return 3;
+            }
+        }
+
+        if (is(code, i + 1, OpCode.LOAD_SLOT) && free(isTarget, i, 2)) {
+            String second = code.get(i + 1).operand;
+
+            if (is(code, i + 2, OpCode.JLT) && free(isTarget, i, 3)) {
+                out.add(new Instruction(OpCode.JLT_VAR_VAR, first + " " + second + " " + code.get(i + 2).operand));
+                return 3;
+            }
+            if (is(code, i + 2, OpCode.ADD) && free(isTarget, i, 3)) {
+                out.add(new Instruction(OpCode.LOAD_LOAD_ADD, first + " " + second));
+                return 3;
+            }
+            if (is(code, i + 2, OpCode.ARRAY_LOAD) && free(isTarget, i, 3)) {
+                out.add(new Instruction(OpCode.LOAD_ARRAY_VAR, first + " " + second));
+                return 3;
+            }
+            if (is(code, i + 2, OpCode.ARRAY_LOAD_UNCHECKED) && free(isTarget, i, 3)) {
+                out.add(new Instruction(OpCode.LOAD_ARRAY_VAR_UNCHECKED, first + " " + second));
+                return 3;
+            }
+        }
+        return 0;
+    }
+
+    private static boolean is(List<Instruction> code, int index, OpCode op) {
+        return index < code.size() && generic(code.get(index).opCode) == op;
+    }
+
+    private static OpCode generic(OpCode op) {
+        switch (op) {
+            case ADD_NUM_UNCHECKED: return OpCode.ADD;
+            case MUL_NUM_UNCHECKED: return OpCode.MUL;
+            case JLT_NUM_UNCHECKED: return OpCode.JLT;
+            default:                return op;
+        }
+    }
+
+    /** True if no jump lands on instructions start+1 .. start+length-1. */
+    private static boolean free(boolean[] isTarget, int start, int length) {
+        for (int k = 1; k < length; k++) {
+            if (isTarget[start + k]) return false;
+        }
+        return true;
+    }
+}
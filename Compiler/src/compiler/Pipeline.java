@@ -0,0 +1,105 @@
+package compiler;
+
+import ast.Stmt;
+import ir.ControlFlowGraph;
+import ir.PassManager;
+import lexer.Lexer;
+import lexer.Token;
+import optimizer.BoundsCheckEliminator;
+import optimizer.CommonSubexpressionEliminator;
+import optimizer.ConstantFolder;
+import optimizer.InductionVariableReducer;
+import optimizer.LoopInvariantHoister;
+import parser.Parser;
+import semantic.SemanticAnalyzer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * The whole compiler, from source text to a Chunk: lexing, parsing, semantic
+ * analysis, the AST optimizers, code generation and the bytecode passes.
+ * Every stage gets fresh instances, so programs may be compiled in parallel.
+ * Errors are thrown as RuntimeExceptions with the stage's message.
+ */
+public final class Pipeline {
+
+    /** Which optional passes run, and the instruction set to compile to. */
+    public static final class Options {
+        public final boolean fold;
+        public final boolean hoist;
+        public final boolean iv;
+        public final boolean bce;
+        public final boolean cse;
+        public final Isa isa;
+
+        public Options(boolean fold, boolean hoist, boolean iv, boolean bce, boolean cse, Isa isa) {
+            this.fold = fold;
+            this.hoist = hoist;
+            this.iv = iv;
+            this.bce = bce;
+            this.cse = cse;
+            this.isa = isa;
+        }
+
+        /** Canonical text of the options; equal options give equal text. */
+        @Override
+        public String toString() {
+            return "fold=" + fold + " hoist=" + hoist + " iv=" + iv + " bce=" + bce + " cse=" + cse
+                    + " isa=" + isa.directive();
+        }
+    }
+
+    private Pipeline() { }
+
+    /** Reads a source file. Sources are UTF-8 whatever the platform charset, so a file compiles the same everywhere. */
+    public static String readSource(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    public static Chunk compile(String source, Options options) {
+        // 1. Lex
+        List<Token> tokens = new Lexer(source).scanTokens();
+
+        // 2. Parse
+        List<Stmt> stmts = new Parser(tokens).parse();
+
+        // 3. Semantic check (also assigns variable slots)
+        SemanticAnalyzer analyzer = new SemanticAnalyzer();
+        analyzer.analyze(stmts);
+
+        // 4. Fold and propagate constants
+        if (options.fold) stmts = new ConstantFolder().fold(stmts);
+
+        // 5. Move loop-invariant expressions out of loops
+        if (options.hoist) stmts = new LoopInvariantHoister(analyzer.getSymbolTable()).hoist(stmts);
+
+        // 6. Replace multiplications by loop counters with additions
+        if (options.iv) stmts = new InductionVariableReducer(analyzer.getSymbolTable()).reduce(stmts);
+
+        // 7. Drop bounds checks that counted loops make redundant (stack code only)
+        if (options.bce && options.isa == Isa.STACK) stmts = new BoundsCheckEliminator().eliminate(stmts);
+
+        // 8. Compute repeated expressions once
+        if (options.cse) {
+            int minimumCost = options.isa == Isa.REGISTER ? CommonSubexpressionEliminator.REGISTER_MINIMUM_COST
+                                                          : CommonSubexpressionEliminator.STACK_MINIMUM_COST;
+            stmts = new CommonSubexpressionEliminator(analyzer.getSymbolTable(), minimumCost).eliminate(stmts);
+        }
+
+        if (options.isa == Isa.REGISTER) {
+            // 9. Compile to register code
+            return new RegisterCompiler(analyzer.getSymbolTable()).compile(stmts);
+        }
+
+        // 9. Compile to a control-flow graph, optimize, and lower back to bytecode
+        ControlFlowGraph cfg = new BytecodeCompiler(analyzer.getSymbolTable()).compileGraph(stmts);
+        PassManager.standard().run(cfg);
+
+        // 10. Fuse common sequences into superinstructions
+        return PeepholeOptimizer.optimize(cfg.lower());
+    }
+}
@@ -0,0 +1,112 @@
+package compiler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Linear-scan register allocation for register code.
+ *
+ * The compiler numbers temporaries freely from firstTemp upwards (virtual
+ * registers); this maps them onto as few physical registers as possible.
+ * Registers below firstTemp (variables and constants) are fixed.
+ *
+ * The live interval of a temporary runs from its first write to its last read,
+ * in instruction order. An interval that reaches into a loop from before it
+ * is extended to the loop's backward jump, so its value survives every
+ * iteration. Intervals are visited by start; a register is free again once
+ * its interval has ended. An instruction reads all its operands before it
+ * writes its destination, so a temporary last read by an instruction may share
+ * a register with the one that instruction writes.
+ */
+public final class RegisterAllocator {
+
+    private static final class Interval {
+        final int register;
+        final int start;
+        int end;
+        int physical = -1;
+
+        Interval(int register, int start) {
+            this.register = register;
+            this.start = start;
+            this.end = start;
+        }
+    }
+
+    private RegisterAllocator() { }
+
+    /** Rewrites the temporaries in code to physical registers; returns the register file size. */
+    public static int allocate(List<Instruction> code, int firstTemp) {
+        Map<Integer, Interval> intervals = new HashMap<>();
+        List<Interval> byStart = new ArrayList<>();
+        int registers = firstTemp;
+
+        for (int i = 0; i < code.size(); i++) {
+            Instruction instr = code.get(i);
+            String layout = RegisterOperands.layout(instr.opCode);
+            String[] parts = RegisterOperands.split(instr);
+            for (int p = 0; p < parts.length; p++) {
+                if (!isRegister(layout, p)) continue;
+                int reg = Integer.parseInt(parts[p]);
+                if (reg < firstTemp) {
+                    registers = Math.max(registers, reg + 1);
+                    continue;
+                }
+                Interval interval = intervals.get(reg);
+                if (interval == null) {
+                    interval = new Interval(reg, i);
+                    intervals.put(reg, interval);
+                    byStart.add(interval);
+                }
+                interval.end = i;
+            }
+        }
+
+        // Backward jumps: keep values that enter a loop alive through all of it
+        for (int i = 0; i < code.size(); i++) {
+            Instruction instr = code.get(i);
+            if (!instr.isJump() || instr.jumpTarget() > i) continue;
+            int header = instr.jumpTarget();
+            for (Interval interval : byStart) {
+                if (interval.start < header && interval.end >= header) interval.end = Math.max(interval.end, i);
+            }
+        }
+
+        PriorityQueue<Integer> free = new PriorityQueue<>();
+        PriorityQueue<Interval> active = new PriorityQueue<>((a, b) -> Integer.compare(a.end, b.end));
+        int nextPhysical = firstTemp;
+        for (Interval interval : byStart) {
+            while (!active.isEmpty() && active.peek().end <= interval.start) {
+                free.add(active.poll().physical);
+            }
+            interval.physical = free.isEmpty() ? nextPhysical++ : free.poll();
+            active.add(interval);
+        }
+        registers = Math.max(registers, nextPhysical);
+
+        for (Instruction instr : code) {
+            String layout = RegisterOperands.layout(instr.opCode);
+            String[] parts = RegisterOperands.split(instr);
+            boolean changed = false;
+            for (int p = 0; p < parts.length; p++) {
+                if (!isRegister(layout, p)) continue;
+                Interval interval = intervals.get(Integer.parseInt(parts[p]));
+                if (interval != null) {
+                    parts[p] = String.valueOf(interval.physical);
+                    changed = true;
+                }
+            }
+            if (changed) instr.operand = String.join(" ", parts);
+        }
+        return registers;
+    }
+
+    /** True if operand p of an instruction with the given layout is a register. */
+    static boolean isRegister(String layout, int p) {
+        char kind = p < layout.length() ? layout.charAt(p) : layout.charAt(layout.length() - 1);
+        return kind == 'd' || kind == 's' || kind == '*';
+    }
+}
@@ -0,0 +1,450 @@
+package compiler;
+
+import ast.*;
+import lexer.Token;
+import lexer.TokenType;
+import semantic.SymbolTable;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiles a validated AST into three-address register code (the R_*
+ * instructions), the alternative to the stack code of {@link BytecodeCompiler}.
+ *
+ * Register file layout:
+ *   [0, slots)             : program variables, by slot
+ *   [slots, slots + K)     : the program's K distinct literals, loaded once at
+ *                            the start, so instructions read constants like variables
+ *   [slots + K, ...)       : expression temporaries, assigned by {@link RegisterAllocator}
+ *
+ * Operands that are variables or literals are read straight from their
+ * registers, and an assignment's last operation writes the variable directly:
+ * "c = a + b" is the single instruction R_ADD c a b.
+ *
+ * Reading a variable that was never assigned is an error. Only R_MOVE checks
+ * for it, so a variable that may be undefined at the point of use (it is not
+ * assigned on every path to it) is first moved into a temporary, at the
+ * point where the stack code would have loaded it; errors therefore occur in
+ * the same order as with the stack code.
+ *
+ * "and" and "or" short-circuit through jumps, as in the stack code: the right
+ * operand is only evaluated when the left one does not decide the result.
+ */
+public class RegisterCompiler {
+    private static final Object NULL_KEY = new Object();
+
+    private final List<Instruction> instructions = new ArrayList<>();
+    private final SymbolTable symbols;
+    private final Map<Object, Integer> constants = new LinkedHashMap<>();
+    private int nextTemp;
+
+    // Variables assigned on every path to the current point
+    private Set<String> assigned = new HashSet<>();
+
+    public RegisterCompiler(SymbolTable symbols) {
+        this.symbols = symbols;
+    }
+
+    // ── Public API ──────────────────────────────────────────
+
+    public Chunk compile(List<Stmt> statements) {
+        for (Stmt stmt : statements) collectConstants(stmt);
+        for (Map.Entry<Object, Integer> constant : constants.entrySet()) {
+            emitConstant(constant.getValue(), constant.getKey());
+        }
+        int firstTemp = symbols.size() + constants.size();
+        nextTemp = firstTemp;
+
+        for (Stmt stmt : statements) {
+            compileStmt(stmt);
+        }
+        emit(OpCode.R_HALT, null);
+
+        RegisterAllocator.allocate(instructions, firstTemp);
+        return new Chunk(instructions, symbols.names(), -1, Isa.REGISTER);
+    }
+
+    // ── Statement compilation ───────────────────────────────
+
+    private void compileStmt(Stmt stmt) {
+        if (stmt instanceof VarDecl) {
+            VarDecl v = (VarDecl) stmt;
+            compileExpr(v.initializer, slot(v.name));
+            assigned.add(v.name.lexeme);
+
+        } else if (stmt instanceof Assignment) {
+            Assignment a = (Assignment) stmt;
+            compileExpr(a.value, slot(a.name));
+            assigned.add(a.name.lexeme);
+
+        } else if (stmt instanceof ArrayAssignment) {
+            ArrayAssignment aa = (ArrayAssignment) stmt;
+            int[] regs = operands(aa.value, aa.index);
+            emit(OpCode.R_ARRAY_STORE, slot(aa.name) + " " + regs[1] + " " + regs[0]);
+
+        } else if (stmt instanceof PrintStmt) {
+            emit(OpCode.R_PRINT, String.valueOf(operands(((PrintStmt) stmt).expression)[0]));
+
+        } else if (stmt instanceof IfStmt) {
+            compileIf((IfStmt) stmt);
+
+        } else if (stmt instanceof WhileStmt) {
+            compileWhile((WhileStmt) stmt);
+
+        } else if (stmt instanceof ForStmt) {
+            compileFor((ForStmt) stmt);
+
+        } else if (stmt instanceof Block) {
+            for (Stmt s : ((Block) stmt).statements) {
+                compileStmt(s);
+            }
+        }
+    }
+
+    private void compileIf(IfStmt stmt) {
+        List<Integer> jumpsToElse = jumpsUnless(stmt.condition);
+        Set<String> before = assigned;
+        assigned = new HashSet<>(before);
+        compileStmt(stmt.thenBranch);
+        Set<String> afterThen = assigned;
+        assigned = new HashSet<>(before);
+
+        if (stmt.elseBranch != null) {
+            int jumpPastElse = emitJump(OpCode.R_JUMP, "");
+            patchJumps(jumpsToElse);
+            compileStmt(stmt.elseBranch);
+            patchJump(jumpPastElse);
+        } else {
+            patchJumps(jumpsToElse);
+        }
+        assigned.retainAll(afterThen);
+    }
+
+    private void compileWhile(WhileStmt stmt) {
+        int loopStart = currentIndex();
+        List<Integer> jumpsExit = jumpsUnless(stmt.condition);
+
+        Set<String> entry = assigned;
+        assigned = new HashSet<>(entry);
+        compileStmt(stmt.body);
+        assigned = entry;   // the body may not run at all
+
+        emit(OpCode.R_JUMP, String.valueOf(loopStart));
+        patchJumps(jumpsExit);
+    }
+
+    private void compileFor(ForStmt stmt) {
+        if (stmt.init != null) compileStmt(stmt.init);
+
+        int loopStart = currentIndex();
+        List<Integer> jumpsExit = stmt.condition != null ? jumpsUnless(stmt.condition) : new ArrayList<>();
+
+        Set<String> entry = assigned;
+        assigned = new HashSet<>(entry);
+        compileStmt(stmt.body);
+        if (stmt.increment != null) compileStmt(stmt.increment);
+        assigned = entry;
+
+        emit(OpCode.R_JUMP, String.valueOf(loopStart));
+        patchJumps(jumpsExit);
+    }
+
+    // ── Conditions ──────────────────────────────────────────
+
+    /**
+     * Emits the jumps taken when condition is false and returns them, to be
+     * patched; and/or short-circuit, and a < comparison becomes a single R_JLT.
+     */
+    private List<Integer> jumpsUnless(Expr condition) {
+        if (condition instanceof BinaryExpr) {
+            BinaryExpr b = (BinaryExpr) condition;
+            if (b.operator.type == TokenType.AND) {
+                List<Integer> jumps = jumpsUnless(b.left);
+                jumps.addAll(jumpsUnless(b.right));
+                return jumps;
+            }
+            if (b.operator.type == TokenType.OR) {
+                List<Integer> leftTrue = jumpsIf(b.left);
+                List<Integer> jumps = jumpsUnless(b.right);
+                patchJumps(leftTrue);
+                return jumps;
+            }
+            if (b.operator.type == TokenType.LESS) {
+                int[] regs = operands(b.left, b.right);
+                return jumps(emitJump(OpCode.R_JLT, regs[0] + " " + regs[1] + " "));
+            }
+        }
+        if (isNot(condition)) return jumpsIf(((UnaryExpr) condition).operand);
+        return jumps(emitJump(OpCode.R_JUMP_IF_FALSE, operands(condition)[0] + " "));
+    }
+
+    /** Emits the jumps taken when condition is true and returns them, to be patched. */
+    private List<Integer> jumpsIf(Expr condition) {
+        if (condition instanceof BinaryExpr) {
+            BinaryExpr b = (BinaryExpr) condition;
+            if (b.operator.type == TokenType.OR) {
+                List<Integer> jumps = jumpsIf(b.left);
+                jumps.addAll(jumpsIf(b.right));
+                return jumps;
+            }
+            if (b.operator.type == TokenType.AND) {
+                List<Integer> leftFalse = jumpsUnless(b.left);
+                List<Integer> jumps = jumpsIf(b.right);
+                patchJumps(leftFalse);
+                return jumps;
+            }
+        }
+        if (isNot(condition)) return jumpsUnless(((UnaryExpr) condition).operand);
+        return jumps(emitJump(OpCode.R_JUMP_IF_TRUE, operands(condition)[0] + " "));
+    }
+
+    private static boolean isNot(Expr expr) {
+        return expr instanceof UnaryExpr && ((UnaryExpr) expr).operator.type == TokenType.NOT;
+    }
+
+    // ── Expression compilation ──────────────────────────────
+
+    /**
+     * Evaluates expr into register dest, or into a new temporary if dest is -1.
+     * Returns the register holding the result.
+     */
+    private int compileExpr(Expr expr, int dest) {
+        if (dest >= 0 && expr instanceof Variable) {
+            emit(OpCode.R_MOVE, dest + " " + slot(((Variable) expr).name));
+            return dest;
+
+        } else if (expr instanceof Literal || expr instanceof Variable) {
+            int source = operands(expr)[0];
+            if (dest < 0) return source;
+            emit(OpCode.R_MOVE, dest + " " + source);
+            return dest;
+
+        } else if (expr instanceof UnaryExpr) {
+            UnaryExpr u = (UnaryExpr) expr;
+            int operand = operands(u.operand)[0];
+            int target = dest >= 0 ? dest : newTemp();
+            emit(u.operator.type == TokenType.MINUS ? OpCode.R_NEG : OpCode.R_NOT, target + " " + operand);
+            return target;
+
+        } else if (expr instanceof BinaryExpr
+                && (((BinaryExpr) expr).operator.type == TokenType.AND
+                    || ((BinaryExpr) expr).operator.type == TokenType.OR)) {
+            // Written on both paths, so always a temporary: dest may be read by the operands
+            int target = newTemp();
+            List<Integer> whenFalse = jumpsUnless(expr);
+            emit(OpCode.R_BOOL, target + " true");
+            int jumpPastFalse = emitJump(OpCode.R_JUMP, "");
+            patchJumps(whenFalse);
+            emit(OpCode.R_BOOL, target + " false");
+            patchJump(jumpPastFalse);
+            if (dest < 0) return target;
+            emit(OpCode.R_MOVE, dest + " " + target);
+            return dest;
+
+        } else if (expr instanceof BinaryExpr) {
+            BinaryExpr b = (BinaryExpr) expr;
+            if (b.operator.type == TokenType.PLUS && isNumberLiteral(b.right)) {
+                int left = operands(b.left)[0];
+                int target = dest >= 0 ? dest : newTemp();
+                emit(OpCode.R_ADDK, target + " " + left + " " + ((Literal) b.right).value);
+                return target;
+            }
+            int[] regs = operands(b.left, b.right);
+            int target = dest >= 0 ? dest : newTemp();
+            emit(binaryOp(b.operator), target + " " + regs[0] + " " + regs[1]);
+            return target;
+
+        } else if (expr instanceof ArrayExpr) {
+            int[] regs = operands(((ArrayExpr) expr).elements.toArray(new Expr[0]));
+            int target = dest >= 0 ? dest : newTemp();
+            StringBuilder operand = new StringBuilder().append(target);
+            for (int reg : regs) operand.append(' ').append(reg);
+            emit(OpCode.R_MAKE_ARRAY, operand.toString());
+            return target;
+
+        } else if (expr instanceof ArrayAccess) {
+            ArrayAccess aa = (ArrayAccess) expr;
+            int[] regs = operands(new Variable(aa.name), aa.index);
+            int target = dest >= 0 ? dest : newTemp();
+            emit(OpCode.R_ARRAY_LOAD, target + " " + regs[0] + " " + regs[1]);
+            return target;
+
+        } else if (expr instanceof Memo) {
+            // The value is computed straight into the temporary's register
+            Memo m = (Memo) expr;
+            int temp = slot(m.temp);
+            compileExpr(m.value, temp);
+            assigned.add(m.temp.lexeme);
+            if (dest < 0 || dest == temp) return temp;
+            emit(OpCode.R_MOVE, dest + " " + temp);
+            return dest;
+        }
+        throw new IllegalArgumentException("Cannot compile expression " + expr.getClass().getSimpleName());
+    }
+
+    /**
+     * Evaluates exprs left to right for use as operands of one instruction and
+     * returns their registers. Literals and variables need no instruction,
+     * except a variable that may be undefined, which is checked by an R_MOVE
+     * where the stack code would have loaded it.
+     */
+    private int[] operands(Expr... exprs) {
+        int[] regs = new int[exprs.length];
+        for (int i = 0; i < exprs.length; i++) {
+            Expr expr = exprs[i];
+            if (expr instanceof Literal) {
+                regs[i] = constants.get(constantKey(((Literal) expr).value));
+            } else if (expr instanceof Variable) {
+                Token name = ((Variable) expr).name;
+                if (assigned.contains(name.lexeme)) {
+                    regs[i] = slot(name);
+                } else {
+                    regs[i] = newTemp();
+                    emit(OpCode.R_MOVE, regs[i] + " " + slot(name));
+                }
+            } else {
+                regs[i] = compileExpr(expr, -1);
+            }
+        }
+        return regs;
+    }
+
+    private static OpCode binaryOp(Token operator) {
+        switch (operator.type) {
+            case PLUS:          return OpCode.R_ADD;
+            case MINUS:         return OpCode.R_SUB;
+            case STAR:          return OpCode.R_MUL;
+            case SLASH:         return OpCode.R_DIV;
+            case EQUAL_EQUAL:   return OpCode.R_EQ;
+            case BANG_EQUAL:    return OpCode.R_NEQ;
+            case GREATER:       return OpCode.R_GT;
+            case GREATER_EQUAL: return OpCode.R_GTE;
+            case LESS:          return OpCode.R_LT;
+            case LESS_EQUAL:    return OpCode.R_LTE;
+            default:
+                throw new IllegalArgumentException("Unknown binary operator " + operator.type);
+        }
+    }
+
+    private static boolean isNumberLiteral(Expr expr) {
+        return expr instanceof Literal && ((Literal) expr).value instanceof Double;
+    }
+
+    // ── Constants ───────────────────────────────────────────
+
+    private void collectConstants(Stmt stmt) {
+        if (stmt instanceof VarDecl) {
+            collectConstants(((VarDecl) stmt).initializer);
+        } else if (stmt instanceof Assignment) {
+            collectConstants(((Assignment) stmt).value);
+        } else if (stmt instanceof ArrayAssignment) {
+            ArrayAssignment aa = (ArrayAssignment) stmt;
+            collectConstants(aa.value);
+            collectConstants(aa.index);
+        } else if (stmt instanceof PrintStmt) {
+            collectConstants(((PrintStmt) stmt).expression);
+        } else if (stmt instanceof IfStmt) {
+            IfStmt i = (IfStmt) stmt;
+            collectConstants(i.condition);
+            collectConstants(i.thenBranch);
+            if (i.elseBranch != null) collectConstants(i.elseBranch);
+        } else if (stmt instanceof WhileStmt) {
+            WhileStmt w = (WhileStmt) stmt;
+            collectConstants(w.condition);
+            collectConstants(w.body);
+        } else if (stmt instanceof ForStmt) {
+            ForStmt f = (ForStmt) stmt;
+            if (f.init != null) collectConstants(f.init);
+            if (f.condition != null) collectConstants(f.condition);
+            if (f.increment != null) collectConstants(f.increment);
+            collectConstants(f.body);
+        } else if (stmt instanceof Block) {
+            for (Stmt s : ((Block) stmt).statements) collectConstants(s);
+        }
+    }
+
+    private void collectConstants(Expr expr) {
+        if (expr instanceof Literal) {
+            Object key = constantKey(((Literal) expr).value);
+            if (!constants.containsKey(key)) constants.put(key, symbols.size() + constants.size());
+        } else if (expr instanceof UnaryExpr) {
+            collectConstants(((UnaryExpr) expr).operand);
+        } else if (expr instanceof BinaryExpr) {
+            BinaryExpr b = (BinaryExpr) expr;
+            collectConstants(b.left);
+            // x + number is an R_ADDK, which carries the number itself
+            if (!(b.operator.type == TokenType.PLUS && isNumberLiteral(b.right))) collectConstants(b.right);
+        } else if (expr instanceof ArrayExpr) {
+            for (Expr element : ((ArrayExpr) expr).elements) collectConstants(element);
+        } else if (expr instanceof ArrayAccess) {
+            collectConstants(((ArrayAccess) expr).index);
+        } else if (expr instanceof Memo) {
+            collectConstants(((Memo) expr).value);
+        }
+    }
+
+    /** Map key of a literal value; Double.equals keeps 0.0 and -0.0 apart. */
+    private static Object constantKey(Object value) {
+        return value != null ? value : NULL_KEY;
+    }
+
+    private void emitConstant(int reg, Object value) {
+        if (value instanceof Double) {
+            emit(OpCode.R_NUM, reg + " " + value);
+        } else if (value instanceof String) {
+            emit(OpCode.R_STR, reg + " " + value);
+        } else if (value instanceof Character) {
+            emit(OpCode.R_CHAR, reg + " " + value);
+        } else if (value instanceof Boolean) {
+            emit(OpCode.R_BOOL, reg + " " + value);
+        } else {
+            emit(OpCode.R_NULL, String.valueOf(reg));
+        }
+    }
+
+    // ── Helpers ─────────────────────────────────────────────
+
+    private int newTemp() {
+        return nextTemp++;
+    }
+
+    private void emit(OpCode op, String operand) {
+        instructions.add(new Instruction(op, operand));
+    }
+
+    private int emitJump(OpCode op, String operandPrefix) {
+        emit(op, operandPrefix + "-1");
+        return instructions.size() - 1;
+    }
+
+    private void patchJump(int jumpIndex) {
+        instructions.get(jumpIndex).setJumpTarget(instructions.size());
+    }
+
+    private void patchJumps(List<Integer> jumpIndices) {
+        for (int index : jumpIndices) patchJump(index);
+    }
+
+    private static List<Integer> jumps(int jumpIndex) {
+        List<Integer> jumps = new ArrayList<>();
+        jumps.add(jumpIndex);
+        return jumps;
+    }
+
+    private int currentIndex() {
+        return instructions.size();
+    }
+
+    private int slot(Token name) {
+        int slot = symbols.slotOf(name.lexeme);
+        if (slot < 0) {
+            throw new RuntimeException("Compile error: no slot for variable '" + name.lexeme + "' (line " + name.line + ")");
+        }
+        return slot;
+    }
+}
@@ -0,0 +1,68 @@
+package compiler;
+
+/**
+ * Operand layout of the register instructions (R_*), shared by the writer,
+ * reader, register allocator and linker. A layout has one letter per
+ * space-separated operand:
+ *   d : destination register (written)
+ *   s : source register (read)
+ *   k : constant
+ *   t : jump target
+ *   * : any number of source registers (last operand only)
+ * Registers below the program's slot count are its variables.
+ */
+public final class RegisterOperands {
+
+    private RegisterOperands() { }
+
+    public static String layout(OpCode op) {
+        switch (op) {
+            case R_MOVE:
+            case R_NEG:
+            case R_NOT:
+                return "ds";
+            case R_NUM:
+            case R_STR:
+            case R_CHAR:
+            case R_BOOL:
+                return "dk";
+            case R_NULL:
+                return "d";
+            case R_ADD: case R_SUB: case R_MUL: case R_DIV:
+            case R_EQ: case R_NEQ: case R_GT: case R_GTE: case R_LT: case R_LTE:
+            case R_AND: case R_OR:
+            case R_ARRAY_LOAD:
+                return "dss";
+            case R_ADDK:
+                return "dsk";
+            case R_JUMP:
+                return "t";
+            case R_JUMP_IF_FALSE:
+            case R_JUMP_IF_TRUE:
+                return "st";
+            case R_JLT:
+                return "sst";
+            case R_PRINT:
+                return "s";
+            case R_MAKE_ARRAY:
+                return "d*";
+            case R_ARRAY_STORE:
+                return "sss";
+            case R_HALT:
+                return "";
+            default:
+                throw new IllegalArgumentException(op + " is not a register instruction");
+        }
+    }
+
+    public static boolean isRegisterOp(OpCode op) {
+        return op.name().startsWith("R_");
+    }
+
+    /** Operands of instr, split; a string constant (R_STR) keeps its spaces. */
+    public static String[] split(Instruction instr) {
+        if (instr.operand == null || instr.operand.isEmpty()) return new String[0];
+        int limit = instr.opCode == OpCode.R_STR ? 2 : -1;
+        return instr.operand.split(" ", limit);
+    }
+}
@@ -0,0 +1,148 @@
+package compiler;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Computes the maximum operand stack depth of a program (like the JVM's
+ * max_stack), so the VM can preallocate its stack.
+ *
+ * Walks every reachable instruction, propagating the stack depth along both
+ * fall-through and jump edges. The depth at a merge point must be the same on
+ * every incoming path.
+ */
+public class StackDepth {
+
+    public static int compute(List<Instruction> code) {
+        int n = code.size();
+        int[] depthAt = new int[n];
+        Arrays.fill(depthAt, -1);
+
+        Deque<Integer> worklist = new ArrayDeque<>();
+        int max = 0;
+        if (n > 0) {
+            depthAt[0] = 0;
+            worklist.push(0);
+        }
+
+        while (!worklist.isEmpty()) {
+            int pc = worklist.pop();
+            Instruction instr = code.get(pc);
+            int depth = depthAt[pc];
+
+            int pops = pops(instr);
+            if (depth < pops) {
+                throw error(pc, instr.opCode + " needs " + pops + " operand(s) but the stack holds " + depth);
+            }
+            int after = depth - pops + pushes(instr.opCode);
+            max = Math.max(max, after);
+
+            switch (instr.opCode) {
+                case HALT:
+                    break;
+                case JUMP:
+                    flow(code, depthAt, worklist, pc, target(instr, pc), after);
+                    break;
+                case JUMP_IF_FALSE:
+                case JUMP_IF_FALSE_BOOL:
+                case JUMP_IF_TRUE:
+                case JEQ: case JNEQ: case JGT: case JGTE: case JLT: case JLTE:
+                case JGT_NUM_UNCHECKED: case JGTE_NUM_UNCHECKED: case JLT_NUM_UNCHECKED: case JLTE_NUM_UNCHECKED:
+                case JLT_VAR_CONST:
+                case JLT_VAR_VAR:
+                    flow(code, depthAt, worklist, pc, target(instr, pc), after);
+                    flow(code, depthAt, worklist, pc, pc + 1, after);
+                    break;
+                default:
+                    flow(code, depthAt, worklist, pc, pc + 1, after);
+                    break;
+            }
+        }
+        return max;
+    }
+
+    /** Number of values an instruction pops from the operand stack. */
+    public static int pops(Instruction instr) {
+        switch (instr.opCode) {
+            case CONST_NUM: case CONST_STR: case CONST_CHAR: case CONST_BOOL: case CONST_NULL:
+            case LOAD: case LOAD_SLOT: case LOAD_SLOT_UNCHECKED:
+            case JUMP: case HALT:
+            case INC_VAR: case LOAD_CONST_ADD: case LOAD_CONST_MUL: case LOAD_LOAD_ADD:
+            case LOAD_ARRAY_VAR: case LOAD_ARRAY_CONST: case LOAD_ARRAY_VAR_UNCHECKED:
+            case JLT_VAR_CONST: case JLT_VAR_VAR:
+            case GUARD_INDEX_VAR: case GUARD_INDEX_CONST:
+                return 0;
+            case STORE: case STORE_SLOT:
+            case DUP:
+            case NEG: case NOT: case NEG_NUM_UNCHECKED:
+            case ADD_CONST:
+            case JUMP_IF_FALSE: case JUMP_IF_FALSE_BOOL: case JUMP_IF_TRUE:
+            case PRINT:
+            case POP:
+                return 1;
+            case ADD: case SUB: case MUL: case DIV:
+            case EQ: case NEQ: case GT: case GTE: case LT: case LTE:
+            case AND: case OR:
+            case ARRAY_LOAD:
+            case ADD_NUM: case ADD_STR: case CONCAT:
+            case GT_NUM: case GTE_NUM: case LT_NUM: case LTE_NUM:
+            case ARRAY_LOAD_NUM:
+            case ARRAY_STORE: case ARRAY_STORE_SLOT:
+            case ARRAY_LOAD_UNCHECKED: case ARRAY_STORE_UNCHECKED:
+            case ADD_NUM_UNCHECKED: case SUB_NUM_UNCHECKED: case MUL_NUM_UNCHECKED: case DIV_NUM_UNCHECKED:
+            case GT_NUM_UNCHECKED: case GTE_NUM_UNCHECKED: case LT_NUM_UNCHECKED: case LTE_NUM_UNCHECKED:
+            case JEQ: case JNEQ: case JGT: case JGTE: case JLT: case JLTE:
+            case JGT_NUM_UNCHECKED: case JGTE_NUM_UNCHECKED: case JLT_NUM_UNCHECKED: case JLTE_NUM_UNCHECKED:
+                return 2;
+            case MAKE_ARRAY:
+                return Integer.parseInt(instr.operand);
+            default:
+                throw new IllegalArgumentException("Unknown opcode: " + instr.opCode);
+        }
+    }
+
+    /** Number of values an instruction pushes onto the operand stack. */
+    public static int pushes(OpCode op) {
+        switch (op) {
+            case STORE: case STORE_SLOT: case POP:
+            case JUMP: case JUMP_IF_FALSE: case JUMP_IF_FALSE_BOOL: case JUMP_IF_TRUE:
+            case JEQ: case JNEQ: case JGT: case JGTE: case JLT: case JLTE:
+            case JGT_NUM_UNCHECKED: case JGTE_NUM_UNCHECKED: case JLT_NUM_UNCHECKED: case JLTE_NUM_UNCHECKED:
+            case PRINT:
+            case ARRAY_STORE: case ARRAY_STORE_SLOT: case ARRAY_STORE_UNCHECKED:
+            case HALT:
+            case INC_VAR: case JLT_VAR_CONST: case JLT_VAR_VAR:
+                return 0;
+            case DUP:
+                return 2;
+            default:
+                return 1;
+        }
+    }
+
+    // ── Helpers ─────────────────────────────────────────────
+
+    private static void flow(List<Instruction> code, int[] depthAt, Deque<Integer> worklist,
+                             int from, int to, int depth) {
+        if (to >= code.size()) return;   // falling off the end stops the program
+        if (depthAt[to] == -1) {
+            depthAt[to] = depth;
+            worklist.push(to);
+        } else if (depthAt[to] != depth) {
+            throw error(to, "inconsistent stack depth (" + depthAt[to] + " vs " + depth
+                    + " coming from instruction " + from + ")");
+        }
+    }
+
+    private static int target(Instruction instr, int pc) {
+        int target = instr.jumpTarget();
+        if (target < 0) throw error(pc, "negative jump target " + target);
+        return target;
+    }
+
+    private static RuntimeException error(int pc, String message) {
+        return new RuntimeException("Stack error at instruction " + pc + ": " + message);
+    }
+}
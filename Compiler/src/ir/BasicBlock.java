@@ -0,0 +1,62 @@
+package ir;
+
+import compiler.Instruction;
+import compiler.OpCode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A maximal straight-line run of instructions: control enters only at the top
+ * and leaves only at the bottom.
+ *
+ * The body holds the non-branching instructions; the terminator, if any, is the
+ * JUMP, conditional jump or HALT that ends the block. Edges are explicit:
+ *   - next   : where control goes when the block falls through (no terminator,
+ *              or a conditional jump that is not taken); null means the program
+ *              ends there
+ *   - target : where a JUMP or a taken conditional jump goes
+ * The jump target operand inside the terminator is stale while the program is
+ * in graph form; {@link ControlFlowGraph#lower()} rewrites it.
+ */
+public final class BasicBlock {
+    public final int id;
+    public final List<Instruction> body = new ArrayList<>();
+    public Instruction terminator;   // nullable
+    public BasicBlock next;          // nullable
+    public BasicBlock target;        // nullable
+    public final List<BasicBlock> predecessors = new ArrayList<>();
+
+    BasicBlock(int id) {
+        this.id = id;
+    }
+
+    /** Successors in order: target first (if any), then next (if any). */
+    public List<BasicBlock> successors() {
+        List<BasicBlock> successors = new ArrayList<>(2);
+        if (target != null) successors.add(target);
+        if (next != null && next != target) successors.add(next);
+        return successors;
+    }
+
+    /** True if control can fall out of the bottom of the block into next. */
+    public boolean fallsThrough() {
+        return terminator == null || terminator.isConditionalJump();
+    }
+
+    public boolean isHalt() {
+        return terminator != null && terminator.opCode == OpCode.HALT;
+    }
+
+    /** Body and terminator, in execution order. */
+    public List<Instruction> instructions() {
+        List<Instruction> all = new ArrayList<>(body);
+        if (terminator != null) all.add(terminator);
+        return all;
+    }
+
+    @Override
+    public String toString() {
+        return "B" + id;
+    }
+}
@@ -0,0 +1,56 @@
+package ir;
+
+import compiler.OpCode;
+
+/**
+ * Joins a block to its only successor when that successor has no other
+ * predecessor, so straight-line code is one block and the JUMP between the
+ * two halves disappears. The successor's instructions and edges move into the
+ * first block; the successor is removed from the layout.
+ */
+public final class BlockMerging implements Pass {
+
+    @Override
+    public String name() {
+        return "block-merging";
+    }
+
+    @Override
+    public boolean run(ControlFlowGraph cfg) {
+        boolean changed = false;
+        for (BasicBlock block : cfg.blocks) {
+            BasicBlock successor;
+            while ((successor = soleSuccessor(block)) != null
+                    && successor != block
+                    && successor != cfg.entry()
+                    && successor.predecessors.size() == 1) {
+                merge(block, successor);
+                changed = true;
+            }
+        }
+        if (changed) cfg.blocks.removeIf(block -> block.predecessors.isEmpty() && block != cfg.entry());
+        return changed;
+    }
+
+    /** The block control always continues in after block, or null. */
+    private static BasicBlock soleSuccessor(BasicBlock block) {
+        if (block.terminator == null) return block.next;
+        if (block.terminator.opCode == OpCode.JUMP) return block.target;
+        return null;
+    }
+
+    private static void merge(BasicBlock block, BasicBlock successor) {
+        block.body.addAll(successor.body);
+        block.terminator = successor.terminator;
+        block.target = successor.target;
+        block.next = successor.next;
+        for (BasicBlock after : successor.successors()) {
+            after.predecessors.replaceAll(pred -> pred == successor ? block : pred);
+        }
+        successor.body.clear();
+        successor.terminator = null;
+        successor.target = null;
+        successor.next = null;
+        successor.predecessors.clear();
+    }
+}
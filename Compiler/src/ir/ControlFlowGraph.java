@@ -0,0 +1,223 @@
+package ir;
+
+import compiler.Chunk;
+import compiler.Instruction;
+import compiler.OpCode;
+import compiler.StackDepth;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Control-flow graph of a compiled program: basic blocks with explicit edges,
+ * built from slot-addressed bytecode and lowered back to a flat instruction list.
+ *
+ * blocks is the layout order used when lowering; the first block is the entry.
+ * Lowering emits the blocks in that order, resolves every jump to the index of
+ * its target block, and adds a JUMP (or HALT) wherever a block's fall-through
+ * successor is not the block laid out after it.
+ *
+ * Analyses ({@link Dominators}, {@link Liveness}, {@link DefUse}) are computed on
+ * demand and cached. A transform that changes the graph must call
+ * {@link #invalidate()}, which the {@link PassManager} does for every pass that
+ * reports a change.
+ */
+public final class ControlFlowGraph {
+    public final List<BasicBlock> blocks = new ArrayList<>();
+    public final List<String> slotNames;
+    private int nextId = 0;
+
+    private Dominators dominators;
+    private Liveness liveness;
+    private DefUse defUse;
+
+    private ControlFlowGraph(List<String> slotNames) {
+        this.slotNames = slotNames;
+    }
+
+    // ── Construction ────────────────────────────────────────
+
+    public static ControlFlowGraph build(Chunk chunk) {
+        List<Instruction> code = chunk.code;
+        int n = code.size();
+        ControlFlowGraph cfg = new ControlFlowGraph(chunk.slotNames);
+
+        // Leaders: the entry, every jump target, and every instruction after a jump or HALT
+        boolean[] leader = new boolean[n + 1];
+        boolean exitTargeted = false;
+        leader[0] = true;
+        for (int i = 0; i < n; i++) {
+            Instruction instr = code.get(i);
+            if (instr.isJump()) {
+                int target = instr.jumpTarget();
+                if (target < 0 || target > n) {
+                    throw new RuntimeException("CFG error at instruction " + i + ": jump target " + target + " out of range");
+                }
+                leader[target] = true;
+                exitTargeted |= target == n;
+            }
+            if (instr.isJump() || instr.opCode == OpCode.HALT) leader[i + 1] = true;
+        }
+
+        BasicBlock[] blockAt = new BasicBlock[n + 1];
+        for (int i = 0; i < n || i == 0; i++) {
+            if (leader[i]) blockAt[i] = cfg.addBlock();
+        }
+        if (exitTargeted && n > 0) blockAt[n] = cfg.addBlock();   // empty block: "jump to the end"
+
+        BasicBlock current = null;
+        for (int i = 0; i < n; i++) {
+            if (blockAt[i] != null) current = blockAt[i];
+            Instruction instr = copy(code.get(i));
+            if (!leader[i + 1]) {
+                current.body.add(instr);
+                continue;
+            }
+            // Last instruction of the block
+            if (instr.isJump() || instr.opCode == OpCode.HALT) {
+                current.terminator = instr;
+            } else {
+                current.body.add(instr);
+            }
+            if (instr.isJump()) current.target = blockAt[instr.jumpTarget()];
+            if (current.fallsThrough()) current.next = blockAt[i + 1];
+        }
+
+        cfg.invalidate();
+        return cfg;
+    }
+
+    /** Creates a block with a fresh id and appends it to the layout. */
+    public BasicBlock addBlock() {
+        BasicBlock block = new BasicBlock(nextId++);
+        blocks.add(block);
+        return block;
+    }
+
+    public BasicBlock entry() {
+        return blocks.get(0);
+    }
+
+    // ── Lowering ────────────────────────────────────────────
+
+    public Chunk lower() {
+        Map<BasicBlock, Integer> start = new HashMap<>();
+        int index = 0;
+        for (int b = 0; b < blocks.size(); b++) {
+            BasicBlock block = blocks.get(b);
+            start.put(block, index);
+            index += block.body.size() + (block.terminator != null ? 1 : 0);
+            if (needsExitInstruction(b)) index++;
+        }
+
+        List<Instruction> code = new ArrayList<>(index);
+        for (int b = 0; b < blocks.size(); b++) {
+            BasicBlock block = blocks.get(b);
+            for (Instruction instr : block.body) code.add(copy(instr));
+            if (block.terminator != null) {
+                Instruction terminator = copy(block.terminator);
+                if (terminator.isJump()) terminator.setJumpTarget(startOf(start, block.target));
+                code.add(terminator);
+            }
+            if (needsExitInstruction(b)) {
+                code.add(block.next == null ? new Instruction(OpCode.HALT)
+                                            : new Instruction(OpCode.JUMP, String.valueOf(startOf(start, block.next))));
+            }
+        }
+        return new Chunk(code, slotNames, StackDepth.compute(code));
+    }
+
+    /** True if block b falls through somewhere other than the block laid out after it. */
+    private boolean needsExitInstruction(int b) {
+        BasicBlock block = blocks.get(b);
+        BasicBlock layoutNext = b + 1 < blocks.size() ? blocks.get(b + 1) : null;
+        return block.fallsThrough() && block.next != layoutNext;
+    }
+
+    private static int startOf(Map<BasicBlock, Integer> start, BasicBlock block) {
+        Integer index = start.get(block);
+        if (index == null) throw new IllegalStateException("Edge to " + block + ", which is not in the graph");
+        return index;
+    }
+
+    private static Instruction copy(Instruction instr) {
+        return new Instruction(instr.opCode, instr.operand);
+    }
+
+    // ── Traversal ───────────────────────────────────────────
+
+    /** Blocks reachable from the entry, in reverse postorder (each block before its successors, back edges aside). */
+    public List<BasicBlock> reversePostOrder() {
+        List<BasicBlock> order = new ArrayList<>();
+        Set<BasicBlock> visited = new HashSet<>();
+        Deque<BasicBlock> stack = new ArrayDeque<>();
+        Deque<Integer> nextChild = new ArrayDeque<>();
+        stack.push(entry());
+        nextChild.push(0);
+        visited.add(entry());
+        while (!stack.isEmpty()) {
+            BasicBlock block = stack.peek();
+            int child = nextChild.pop();
+            List<BasicBlock> successors = block.successors();
+            if (child < successors.size()) {
+                nextChild.push(child + 1);
+                BasicBlock successor = successors.get(child);
+                if (visited.add(successor)) {
+                    stack.push(successor);
+                    nextChild.push(0);
+                }
+            } else {
+                order.add(stack.pop());
+            }
+        }
+        Collections.reverse(order);
+        return order;
+    }
+
+    // ── Analyses ────────────────────────────────────────────
+
+    public Dominators dominators() {
+        if (dominators == null) dominators = new Dominators(this);
+        return dominators;
+    }
+
+    public Liveness liveness() {
+        if (liveness == null) liveness = new Liveness(this);
+        return liveness;
+    }
+
+    public DefUse defUse() {
+        if (defUse == null) defUse = new DefUse(this);
+        return defUse;
+    }
+
+    /** Recomputes predecessor lists and drops cached analyses after a change. */
+    public void invalidate() {
+        for (BasicBlock block : blocks) block.predecessors.clear();
+        for (BasicBlock block : blocks) {
+            for (BasicBlock successor : block.successors()) successor.predecessors.add(block);
+        }
+        dominators = null;
+        liveness = null;
+        defUse = null;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (BasicBlock block : blocks) {
+            sb.append(block).append(" <- ").append(block.predecessors).append(":\n");
+            for (Instruction instr : block.instructions()) sb.append("    ").append(instr).append('\n');
+            if (block.target != null) sb.append("    target ").append(block.target).append('\n');
+            if (block.next != null) sb.append("    next ").append(block.next).append('\n');
+        }
+        return sb.toString();
+    }
+}
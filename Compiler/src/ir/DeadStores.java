@@ -0,0 +1,94 @@
+package ir;
+
+import compiler.Instruction;
+import compiler.OpCode;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Removes stores to variables that are never read afterwards: a STORE_SLOT
+ * whose slot is not live after it becomes a POP. The value is still computed,
+ * since computing it may fail at run time (a type error, division by zero).
+ * When the value is a constant, the push and the POP are both removed.
+ *
+ * A STORE_SLOT directly followed by a LOAD_SLOT of the same variable, which is
+ * not read after that, is removed with the load: the value just stays on the
+ * stack. A saved common subexpression reused right away (DUP; STORE_SLOT t;
+ * LOAD_SLOT t) becomes a DUP.
+ */
+public final class DeadStores implements Pass {
+
+    @Override
+    public String name() {
+        return "dead-stores";
+    }
+
+    @Override
+    public boolean run(ControlFlowGraph cfg) {
+        Liveness liveness = cfg.liveness();
+        boolean changed = false;
+        for (BasicBlock block : cfg.blocks) {
+            List<Instruction> body = block.body;
+            BitSet live = liveness.liveOut(block);
+            if (block.terminator != null) {
+                for (int slot : VarAccess.uses(block.terminator)) live.set(slot);
+            }
+            for (int i = body.size() - 1; i >= 0; i--) {
+                Instruction instr = body.get(i);
+                if (isReloadedStore(body, i - 1) && !live.get(VarAccess.def(body.get(i - 1)))) {
+                    body.remove(i);
+                    body.remove(i - 1);
+                    i--;
+                    changed = true;
+                    continue;
+                }
+                if (instr.opCode == OpCode.STORE_SLOT && !live.get(VarAccess.def(instr))) {
+                    body.set(i, new Instruction(OpCode.POP));
+                    changed = true;
+                    continue;
+                }
+                int slot = VarAccess.def(instr);
+                if (slot >= 0) live.clear(slot);
+                for (int used : VarAccess.uses(instr)) live.set(used);
+            }
+            changed |= removeDiscardedConstants(body);
+        }
+        return changed;
+    }
+
+    /** True if body[i] is a STORE_SLOT and body[i + 1] loads the same slot. */
+    private static boolean isReloadedStore(List<Instruction> body, int i) {
+        if (i < 0 || body.get(i).opCode != OpCode.STORE_SLOT || body.get(i + 1).opCode != OpCode.LOAD_SLOT) {
+            return false;
+        }
+        return VarAccess.def(body.get(i)) == VarAccess.uses(body.get(i + 1))[0];
+    }
+
+    /** Drops "push constant; POP" pairs. */
+    private static boolean removeDiscardedConstants(List<Instruction> body) {
+        boolean changed = false;
+        for (int i = 1; i < body.size(); i++) {
+            if (body.get(i).opCode == OpCode.POP && isConstant(body.get(i - 1).opCode)) {
+                body.remove(i);
+                body.remove(i - 1);
+                i = Math.max(0, i - 2);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private static boolean isConstant(OpCode op) {
+        switch (op) {
+            case CONST_NUM:
+            case CONST_STR:
+            case CONST_CHAR:
+            case CONST_BOOL:
+            case CONST_NULL:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package ir;
+
+import compiler.Instruction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Where each variable slot is written (defs) and read (uses). A site is an
+ * instruction, addressed by its block and its index in block.instructions().
+ */
+public final class DefUse {
+
+    public static final class Site {
+        public final BasicBlock block;
+        public final int index;
+
+        Site(BasicBlock block, int index) {
+            this.block = block;
+            this.index = index;
+        }
+
+        public Instruction instruction() {
+            return block.instructions().get(index);
+        }
+
+        @Override
+        public String toString() {
+            return block + ":" + index;
+        }
+    }
+
+    private final Map<Integer, List<Site>> defs = new HashMap<>();
+    private final Map<Integer, List<Site>> uses = new HashMap<>();
+
+    DefUse(ControlFlowGraph cfg) {
+        for (BasicBlock block : cfg.blocks) {
+            List<Instruction> instructions = block.instructions();
+            for (int i = 0; i < instructions.size(); i++) {
+                Instruction instr = instructions.get(i);
+                for (int slot : VarAccess.uses(instr)) {
+                    uses.computeIfAbsent(slot, k -> new ArrayList<>()).add(new Site(block, i));
+                }
+                int slot = VarAccess.def(instr);
+                if (slot >= 0) defs.computeIfAbsent(slot, k -> new ArrayList<>()).add(new Site(block, i));
+            }
+        }
+    }
+
+    public List<Site> defs(int slot) {
+        return Collections.unmodifiableList(defs.getOrDefault(slot, Collections.emptyList()));
+    }
+
+    public List<Site> uses(int slot) {
+        return Collections.unmodifiableList(uses.getOrDefault(slot, Collections.emptyList()));
+    }
+}
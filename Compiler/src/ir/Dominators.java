@@ -0,0 +1,85 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dominator tree of a control-flow graph: block a dominates block b if every
+ * path from the entry to b passes through a.
+ *
+ * Computed with the iterative algorithm of Cooper, Harvey and Kennedy over the
+ * reverse postorder. Unreachable blocks have no dominators and dominate nothing.
+ */
+public final class Dominators {
+    private final BasicBlock entry;
+    private final Map<BasicBlock, BasicBlock> idom = new HashMap<>();
+    private final Map<BasicBlock, Integer> order = new HashMap<>();
+    private final Map<BasicBlock, List<BasicBlock>> children = new HashMap<>();
+
+    Dominators(ControlFlowGraph cfg) {
+        this.entry = cfg.entry();
+        List<BasicBlock> rpo = cfg.reversePostOrder();
+        for (int i = 0; i < rpo.size(); i++) order.put(rpo.get(i), i);
+
+        idom.put(entry, entry);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (BasicBlock block : rpo) {
+                if (block == entry) continue;
+                BasicBlock newIdom = null;
+                for (BasicBlock pred : block.predecessors) {
+                    if (!idom.containsKey(pred)) continue;   // unreachable, or not processed yet
+                    newIdom = newIdom == null ? pred : intersect(pred, newIdom);
+                }
+                if (newIdom != idom.get(block)) {
+                    idom.put(block, newIdom);
+                    changed = true;
+                }
+            }
+        }
+
+        for (BasicBlock block : rpo) {
+            children.put(block, new ArrayList<>());
+        }
+        for (BasicBlock block : rpo) {
+            if (block != entry) children.get(idom.get(block)).add(block);
+        }
+    }
+
+    private BasicBlock intersect(BasicBlock a, BasicBlock b) {
+        while (a != b) {
+            while (order.get(a) > order.get(b)) a = idom.get(a);
+            while (order.get(b) > order.get(a)) b = idom.get(b);
+        }
+        return a;
+    }
+
+    // ── Queries ─────────────────────────────────────────────
+
+    public boolean isReachable(BasicBlock block) {
+        return idom.containsKey(block);
+    }
+
+    /** The immediate dominator of block; null for the entry and unreachable blocks. */
+    public BasicBlock idom(BasicBlock block) {
+        return block == entry ? null : idom.get(block);
+    }
+
+    public boolean dominates(BasicBlock a, BasicBlock b) {
+        if (!isReachable(a) || !isReachable(b)) return false;
+        while (b != a) {
+            if (b == entry) return false;
+            b = idom.get(b);
+        }
+        return true;
+    }
+
+    /** Blocks immediately dominated by block (its children in the dominator tree). */
+    public List<BasicBlock> children(BasicBlock block) {
+        return Collections.unmodifiableList(children.getOrDefault(block, Collections.emptyList()));
+    }
+}
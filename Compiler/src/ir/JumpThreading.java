@@ -0,0 +1,128 @@
+package ir;
+
+import compiler.Instruction;
+import compiler.OpCode;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Retargets edges that lead to a block which does nothing but pass control on:
+ *   - an empty block ending in JUMP      → its jump target
+ *   - an empty block with no terminator  → its fall-through successor
+ * Chains are followed to their final destination, so a nested if whose inner
+ * branch ends by jumping to the outer join jumps straight to the outer join's
+ * successor. A loop made only of empty blocks is left alone.
+ *
+ * Two terminators are also simplified:
+ *   - a JUMP to an empty HALT block (or to the empty exit block) becomes HALT
+ *   - a JUMP_IF_FALSE or JUMP_IF_TRUE whose target is also its fall-through
+ *     successor becomes a POP of the condition, and such a compare-and-branch
+ *     (JLT, ...) becomes its comparison and a POP, so it still fails where the
+ *     comparison would
+ */
+public final class JumpThreading implements Pass {
+
+    @Override
+    public String name() {
+        return "jump-threading";
+    }
+
+    @Override
+    public boolean run(ControlFlowGraph cfg) {
+        boolean changed = false;
+        for (BasicBlock block : cfg.blocks) {
+            if (block.target != null) {
+                BasicBlock destination = forward(block.target);
+                if (destination != block.target) {
+                    block.target = destination;
+                    changed = true;
+                }
+            }
+            if (block.next != null) {
+                BasicBlock destination = forward(block.next);
+                if (destination != block.next) {
+                    block.next = destination;
+                    changed = true;
+                }
+            }
+            changed |= simplifyTerminator(block);
+        }
+        return changed;
+    }
+
+    /** The block control really ends up in when it enters block. */
+    private static BasicBlock forward(BasicBlock block) {
+        Set<BasicBlock> seen = new HashSet<>();
+        while (block.body.isEmpty() && seen.add(block)) {
+            if (block.terminator != null && block.terminator.opCode == OpCode.JUMP) {
+                block = block.target;
+            } else if (block.terminator == null && block.next != null) {
+                block = block.next;
+            } else {
+                break;
+            }
+        }
+        return block;
+    }
+
+    private static boolean simplifyTerminator(BasicBlock block) {
+        Instruction terminator = block.terminator;
+        if (terminator == null) return false;
+        switch (terminator.opCode) {
+            case JUMP:
+                if (endsProgram(block.target)) {
+                    block.terminator = new Instruction(OpCode.HALT);
+                    block.target = null;
+                    return true;
+                }
+                return false;
+            case JUMP_IF_FALSE:
+            case JUMP_IF_FALSE_BOOL:
+            case JUMP_IF_TRUE:
+            case JEQ:
+            case JNEQ:
+            case JGT:
+            case JGTE:
+            case JLT:
+            case JLTE:
+            case JGT_NUM_UNCHECKED:
+            case JGTE_NUM_UNCHECKED:
+            case JLT_NUM_UNCHECKED:
+            case JLTE_NUM_UNCHECKED:
+                if (block.target == block.next) {
+                    OpCode comparison = comparison(terminator.opCode);
+                    if (comparison != null) block.body.add(new Instruction(comparison));
+                    block.body.add(new Instruction(OpCode.POP));
+                    block.terminator = null;
+                    block.target = null;
+                    return true;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /** The comparison a compare-and-branch tests, or null for any other jump. */
+    private static OpCode comparison(OpCode jump) {
+        switch (jump) {
+            case JEQ:  return OpCode.EQ;
+            case JNEQ: return OpCode.NEQ;
+            case JGT:  return OpCode.GT;
+            case JGTE: return OpCode.GTE;
+            case JLT:  return OpCode.LT;
+            case JLTE: return OpCode.LTE;
+            case JGT_NUM_UNCHECKED:  return OpCode.GT_NUM_UNCHECKED;
+            case JGTE_NUM_UNCHECKED: return OpCode.GTE_NUM_UNCHECKED;
+            case JLT_NUM_UNCHECKED:  return OpCode.LT_NUM_UNCHECKED;
+            case JLTE_NUM_UNCHECKED: return OpCode.LTE_NUM_UNCHECKED;
+            default:   return null;
+        }
+    }
+
+    /** True for an empty block that stops the program: HALT, or the empty exit block. */
+    private static boolean endsProgram(BasicBlock block) {
+        return block.body.isEmpty() && (block.isHalt() || (block.terminator == null && block.next == null));
+    }
+}
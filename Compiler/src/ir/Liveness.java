@@ -0,0 +1,80 @@
+package ir;
+
+import compiler.Instruction;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Live variable analysis: a slot is live at a point if some path from there
+ * reads it before writing it. Solved backwards over the blocks until the
+ * live-in sets stop changing.
+ */
+public final class Liveness {
+    private final Map<BasicBlock, BitSet> liveIn = new HashMap<>();
+    private final Map<BasicBlock, BitSet> liveOut = new HashMap<>();
+
+    Liveness(ControlFlowGraph cfg) {
+        Map<BasicBlock, BitSet> use = new HashMap<>();
+        Map<BasicBlock, BitSet> def = new HashMap<>();
+        for (BasicBlock block : cfg.blocks) {
+            BitSet blockUse = new BitSet();
+            BitSet blockDef = new BitSet();
+            for (Instruction instr : block.instructions()) {
+                for (int slot : VarAccess.uses(instr)) {
+                    if (!blockDef.get(slot)) blockUse.set(slot);
+                }
+                int slot = VarAccess.def(instr);
+                if (slot >= 0) blockDef.set(slot);
+            }
+            use.put(block, blockUse);
+            def.put(block, blockDef);
+            liveIn.put(block, new BitSet());
+            liveOut.put(block, new BitSet());
+        }
+
+        List<BasicBlock> blocks = cfg.blocks;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int b = blocks.size() - 1; b >= 0; b--) {
+                BasicBlock block = blocks.get(b);
+                BitSet out = new BitSet();
+                for (BasicBlock successor : block.successors()) out.or(liveIn.get(successor));
+                BitSet in = (BitSet) out.clone();
+                in.andNot(def.get(block));
+                in.or(use.get(block));
+                liveOut.put(block, out);
+                if (!in.equals(liveIn.get(block))) {
+                    liveIn.put(block, in);
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    // ── Queries ─────────────────────────────────────────────
+
+    public BitSet liveIn(BasicBlock block) {
+        return (BitSet) liveIn.get(block).clone();
+    }
+
+    public BitSet liveOut(BasicBlock block) {
+        return (BitSet) liveOut.get(block).clone();
+    }
+
+    /** Slots live right after instruction index of block.instructions(). */
+    public BitSet liveAfter(BasicBlock block, int index) {
+        List<Instruction> instructions = block.instructions();
+        BitSet live = liveOut(block);
+        for (int i = instructions.size() - 1; i > index; i--) {
+            Instruction instr = instructions.get(i);
+            int slot = VarAccess.def(instr);
+            if (slot >= 0) live.clear(slot);
+            for (int used : VarAccess.uses(instr)) live.set(used);
+        }
+        return live;
+    }
+}
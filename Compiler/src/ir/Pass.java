@@ -0,0 +1,12 @@
+package ir;
+
+/**
+ * A transform over a control-flow graph, run by the {@link PassManager}.
+ */
+public interface Pass {
+
+    String name();
+
+    /** Transforms cfg in place; returns true if anything changed. */
+    boolean run(ControlFlowGraph cfg);
+}
@@ -0,0 +1,43 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a pipeline of passes over a control-flow graph. The pipeline is repeated
+ * while any pass still changes the graph (one pass often exposes work for
+ * another), up to MAX_ROUNDS times. Cached analyses are invalidated after every
+ * pass that reports a change.
+ */
+public final class PassManager {
+    private static final int MAX_ROUNDS = 8;
+
+    private final List<Pass> passes = new ArrayList<>();
+
+    /** The default optimization pipeline used by the compiler. */
+    public static PassManager standard() {
+        return new PassManager()
+                .add(new JumpThreading())
+                .add(new UnreachableBlocks())
+                .add(new BlockMerging())
+                .add(new DeadStores());
+    }
+
+    public PassManager add(Pass pass) {
+        passes.add(pass);
+        return this;
+    }
+
+    public void run(ControlFlowGraph cfg) {
+        for (int round = 0; round < MAX_ROUNDS; round++) {
+            boolean changed = false;
+            for (Pass pass : passes) {
+                if (pass.run(cfg)) {
+                    cfg.invalidate();
+                    changed = true;
+                }
+            }
+            if (!changed) return;
+        }
+    }
+}
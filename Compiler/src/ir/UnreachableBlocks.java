@@ -0,0 +1,22 @@
+package ir;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Removes blocks that no path from the entry reaches: code after an
+ * unconditional jump or HALT, and blocks left behind by other passes.
+ */
+public final class UnreachableBlocks implements Pass {
+
+    @Override
+    public String name() {
+        return "unreachable-blocks";
+    }
+
+    @Override
+    public boolean run(ControlFlowGraph cfg) {
+        Set<BasicBlock> reachable = new HashSet<>(cfg.reversePostOrder());
+        return cfg.blocks.removeIf(block -> !reachable.contains(block));
+    }
+}
@@ -0,0 +1,62 @@
+package ir;
+
+import compiler.Instruction;
+
+/**
+ * Which variable slots an instruction reads and writes. Only slot-addressed
+ * code is supported; the name-based v1.0 forms (LOAD, STORE, ARRAY_STORE) are
+ * rejected.
+ *
+ * ARRAY_STORE_SLOT counts as a read: it mutates the array the variable refers
+ * to, but the variable itself keeps its value. So do the GUARD_INDEX forms,
+ * although they do not fail on an undefined variable.
+ */
+public final class VarAccess {
+    private static final int[] NONE = new int[0];
+
+    private VarAccess() { }
+
+    /** Slots read by instr, in the order it reads them. */
+    public static int[] uses(Instruction instr) {
+        switch (instr.opCode) {
+            case LOAD_SLOT:
+            case ARRAY_STORE_SLOT:
+            case ARRAY_STORE_UNCHECKED:
+            case GUARD_INDEX_CONST:
+            case INC_VAR:
+            case LOAD_CONST_ADD:
+            case LOAD_CONST_MUL:
+            case LOAD_ARRAY_CONST:
+            case JLT_VAR_CONST:
+                return new int[] { operand(instr, 0) };
+            case LOAD_LOAD_ADD:
+            case LOAD_ARRAY_VAR:
+            case LOAD_ARRAY_VAR_UNCHECKED:
+            case GUARD_INDEX_VAR:
+            case JLT_VAR_VAR:
+                return new int[] { operand(instr, 0), operand(instr, 1) };
+            case LOAD:
+            case STORE:
+            case ARRAY_STORE:
+                throw new IllegalArgumentException("Name-based " + instr.opCode + " is not supported in the IR");
+            default:
+                return NONE;
+        }
+    }
+
+    /** Slot written by instr, or -1. */
+    public static int def(Instruction instr) {
+        switch (instr.opCode) {
+            case STORE_SLOT:
+            case INC_VAR:
+                return operand(instr, 0);
+            default:
+                return -1;
+        }
+    }
+
+    /** The n-th space-separated operand, as a slot number. */
+    static int operand(Instruction instr, int n) {
+        return Integer.parseInt(instr.operand.split(" ")[n]);
+    }
+}
@@ -0,0 +1,553 @@
+package optimizer;
+
+import ast.*;
+import lexer.Token;
+import lexer.TokenType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * AST optimization pass that removes array bounds checks from counted loops,
+ * by marking the accesses it proves in range unchecked.
+ *
+ * A loop is counted if its condition is i < bound or i <= bound (possibly
+ * "and"-ed with other tests), where
+ *   - i holds a known whole number on entry to the loop, and the loop only
+ *     ever increases it by a positive whole literal: the for-loop increment
+ *     i = i + c, or in a while loop one top-level i = i + c statement of the
+ *     body (only the statements before it count as the loop body below);
+ *   - bound is a number literal or a variable the loop does not assign.
+ * Every time the body runs, start <= i < bound (or <= bound) then holds. An
+ * access a[i], a[i + k] or a[i - k] in the body is in range on every iteration
+ * if the loop does not assign a (arrays have a fixed length, so neither can
+ * its length change), start + k >= 0, and the largest index the bound allows
+ * is below a's length. The same facts cover the checks that a holds an array
+ * and that the index is a number.
+ *
+ * When a's length and the bound's value are known at compile time, the last
+ * condition is decided outright. Otherwise the loop is versioned: a single
+ * BoundsGuard test before it checks the run-time values and picks a copy of
+ * the loop with those accesses unchecked, or else the original. A loop whose
+ * body already holds a versioned loop is not versioned itself, so code grows
+ * at most twofold. Inner loops are processed first.
+ */
+public class BoundsCheckEliminator {
+    private static final Token AND = new Token(TokenType.AND, "and", 0);
+
+    // What holds at the current point of the program
+    private Facts facts = new Facts();
+
+    // ── Public API ──────────────────────────────────────────
+
+    public List<Stmt> eliminate(List<Stmt> statements) {
+        return eliminateAll(statements);
+    }
+
+    // ── Statements ──────────────────────────────────────────
+
+    private List<Stmt> eliminateAll(List<Stmt> statements) {
+        List<Stmt> result = new ArrayList<>();
+        for (Stmt stmt : statements) result.add(eliminateStmt(stmt));
+        return result;
+    }
+
+    private Stmt eliminateStmt(Stmt stmt) {
+        if (stmt instanceof VarDecl) {
+            VarDecl v = (VarDecl) stmt;
+            facts.assign(v.name.lexeme, v.initializer);
+            return stmt;
+
+        } else if (stmt instanceof Assignment) {
+            Assignment a = (Assignment) stmt;
+            facts.assign(a.name.lexeme, a.value);
+            return stmt;
+
+        } else if (stmt instanceof IfStmt) {
+            IfStmt i = (IfStmt) stmt;
+            Facts before = facts;
+            facts = before.copy();
+            Stmt thenBranch = eliminateStmt(i.thenBranch);
+            Facts afterThen = facts;
+            facts = before.copy();
+            Stmt elseBranch = i.elseBranch != null ? eliminateStmt(i.elseBranch) : null;
+            facts.join(afterThen);
+            return new IfStmt(i.condition, thenBranch, elseBranch);
+
+        } else if (stmt instanceof WhileStmt) {
+            WhileStmt w = (WhileStmt) stmt;
+            Facts entry = facts;
+            Set<String> assigned = new HashSet<>();
+            LoopInvariantHoister.collectAssigned(w.body, assigned);
+            Stmt body = eliminateLoopBody(entry, assigned, w.body);
+            return versionWhile(entry, assigned, w.condition, body);
+
+        } else if (stmt instanceof ForStmt) {
+            ForStmt f = (ForStmt) stmt;
+            Stmt init = f.init != null ? eliminateStmt(f.init) : null;
+            Facts entry = facts;
+            Set<String> assigned = new HashSet<>();
+            LoopInvariantHoister.collectAssigned(f.body, assigned);
+            if (f.increment != null) LoopInvariantHoister.collectAssigned(f.increment, assigned);
+            Stmt body = eliminateLoopBody(entry, assigned, f.body);
+            return versionFor(entry, assigned, init, f.condition, body, f.increment);
+
+        } else if (stmt instanceof Block) {
+            return new Block(eliminateAll(((Block) stmt).statements));
+        }
+        return stmt;
+    }
+
+    /**
+     * Processes a loop body. Variables the loop assigns may hold anything
+     * between iterations; the facts left afterwards are the entry facts about
+     * the others (the body may run zero times).
+     */
+    private Stmt eliminateLoopBody(Facts entry, Set<String> assigned, Stmt body) {
+        facts = entry.copy();
+        facts.forget(assigned);
+        Stmt result = eliminateStmt(body);
+        facts = entry.copy();
+        facts.forget(assigned);
+        return result;
+    }
+
+    // ── Versioning ──────────────────────────────────────────
+
+    private Stmt versionWhile(Facts entry, Set<String> assigned, Expr condition, Stmt body) {
+        List<Stmt> statements = body instanceof Block ? ((Block) body).statements : List.of(body);
+        for (Counter counter : counters(condition, entry, assigned)) {
+            // The increment must be a top-level statement, and the only assignment to i
+            int step = -1;
+            for (int s = 0; s < statements.size(); s++) {
+                Set<String> written = new HashSet<>();
+                LoopInvariantHoister.collectAssigned(statements.get(s), written);
+                if (!written.contains(counter.index)) continue;
+                if (step >= 0 || !isStep(statements.get(s), counter.index)) {
+                    step = -1;
+                    break;
+                }
+                step = s;
+            }
+            if (step < 0) continue;
+
+            List<Stmt> region = statements.subList(0, step);
+            List<Stmt> rest = statements.subList(step, statements.size());
+            Proof proof = prove(counter, entry, assigned, region, !containsGuard(body));
+            if (proof.isEmpty()) continue;
+
+            Stmt fast = new Block(concat(new Rewriter(counter.index, proof.all()).stmts(region), rest));
+            if (proof.guarded.isEmpty()) return new WhileStmt(condition, fast);
+            Stmt slow = new Block(concat(new Rewriter(counter.index, proof.proven).stmts(region), rest));
+            return new IfStmt(proof.guard(counter), new WhileStmt(condition, fast), new WhileStmt(condition, slow));
+        }
+        return new WhileStmt(condition, body);
+    }
+
+    private Stmt versionFor(Facts entry, Set<String> assigned, Stmt init, Expr condition, Stmt body, Stmt increment) {
+        if (condition != null && increment != null) {
+            for (Counter counter : counters(condition, entry, assigned)) {
+                Set<String> written = new HashSet<>();
+                LoopInvariantHoister.collectAssigned(body, written);
+                if (written.contains(counter.index) || !isStep(increment, counter.index)) continue;
+
+                List<Stmt> region = List.of(body);
+                Proof proof = prove(counter, entry, assigned, region, !containsGuard(body));
+                if (proof.isEmpty()) continue;
+
+                Stmt fast = new Rewriter(counter.index, proof.all()).stmt(body);
+                if (proof.guarded.isEmpty()) return new ForStmt(init, condition, increment, fast);
+                Stmt slow = new Rewriter(counter.index, proof.proven).stmt(body);
+                Stmt versioned = new IfStmt(proof.guard(counter),
+                        new ForStmt(null, condition, increment, fast),
+                        new ForStmt(null, condition, increment, slow));
+                if (init == null) return versioned;
+                // The guard reads the values the init leaves, so it goes after it
+                List<Stmt> statements = new ArrayList<>();
+                statements.add(init);
+                statements.add(versioned);
+                return new Block(statements);
+            }
+        }
+        return new ForStmt(init, condition, increment, body);
+    }
+
+    /** The candidate induction variables the condition bounds, in condition order. */
+    static List<Counter> counters(Expr condition, Facts entry, Set<String> assigned) {
+        List<Counter> counters = new ArrayList<>();
+        for (Expr test : conjuncts(condition, new ArrayList<>())) {
+            if (!(test instanceof BinaryExpr)) continue;
+            BinaryExpr b = (BinaryExpr) test;
+            Expr index;
+            Expr bound;
+            switch (b.operator.type) {
+                case LESS:
+                case LESS_EQUAL:
+                    index = b.left;
+                    bound = b.right;
+                    break;
+                case GREATER:
+                case GREATER_EQUAL:
+                    index = b.right;
+                    bound = b.left;
+                    break;
+                default:
+                    continue;
+            }
+            if (!(index instanceof Variable)) continue;
+            String name = ((Variable) index).name.lexeme;
+            Double start = entry.numbers.get(name);
+            if (start == null) continue;
+
+            Double boundValue;
+            if (bound instanceof Literal && ((Literal) bound).value instanceof Double
+                    && Double.isFinite((Double) ((Literal) bound).value)) {
+                boundValue = (Double) ((Literal) bound).value;
+            } else if (bound instanceof Variable && !assigned.contains(((Variable) bound).name.lexeme)
+                       && !((Variable) bound).name.lexeme.equals(name)) {
+                boundValue = entry.numbers.get(((Variable) bound).name.lexeme);
+            } else {
+                continue;
+            }
+            boolean inclusive = b.operator.type == TokenType.LESS_EQUAL || b.operator.type == TokenType.GREATER_EQUAL;
+            counters.add(new Counter(name, start, bound, boundValue, inclusive));
+        }
+        return counters;
+    }
+
+    /** The tests that must all be true for an "and" chain to be true. */
+    private static List<Expr> conjuncts(Expr expr, List<Expr> out) {
+        if (expr instanceof BinaryExpr && ((BinaryExpr) expr).operator.type == TokenType.AND) {
+            conjuncts(((BinaryExpr) expr).left, out);
+            conjuncts(((BinaryExpr) expr).right, out);
+        } else {
+            out.add(expr);
+        }
+        return out;
+    }
+
+    /** True if stmt is i = i + c or i = c + i, for a positive whole literal c. */
+    private static boolean isStep(Stmt stmt, String index) {
+        return stepOf(stmt, index) != null;
+    }
+
+    /** c if stmt is i = i + c or i = c + i, for a positive whole literal c, else null. */
+    static Double stepOf(Stmt stmt, String index) {
+        if (!(stmt instanceof Assignment) || !((Assignment) stmt).name.lexeme.equals(index)) return null;
+        Expr value = ((Assignment) stmt).value;
+        if (!(value instanceof BinaryExpr) || ((BinaryExpr) value).operator.type != TokenType.PLUS) return null;
+        BinaryExpr b = (BinaryExpr) value;
+        Expr step = isVariable(b.left, index) ? b.right : isVariable(b.right, index) ? b.left : null;
+        Double c = wholeLiteral(step);
+        return c != null && c > 0 ? c : null;
+    }
+
+    // ── Proofs ──────────────────────────────────────────────
+
+    /** Sorts the accesses in region that index with the counter into proven, guarded and neither. */
+    private static Proof prove(Counter counter, Facts entry, Set<String> assigned, List<Stmt> region,
+                               boolean mayVersion) {
+        Proof proof = new Proof();
+        List<ArrayIndex> accesses = new ArrayList<>();
+        for (Stmt stmt : region) collectAccesses(stmt, accesses);
+
+        for (ArrayIndex access : accesses) {
+            String array = access.array.lexeme;
+            Integer k = offsetOf(access.index, counter.index);
+            if (k == null || assigned.contains(array) || counter.start + k < 0) continue;
+
+            Integer length = entry.lengths.get(array);
+            if (length != null && counter.boundValue != null) {
+                if (counter.lastIndex(k) < length) proof.proven.computeIfAbsent(array, a -> new TreeSet<>()).add(k);
+            } else if (mayVersion) {
+                proof.guarded.computeIfAbsent(array, a -> new TreeSet<>()).add(k);
+                proof.tokens.putIfAbsent(array, access.array);
+            }
+        }
+        return proof;
+    }
+
+    /** The offset k if index is i, i + k, k + i or i - k for a whole literal k, else null. */
+    private static Integer offsetOf(Expr index, String counter) {
+        if (isVariable(index, counter)) return 0;
+        if (!(index instanceof BinaryExpr)) return null;
+        BinaryExpr b = (BinaryExpr) index;
+        Double k = null;
+        if (b.operator.type == TokenType.PLUS) {
+            k = isVariable(b.left, counter) ? wholeLiteral(b.right) : isVariable(b.right, counter) ? wholeLiteral(b.left) : null;
+        } else if (b.operator.type == TokenType.MINUS && isVariable(b.left, counter)) {
+            k = wholeLiteral(b.right);
+            if (k != null) k = -k;
+        }
+        return k != null ? k.intValue() : null;
+    }
+
+    /** An induction variable: index counts up from start while index < bound (or <= bound). */
+    static final class Counter {
+        final String index;
+        final double start;
+        final Expr bound;             // Literal or Variable
+        final Double boundValue;      // null if only known at run time
+        final boolean inclusive;
+
+        Counter(String index, double start, Expr bound, Double boundValue, boolean inclusive) {
+            this.index = index;
+            this.start = start;
+            this.bound = bound;
+            this.boundValue = boundValue;
+            this.inclusive = inclusive;
+        }
+
+        /** The largest value of index + k in the body, for a known bound. */
+        double lastIndex(int k) {
+            double last = inclusive ? Math.floor(boundValue) : Math.ceil(boundValue) - 1;
+            return last + k;
+        }
+    }
+
+    /** Offsets proven per array, and offsets that hold if the guard passes. */
+    private static final class Proof {
+        final Map<String, Set<Integer>> proven = new HashMap<>();
+        final Map<String, TreeSet<Integer>> guarded = new LinkedHashMap<>();
+        final Map<String, Token> tokens = new HashMap<>();
+
+        boolean isEmpty() {
+            return proven.isEmpty() && guarded.isEmpty();
+        }
+
+        Map<String, Set<Integer>> all() {
+            Map<String, Set<Integer>> all = new HashMap<>();
+            proven.forEach((array, offsets) -> all.computeIfAbsent(array, a -> new TreeSet<>()).addAll(offsets));
+            guarded.forEach((array, offsets) -> all.computeIfAbsent(array, a -> new TreeSet<>()).addAll(offsets));
+            return all;
+        }
+
+        /** One test per guarded array, for its largest offset. */
+        Expr guard(Counter counter) {
+            Expr guard = null;
+            for (Map.Entry<String, TreeSet<Integer>> entry : guarded.entrySet()) {
+                int k = entry.getValue().last();
+                Token array = tokens.get(entry.getKey());
+                Expr test = counter.boundValue != null
+                        ? new BoundsGuard(array, null, counter.lastIndex(k))
+                        : new BoundsGuard(array, ((Variable) counter.bound).name, counter.inclusive ? k : k - 1);
+                guard = guard == null ? test : new BinaryExpr(guard, AND, test);
+            }
+            return guard;
+        }
+    }
+
+    // ── Rewriting ───────────────────────────────────────────
+
+    /** Copies statements, marking the accesses array[counter + k] listed in offsets unchecked. */
+    private static final class Rewriter {
+        private final String counter;
+        private final Map<String, Set<Integer>> offsets;
+
+        Rewriter(String counter, Map<String, Set<Integer>> offsets) {
+            this.counter = counter;
+            this.offsets = offsets;
+        }
+
+        List<Stmt> stmts(List<Stmt> statements) {
+            List<Stmt> result = new ArrayList<>();
+            for (Stmt s : statements) result.add(stmt(s));
+            return result;
+        }
+
+        Stmt stmt(Stmt stmt) {
+            if (stmt instanceof VarDecl) {
+                VarDecl v = (VarDecl) stmt;
+                return new VarDecl(v.name, expr(v.initializer));
+            } else if (stmt instanceof Assignment) {
+                Assignment a = (Assignment) stmt;
+                return new Assignment(a.name, expr(a.value));
+            } else if (stmt instanceof ArrayAssignment) {
+                ArrayAssignment aa = (ArrayAssignment) stmt;
+                return new ArrayAssignment(aa.name, expr(aa.index), expr(aa.value), aa.checked && !inRange(aa.name, aa.index));
+            } else if (stmt instanceof PrintStmt) {
+                return new PrintStmt(expr(((PrintStmt) stmt).expression));
+            } else if (stmt instanceof IfStmt) {
+                IfStmt i = (IfStmt) stmt;
+                return new IfStmt(expr(i.condition), stmt(i.thenBranch), i.elseBranch != null ? stmt(i.elseBranch) : null);
+            } else if (stmt instanceof WhileStmt) {
+                WhileStmt w = (WhileStmt) stmt;
+                return new WhileStmt(expr(w.condition), stmt(w.body));
+            } else if (stmt instanceof ForStmt) {
+                ForStmt f = (ForStmt) stmt;
+                return new ForStmt(f.init != null ? stmt(f.init) : null, f.condition != null ? expr(f.condition) : null,
+                        f.increment != null ? stmt(f.increment) : null, stmt(f.body));
+            } else if (stmt instanceof Block) {
+                return new Block(stmts(((Block) stmt).statements));
+            }
+            return stmt;
+        }
+
+        private Expr expr(Expr expr) {
+            if (expr instanceof UnaryExpr) {
+                UnaryExpr u = (UnaryExpr) expr;
+                return new UnaryExpr(u.operator, expr(u.operand));
+            } else if (expr instanceof BinaryExpr) {
+                BinaryExpr b = (BinaryExpr) expr;
+                return new BinaryExpr(expr(b.left), b.operator, expr(b.right));
+            } else if (expr instanceof ArrayAccess) {
+                ArrayAccess aa = (ArrayAccess) expr;
+                return new ArrayAccess(aa.name, expr(aa.index), aa.checked && !inRange(aa.name, aa.index));
+            } else if (expr instanceof ArrayExpr) {
+                List<Expr> elements = new ArrayList<>();
+                for (Expr element : ((ArrayExpr) expr).elements) elements.add(expr(element));
+                return new ArrayExpr(elements);
+            }
+            return expr;
+        }
+
+        private boolean inRange(Token array, Expr index) {
+            Set<Integer> proven = offsets.get(array.lexeme);
+            Integer k = offsetOf(index, counter);
+            return proven != null && k != null && proven.contains(k);
+        }
+    }
+
+    // ── Facts ───────────────────────────────────────────────
+
+    /** Variables known to hold a whole number, or an array of known length. */
+    static final class Facts {
+        final Map<String, Double> numbers = new HashMap<>();
+        final Map<String, Integer> lengths = new HashMap<>();
+
+        void assign(String name, Expr value) {
+            Double number = wholeLiteral(value);
+            Integer length = value instanceof ArrayExpr ? Integer.valueOf(((ArrayExpr) value).elements.size()) : null;
+            if (value instanceof Variable) {
+                number = numbers.get(((Variable) value).name.lexeme);
+                length = lengths.get(((Variable) value).name.lexeme);
+            }
+            numbers.remove(name);
+            lengths.remove(name);
+            if (number != null) numbers.put(name, number);
+            if (length != null) lengths.put(name, length);
+        }
+
+        void forget(Set<String> names) {
+            numbers.keySet().removeAll(names);
+            lengths.keySet().removeAll(names);
+        }
+
+        /** Keeps the facts that also hold in other. */
+        void join(Facts other) {
+            numbers.entrySet().removeIf(e -> !e.getValue().equals(other.numbers.get(e.getKey())));
+            lengths.entrySet().removeIf(e -> !e.getValue().equals(other.lengths.get(e.getKey())));
+        }
+
+        Facts copy() {
+            Facts copy = new Facts();
+            copy.numbers.putAll(numbers);
+            copy.lengths.putAll(lengths);
+            return copy;
+        }
+    }
+
+    // ── Helpers ─────────────────────────────────────────────
+
+    /** An array access in the loop body: array[index]. */
+    private static final class ArrayIndex {
+        final Token array;
+        final Expr index;
+
+        ArrayIndex(Token array, Expr index) {
+            this.array = array;
+            this.index = index;
+        }
+    }
+
+    private static void collectAccesses(Stmt stmt, List<ArrayIndex> out) {
+        if (stmt instanceof VarDecl) {
+            collectAccesses(((VarDecl) stmt).initializer, out);
+        } else if (stmt instanceof Assignment) {
+            collectAccesses(((Assignment) stmt).value, out);
+        } else if (stmt instanceof ArrayAssignment) {
+            ArrayAssignment aa = (ArrayAssignment) stmt;
+            collectAccesses(aa.value, out);
+            collectAccesses(aa.index, out);
+            if (aa.checked) out.add(new ArrayIndex(aa.name, aa.index));
+        } else if (stmt instanceof PrintStmt) {
+            collectAccesses(((PrintStmt) stmt).expression, out);
+        } else if (stmt instanceof IfStmt) {
+            IfStmt i = (IfStmt) stmt;
+            collectAccesses(i.condition, out);
+            collectAccesses(i.thenBranch, out);
+            if (i.elseBranch != null) collectAccesses(i.elseBranch, out);
+        } else if (stmt instanceof WhileStmt) {
+            collectAccesses(((WhileStmt) stmt).condition, out);
+            collectAccesses(((WhileStmt) stmt).body, out);
+        } else if (stmt instanceof ForStmt) {
+            ForStmt f = (ForStmt) stmt;
+            if (f.init != null) collectAccesses(f.init, out);
+            if (f.condition != null) collectAccesses(f.condition, out);
+            if (f.increment != null) collectAccesses(f.increment, out);
+            collectAccesses(f.body, out);
+        } else if (stmt instanceof Block) {
+            for (Stmt s : ((Block) stmt).statements) collectAccesses(s, out);
+        }
+    }
+
+    private static void collectAccesses(Expr expr, List<ArrayIndex> out) {
+        if (expr instanceof UnaryExpr) {
+            collectAccesses(((UnaryExpr) expr).operand, out);
+        } else if (expr instanceof BinaryExpr) {
+            collectAccesses(((BinaryExpr) expr).left, out);
+            collectAccesses(((BinaryExpr) expr).right, out);
+        } else if (expr instanceof ArrayAccess) {
+            ArrayAccess aa = (ArrayAccess) expr;
+            collectAccesses(aa.index, out);
+            if (aa.checked) out.add(new ArrayIndex(aa.name, aa.index));
+        } else if (expr instanceof ArrayExpr) {
+            for (Expr element : ((ArrayExpr) expr).elements) collectAccesses(element, out);
+        }
+    }
+
+    /** True if stmt holds a loop this pass versioned. */
+    private static boolean containsGuard(Stmt stmt) {
+        if (stmt instanceof IfStmt) {
+            IfStmt i = (IfStmt) stmt;
+            return isGuard(i.condition) || containsGuard(i.thenBranch)
+                    || (i.elseBranch != null && containsGuard(i.elseBranch));
+        }
+        if (stmt instanceof WhileStmt) return containsGuard(((WhileStmt) stmt).body);
+        if (stmt instanceof ForStmt) return containsGuard(((ForStmt) stmt).body);
+        if (stmt instanceof Block) {
+            for (Stmt s : ((Block) stmt).statements) {
+                if (containsGuard(s)) return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isGuard(Expr expr) {
+        if (expr instanceof BoundsGuard) return true;
+        return expr instanceof BinaryExpr && isGuard(((BinaryExpr) expr).left);
+    }
+
+    static boolean isVariable(Expr expr, String name) {
+        return expr instanceof Variable && ((Variable) expr).name.lexeme.equals(name);
+    }
+
+    /** The value of a whole-number literal of modest size, else null. */
+    static Double wholeLiteral(Expr expr) {
+        if (!(expr instanceof Literal) || !(((Literal) expr).value instanceof Double)) return null;
+        double value = (Double) ((Literal) expr).value;
+        return value == Math.rint(value) && Math.abs(value) <= 1 << 30 ? value : null;
+    }
+
+    private static List<Stmt> concat(List<Stmt> first, List<Stmt> second) {
+        List<Stmt> result = new ArrayList<>(first);
+        result.addAll(second);
+        return result;
+    }
+}
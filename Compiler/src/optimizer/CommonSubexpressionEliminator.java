@@ -0,0 +1,354 @@
+package optimizer;
+
+import ast.*;
+import lexer.Token;
+import lexer.TokenType;
+import semantic.SymbolTable;
+import semantic.Type;
+import semantic.TypeInference;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * AST optimization pass that computes a repeated expression once: its first
+ * evaluation saves the value in a temporary (a {@link Memo}), and later
+ * occurrences read the temporary while the value is still the same. In
+ * a[i] * a[i] + a[i] the element is read once.
+ *
+ * Candidates are the unary and binary operations (not and/or) and array
+ * element reads, over variables and literals; an expression that builds an
+ * array is never shared. A value stays available until a variable it reads
+ * is assigned, and one that reads array contents until any array store
+ * (another variable may refer to the same array). Besides element reads,
+ * ==, != and + read the contents of an operand that may be an array.
+ *
+ * Availability follows control flow:
+ *   - a condition's expressions are available in both branches and after
+ *     the if; an expression computed in one branch is not available after it
+ *   - a loop starts from what is available before it, minus everything the
+ *     loop may change, and is left with what its condition made available
+ *   - an expression in the right operand of and/or, which may not run, is
+ *     available only within that operand
+ *
+ * The first occurrence is still evaluated where it was, so a program fails
+ * with the same error, at the same point, as before.
+ *
+ * Saving a value is not free on the stack machine (a DUP and a STORE_SLOT),
+ * and an operation on two variables is often a single superinstruction
+ * there, so stack code only shares expressions that cost at least
+ * STACK_MINIMUM_COST; register code saves for free, by writing the temporary's
+ * register directly. When the only reuse directly follows the first
+ * occurrence, as in a[i + 1] * a[i + 1], the temporary's store and load
+ * cancel out (see ir.DeadStores) and only the DUP remains.
+ *
+ * Temporaries are named $cse0, $cse1, ... and get slots in the SymbolTable.
+ */
+public class CommonSubexpressionEliminator {
+    /**
+     * Cost of x + y, a[i] + 1 or a[i]: operations count 1, checked array reads
+     * 2 (they check the index). A read whose check BoundsCheckEliminator
+     * dropped costs 1: with a variable index it is a single
+     * LOAD_ARRAY_VAR_UNCHECKED, cheaper than saving and reloading it.
+     */
+    public static final int STACK_MINIMUM_COST = 2;
+    public static final int REGISTER_MINIMUM_COST = 1;
+
+    private final SymbolTable symbols;
+    private final int minimumCost;
+    private int temporaries = 0;
+
+    // First occurrence of each available expression, by key
+    private Map<String, Expr> available = new HashMap<>();
+
+    // Occurrences that reuse an earlier one, and the temporary of each first occurrence reused
+    private final Map<Expr, Expr> reuses = new IdentityHashMap<>();
+    private final Map<Expr, Token> temps = new IdentityHashMap<>();
+
+    private final Map<Expr, String> keys = new IdentityHashMap<>();
+    private final Map<Expr, Set<String>> reads = new IdentityHashMap<>();
+    private TypeInference types = new TypeInference();
+
+    public CommonSubexpressionEliminator(SymbolTable symbols, int minimumCost) {
+        this.symbols = symbols;
+        this.minimumCost = minimumCost;
+    }
+
+    // ── Public API ──────────────────────────────────────────
+
+    public List<Stmt> eliminate(List<Stmt> statements) {
+        types = new TypeInference().infer(statements);
+        for (Stmt stmt : statements) scan(stmt);
+        List<Stmt> result = new ArrayList<>();
+        for (Stmt stmt : statements) result.add(rewrite(stmt));
+        return result;
+    }
+
+    // ── Finding repeats ─────────────────────────────────────
+
+    private void scan(Stmt stmt) {
+        if (stmt instanceof VarDecl) {
+            VarDecl v = (VarDecl) stmt;
+            scan(v.initializer);
+            kill(v.name.lexeme);
+
+        } else if (stmt instanceof Assignment) {
+            Assignment a = (Assignment) stmt;
+            scan(a.value);
+            kill(a.name.lexeme);
+
+        } else if (stmt instanceof ArrayAssignment) {
+            ArrayAssignment aa = (ArrayAssignment) stmt;
+            scan(aa.value);
+            scan(aa.index);
+            killArrayReads();
+
+        } else if (stmt instanceof PrintStmt) {
+            scan(((PrintStmt) stmt).expression);
+
+        } else if (stmt instanceof IfStmt) {
+            IfStmt i = (IfStmt) stmt;
+            scan(i.condition);
+            Map<String, Expr> before = available;
+            available = new HashMap<>(before);
+            scan(i.thenBranch);
+            Map<String, Expr> afterThen = available;
+            available = new HashMap<>(before);
+            if (i.elseBranch != null) scan(i.elseBranch);
+            available.entrySet().removeIf(e -> afterThen.get(e.getKey()) != e.getValue());
+
+        } else if (stmt instanceof WhileStmt) {
+            WhileStmt w = (WhileStmt) stmt;
+            enterLoop(w.body, null);
+            scan(w.condition);
+            Map<String, Expr> exit = available;
+            available = new HashMap<>(exit);
+            scan(w.body);
+            available = exit;
+
+        } else if (stmt instanceof ForStmt) {
+            ForStmt f = (ForStmt) stmt;
+            if (f.init != null) scan(f.init);
+            enterLoop(f.body, f.increment);
+            if (f.condition != null) scan(f.condition);
+            Map<String, Expr> exit = available;
+            available = new HashMap<>(exit);
+            scan(f.body);
+            if (f.increment != null) scan(f.increment);
+            available = exit;
+
+        } else if (stmt instanceof Block) {
+            for (Stmt s : ((Block) stmt).statements) scan(s);
+        }
+    }
+
+    /** At a loop head, forgets every value the loop may change. */
+    private void enterLoop(Stmt body, Stmt increment) {
+        Set<String> assigned = new HashSet<>();
+        LoopInvariantHoister.collectAssigned(body, assigned);
+        if (increment != null) LoopInvariantHoister.collectAssigned(increment, assigned);
+        available = new HashMap<>(available);
+        for (String name : assigned) kill(name);
+        if (LoopInvariantHoister.storesArrays(body)
+                || (increment != null && LoopInvariantHoister.storesArrays(increment))) killArrayReads();
+    }
+
+    /** Records the occurrences in expr, in evaluation order. */
+    private void scan(Expr expr) {
+        String key = isCandidate(expr) ? key(expr) : null;
+        if (key != null && available.containsKey(key)) {
+            Expr first = available.get(key);
+            reuses.put(expr, first);
+            temps.put(first, null);
+            return;   // its operands are not evaluated either
+        }
+
+        if (expr instanceof UnaryExpr) {
+            scan(((UnaryExpr) expr).operand);
+        } else if (expr instanceof BinaryExpr) {
+            BinaryExpr b = (BinaryExpr) expr;
+            scan(b.left);
+            if (b.operator.type == TokenType.AND || b.operator.type == TokenType.OR) {
+                Map<String, Expr> before = available;
+                available = new HashMap<>(before);
+                scan(b.right);
+                available = before;
+            } else {
+                scan(b.right);
+            }
+        } else if (expr instanceof ArrayExpr) {
+            for (Expr element : ((ArrayExpr) expr).elements) scan(element);
+        } else if (expr instanceof ArrayAccess) {
+            scan(((ArrayAccess) expr).index);
+        }
+
+        if (key != null) available.put(key, expr);
+    }
+
+    private void kill(String name) {
+        available.values().removeIf(first -> reads(first).contains(name));
+    }
+
+    private void killArrayReads() {
+        available.values().removeIf(first -> reads(first).contains("[]"));
+    }
+
+    // ── Expression keys ─────────────────────────────────────
+
+    private boolean isCandidate(Expr expr) {
+        return (expr instanceof UnaryExpr || expr instanceof BinaryExpr || expr instanceof ArrayAccess)
+                && cost(expr) >= minimumCost;
+    }
+
+    /** Equal for expressions that compute the same value from the same inputs; null if not shareable. */
+    private String key(Expr expr) {
+        if (keys.containsKey(expr)) return keys.get(expr);
+        String key = null;
+        if (expr instanceof Literal) {
+            Object value = ((Literal) expr).value;
+            if (value instanceof String) {
+                key = "s" + ((String) value).length() + ":" + value;
+            } else if (value != null) {
+                key = value.getClass().getSimpleName().charAt(0) + String.valueOf(value);
+            } else {
+                key = "null";
+            }
+        } else if (expr instanceof Variable) {
+            key = "$" + ((Variable) expr).name.lexeme;
+        } else if (expr instanceof UnaryExpr) {
+            UnaryExpr u = (UnaryExpr) expr;
+            String operand = key(u.operand);
+            if (operand != null) key = "(" + u.operator.type + " " + operand + ")";
+        } else if (expr instanceof BinaryExpr) {
+            BinaryExpr b = (BinaryExpr) expr;
+            String left = key(b.left);
+            String right = key(b.right);
+            boolean conditional = b.operator.type == TokenType.AND || b.operator.type == TokenType.OR;
+            if (left != null && right != null && !conditional) key = "(" + b.operator.type + " " + left + " " + right + ")";
+        } else if (expr instanceof ArrayAccess) {
+            ArrayAccess aa = (ArrayAccess) expr;
+            String index = key(aa.index);
+            if (index != null) key = "($" + aa.name.lexeme + "[" + index + "])";
+        }
+        keys.put(expr, key);
+        return key;
+    }
+
+    /** Rough cost of evaluating expr again, in operations. */
+    private static int cost(Expr expr) {
+        if (expr instanceof UnaryExpr) return 1 + cost(((UnaryExpr) expr).operand);
+        if (expr instanceof BinaryExpr) return 1 + cost(((BinaryExpr) expr).left) + cost(((BinaryExpr) expr).right);
+        if (expr instanceof ArrayAccess) {
+            ArrayAccess aa = (ArrayAccess) expr;
+            return (aa.checked ? 2 : 1) + cost(aa.index);
+        }
+        return 0;
+    }
+
+    /** The variables expr reads; "[]" stands for the contents of any array. */
+    private Set<String> reads(Expr expr) {
+        Set<String> names = reads.get(expr);
+        if (names == null) {
+            names = new HashSet<>();
+            collectReads(expr, names);
+            reads.put(expr, names);
+        }
+        return names;
+    }
+
+    private void collectReads(Expr expr, Set<String> names) {
+        if (expr instanceof Variable) {
+            names.add(((Variable) expr).name.lexeme);
+        } else if (expr instanceof UnaryExpr) {
+            collectReads(((UnaryExpr) expr).operand, names);
+        } else if (expr instanceof BinaryExpr) {
+            BinaryExpr b = (BinaryExpr) expr;
+            collectReads(b.left, names);
+            collectReads(b.right, names);
+            // Array equality compares elements, and concatenation prints them
+            boolean contents = b.operator.type == TokenType.EQUAL_EQUAL || b.operator.type == TokenType.BANG_EQUAL
+                    || b.operator.type == TokenType.PLUS;
+            if (contents && (types.typeOf(b.left).mayBe(Type.ARRAY) || types.typeOf(b.right).mayBe(Type.ARRAY))) {
+                names.add("[]");
+            }
+        } else if (expr instanceof ArrayAccess) {
+            ArrayAccess aa = (ArrayAccess) expr;
+            names.add(aa.name.lexeme);
+            names.add("[]");
+            collectReads(aa.index, names);
+        }
+    }
+
+    // ── Rewriting ───────────────────────────────────────────
+
+    private Stmt rewrite(Stmt stmt) {
+        if (stmt instanceof VarDecl) {
+            VarDecl v = (VarDecl) stmt;
+            return new VarDecl(v.name, rewrite(v.initializer));
+        } else if (stmt instanceof Assignment) {
+            Assignment a = (Assignment) stmt;
+            return new Assignment(a.name, rewrite(a.value));
+        } else if (stmt instanceof ArrayAssignment) {
+            ArrayAssignment aa = (ArrayAssignment) stmt;
+            return new ArrayAssignment(aa.name, rewrite(aa.index), rewrite(aa.value), aa.checked);
+        } else if (stmt instanceof PrintStmt) {
+            return new PrintStmt(rewrite(((PrintStmt) stmt).expression));
+        } else if (stmt instanceof IfStmt) {
+            IfStmt i = (IfStmt) stmt;
+            return new IfStmt(rewrite(i.condition), rewrite(i.thenBranch),
+                    i.elseBranch != null ? rewrite(i.elseBranch) : null);
+        } else if (stmt instanceof WhileStmt) {
+            WhileStmt w = (WhileStmt) stmt;
+            return new WhileStmt(rewrite(w.condition), rewrite(w.body));
+        } else if (stmt instanceof ForStmt) {
+            ForStmt f = (ForStmt) stmt;
+            return new ForStmt(f.init != null ? rewrite(f.init) : null,
+                    f.condition != null ? rewrite(f.condition) : null,
+                    f.increment != null ? rewrite(f.increment) : null,
+                    rewrite(f.body));
+        } else if (stmt instanceof Block) {
+            List<Stmt> statements = new ArrayList<>();
+            for (Stmt s : ((Block) stmt).statements) statements.add(rewrite(s));
+            return new Block(statements);
+        }
+        return stmt;
+    }
+
+    private Expr rewrite(Expr expr) {
+        Expr first = reuses.get(expr);
+        if (first != null) return new Variable(temp(first));
+
+        Expr result = expr;
+        if (expr instanceof UnaryExpr) {
+            UnaryExpr u = (UnaryExpr) expr;
+            result = new UnaryExpr(u.operator, rewrite(u.operand));
+        } else if (expr instanceof BinaryExpr) {
+            BinaryExpr b = (BinaryExpr) expr;
+            result = new BinaryExpr(rewrite(b.left), b.operator, rewrite(b.right));
+        } else if (expr instanceof ArrayExpr) {
+            List<Expr> elements = new ArrayList<>();
+            for (Expr element : ((ArrayExpr) expr).elements) elements.add(rewrite(element));
+            result = new ArrayExpr(elements);
+        } else if (expr instanceof ArrayAccess) {
+            ArrayAccess aa = (ArrayAccess) expr;
+            result = new ArrayAccess(aa.name, rewrite(aa.index), aa.checked);
+        }
+        return temps.containsKey(expr) ? new Memo(temp(expr), result) : result;
+    }
+
+    private Token temp(Expr first) {
+        Token token = temps.get(first);
+        if (token == null) {
+            String name = "$cse" + temporaries++;
+            symbols.declare(name);
+            token = new Token(TokenType.IDENTIFIER, name, 0);
+            temps.put(first, token);
+        }
+        return token;
+    }
+}
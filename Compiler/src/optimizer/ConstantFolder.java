@@ -0,0 +1,278 @@
+package optimizer;
+
+import ast.*;
+import lexer.Token;
+import vm.Value;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * AST optimization pass run between the SemanticAnalyzer and the BytecodeCompiler:
+ *   - Folds operators whose operands are all literals (arithmetic, comparisons,
+ *     string concatenation, not, and/or), and "and"/"or" whose left operand
+ *     alone decides the result (the right one is then never evaluated)
+ *   - Propagates variables whose value is a known literal at the point of use
+ *   - Removes if branches, and loops, whose condition folds to a constant
+ *
+ * Folding reproduces the VM's semantics exactly (number formatting, equality,
+ * truthiness). An operation that would fail at run time (division by zero,
+ * operand type errors) is left in place so it still fails at run time.
+ *
+ * Propagation tracks, statement by statement, which variables hold a known
+ * literal on every path reaching the current point. At the end of an if the
+ * facts of both branches are intersected; before a loop every variable the
+ * loop assigns is forgotten, since its value may change on the back edge.
+ */
+public class ConstantFolder {
+    private Map<String, Object> constants = new HashMap<>();
+
+    // ── Public API ──────────────────────────────────────────
+
+    public List<Stmt> fold(List<Stmt> statements) {
+        return foldAll(statements);
+    }
+
+    // ── Statements ──────────────────────────────────────────
+
+    private List<Stmt> foldAll(List<Stmt> statements) {
+        List<Stmt> result = new ArrayList<>();
+        for (Stmt stmt : statements) {
+            Stmt folded = foldStmt(stmt);
+            if (folded != null) result.add(folded);
+        }
+        return result;
+    }
+
+    /** Returns the folded statement, or null if it has been removed entirely. */
+    private Stmt foldStmt(Stmt stmt) {
+        if (stmt instanceof VarDecl) {
+            VarDecl v = (VarDecl) stmt;
+            Expr value = foldExpr(v.initializer);
+            bind(v.name, value);
+            return new VarDecl(v.name, value);
+
+        } else if (stmt instanceof Assignment) {
+            Assignment a = (Assignment) stmt;
+            Expr value = foldExpr(a.value);
+            bind(a.name, value);
+            return new Assignment(a.name, value);
+
+        } else if (stmt instanceof ArrayAssignment) {
+            ArrayAssignment aa = (ArrayAssignment) stmt;
+            return new ArrayAssignment(aa.name, foldExpr(aa.index), foldExpr(aa.value));
+
+        } else if (stmt instanceof PrintStmt) {
+            return new PrintStmt(foldExpr(((PrintStmt) stmt).expression));
+
+        } else if (stmt instanceof IfStmt) {
+            return foldIf((IfStmt) stmt);
+
+        } else if (stmt instanceof WhileStmt) {
+            WhileStmt w = (WhileStmt) stmt;
+            forgetAssigned(w.body);
+            Expr condition = foldExpr(w.condition);
+            if (isConstant(condition) && !isTruthy(literal(condition))) return null;
+            Map<String, Object> entry = enterLoop();
+            Stmt body = orEmpty(foldStmt(w.body));
+            constants = entry;
+            return new WhileStmt(condition, body);
+
+        } else if (stmt instanceof ForStmt) {
+            ForStmt f = (ForStmt) stmt;
+            Stmt init = f.init != null ? foldStmt(f.init) : null;
+            forgetAssigned(f.body);
+            if (f.increment != null) forgetAssigned(f.increment);
+            Expr condition = f.condition != null ? foldExpr(f.condition) : null;
+            if (isConstant(condition) && !isTruthy(literal(condition))) return init;
+            Map<String, Object> entry = enterLoop();
+            Stmt body = orEmpty(foldStmt(f.body));
+            Stmt increment = f.increment != null ? foldStmt(f.increment) : null;
+            constants = entry;
+            return new ForStmt(init, condition, increment, body);
+
+        } else if (stmt instanceof Block) {
+            return new Block(foldAll(((Block) stmt).statements));
+        }
+        return stmt;
+    }
+
+    private Stmt foldIf(IfStmt stmt) {
+        Expr condition = foldExpr(stmt.condition);
+        if (isConstant(condition)) {
+            Stmt taken = isTruthy(literal(condition)) ? stmt.thenBranch : stmt.elseBranch;
+            return taken != null ? foldStmt(taken) : null;
+        }
+
+        Map<String, Object> before = constants;
+        constants = new HashMap<>(before);
+        Stmt thenBranch = orEmpty(foldStmt(stmt.thenBranch));
+        Map<String, Object> afterThen = constants;
+
+        constants = new HashMap<>(before);
+        Stmt elseBranch = stmt.elseBranch != null ? orEmpty(foldStmt(stmt.elseBranch)) : null;
+        constants.entrySet().removeIf(e -> !e.getValue().equals(afterThen.get(e.getKey())));
+
+        return new IfStmt(condition, thenBranch, elseBranch);
+    }
+
+    /**
+     * Starts folding a loop body with a copy of the current facts and returns the
+     * facts at loop entry, which the caller restores after the body: facts
+     * learned inside one iteration do not hold after the loop.
+     */
+    private Map<String, Object> enterLoop() {
+        Map<String, Object> entry = constants;
+        constants = new HashMap<>(entry);
+        return entry;
+    }
+
+    private void bind(Token name, Expr value) {
+        if (isConstant(value)) {
+            constants.put(name.lexeme, literal(value));
+        } else {
+            constants.remove(name.lexeme);
+        }
+    }
+
+    private void forgetAssigned(Stmt stmt) {
+        Set<String> assigned = new HashSet<>();
+        collectAssigned(stmt, assigned);
+        constants.keySet().removeAll(assigned);
+    }
+
+    private static void collectAssigned(Stmt stmt, Set<String> assigned) {
+        if (stmt instanceof VarDecl) {
+            assigned.add(((VarDecl) stmt).name.lexeme);
+        } else if (stmt instanceof Assignment) {
+            assigned.add(((Assignment) stmt).name.lexeme);
+        } else if (stmt instanceof IfStmt) {
+            IfStmt i = (IfStmt) stmt;
+            collectAssigned(i.thenBranch, assigned);
+            if (i.elseBranch != null) collectAssigned(i.elseBranch, assigned);
+        } else if (stmt instanceof WhileStmt) {
+            collectAssigned(((WhileStmt) stmt).body, assigned);
+        } else if (stmt instanceof ForStmt) {
+            ForStmt f = (ForStmt) stmt;
+            if (f.init != null) collectAssigned(f.init, assigned);
+            if (f.increment != null) collectAssigned(f.increment, assigned);
+            collectAssigned(f.body, assigned);
+        } else if (stmt instanceof Block) {
+            for (Stmt s : ((Block) stmt).statements) collectAssigned(s, assigned);
+        }
+    }
+
+    private static Stmt orEmpty(Stmt stmt) {
+        return stmt != null ? stmt : new Block(Collections.emptyList());
+    }
+
+    // ── Expressions ─────────────────────────────────────────
+
+    private Expr foldExpr(Expr expr) {
+        if (expr instanceof Variable) {
+            String name = ((Variable) expr).name.lexeme;
+            return constants.containsKey(name) ? new Literal(constants.get(name)) : expr;
+
+        } else if (expr instanceof UnaryExpr) {
+            UnaryExpr u = (UnaryExpr) expr;
+            Expr operand = foldExpr(u.operand);
+            if (isConstant(operand)) {
+                Object value = literal(operand);
+                switch (u.operator.type) {
+                    case MINUS:
+                        if (value instanceof Double) return new Literal(-(Double) value);
+                        break;
+                    case NOT:
+                        return new Literal(!isTruthy(value));
+                    default:
+                        break;
+                }
+            }
+            return new UnaryExpr(u.operator, operand);
+
+        } else if (expr instanceof BinaryExpr) {
+            BinaryExpr b = (BinaryExpr) expr;
+            Expr left = foldExpr(b.left);
+            Expr right = foldExpr(b.right);
+            if (isConstant(left) && decides(b.operator, literal(left))) {
+                return new Literal(isTruthy(literal(left)));
+            }
+            if (isConstant(left) && isConstant(right)) {
+                Object value = evaluate(b.operator, literal(left), literal(right));
+                if (value != null) return new Literal(value);
+            }
+            return new BinaryExpr(left, b.operator, right);
+
+        } else if (expr instanceof ArrayExpr) {
+            List<Expr> elements = new ArrayList<>();
+            for (Expr elem : ((ArrayExpr) expr).elements) {
+                elements.add(foldExpr(elem));
+            }
+            return new ArrayExpr(elements);
+
+        } else if (expr instanceof ArrayAccess) {
+            ArrayAccess aa = (ArrayAccess) expr;
+            return new ArrayAccess(aa.name, foldExpr(aa.index));
+        }
+        return expr;
+    }
+
+    /** True if operator short-circuits when its left operand is left: false and ..., true or ... */
+    private static boolean decides(Token operator, Object left) {
+        switch (operator.type) {
+            case AND: return !isTruthy(left);
+            case OR:  return isTruthy(left);
+            default:  return false;
+        }
+    }
+
+    /** Computes a binary operator on two literals, or returns null if it would fail at run time. */
+    private static Object evaluate(Token operator, Object a, Object b) {
+        boolean numbers = a instanceof Double && b instanceof Double;
+        switch (operator.type) {
+            case PLUS:
+                if (numbers) return (Double) a + (Double) b;
+                if (a instanceof String || b instanceof String) return stringify(a) + stringify(b);
+                return null;
+            case MINUS:         return numbers ? (Double) a - (Double) b : null;
+            case STAR:          return numbers ? (Double) a * (Double) b : null;
+            case SLASH:         return numbers && (Double) b != 0 ? (Double) a / (Double) b : null;
+            case GREATER:       return numbers ? (Object) ((Double) a > (Double) b) : null;
+            case GREATER_EQUAL: return numbers ? (Object) ((Double) a >= (Double) b) : null;
+            case LESS:          return numbers ? (Object) ((Double) a < (Double) b) : null;
+            case LESS_EQUAL:    return numbers ? (Object) ((Double) a <= (Double) b) : null;
+            // Double.equals, like the VM, treats NaN as equal to itself and 0 as unequal to -0
+            case EQUAL_EQUAL:   return a.equals(b);
+            case BANG_EQUAL:    return !a.equals(b);
+            case AND:           return isTruthy(a) && isTruthy(b);
+            case OR:            return isTruthy(a) || isTruthy(b);
+            default:            return null;
+        }
+    }
+
+    // ── Literal semantics (must match vm.Heap and vm.Value) ─
+
+    private static boolean isConstant(Expr expr) {
+        return expr instanceof Literal && ((Literal) expr).value != null;
+    }
+
+    private static Object literal(Expr expr) {
+        return ((Literal) expr).value;
+    }
+
+    private static boolean isTruthy(Object value) {
+        if (value instanceof Double) return (Double) value != 0;
+        if (value instanceof Boolean) return (Boolean) value;
+        return true;
+    }
+
+    private static String stringify(Object value) {
+        if (value instanceof Double) return Value.formatNumber((Double) value);
+        return String.valueOf(value);
+    }
+}
@@ -0,0 +1,372 @@
+package optimizer;
+
+import ast.*;
+import lexer.Token;
+import lexer.TokenType;
+import optimizer.BoundsCheckEliminator.Counter;
+import optimizer.BoundsCheckEliminator.Facts;
+import semantic.SymbolTable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * AST optimization pass that strength-reduces for loops: a product i * k of
+ * the loop counter and a constant becomes a temporary that starts at
+ * start * k and is increased by c * k wherever the counter is increased by c.
+ *
+ * The counter i is a basic induction variable, found as in
+ * {@link BoundsCheckEliminator}: it holds a known whole number on entry, the
+ * increment is i = i + c for a positive whole literal c, the body never
+ * assigns it, and the condition bounds it by a value known at compile time.
+ * Each product i * k or k * i in the body, for a positive whole literal k, is
+ * a derived induction variable. One temporary is kept per k, declared before
+ * the loop and updated at the end of the body (the increment runs right
+ * after it, and there is no continue or break).
+ *
+ * The rewrite must produce exactly the doubles the products did. Every value
+ * involved is a whole number, so it does whenever each value the temporary
+ * takes, up to the one it has when the loop exits, is at most 2^53 in
+ * magnitude: below that, doubles represent whole numbers exactly, and both
+ * the product and the sum are exact. Loops whose range does not prove that
+ * are left alone. Since k > 0, a zero counter gives +0 either way.
+ *
+ * A variable the body only ever sets to a product, in a top-level statement
+ * d = i * k, is itself a derived induction variable. If nothing reads d
+ * outside the loop, or inside it before that statement, its value is dead
+ * once the loop exits, so the statement is dropped and the reads after it
+ * read the temporary instead.
+ *
+ * Temporaries are named $iv0, $iv1, ... and get slots in the SymbolTable.
+ * Inner loops are processed first.
+ */
+public class InductionVariableReducer {
+    private static final Token PLUS = new Token(TokenType.PLUS, "+", 0);
+    private static final double EXACT = 9007199254740992.0;   // 2^53
+
+    private final SymbolTable symbols;
+    private int temporaries = 0;
+
+    // Reads of each variable anywhere in the program
+    private final Map<String, Integer> reads = new HashMap<>();
+    // What holds at the current point of the program
+    private Facts facts = new Facts();
+
+    public InductionVariableReducer(SymbolTable symbols) {
+        this.symbols = symbols;
+    }
+
+    // ── Public API ──────────────────────────────────────────
+
+    public List<Stmt> reduce(List<Stmt> statements) {
+        for (Stmt stmt : statements) countReads(stmt, reads);
+        return reduceAll(statements);
+    }
+
+    // ── Statements ──────────────────────────────────────────
+
+    private List<Stmt> reduceAll(List<Stmt> statements) {
+        List<Stmt> result = new ArrayList<>();
+        for (Stmt stmt : statements) result.add(reduceStmt(stmt));
+        return result;
+    }
+
+    private Stmt reduceStmt(Stmt stmt) {
+        if (stmt instanceof VarDecl) {
+            VarDecl v = (VarDecl) stmt;
+            facts.assign(v.name.lexeme, v.initializer);
+            return stmt;
+
+        } else if (stmt instanceof Assignment) {
+            Assignment a = (Assignment) stmt;
+            facts.assign(a.name.lexeme, a.value);
+            return stmt;
+
+        } else if (stmt instanceof IfStmt) {
+            IfStmt i = (IfStmt) stmt;
+            Facts before = facts;
+            facts = before.copy();
+            Stmt thenBranch = reduceStmt(i.thenBranch);
+            Facts afterThen = facts;
+            facts = before.copy();
+            Stmt elseBranch = i.elseBranch != null ? reduceStmt(i.elseBranch) : null;
+            facts.join(afterThen);
+            return new IfStmt(i.condition, thenBranch, elseBranch);
+
+        } else if (stmt instanceof WhileStmt) {
+            WhileStmt w = (WhileStmt) stmt;
+            Set<String> assigned = new HashSet<>();
+            LoopInvariantHoister.collectAssigned(w.body, assigned);
+            return new WhileStmt(w.condition, reduceLoopBody(facts, assigned, w.body));
+
+        } else if (stmt instanceof ForStmt) {
+            ForStmt f = (ForStmt) stmt;
+            Stmt init = f.init != null ? reduceStmt(f.init) : null;
+            Facts entry = facts;
+            Set<String> assigned = new HashSet<>();
+            LoopInvariantHoister.collectAssigned(f.body, assigned);
+            if (f.increment != null) LoopInvariantHoister.collectAssigned(f.increment, assigned);
+            Stmt body = reduceLoopBody(entry, assigned, f.body);
+            return reduceFor(entry, assigned, init, f.condition, body, f.increment);
+
+        } else if (stmt instanceof Block) {
+            return new Block(reduceAll(((Block) stmt).statements));
+        }
+        return stmt;
+    }
+
+    /** Processes a loop body; the facts left afterwards are the entry facts about variables the loop does not assign. */
+    private Stmt reduceLoopBody(Facts entry, Set<String> assigned, Stmt body) {
+        facts = entry.copy();
+        facts.forget(assigned);
+        Stmt result = reduceStmt(body);
+        facts = entry.copy();
+        facts.forget(assigned);
+        return result;
+    }
+
+    // ── Reduction ───────────────────────────────────────────
+
+    private Stmt reduceFor(Facts entry, Set<String> assigned, Stmt init, Expr condition, Stmt body, Stmt increment) {
+        if (condition != null && increment != null) {
+            for (Counter counter : BoundsCheckEliminator.counters(condition, entry, assigned)) {
+                Double step = BoundsCheckEliminator.stepOf(increment, counter.index);
+                if (step == null || counter.boundValue == null) continue;
+                Set<String> written = new HashSet<>();
+                LoopInvariantHoister.collectAssigned(body, written);
+                if (written.contains(counter.index)) continue;
+
+                // The counter ranges over start ... last while the body runs, and exits at most at last + c
+                double exit = Math.max(counter.start, counter.lastIndex(0) + step);
+                Map<Double, Token> temps = new TreeMap<>();
+                for (double k : factors(body, counter.index)) {
+                    if (Math.abs(counter.start * k) > EXACT || Math.abs(exit * k) > EXACT) continue;
+                    String name = "$iv" + temporaries++;
+                    symbols.declare(name);
+                    temps.put(k, new Token(TokenType.IDENTIFIER, name, 0));
+                }
+                if (temps.isEmpty()) continue;
+
+                Stmt reduced = new Rewriter(counter.index, temps, Map.of()).stmt(body);
+                List<Stmt> statements = new ArrayList<>(reduced instanceof Block
+                        ? ((Block) reduced).statements : List.of(reduced));
+                dropDeadCopies(statements, condition, increment, temps);
+
+                List<Stmt> result = new ArrayList<>();
+                temps.forEach((k, temp) -> {
+                    result.add(new VarDecl(temp, new Literal(counter.start * k)));
+                    statements.add(new Assignment(temp, new BinaryExpr(new Variable(temp), PLUS, new Literal(step * k))));
+                });
+                result.add(new ForStmt(init, condition, increment, new Block(statements)));
+                return new Block(result);
+            }
+        }
+        return new ForStmt(init, condition, increment, body);
+    }
+
+    /**
+     * Drops the top-level statements d = temp whose value is dead after the
+     * loop: d is assigned nowhere else in the loop, and read only by later
+     * statements of the body, which read the temporary instead.
+     */
+    private void dropDeadCopies(List<Stmt> statements, Expr condition, Stmt increment, Map<Double, Token> temps) {
+        Set<String> names = new HashSet<>();
+        for (Token temp : temps.values()) names.add(temp.lexeme);
+
+        for (int p = 0; p < statements.size(); p++) {
+            Stmt stmt = statements.get(p);
+            Token name;
+            Expr value;
+            if (stmt instanceof VarDecl) {
+                name = ((VarDecl) stmt).name;
+                value = ((VarDecl) stmt).initializer;
+            } else if (stmt instanceof Assignment) {
+                name = ((Assignment) stmt).name;
+                value = ((Assignment) stmt).value;
+            } else {
+                continue;
+            }
+            if (!(value instanceof Variable) || !names.contains(((Variable) value).name.lexeme)) continue;
+            String copy = name.lexeme;
+
+            Map<String, Integer> before = new HashMap<>();
+            Map<String, Integer> after = new HashMap<>();
+            Set<String> assigned = new HashSet<>();
+            countReads(condition, before);
+            countReads(increment, before);
+            LoopInvariantHoister.collectAssigned(increment, assigned);
+            for (int s = 0; s < statements.size(); s++) {
+                if (s == p) continue;
+                countReads(statements.get(s), s < p ? before : after);
+                LoopInvariantHoister.collectAssigned(statements.get(s), assigned);
+            }
+            if (assigned.contains(copy) || before.containsKey(copy)
+                    || !after.getOrDefault(copy, 0).equals(reads.getOrDefault(copy, 0))) continue;
+
+            Map<String, Token> renames = Map.of(copy, ((Variable) value).name);
+            Rewriter rewriter = new Rewriter(null, Map.of(), renames);
+            statements.remove(p);
+            for (int s = p; s < statements.size(); s++) statements.set(s, rewriter.stmt(statements.get(s)));
+            p--;
+        }
+    }
+
+    /** The factors k of the products counter * k and k * counter in stmt. */
+    private static Set<Double> factors(Stmt stmt, String counter) {
+        Set<Double> factors = new HashSet<>();
+        new Rewriter(counter, Map.of(), Map.of()) {
+            @Override
+            Expr product(Double k) {
+                factors.add(k);
+                return null;
+            }
+        }.stmt(stmt);
+        return factors;
+    }
+
+    /** k if expr is counter * k or k * counter for a positive whole literal k, else null. */
+    private static Double factorOf(Expr expr, String counter) {
+        if (!(expr instanceof BinaryExpr) || ((BinaryExpr) expr).operator.type != TokenType.STAR) return null;
+        BinaryExpr b = (BinaryExpr) expr;
+        Expr k = BoundsCheckEliminator.isVariable(b.left, counter) ? b.right
+               : BoundsCheckEliminator.isVariable(b.right, counter) ? b.left : null;
+        Double factor = BoundsCheckEliminator.wholeLiteral(k);
+        return factor != null && factor > 0 ? factor : null;
+    }
+
+    // ── Rewriting ───────────────────────────────────────────
+
+    /** Copies statements, replacing counter * k by the temporary for k and renamed variables by their new names. */
+    private static class Rewriter {
+        private final String counter;
+        private final Map<Double, Token> temps;
+        private final Map<String, Token> renames;
+
+        Rewriter(String counter, Map<Double, Token> temps, Map<String, Token> renames) {
+            this.counter = counter;
+            this.temps = temps;
+            this.renames = renames;
+        }
+
+        Stmt stmt(Stmt stmt) {
+            if (stmt instanceof VarDecl) {
+                VarDecl v = (VarDecl) stmt;
+                return new VarDecl(v.name, expr(v.initializer));
+            } else if (stmt instanceof Assignment) {
+                Assignment a = (Assignment) stmt;
+                return new Assignment(a.name, expr(a.value));
+            } else if (stmt instanceof ArrayAssignment) {
+                ArrayAssignment aa = (ArrayAssignment) stmt;
+                return new ArrayAssignment(rename(aa.name), expr(aa.index), expr(aa.value), aa.checked);
+            } else if (stmt instanceof PrintStmt) {
+                return new PrintStmt(expr(((PrintStmt) stmt).expression));
+            } else if (stmt instanceof IfStmt) {
+                IfStmt i = (IfStmt) stmt;
+                return new IfStmt(expr(i.condition), stmt(i.thenBranch), i.elseBranch != null ? stmt(i.elseBranch) : null);
+            } else if (stmt instanceof WhileStmt) {
+                WhileStmt w = (WhileStmt) stmt;
+                return new WhileStmt(expr(w.condition), stmt(w.body));
+            } else if (stmt instanceof ForStmt) {
+                ForStmt f = (ForStmt) stmt;
+                return new ForStmt(f.init != null ? stmt(f.init) : null, f.condition != null ? expr(f.condition) : null,
+                        f.increment != null ? stmt(f.increment) : null, stmt(f.body));
+            } else if (stmt instanceof Block) {
+                List<Stmt> statements = new ArrayList<>();
+                for (Stmt s : ((Block) stmt).statements) statements.add(stmt(s));
+                return new Block(statements);
+            }
+            return stmt;
+        }
+
+        Expr expr(Expr expr) {
+            if (expr instanceof Variable) {
+                Token name = ((Variable) expr).name;
+                return renames.containsKey(name.lexeme) ? new Variable(renames.get(name.lexeme)) : expr;
+            } else if (expr instanceof UnaryExpr) {
+                UnaryExpr u = (UnaryExpr) expr;
+                return new UnaryExpr(u.operator, expr(u.operand));
+            } else if (expr instanceof BinaryExpr) {
+                BinaryExpr b = (BinaryExpr) expr;
+                Double k = counter != null ? factorOf(b, counter) : null;
+                if (k != null) {
+                    Expr reduced = product(k);
+                    if (reduced != null) return reduced;
+                }
+                return new BinaryExpr(expr(b.left), b.operator, expr(b.right));
+            } else if (expr instanceof ArrayAccess) {
+                ArrayAccess aa = (ArrayAccess) expr;
+                return new ArrayAccess(rename(aa.name), expr(aa.index), aa.checked);
+            } else if (expr instanceof ArrayExpr) {
+                List<Expr> elements = new ArrayList<>();
+                for (Expr element : ((ArrayExpr) expr).elements) elements.add(expr(element));
+                return new ArrayExpr(elements);
+            }
+            return expr;
+        }
+
+        /** The replacement for the product counter * k, or null to keep it. */
+        Expr product(Double k) {
+            Token temp = temps.get(k);
+            return temp != null ? new Variable(temp) : null;
+        }
+
+        private Token rename(Token name) {
+            return renames.getOrDefault(name.lexeme, name);
+        }
+    }
+
+    // ── Helpers ─────────────────────────────────────────────
+
+    /** Adds the number of times stmt reads each variable (including arrays it indexes) to counts. */
+    private static void countReads(Stmt stmt, Map<String, Integer> counts) {
+        if (stmt instanceof VarDecl) {
+            countReads(((VarDecl) stmt).initializer, counts);
+        } else if (stmt instanceof Assignment) {
+            countReads(((Assignment) stmt).value, counts);
+        } else if (stmt instanceof ArrayAssignment) {
+            ArrayAssignment aa = (ArrayAssignment) stmt;
+            counts.merge(aa.name.lexeme, 1, Integer::sum);
+            countReads(aa.index, counts);
+            countReads(aa.value, counts);
+        } else if (stmt instanceof PrintStmt) {
+            countReads(((PrintStmt) stmt).expression, counts);
+        } else if (stmt instanceof IfStmt) {
+            IfStmt i = (IfStmt) stmt;
+            countReads(i.condition, counts);
+            countReads(i.thenBranch, counts);
+            if (i.elseBranch != null) countReads(i.elseBranch, counts);
+        } else if (stmt instanceof WhileStmt) {
+            countReads(((WhileStmt) stmt).condition, counts);
+            countReads(((WhileStmt) stmt).body, counts);
+        } else if (stmt instanceof ForStmt) {
+            ForStmt f = (ForStmt) stmt;
+            if (f.init != null) countReads(f.init, counts);
+            if (f.condition != null) countReads(f.condition, counts);
+            if (f.increment != null) countReads(f.increment, counts);
+            countReads(f.body, counts);
+        } else if (stmt instanceof Block) {
+            for (Stmt s : ((Block) stmt).statements) countReads(s, counts);
+        }
+    }
+
+    private static void countReads(Expr expr, Map<String, Integer> counts) {
+        if (expr instanceof Variable) {
+            counts.merge(((Variable) expr).name.lexeme, 1, Integer::sum);
+        } else if (expr instanceof UnaryExpr) {
+            countReads(((UnaryExpr) expr).operand, counts);
+        } else if (expr instanceof BinaryExpr) {
+            countReads(((BinaryExpr) expr).left, counts);
+            countReads(((BinaryExpr) expr).right, counts);
+        } else if (expr instanceof ArrayAccess) {
+            counts.merge(((ArrayAccess) expr).name.lexeme, 1, Integer::sum);
+            countReads(((ArrayAccess) expr).index, counts);
+        } else if (expr instanceof ArrayExpr) {
+            for (Expr element : ((ArrayExpr) expr).elements) countReads(element, counts);
+        }
+    }
+}
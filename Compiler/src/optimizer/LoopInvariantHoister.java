@@ -0,0 +1,415 @@
+package optimizer;
+
+import ast.*;
+import lexer.Token;
+import lexer.TokenType;
+import semantic.SymbolTable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * AST optimization pass that moves loop-invariant expressions out of while and
+ * for loops: each one is computed once into a temporary declared just before
+ * the loop, and the loop reads the temporary instead.
+ *
+ * An expression is invariant in a loop if no variable it reads is assigned in
+ * the loop (condition, body or increment). An array element read is invariant
+ * only if the loop stores into no array at all, since two variables may refer
+ * to the same array. Array literals are never moved: each evaluation creates a
+ * new array.
+ *
+ * Moving an expression must not change which error a program stops with, or
+ * when. So an invariant expression is moved only if either
+ *   - it cannot fail: every variable it reads holds a value of a known type on
+ *     entry to the loop, and no operation in it can fail on those types
+ *     (a DIV qualifies only with a non-zero literal divisor, an array access
+ *     never does), or
+ *   - it is in the loop condition and everything the condition evaluates
+ *     before it cannot fail either. The condition is evaluated at least once
+ *     each time the loop is reached, before anything else in the loop, so the
+ *     expression fails exactly when it would have failed on the first check.
+ *     The right operand of and/or does not qualify: it is not always evaluated.
+ *
+ * Temporaries are named $inv0, $inv1, ... (not valid identifiers, so they
+ * cannot clash with program variables) and get slots in the SymbolTable.
+ * Inner loops are processed first, so an expression invariant in several
+ * nested loops moves out one loop per level.
+ */
+public class LoopInvariantHoister {
+    /** What is known about a value: its type, or just that it is defined (ANY). */
+    private enum Kind { NUMBER, STRING, CHAR, BOOL, ANY }
+
+    private final SymbolTable symbols;
+    private int temporaries = 0;
+
+    // Variables certainly defined at the current point, with their kind
+    private Map<String, Kind> defined = new HashMap<>();
+
+    public LoopInvariantHoister(SymbolTable symbols) {
+        this.symbols = symbols;
+    }
+
+    // ── Public API ──────────────────────────────────────────
+
+    public List<Stmt> hoist(List<Stmt> statements) {
+        return hoistAll(statements);
+    }
+
+    // ── Statements ──────────────────────────────────────────
+
+    private List<Stmt> hoistAll(List<Stmt> statements) {
+        List<Stmt> result = new ArrayList<>();
+        for (Stmt stmt : statements) result.add(hoistStmt(stmt));
+        return result;
+    }
+
+    private Stmt hoistStmt(Stmt stmt) {
+        if (stmt instanceof VarDecl) {
+            VarDecl v = (VarDecl) stmt;
+            defined.put(v.name.lexeme, kindOf(v.initializer));
+            return stmt;
+
+        } else if (stmt instanceof Assignment) {
+            Assignment a = (Assignment) stmt;
+            defined.put(a.name.lexeme, kindOf(a.value));
+            return stmt;
+
+        } else if (stmt instanceof IfStmt) {
+            IfStmt i = (IfStmt) stmt;
+            Map<String, Kind> before = defined;
+            defined = new HashMap<>(before);
+            Stmt thenBranch = hoistStmt(i.thenBranch);
+            Map<String, Kind> afterThen = defined;
+            defined = new HashMap<>(before);
+            Stmt elseBranch = i.elseBranch != null ? hoistStmt(i.elseBranch) : null;
+            join(afterThen);
+            return new IfStmt(i.condition, thenBranch, elseBranch);
+
+        } else if (stmt instanceof WhileStmt) {
+            WhileStmt w = (WhileStmt) stmt;
+            Map<String, Kind> entry = enterLoop(w.body, null);
+            Stmt body = hoistStmt(w.body);
+            defined = entry;
+
+            Loop loop = new Loop(entry, body, null);
+            Expr condition = loop.condition(w.condition);
+            body = loop.stmt(body);
+            return loop.wrap(new WhileStmt(condition, body));
+
+        } else if (stmt instanceof ForStmt) {
+            ForStmt f = (ForStmt) stmt;
+            Stmt init = f.init != null ? hoistStmt(f.init) : null;
+            Map<String, Kind> entry = enterLoop(f.body, f.increment);
+            Stmt body = hoistStmt(f.body);
+            defined = entry;
+
+            Loop loop = new Loop(entry, body, f.increment);
+            Expr condition = f.condition != null ? loop.condition(f.condition) : null;
+            body = loop.stmt(body);
+            Stmt increment = f.increment != null ? loop.stmt(f.increment) : null;
+            if (loop.temporaries.isEmpty()) return new ForStmt(init, condition, increment, body);
+
+            // The temporaries may read variables the init assigns, so they go after it
+            List<Stmt> statements = new ArrayList<>();
+            if (init != null) statements.add(init);
+            statements.add(loop.wrap(new ForStmt(null, condition, increment, body)));
+            return new Block(statements);
+
+        } else if (stmt instanceof Block) {
+            return new Block(hoistAll(((Block) stmt).statements));
+        }
+        return stmt;
+    }
+
+    /**
+     * Prepares for a loop body: variables the loop assigns may change type
+     * between iterations, so only their definedness is kept. Returns the facts
+     * that hold on every entry to the loop, which also hold after it (the body
+     * may run zero times).
+     */
+    private Map<String, Kind> enterLoop(Stmt body, Stmt increment) {
+        Set<String> assigned = new HashSet<>();
+        collectAssigned(body, assigned);
+        if (increment != null) collectAssigned(increment, assigned);
+        for (String name : assigned) defined.replace(name, Kind.ANY);
+        Map<String, Kind> entry = defined;
+        defined = new HashMap<>(entry);
+        return entry;
+    }
+
+    /** Keeps the facts that hold after both branches of an if. */
+    private void join(Map<String, Kind> other) {
+        defined.keySet().retainAll(other.keySet());
+        defined.replaceAll((name, kind) -> kind == other.get(name) ? kind : Kind.ANY);
+    }
+
+    // ── Hoisting out of one loop ────────────────────────────
+
+    private final class Loop {
+        private final Map<String, Kind> entry;
+        private final Set<String> assigned = new HashSet<>();
+        private final boolean storesArrays;
+        final List<Stmt> temporaries = new ArrayList<>();
+
+        // Condition only: true while everything evaluated so far cannot fail
+        private boolean leading;
+
+        Loop(Map<String, Kind> entry, Stmt body, Stmt increment) {
+            this.entry = entry;
+            collectAssigned(body, assigned);
+            if (increment != null) collectAssigned(increment, assigned);
+            this.storesArrays = storesArrays(body) || (increment != null && storesArrays(increment));
+        }
+
+        Expr condition(Expr condition) {
+            leading = true;
+            Expr result = expr(condition);
+            leading = false;
+            return result;
+        }
+
+        Stmt stmt(Stmt stmt) {
+            if (stmt instanceof VarDecl) {
+                VarDecl v = (VarDecl) stmt;
+                return new VarDecl(v.name, expr(v.initializer));
+            } else if (stmt instanceof Assignment) {
+                Assignment a = (Assignment) stmt;
+                return new Assignment(a.name, expr(a.value));
+            } else if (stmt instanceof ArrayAssignment) {
+                ArrayAssignment aa = (ArrayAssignment) stmt;
+                Expr index = expr(aa.index);
+                return new ArrayAssignment(aa.name, index, expr(aa.value));
+            } else if (stmt instanceof PrintStmt) {
+                return new PrintStmt(expr(((PrintStmt) stmt).expression));
+            } else if (stmt instanceof IfStmt) {
+                IfStmt i = (IfStmt) stmt;
+                Expr condition = expr(i.condition);
+                Stmt thenBranch = stmt(i.thenBranch);
+                return new IfStmt(condition, thenBranch, i.elseBranch != null ? stmt(i.elseBranch) : null);
+            } else if (stmt instanceof WhileStmt) {
+                WhileStmt w = (WhileStmt) stmt;
+                Expr condition = expr(w.condition);
+                return new WhileStmt(condition, stmt(w.body));
+            } else if (stmt instanceof ForStmt) {
+                ForStmt f = (ForStmt) stmt;
+                Stmt init = f.init != null ? stmt(f.init) : null;
+                Expr condition = f.condition != null ? expr(f.condition) : null;
+                Stmt body = stmt(f.body);
+                return new ForStmt(init, condition, f.increment != null ? stmt(f.increment) : null, body);
+            } else if (stmt instanceof Block) {
+                List<Stmt> statements = new ArrayList<>();
+                for (Stmt s : ((Block) stmt).statements) statements.add(stmt(s));
+                return new Block(statements);
+            }
+            return stmt;
+        }
+
+        /** Replaces the largest movable subexpressions of expr, in evaluation order. */
+        private Expr expr(Expr expr) {
+            if (isInvariant(expr) && !(expr instanceof Literal) && !(expr instanceof Variable)
+                    && (leading || !mayFail(expr, entry))) {
+                return temporary(expr);
+            }
+
+            Expr result = expr;
+            if (expr instanceof UnaryExpr) {
+                UnaryExpr u = (UnaryExpr) expr;
+                result = new UnaryExpr(u.operator, expr(u.operand));
+            } else if (expr instanceof BinaryExpr) {
+                BinaryExpr b = (BinaryExpr) expr;
+                Expr left = expr(b.left);
+                boolean conditional = b.operator.type == TokenType.AND || b.operator.type == TokenType.OR;
+                boolean wasLeading = leading;
+                if (conditional) leading = false;
+                Expr right = expr(b.right);
+                if (conditional) leading = wasLeading;
+                result = new BinaryExpr(left, b.operator, right);
+            } else if (expr instanceof ArrayAccess) {
+                ArrayAccess aa = (ArrayAccess) expr;
+                result = new ArrayAccess(aa.name, expr(aa.index));
+            } else if (expr instanceof ArrayExpr) {
+                List<Expr> elements = new ArrayList<>();
+                for (Expr element : ((ArrayExpr) expr).elements) elements.add(expr(element));
+                result = new ArrayExpr(elements);
+            }
+            // Operands are done; the operation itself may be the first thing that can fail
+            if (leading && mayFailItself(result, entry)) leading = false;
+            return result;
+        }
+
+        private boolean isInvariant(Expr expr) {
+            if (expr instanceof Literal) return true;
+            if (expr instanceof Variable) return !assigned.contains(((Variable) expr).name.lexeme);
+            if (expr instanceof UnaryExpr) return isInvariant(((UnaryExpr) expr).operand);
+            if (expr instanceof BinaryExpr) {
+                BinaryExpr b = (BinaryExpr) expr;
+                return isInvariant(b.left) && isInvariant(b.right);
+            }
+            if (expr instanceof ArrayAccess) {
+                ArrayAccess aa = (ArrayAccess) expr;
+                return !storesArrays && !assigned.contains(aa.name.lexeme) && isInvariant(aa.index);
+            }
+            return false;
+        }
+
+        private Expr temporary(Expr value) {
+            String name = "$inv" + LoopInvariantHoister.this.temporaries++;
+            symbols.declare(name);
+            Token token = new Token(TokenType.IDENTIFIER, name, 0);
+            temporaries.add(new VarDecl(token, value));
+            defined.put(name, kindOf(value, entry));
+            return new Variable(token);
+        }
+
+        /** Prefixes loop with the temporaries' declarations, if there are any. */
+        Stmt wrap(Stmt loop) {
+            if (temporaries.isEmpty()) return loop;
+            List<Stmt> statements = new ArrayList<>(temporaries);
+            statements.add(loop);
+            return new Block(statements);
+        }
+    }
+
+    // ── Kinds and failure ───────────────────────────────────
+
+    private Kind kindOf(Expr expr) {
+        return kindOf(expr, defined);
+    }
+
+    /** The kind of value expr produces if it evaluates successfully. */
+    private static Kind kindOf(Expr expr, Map<String, Kind> facts) {
+        if (expr instanceof Literal) {
+            Object value = ((Literal) expr).value;
+            if (value instanceof Double) return Kind.NUMBER;
+            if (value instanceof String) return Kind.STRING;
+            if (value instanceof Character) return Kind.CHAR;
+            if (value instanceof Boolean) return Kind.BOOL;
+            return Kind.ANY;
+        }
+        if (expr instanceof Variable) {
+            return facts.getOrDefault(((Variable) expr).name.lexeme, Kind.ANY);
+        }
+        if (expr instanceof UnaryExpr) {
+            return ((UnaryExpr) expr).operator.type == TokenType.MINUS ? Kind.NUMBER : Kind.BOOL;
+        }
+        if (expr instanceof BinaryExpr) {
+            BinaryExpr b = (BinaryExpr) expr;
+            switch (b.operator.type) {
+                case PLUS:
+                    Kind left = kindOf(b.left, facts);
+                    Kind right = kindOf(b.right, facts);
+                    if (left == Kind.NUMBER && right == Kind.NUMBER) return Kind.NUMBER;
+                    if (left == Kind.STRING || right == Kind.STRING) return Kind.STRING;
+                    return Kind.ANY;
+                case MINUS:
+                case STAR:
+                case SLASH:
+                    return Kind.NUMBER;
+                default:
+                    return Kind.BOOL;
+            }
+        }
+        return Kind.ANY;
+    }
+
+    /** True if evaluating expr could fail at run time, given facts about the variables. */
+    private static boolean mayFail(Expr expr, Map<String, Kind> facts) {
+        if (expr instanceof Literal) return false;
+        if (expr instanceof Variable) return mayFailItself(expr, facts);
+        if (expr instanceof UnaryExpr) {
+            return mayFail(((UnaryExpr) expr).operand, facts) || mayFailItself(expr, facts);
+        }
+        if (expr instanceof BinaryExpr) {
+            BinaryExpr b = (BinaryExpr) expr;
+            return mayFail(b.left, facts) || mayFail(b.right, facts) || mayFailItself(expr, facts);
+        }
+        return true;   // array access and array literals
+    }
+
+    /** True if the operation at the root of expr could fail, whatever its operands' own evaluation does. */
+    private static boolean mayFailItself(Expr expr, Map<String, Kind> facts) {
+        if (expr instanceof Variable) return !facts.containsKey(((Variable) expr).name.lexeme);
+        if (expr instanceof UnaryExpr) {
+            UnaryExpr u = (UnaryExpr) expr;
+            return u.operator.type == TokenType.MINUS && kindOf(u.operand, facts) != Kind.NUMBER;
+        }
+        if (expr instanceof BinaryExpr) {
+            BinaryExpr b = (BinaryExpr) expr;
+            Kind left = kindOf(b.left, facts);
+            Kind right = kindOf(b.right, facts);
+            boolean numbers = left == Kind.NUMBER && right == Kind.NUMBER;
+            switch (b.operator.type) {
+                case PLUS:
+                    // Concatenation stringifies the other operand; an array's text recurses
+                    // through its elements, which need not terminate
+                    if (left == Kind.STRING) return right == Kind.ANY;
+                    if (right == Kind.STRING) return left == Kind.ANY;
+                    return !numbers;
+                case SLASH:
+                    return !numbers || !(b.right instanceof Literal) || (Double) ((Literal) b.right).value == 0;
+                case MINUS:
+                case STAR:
+                case GREATER:
+                case GREATER_EQUAL:
+                case LESS:
+                case LESS_EQUAL:
+                    return !numbers;
+                case EQUAL_EQUAL:
+                case BANG_EQUAL:
+                    // Comparing arrays recurses through their elements, which need not terminate
+                    return left == Kind.ANY || right == Kind.ANY;
+                default:
+                    return false;
+            }
+        }
+        return expr instanceof ArrayAccess || expr instanceof ArrayExpr;
+    }
+
+    // ── Loop summaries ──────────────────────────────────────
+
+    static void collectAssigned(Stmt stmt, Set<String> assigned) {
+        if (stmt instanceof VarDecl) {
+            assigned.add(((VarDecl) stmt).name.lexeme);
+        } else if (stmt instanceof Assignment) {
+            assigned.add(((Assignment) stmt).name.lexeme);
+        } else if (stmt instanceof IfStmt) {
+            IfStmt i = (IfStmt) stmt;
+            collectAssigned(i.thenBranch, assigned);
+            if (i.elseBranch != null) collectAssigned(i.elseBranch, assigned);
+        } else if (stmt instanceof WhileStmt) {
+            collectAssigned(((WhileStmt) stmt).body, assigned);
+        } else if (stmt instanceof ForStmt) {
+            ForStmt f = (ForStmt) stmt;
+            if (f.init != null) collectAssigned(f.init, assigned);
+            if (f.increment != null) collectAssigned(f.increment, assigned);
+            collectAssigned(f.body, assigned);
+        } else if (stmt instanceof Block) {
+            for (Stmt s : ((Block) stmt).statements) collectAssigned(s, assigned);
+        }
+    }
+
+    static boolean storesArrays(Stmt stmt) {
+        if (stmt instanceof ArrayAssignment) return true;
+        if (stmt instanceof IfStmt) {
+            IfStmt i = (IfStmt) stmt;
+            return storesArrays(i.thenBranch) || (i.elseBranch != null && storesArrays(i.elseBranch));
+        }
+        if (stmt instanceof WhileStmt) return storesArrays(((WhileStmt) stmt).body);
+        if (stmt instanceof ForStmt) {
+            ForStmt f = (ForStmt) stmt;
+            return (f.init != null && storesArrays(f.init)) || (f.increment != null && storesArrays(f.increment))
+                    || storesArrays(f.body);
+        }
+        if (stmt instanceof Block) {
+            for (Stmt s : ((Block) stmt).statements) {
+                if (storesArrays(s)) return true;
+            }
+        }
+        return false;
+    }
+}
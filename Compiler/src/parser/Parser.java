@@ -29,6 +29,10 @@ import java.util.List;
  *   factor      → unary ( ( "*" | "/" ) unary )*
  *   unary       → ( "-" | "not" ) unary | primary
  *   primary     → NUMBER | STRING | IDENTIFIER | "(" expression ")"
+ *
+ * "and" and "or" short-circuit: the right operand is only evaluated when the
+ * left one does not decide the result (so "false and x" never evaluates x,
+ * nor does "true or x"). Their value is always a boolean.
  */
 public class Parser {
     private final List<Token> tokens;
@@ -3,17 +3,20 @@ package semantic;
 import ast.*;
 import lexer.Token;
 
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Walks the AST before interpretation to catch semantic errors:
  *   - Duplicate variable declarations
  *   - Use of undeclared variables
+ *   - Operations that can never succeed on the types of their operands, as
+ *     found by {@link TypeInference} (e.g. "a" - 1)
+ *
+ * Every declared variable is also assigned a slot in the {@link SymbolTable},
+ * which the BytecodeCompiler uses to address variables by index.
  */
 public class SemanticAnalyzer {
-    private final Map<String, String> symbolTable = new HashMap<>();
+    private final SymbolTable symbolTable = new SymbolTable();
     private final List<String> errors = new java.util.ArrayList<>();
 
     // ── Public API ──────────────────────────────────────────
@@ -23,6 +26,9 @@ public class SemanticAnalyzer {
             analyzeStmt(stmt);
         }
 
+        TypeInference inference = new TypeInference().infer(statements);
+        errors.addAll(inference.errors());
+
         if (!errors.isEmpty()) {
             StringBuilder sb = new StringBuilder("Semantic errors:\n");
             for (String err : errors) {
@@ -32,27 +38,31 @@ public class SemanticAnalyzer {
         }
     }
 
+    public SymbolTable getSymbolTable() {
+        return symbolTable;
+    }
+
     // ── Statement analysis ──────────────────────────────────
 
     private void analyzeStmt(Stmt stmt) {
         if (stmt instanceof VarDecl) {
             VarDecl v = (VarDecl) stmt;
-            if (symbolTable.containsKey(v.name.lexeme)) {
+            if (symbolTable.contains(v.name.lexeme)) {
                 errors.add("Variable '" + v.name.lexeme + "' already declared (line " + v.name.line + ")");
             }
             analyzeExpr(v.initializer);
-            symbolTable.put(v.name.lexeme, "any");
+            symbolTable.declare(v.name.lexeme);
 
         } else if (stmt instanceof Assignment) {
             Assignment a = (Assignment) stmt;
-            if (!symbolTable.containsKey(a.name.lexeme)) {
+            if (!symbolTable.contains(a.name.lexeme)) {
                 errors.add("Variable '" + a.name.lexeme + "' used before declaration (line " + a.name.line + ")");
             }
             analyzeExpr(a.value);
 
         } else if (stmt instanceof ArrayAssignment) {
             ArrayAssignment aa = (ArrayAssignment) stmt;
-            if (!symbolTable.containsKey(aa.name.lexeme)) {
+            if (!symbolTable.contains(aa.name.lexeme)) {
                 errors.add("Variable '" + aa.name.lexeme + "' used before declaration (line " + aa.name.line + ")");
             }
             analyzeExpr(aa.index);
@@ -99,7 +109,7 @@ public class SemanticAnalyzer {
 
         } else if (expr instanceof Variable) {
             Variable v = (Variable) expr;
-            if (!symbolTable.containsKey(v.name.lexeme)) {
+            if (!symbolTable.contains(v.name.lexeme)) {
                 errors.add("Variable '" + v.name.lexeme + "' used before declaration (line " + v.name.line + ")");
             }
 
@@ -113,7 +123,7 @@ public class SemanticAnalyzer {
 
         } else if (expr instanceof ArrayAccess) {
             ArrayAccess aa = (ArrayAccess) expr;
-            if (!symbolTable.containsKey(aa.name.lexeme)) {
+            if (!symbolTable.contains(aa.name.lexeme)) {
                 errors.add("Variable '" + aa.name.lexeme + "' used before declaration (line " + aa.name.line + ")");
             }
             analyzeExpr(aa.index);
@@ -0,0 +1,49 @@
+package semantic;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps every declared variable to a dense slot index.
+ * Slots are handed out in declaration order starting at 0, so the VM can keep
+ * all variables in a flat array; the names are kept for diagnostics.
+ */
+public class SymbolTable {
+    private final Map<String, Integer> slots = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+
+    /**
+     * Returns the slot of the given variable, allocating a new one if needed.
+     */
+    public int declare(String name) {
+        Integer slot = slots.get(name);
+        if (slot != null) return slot;
+        slots.put(name, names.size());
+        names.add(name);
+        return names.size() - 1;
+    }
+
+    public boolean contains(String name) {
+        return slots.containsKey(name);
+    }
+
+    /**
+     * Returns the slot of the given variable, or -1 if it was never declared.
+     */
+    public int slotOf(String name) {
+        Integer slot = slots.get(name);
+        return slot != null ? slot : -1;
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    /** Slot names in slot order. */
+    public List<String> names() {
+        return Collections.unmodifiableList(names);
+    }
+}
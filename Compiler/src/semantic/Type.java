@@ -0,0 +1,63 @@
+package semantic;
+
+/**
+ * The set of run-time types a value may have, as inferred by {@link TypeInference}:
+ * a single type, a union such as number|string, ANY when nothing is known, or
+ * NONE for an expression that never produces a value (it always fails, or
+ * reads a variable that is not assigned on any path).
+ *
+ * Types are interned, so == and equals agree.
+ */
+public final class Type {
+    private static final String[] NAMES = { "number", "string", "bool", "char", "array", "null" };
+    private static final Type[] ALL = new Type[1 << NAMES.length];
+    static {
+        for (int mask = 0; mask < ALL.length; mask++) ALL[mask] = new Type(mask);
+    }
+
+    public static final Type NONE   = ALL[0];
+    public static final Type NUMBER = ALL[1];
+    public static final Type STRING = ALL[2];
+    public static final Type BOOL   = ALL[4];
+    public static final Type CHAR   = ALL[8];
+    public static final Type ARRAY  = ALL[16];
+    public static final Type NULL   = ALL[32];
+    public static final Type ANY    = ALL[ALL.length - 1];
+
+    private final int mask;
+
+    private Type(int mask) {
+        this.mask = mask;
+    }
+
+    public Type union(Type other) {
+        return ALL[mask | other.mask];
+    }
+
+    /** True if a value of this type may be of type other. */
+    public boolean mayBe(Type other) {
+        return (mask & other.mask) != 0;
+    }
+
+    /** True if every value of this type is of type other (and there are values). */
+    public boolean isOnly(Type other) {
+        return mask != 0 && (mask & ~other.mask) == 0;
+    }
+
+    public boolean isNone() {
+        return mask == 0;
+    }
+
+    @Override
+    public String toString() {
+        if (this == NONE) return "none";
+        if (this == ANY) return "any";
+        StringBuilder sb = new StringBuilder();
+        for (int bit = 0; bit < NAMES.length; bit++) {
+            if ((mask & (1 << bit)) == 0) continue;
+            if (sb.length() > 0) sb.append('|');
+            sb.append(NAMES[bit]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,251 @@
+package semantic;
+
+import ast.*;
+import lexer.Token;
+import lexer.TokenType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Flow-sensitive type inference over the AST.
+ *
+ * Walks the program in execution order, tracking the {@link Type} of the value
+ * each variable holds at every point (a variable with no entry has not been
+ * assigned on any path yet). Branches are joined by union; a loop is iterated
+ * until the types at its head stop growing, so a variable assigned in the
+ * body gets the union of its types across iterations.
+ *
+ * The type recorded for an expression is the type of its value when it
+ * evaluates successfully. Array elements are not tracked: an element read is
+ * ANY.
+ *
+ * An operation whose operands can never have types it accepts is a type error,
+ * reported once with the line of the operator. Operands of type NONE are not
+ * reported: the expression fails (or never runs) before the operation.
+ */
+public class TypeInference {
+    private final Map<Expr, Type> types = new IdentityHashMap<>();
+    private final Set<String> errors = new LinkedHashSet<>();
+
+    // Type of each assigned variable at the current point
+    private Map<String, Type> facts = new HashMap<>();
+    // False while a loop is iterated to its fixed point; the last round records
+    private boolean recording = true;
+
+    // ── Public API ──────────────────────────────────────────
+
+    public TypeInference infer(List<Stmt> statements) {
+        for (Stmt stmt : statements) stmt(stmt);
+        return this;
+    }
+
+    /** The inferred type of expr, or ANY for an expression the inference never reached. */
+    public Type typeOf(Expr expr) {
+        return types.getOrDefault(expr, Type.ANY);
+    }
+
+    public List<String> errors() {
+        return new ArrayList<>(errors);
+    }
+
+    // ── Statements ──────────────────────────────────────────
+
+    private void stmt(Stmt stmt) {
+        if (stmt instanceof VarDecl) {
+            VarDecl v = (VarDecl) stmt;
+            assign(v.name, expr(v.initializer));
+
+        } else if (stmt instanceof Assignment) {
+            Assignment a = (Assignment) stmt;
+            assign(a.name, expr(a.value));
+
+        } else if (stmt instanceof ArrayAssignment) {
+            ArrayAssignment aa = (ArrayAssignment) stmt;
+            Type value = expr(aa.value);
+            Type index = expr(aa.index);
+            if (!value.isNone() && !index.isNone()) checkElement(aa.name, index);
+
+        } else if (stmt instanceof PrintStmt) {
+            expr(((PrintStmt) stmt).expression);
+
+        } else if (stmt instanceof IfStmt) {
+            IfStmt i = (IfStmt) stmt;
+            expr(i.condition);
+            Map<String, Type> before = facts;
+            facts = new HashMap<>(before);
+            stmt(i.thenBranch);
+            Map<String, Type> afterThen = facts;
+            facts = new HashMap<>(before);
+            if (i.elseBranch != null) stmt(i.elseBranch);
+            facts = join(afterThen, facts);
+
+        } else if (stmt instanceof WhileStmt) {
+            WhileStmt w = (WhileStmt) stmt;
+            loop(w.condition, w.body, null);
+
+        } else if (stmt instanceof ForStmt) {
+            ForStmt f = (ForStmt) stmt;
+            if (f.init != null) stmt(f.init);
+            loop(f.condition, f.body, f.increment);
+
+        } else if (stmt instanceof Block) {
+            for (Stmt s : ((Block) stmt).statements) stmt(s);
+        }
+    }
+
+    /** Iterates condition; body; increment from the loop head until the head's types are stable. */
+    private void loop(Expr condition, Stmt body, Stmt increment) {
+        boolean wasRecording = recording;
+        recording = false;
+        Map<String, Type> head = facts;
+        while (true) {
+            facts = new HashMap<>(head);
+            iteration(condition, body, increment);
+            Map<String, Type> next = join(head, facts);
+            if (next.equals(head)) break;
+            head = next;
+        }
+        recording = wasRecording;
+        if (recording) {
+            facts = new HashMap<>(head);
+            iteration(condition, body, increment);
+        }
+        facts = head;   // the loop exits from its head, after the condition
+    }
+
+    private void iteration(Expr condition, Stmt body, Stmt increment) {
+        if (condition != null) expr(condition);
+        stmt(body);
+        if (increment != null) stmt(increment);
+    }
+
+    private void assign(Token name, Type type) {
+        if (type.isNone()) return;   // the assignment is never reached
+        facts.put(name.lexeme, type);
+    }
+
+    /** Union of two states; a variable missing from one was not assigned on that path. */
+    private static Map<String, Type> join(Map<String, Type> a, Map<String, Type> b) {
+        Map<String, Type> joined = new HashMap<>(a);
+        b.forEach((name, type) -> joined.merge(name, type, Type::union));
+        return joined;
+    }
+
+    // ── Expressions ─────────────────────────────────────────
+
+    private Type expr(Expr expr) {
+        Type type = infer(expr);
+        if (recording) types.merge(expr, type, Type::union);
+        return type;
+    }
+
+    private Type infer(Expr expr) {
+        if (expr instanceof Literal) {
+            Object value = ((Literal) expr).value;
+            if (value instanceof Double) return Type.NUMBER;
+            if (value instanceof String) return Type.STRING;
+            if (value instanceof Character) return Type.CHAR;
+            if (value instanceof Boolean) return Type.BOOL;
+            return Type.NULL;
+
+        } else if (expr instanceof Variable) {
+            return facts.getOrDefault(((Variable) expr).name.lexeme, Type.NONE);
+
+        } else if (expr instanceof UnaryExpr) {
+            UnaryExpr u = (UnaryExpr) expr;
+            Type operand = expr(u.operand);
+            if (operand.isNone()) return Type.NONE;
+            if (u.operator.type == TokenType.NOT) return Type.BOOL;
+            if (!operand.mayBe(Type.NUMBER)) {
+                return error(u.operator, "Operator '-' requires a number, got " + operand);
+            }
+            return Type.NUMBER;
+
+        } else if (expr instanceof BinaryExpr) {
+            BinaryExpr b = (BinaryExpr) expr;
+            Type left = expr(b.left);
+            Type right = expr(b.right);
+            boolean shortCircuits = b.operator.type == TokenType.AND || b.operator.type == TokenType.OR;
+            // A failing right operand of and/or still leaves the result of a short circuit
+            if (left.isNone() || (right.isNone() && !shortCircuits)) return Type.NONE;
+            return binary(b.operator, left, right);
+
+        } else if (expr instanceof ArrayExpr) {
+            for (Expr element : ((ArrayExpr) expr).elements) {
+                if (expr(element).isNone()) return Type.NONE;
+            }
+            return Type.ARRAY;
+
+        } else if (expr instanceof ArrayAccess) {
+            ArrayAccess aa = (ArrayAccess) expr;
+            Type index = expr(aa.index);
+            if (index.isNone() || facts.getOrDefault(aa.name.lexeme, Type.NONE).isNone()) return Type.NONE;
+            return checkElement(aa.name, index);
+
+        } else if (expr instanceof BoundsGuard) {
+            return Type.BOOL;
+
+        } else if (expr instanceof Memo) {
+            Memo m = (Memo) expr;
+            Type value = expr(m.value);
+            assign(m.temp, value);
+            return value;
+        }
+        return Type.ANY;
+    }
+
+    private Type binary(Token operator, Type left, Type right) {
+        switch (operator.type) {
+            case PLUS: {
+                boolean numbers = left.mayBe(Type.NUMBER) && right.mayBe(Type.NUMBER);
+                boolean strings = left.mayBe(Type.STRING) || right.mayBe(Type.STRING);
+                if (!numbers && !strings) {
+                    return error(operator, "Operator '+' requires two numbers or at least one string, got "
+                            + left + " and " + right);
+                }
+                if (left.isOnly(Type.NUMBER) && right.isOnly(Type.NUMBER)) return Type.NUMBER;
+                if (left.isOnly(Type.STRING) || right.isOnly(Type.STRING) || !numbers) return Type.STRING;
+                return Type.NUMBER.union(Type.STRING);
+            }
+            case MINUS:
+            case STAR:
+            case SLASH:
+            case GREATER:
+            case GREATER_EQUAL:
+            case LESS:
+            case LESS_EQUAL:
+                if (!left.mayBe(Type.NUMBER) || !right.mayBe(Type.NUMBER)) {
+                    return error(operator, "Operator '" + operator.lexeme + "' requires two numbers, got "
+                            + left + " and " + right);
+                }
+                return operator.type == TokenType.MINUS || operator.type == TokenType.STAR
+                        || operator.type == TokenType.SLASH ? Type.NUMBER : Type.BOOL;
+            default:
+                return Type.BOOL;   // == != and or
+        }
+    }
+
+    /** Checks an element access array[index]; returns the element type. */
+    private Type checkElement(Token array, Type index) {
+        Type arrayType = facts.getOrDefault(array.lexeme, Type.NONE);
+        if (arrayType.isNone()) return Type.NONE;
+        if (!arrayType.mayBe(Type.ARRAY)) {
+            return error(array, "Variable '" + array.lexeme + "' is not an array, it holds " + arrayType);
+        }
+        if (!index.mayBe(Type.NUMBER)) {
+            return error(array, "Array index must be a number, got " + index);
+        }
+        return Type.ANY;
+    }
+
+    private Type error(Token token, String message) {
+        if (recording) errors.add(message + " (line " + token.line + ")");
+        return Type.NONE;
+    }
+}
@@ -0,0 +1,89 @@
+package vm;
+
+/**
+ * Runtime array: a fixed-length sequence of NaN-boxed values.
+ * Arrays live in the {@link Heap} and are shared by reference.
+ *
+ * MAKE_ARRAY picks the most specific representation for the initial elements:
+ *   NUMBERS : every element is a number; elements holds their raw double bits
+ *   CHARS   : every element is a character; chars holds them, 2 bytes each
+ *   MIXED   : anything else; elements holds NaN-boxed values
+ * The first store of a value that does not fit generalizes the array to MIXED,
+ * which it then stays. NUMBERS and CHARS arrays hold no refs, so the collector
+ * never traces them.
+ */
+final class ArrayValue {
+    static final int NUMBERS = 0;
+    static final int CHARS = 1;
+    static final int MIXED = 2;
+
+    int kind;
+    long[] elements;   // NUMBERS and MIXED; null for CHARS
+    char[] chars;      // CHARS only
+
+    /** Wraps values (taking ownership of the array) in the most specific representation. */
+    ArrayValue(long[] values) {
+        if (all(values, true)) {
+            kind = NUMBERS;
+            elements = values;
+        } else if (all(values, false)) {
+            kind = CHARS;
+            chars = new char[values.length];
+            for (int i = 0; i < values.length; i++) chars[i] = Value.asChar(values[i]);
+        } else {
+            kind = MIXED;
+            elements = values;
+        }
+    }
+
+    private static boolean all(long[] values, boolean numbers) {
+        for (long v : values) {
+            if (numbers ? !Value.isNumber(v) : !Value.isChar(v)) return false;
+        }
+        return true;
+    }
+
+    int length() {
+        return kind == CHARS ? chars.length : elements.length;
+    }
+
+    boolean isNumeric() {
+        return kind == NUMBERS;
+    }
+
+    /** True if the elements may contain refs the collector has to follow. */
+    boolean mayHoldRefs() {
+        return kind == MIXED;
+    }
+
+    long get(int index) {
+        return kind == CHARS ? Value.character(chars[index]) : elements[index];
+    }
+
+    void set(int index, long value) {
+        switch (kind) {
+            case NUMBERS:
+                if (!Value.isNumber(value)) generalize();
+                break;
+            case CHARS:
+                if (Value.isChar(value)) {
+                    chars[index] = Value.asChar(value);
+                    return;
+                }
+                generalize();
+                break;
+            default:
+                break;
+        }
+        elements[index] = value;
+    }
+
+    private void generalize() {
+        if (kind == CHARS) {
+            elements = new long[chars.length];
+            for (int i = 0; i < chars.length; i++) elements[i] = Value.character(chars[i]);
+            chars = null;
+        }
+        kind = MIXED;
+    }
+}
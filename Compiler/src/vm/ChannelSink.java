@@ -0,0 +1,71 @@
+package vm;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Sink that encodes output in the platform charset and writes it to a byte
+ * channel (a FileChannel, or a channel over System.out).
+ */
+final class ChannelSink extends OutputSink {
+    private final WritableByteChannel channel;
+    private final Flushable target;      // flushed after each flush(), may be null
+    private final boolean ownsChannel;
+    private final CharsetEncoder encoder = Charset.defaultCharset().newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final ByteBuffer bytes;
+
+    ChannelSink(WritableByteChannel channel, Flushable target, int bufferSize, boolean ownsChannel) {
+        super(bufferSize);
+        this.channel = channel;
+        this.target = target;
+        this.ownsChannel = ownsChannel;
+        this.bytes = ByteBuffer.allocate((int) Math.ceil(bufferSize * encoder.maxBytesPerChar()));
+    }
+
+    @Override
+    protected void write(char[] chars, int length) {
+        CharBuffer in = CharBuffer.wrap(chars, 0, length);
+        try {
+            CoderResult result;
+            do {
+                result = encoder.encode(in, bytes, false);
+                bytes.flip();
+                while (bytes.hasRemaining()) channel.write(bytes);
+                bytes.clear();
+            } while (result.isOverflow());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error writing output: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    protected void flushTarget() {
+        if (target == null) return;
+        try {
+            target.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error writing output: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        if (!ownsChannel) return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error writing output: " + e.getMessage(), e);
+        }
+    }
+}
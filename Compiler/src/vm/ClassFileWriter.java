@@ -0,0 +1,258 @@
+package vm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JVM class file writer: just enough to produce a final class with a
+ * single static method, which is all {@link JvmCompiler} needs.
+ *
+ * Instructions are appended to the method body with the emit methods below;
+ * branches refer to labels that are bound later and patched when the class is
+ * written. The class file targets version 49 (Java 5), the last version
+ * that does not require a StackMapTable, so no frame computation is needed.
+ *
+ * Branch offsets are 16-bit; a method too large for them (or for the 64 KB code
+ * limit) is rejected with an UnsupportedOperationException.
+ */
+final class ClassFileWriter {
+
+    // ── JVM opcodes used by the compiler ────────────────────
+
+    static final int ICONST_0 = 0x03, LCONST_0 = 0x09, LCONST_1 = 0x0a;
+    static final int BIPUSH = 0x10, SIPUSH = 0x11, LDC = 0x12, LDC_W = 0x13, LDC2_W = 0x14;
+    static final int LLOAD = 0x16, LLOAD_0 = 0x1e, ALOAD_0 = 0x2a;
+    static final int LSTORE = 0x37, LSTORE_0 = 0x3f;
+    static final int LALOAD = 0x2f, LASTORE = 0x50, DUP = 0x59;
+    static final int IFEQ = 0x99, IFNE = 0x9a, GOTO = 0xa7;
+    static final int RETURN = 0xb1, GETFIELD = 0xb4, INVOKESTATIC = 0xb8;
+    static final int NEWARRAY = 0xbc, WIDE = 0xc4;
+    static final int T_LONG = 11;
+
+    private static final int CLASS_VERSION = 49;
+    private static final int ACC_PUBLIC = 0x0001, ACC_STATIC = 0x0008, ACC_FINAL = 0x0010, ACC_SUPER = 0x0020;
+    private static final int MAX_CODE_LENGTH = 65535;
+
+    // ── Constant pool ───────────────────────────────────────
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> poolIndex = new HashMap<>();
+    private int poolCount = 1;
+
+    // ── Method body ─────────────────────────────────────────
+
+    private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+    private final List<Integer> labelAddress = new ArrayList<>();   // -1 until bound
+    private final List<int[]> fixups = new ArrayList<>();           // {instruction address, label}
+
+    // ── Instructions ────────────────────────────────────────
+
+    void op(int opcode) {
+        code.write(opcode);
+    }
+
+    void pushInt(int value) {
+        if (value >= -1 && value <= 5) {
+            op(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            op(BIPUSH);
+            code.write(value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            op(SIPUSH);
+            u2(code, value);
+        } else {
+            int index = constant("I" + value, 3, out -> out.writeInt(value));
+            if (index <= 255) {
+                op(LDC);
+                code.write(index);
+            } else {
+                op(LDC_W);
+                u2(code, index);
+            }
+        }
+    }
+
+    void pushLong(long value) {
+        if (value == 0 || value == 1) {
+            op(LCONST_0 + (int) value);
+            return;
+        }
+        op(LDC2_W);
+        u2(code, constant("J" + value, 5, out -> out.writeLong(value)));
+    }
+
+    void lload(int local) {
+        localOp(LLOAD, LLOAD_0, local);
+    }
+
+    void lstore(int local) {
+        localOp(LSTORE, LSTORE_0, local);
+    }
+
+    void newLongArray() {
+        op(NEWARRAY);
+        code.write(T_LONG);
+    }
+
+    void invokeStatic(String owner, String name, String descriptor) {
+        op(INVOKESTATIC);
+        u2(code, memberRef(10, owner, name, descriptor));
+    }
+
+    void getField(String owner, String name, String descriptor) {
+        op(GETFIELD);
+        u2(code, memberRef(9, owner, name, descriptor));
+    }
+
+    private void localOp(int opcode, int shortForm, int local) {
+        if (local <= 3) {
+            op(shortForm + local);
+        } else if (local <= 255) {
+            op(opcode);
+            code.write(local);
+        } else {
+            op(WIDE);
+            op(opcode);
+            u2(code, local);
+        }
+    }
+
+    /** Bytes of method body emitted so far. */
+    int codeSize() {
+        return code.size();
+    }
+
+    // ── Labels ──────────────────────────────────────────────
+
+    int newLabel() {
+        labelAddress.add(-1);
+        return labelAddress.size() - 1;
+    }
+
+    void bind(int label) {
+        labelAddress.set(label, code.size());
+    }
+
+    /** Emits a branch instruction (GOTO, IFEQ, IFNE, ...) to a label. */
+    void branch(int opcode, int label) {
+        fixups.add(new int[] { code.size(), label });
+        op(opcode);
+        u2(code, 0);
+    }
+
+    // ── Class file ──────────────────────────────────────────
+
+    /** Writes a final class holding the emitted code as one public static method. */
+    byte[] toClassFile(String className, String methodName, String descriptor, int maxStack, int maxLocals) {
+        byte[] body = code.toByteArray();
+        if (body.length > MAX_CODE_LENGTH) {
+            throw new UnsupportedOperationException("method too large (" + body.length + " bytes)");
+        }
+        for (int[] fixup : fixups) {
+            int offset = labelAddress.get(fixup[1]) - fixup[0];
+            if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                throw new UnsupportedOperationException("branch offset out of range");
+            }
+            body[fixup[0] + 1] = (byte) (offset >> 8);
+            body[fixup[0] + 2] = (byte) offset;
+        }
+
+        int thisClass = classRef(className);
+        int superClass = classRef("java/lang/Object");
+        int name = utf8(methodName);
+        int type = utf8(descriptor);
+        int codeAttribute = utf8("Code");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(CLASS_VERSION);
+            out.writeShort(poolCount);
+            poolBytes.writeTo(out);
+
+            out.writeShort(ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0);                    // interfaces
+            out.writeShort(0);                    // fields
+
+            out.writeShort(1);                    // methods
+            out.writeShort(ACC_PUBLIC | ACC_STATIC);
+            out.writeShort(name);
+            out.writeShort(type);
+            out.writeShort(1);                    // attributes: Code
+            out.writeShort(codeAttribute);
+            out.writeInt(12 + body.length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(body.length);
+            out.write(body);
+            out.writeShort(0);                    // exception table
+            out.writeShort(0);                    // code attributes
+
+            out.writeShort(0);                    // class attributes
+        } catch (IOException e) {
+            throw new IllegalStateException(e);   // cannot happen for an in-memory stream
+        }
+        return bytes.toByteArray();
+    }
+
+    // ── Constant pool entries ───────────────────────────────
+
+    private interface EntryWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /** Adds a pool entry once per key; longs take two pool slots. */
+    private int constant(String key, int tag, EntryWriter writer) {
+        Integer existing = poolIndex.get(key);
+        if (existing != null) return existing;
+        int index = poolCount;
+        try {
+            pool.writeByte(tag);
+            writer.write(pool);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        poolCount += tag == 5 ? 2 : 1;
+        if (poolCount > 65535) throw new UnsupportedOperationException("too many constants");
+        poolIndex.put(key, index);
+        return index;
+    }
+
+    private int utf8(String s) {
+        return constant("U" + s, 1, out -> out.writeUTF(s));
+    }
+
+    private int classRef(String internalName) {
+        int name = utf8(internalName);
+        return constant("C" + internalName, 7, out -> out.writeShort(name));
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        int ownerIndex = classRef(owner);
+        int nameIndex = utf8(name);
+        int typeIndex = utf8(descriptor);
+        int nameAndType = constant("N" + name + ":" + descriptor, 12, out -> {
+            out.writeShort(nameIndex);
+            out.writeShort(typeIndex);
+        });
+        return constant(tag + owner + "." + name + ":" + descriptor, tag, out -> {
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndType);
+        });
+    }
+
+    private static void u2(ByteArrayOutputStream out, int value) {
+        out.write(value >> 8);
+        out.write(value);
+    }
+}
@@ -0,0 +1,745 @@
+package vm;
+
+import compiler.OpCode;
+
+import java.util.Arrays;
+
+/**
+ * Execution engine that "closure-compiles" a linked program: every instruction
+ * becomes a node object that holds its decoded operands and a direct reference
+ * to its successor node(s). Running the program is just
+ *
+ *   node = node.exec();
+ *
+ * until a node returns null (HALT or the end of the program). There is no
+ * opcode dispatch and no program counter; unconditional jumps are resolved away
+ * while linking, so a node that precedes a JUMP points straight at its target.
+ * Each node kind is its own class, which lets the JIT specialize every one.
+ *
+ * Semantics and error messages are shared with the VM through {@link RuntimeState}.
+ */
+public class ClosureEngine implements Engine {
+    private final RuntimeState runtime;
+    private final Heap heap;
+    private final long[] stack;
+    private int sp = 0;
+    private final Node entry;
+
+    public ClosureEngine(Program program) {
+        this(program, OutputSink.stdout());
+    }
+
+    public ClosureEngine(Program program, OutputSink out) {
+        program.linkAll();   // the node graph is built for the whole program up front
+        this.stack = new long[program.maxStack];
+        this.runtime = new RuntimeState(program, this::markRoots, out);
+        this.heap = runtime.heap;
+        this.entry = link(program);
+    }
+
+    // ── Public API ──────────────────────────────────────────
+
+    @Override
+    public void run() {
+        Node node = entry;
+        try {
+            while (node != null) {
+                node = node.exec();
+            }
+        } finally {
+            runtime.out.flush();
+        }
+    }
+
+    // ── Graph construction ──────────────────────────────────
+
+    private Node link(Program program) {
+        int n = program.code.length;
+        Node[] nodes = new Node[n];
+        for (int pc = 0; pc < n; pc++) {
+            nodes[pc] = compile(program, pc);
+        }
+        for (int pc = 0; pc < n; pc++) {
+            nodes[pc].next = resolve(program, nodes, pc + 1);
+            if (nodes[pc] instanceof Branch) {
+                ((Branch) nodes[pc]).target = resolve(program, nodes, program.targets[pc]);
+            }
+        }
+        return resolve(program, nodes, 0);
+    }
+
+    /**
+     * Returns the node that executes first when control reaches index, skipping
+     * over chains of unconditional jumps. A jump cycle keeps its JUMP node so the
+     * program still loops forever, exactly like the VM.
+     */
+    private static Node resolve(Program program, Node[] nodes, int index) {
+        int start = index;
+        for (int hops = 0; index < nodes.length && program.code[index] == OpCode.JUMP; hops++) {
+            if (hops > nodes.length) return nodes[start];
+            index = program.targets[index];
+        }
+        return index < nodes.length ? nodes[index] : null;
+    }
+
+    private Node compile(Program program, int pc) {
+        int operand = program.operands[pc];
+        int operand2 = program.operands2[pc];
+        long constant = runtime.constants[pc];
+
+        switch (program.code[pc]) {
+            case CONST_NUM:
+            case CONST_STR:
+            case CONST_CHAR:
+            case CONST_BOOL:
+                return new Const(pc, constant);
+            case CONST_NULL:
+                return new Const(pc, Value.NULL);
+
+            case LOAD_SLOT:  return new Load(pc, operand);
+            case STORE_SLOT: return new Store(pc, operand);
+            case POP:        return new Pop(pc);
+            case DUP:        return new Dup(pc);
+
+            case ADD:
+            case ADD_NUM:
+            case ADD_STR:
+                return new Binary(pc) {
+                    long apply(long a, long b) { return runtime.add(a, b, pc); }
+                };
+            case SUB:
+                return new Binary(pc) {
+                    long apply(long a, long b) { return RuntimeState.sub(a, b, pc); }
+                };
+            case MUL:
+                return new Binary(pc) {
+                    long apply(long a, long b) { return RuntimeState.mul(a, b, pc); }
+                };
+            case DIV:
+                return new Binary(pc) {
+                    long apply(long a, long b) { return RuntimeState.div(a, b, pc); }
+                };
+            case EQ:
+                return new Binary(pc) {
+                    long apply(long a, long b) { return Value.bool(heap.isEqual(a, b)); }
+                };
+            case NEQ:
+                return new Binary(pc) {
+                    long apply(long a, long b) { return Value.bool(!heap.isEqual(a, b)); }
+                };
+            case GT:
+            case GT_NUM:
+                return new Binary(pc) {
+                    long apply(long a, long b) { return RuntimeState.gt(a, b, pc); }
+                };
+            case GTE:
+            case GTE_NUM:
+                return new Binary(pc) {
+                    long apply(long a, long b) { return RuntimeState.gte(a, b, pc); }
+                };
+            case LT:
+            case LT_NUM:
+                return new Binary(pc) {
+                    long apply(long a, long b) { return RuntimeState.lt(a, b, pc); }
+                };
+            case LTE:
+            case LTE_NUM:
+                return new Binary(pc) {
+                    long apply(long a, long b) { return RuntimeState.lte(a, b, pc); }
+                };
+            case AND:
+                return new Binary(pc) {
+                    long apply(long a, long b) { return Value.bool(Value.isTruthy(a) && Value.isTruthy(b)); }
+                };
+            case OR:
+                return new Binary(pc) {
+                    long apply(long a, long b) { return Value.bool(Value.isTruthy(a) || Value.isTruthy(b)); }
+                };
+            case ARRAY_LOAD:
+            case ARRAY_LOAD_NUM:
+                return new Binary(pc) {
+                    long apply(long a, long b) { return runtime.arrayLoad(a, b, pc); }
+                };
+            case CONCAT:
+                return new Binary(pc) {
+                    long apply(long a, long b) { return runtime.concat(a, b); }
+                };
+            case ARRAY_LOAD_UNCHECKED:
+                return new Binary(pc) {
+                    long apply(long a, long b) { return runtime.arrayLoadUnchecked(a, b); }
+                };
+
+            case NEG:   return new Neg(pc);
+            case NOT:   return new Not(pc);
+
+            case JUMP:  return new Jump(pc);
+            case JUMP_IF_FALSE:
+            case JUMP_IF_FALSE_BOOL:
+                return new JumpIfFalse(pc);
+            case JUMP_IF_TRUE:
+                return new JumpIfTrue(pc);
+            case JEQ:
+                return new CompareBranch(pc) {
+                    boolean test(long a, long b) { return heap.isEqual(a, b); }
+                };
+            case JNEQ:
+                return new CompareBranch(pc) {
+                    boolean test(long a, long b) { return !heap.isEqual(a, b); }
+                };
+            case JGT:
+                return new CompareBranch(pc) {
+                    boolean test(long a, long b) { return RuntimeState.greater(a, b, pc); }
+                };
+            case JGTE:
+                return new CompareBranch(pc) {
+                    boolean test(long a, long b) { return RuntimeState.greaterEqual(a, b, pc); }
+                };
+            case JLT:
+                return new CompareBranch(pc) {
+                    boolean test(long a, long b) { return RuntimeState.less(a, b, pc); }
+                };
+            case JLTE:
+                return new CompareBranch(pc) {
+                    boolean test(long a, long b) { return RuntimeState.lessEqual(a, b, pc); }
+                };
+
+
+            // ── Typed forms: operands proven numbers ──
+            case ADD_NUM_UNCHECKED:
+                return new Binary(pc) {
+                    long apply(long a, long b) { return RuntimeState.addNum(a, b); }
+                };
+            case SUB_NUM_UNCHECKED:
+                return new Binary(pc) {
+                    long apply(long a, long b) { return RuntimeState.subNum(a, b); }
+                };
+            case MUL_NUM_UNCHECKED:
+                return new Binary(pc) {
+                    long apply(long a, long b) { return RuntimeState.mulNum(a, b); }
+                };
+            case DIV_NUM_UNCHECKED:
+                return new Binary(pc) {
+                    long apply(long a, long b) { return RuntimeState.divNum(a, b, pc); }
+                };
+            case NEG_NUM_UNCHECKED: return new NegNum(pc);
+            case GT_NUM_UNCHECKED:
+                return new Binary(pc) {
+                    long apply(long a, long b) { return Value.bool(RuntimeState.greaterNum(a, b)); }
+                };
+            case GTE_NUM_UNCHECKED:
+                return new Binary(pc) {
+                    long apply(long a, long b) { return Value.bool(RuntimeState.greaterEqualNum(a, b)); }
+                };
+            case LT_NUM_UNCHECKED:
+                return new Binary(pc) {
+                    long apply(long a, long b) { return Value.bool(RuntimeState.lessNum(a, b)); }
+                };
+            case LTE_NUM_UNCHECKED:
+                return new Binary(pc) {
+                    long apply(long a, long b) { return Value.bool(RuntimeState.lessEqualNum(a, b)); }
+                };
+            case JGT_NUM_UNCHECKED:
+                return new CompareBranch(pc) {
+                    boolean test(long a, long b) { return RuntimeState.greaterNum(a, b); }
+                };
+            case JGTE_NUM_UNCHECKED:
+                return new CompareBranch(pc) {
+                    boolean test(long a, long b) { return RuntimeState.greaterEqualNum(a, b); }
+                };
+            case JLT_NUM_UNCHECKED:
+                return new CompareBranch(pc) {
+                    boolean test(long a, long b) { return RuntimeState.lessNum(a, b); }
+                };
+            case JLTE_NUM_UNCHECKED:
+                return new CompareBranch(pc) {
+                    boolean test(long a, long b) { return RuntimeState.lessEqualNum(a, b); }
+                };
+
+            case PRINT: return new Print(pc);
+
+            case MAKE_ARRAY:       return new MakeArray(pc, operand);
+            case ARRAY_STORE_SLOT: return new ArrayStore(pc, operand);
+            case ARRAY_STORE_UNCHECKED: return new ArrayStoreUnchecked(pc, operand);
+            case GUARD_INDEX_VAR:   return new GuardIndex(pc, operand, operand2, constant);
+            case GUARD_INDEX_CONST: return new GuardIndex(pc, operand, -1, constant);
+
+            case HALT:  return new Halt(pc);
+
+            // ── Superinstructions ──
+            case INC_VAR:          return new IncVar(pc, operand, constant);
+            case LOAD_CONST_ADD:   return new LoadConstAdd(pc, operand, constant);
+            case LOAD_CONST_MUL:   return new LoadConstMul(pc, operand, constant);
+            case LOAD_LOAD_ADD:    return new LoadLoadAdd(pc, operand, operand2);
+            case LOAD_ARRAY_VAR:   return new LoadArrayVar(pc, operand, operand2);
+            case LOAD_ARRAY_VAR_UNCHECKED: return new LoadArrayVarUnchecked(pc, operand, operand2);
+            case LOAD_ARRAY_CONST: return new LoadArrayConst(pc, operand, constant);
+            case ADD_CONST:        return new AddConst(pc, constant);
+            case JLT_VAR_CONST:    return new JltVarConst(pc, operand, constant);
+            case JLT_VAR_VAR:      return new JltVarVar(pc, operand, operand2);
+
+            default:
+                return new Unknown(pc, program.code[pc]);
+        }
+    }
+
+    // ── Garbage collection roots ────────────────────────────
+
+    private void markRoots(Heap heap) {
+        for (int i = 0; i < sp; i++) heap.mark(stack[i]);
+    }
+
+    // ── Nodes ───────────────────────────────────────────────
+
+    private abstract static class Node {
+        final int pc;     // instruction index, for error messages
+        Node next;        // fall-through successor; null ends the program
+
+        Node(int pc) {
+            this.pc = pc;
+        }
+
+        abstract Node exec();
+    }
+
+    /** A node with a second successor, taken when the branch is. */
+    private abstract static class Branch extends Node {
+        Node target;
+
+        Branch(int pc) {
+            super(pc);
+        }
+    }
+
+    private final class Const extends Node {
+        private final long value;
+
+        Const(int pc, long value) {
+            super(pc);
+            this.value = value;
+        }
+
+        Node exec() {
+            stack[sp++] = value;
+            return next;
+        }
+    }
+
+    private final class Load extends Node {
+        private final int slot;
+
+        Load(int pc, int slot) {
+            super(pc);
+            this.slot = slot;
+        }
+
+        Node exec() {
+            stack[sp++] = runtime.load(slot, pc);
+            return next;
+        }
+    }
+
+    private final class Store extends Node {
+        private final int slot;
+
+        Store(int pc, int slot) {
+            super(pc);
+            this.slot = slot;
+        }
+
+        Node exec() {
+            runtime.frame[slot] = stack[--sp];
+            return next;
+        }
+    }
+
+    private final class Pop extends Node {
+        Pop(int pc) {
+            super(pc);
+        }
+
+        Node exec() {
+            sp--;
+            return next;
+        }
+    }
+
+    private final class Dup extends Node {
+        Dup(int pc) {
+            super(pc);
+        }
+
+        Node exec() {
+            stack[sp] = stack[sp - 1];
+            sp++;
+            return next;
+        }
+    }
+
+    /** Pops two operands and pushes apply(a, b). */
+    private abstract class Binary extends Node {
+        Binary(int pc) {
+            super(pc);
+        }
+
+        abstract long apply(long a, long b);
+
+        Node exec() {
+            long b = stack[--sp];
+            long a = stack[--sp];
+            stack[sp++] = apply(a, b);
+            return next;
+        }
+    }
+
+    private final class Neg extends Node {
+        Neg(int pc) {
+            super(pc);
+        }
+
+        Node exec() {
+            long value = stack[sp - 1];
+            stack[sp - 1] = RuntimeState.neg(value, pc);
+            return next;
+        }
+    }
+
+    private final class NegNum extends Node {
+        NegNum(int pc) {
+            super(pc);
+        }
+
+        Node exec() {
+            stack[sp - 1] = RuntimeState.negNum(stack[sp - 1]);
+            return next;
+        }
+    }
+
+    private final class Not extends Node {
+        Not(int pc) {
+            super(pc);
+        }
+
+        Node exec() {
+            stack[sp - 1] = Value.bool(!Value.isTruthy(stack[sp - 1]));
+            return next;
+        }
+    }
+
+    /** Only reached for jump cycles; other jumps are linked away. */
+    private final class Jump extends Branch {
+        Jump(int pc) {
+            super(pc);
+        }
+
+        Node exec() {
+            return target;
+        }
+    }
+
+    private final class JumpIfFalse extends Branch {
+        JumpIfFalse(int pc) {
+            super(pc);
+        }
+
+        Node exec() {
+            return Value.isTruthy(stack[--sp]) ? next : target;
+        }
+    }
+
+    private final class JumpIfTrue extends Branch {
+        JumpIfTrue(int pc) {
+            super(pc);
+        }
+
+        Node exec() {
+            return Value.isTruthy(stack[--sp]) ? target : next;
+        }
+    }
+
+    /** Pops two operands; falls through if test(a, b) holds, else jumps. */
+    private abstract class CompareBranch extends Branch {
+        CompareBranch(int pc) {
+            super(pc);
+        }
+
+        abstract boolean test(long a, long b);
+
+        Node exec() {
+            long b = stack[--sp];
+            long a = stack[--sp];
+            return test(a, b) ? next : target;
+        }
+    }
+
+    private final class Print extends Node {
+        Print(int pc) {
+            super(pc);
+        }
+
+        Node exec() {
+            runtime.print(stack[--sp]);
+            return next;
+        }
+    }
+
+    private final class MakeArray extends Node {
+        private final int count;
+
+        MakeArray(int pc, int count) {
+            super(pc);
+            this.count = count;
+        }
+
+        Node exec() {
+            // The elements stay on the stack (and so stay reachable) until the array exists
+            long[] elements = Arrays.copyOfRange(stack, sp - count, sp);
+            long array = heap.allocArray(new ArrayValue(elements));
+            sp -= count;
+            stack[sp++] = array;
+            return next;
+        }
+    }
+
+    private final class ArrayStore extends Node {
+        private final int slot;
+
+        ArrayStore(int pc, int slot) {
+            super(pc);
+            this.slot = slot;
+        }
+
+        Node exec() {
+            long idxVal = stack[--sp];
+            long value = stack[--sp];
+            runtime.arrayStore(slot, idxVal, value, pc);
+            return next;
+        }
+    }
+
+    private static final class Halt extends Node {
+        Halt(int pc) {
+            super(pc);
+        }
+
+        Node exec() {
+            return null;
+        }
+    }
+
+    private final class ArrayStoreUnchecked extends Node {
+        private final int slot;
+
+        ArrayStoreUnchecked(int pc, int slot) {
+            super(pc);
+            this.slot = slot;
+        }
+
+        Node exec() {
+            long idxVal = stack[--sp];
+            long value = stack[--sp];
+            runtime.arrayStoreUnchecked(runtime.frame[slot], idxVal, value);
+            return next;
+        }
+    }
+
+    /** GUARD_INDEX_VAR, or GUARD_INDEX_CONST when boundSlot is -1. */
+    private final class GuardIndex extends Node {
+        private final int arraySlot;
+        private final int boundSlot;
+        private final long offset;
+
+        GuardIndex(int pc, int arraySlot, int boundSlot, long offset) {
+            super(pc);
+            this.arraySlot = arraySlot;
+            this.boundSlot = boundSlot;
+            this.offset = offset;
+        }
+
+        Node exec() {
+            long bound = boundSlot >= 0 ? runtime.frame[boundSlot] : Value.number(0);
+            stack[sp++] = Value.bool(runtime.indexFits(runtime.frame[arraySlot], bound, offset));
+            return next;
+        }
+    }
+
+    private static final class Unknown extends Node {
+        private final OpCode op;
+
+        Unknown(int pc, OpCode op) {
+            super(pc);
+            this.op = op;
+        }
+
+        Node exec() {
+            throw RuntimeState.error(pc, "Unknown opcode: " + op);
+        }
+    }
+
+    // ── Superinstruction nodes ──────────────────────────────
+
+    private final class IncVar extends Node {
+        private final int slot;
+        private final long constant;
+
+        IncVar(int pc, int slot, long constant) {
+            super(pc);
+            this.slot = slot;
+            this.constant = constant;
+        }
+
+        Node exec() {
+            runtime.frame[slot] = runtime.add(runtime.load(slot, pc), constant, pc);
+            return next;
+        }
+    }
+
+    private final class LoadConstAdd extends Node {
+        private final int slot;
+        private final long constant;
+
+        LoadConstAdd(int pc, int slot, long constant) {
+            super(pc);
+            this.slot = slot;
+            this.constant = constant;
+        }
+
+        Node exec() {
+            stack[sp++] = runtime.add(runtime.load(slot, pc), constant, pc);
+            return next;
+        }
+    }
+
+    private final class LoadConstMul extends Node {
+        private final int slot;
+        private final long constant;
+
+        LoadConstMul(int pc, int slot, long constant) {
+            super(pc);
+            this.slot = slot;
+            this.constant = constant;
+        }
+
+        Node exec() {
+            long a = runtime.load(slot, pc);
+            stack[sp++] = RuntimeState.mul(a, constant, pc);
+            return next;
+        }
+    }
+
+    private final class LoadLoadAdd extends Node {
+        private final int slot1;
+        private final int slot2;
+
+        LoadLoadAdd(int pc, int slot1, int slot2) {
+            super(pc);
+            this.slot1 = slot1;
+            this.slot2 = slot2;
+        }
+
+        Node exec() {
+            long a = runtime.load(slot1, pc);
+            long b = runtime.load(slot2, pc);
+            stack[sp++] = runtime.add(a, b, pc);
+            return next;
+        }
+    }
+
+    private final class LoadArrayVar extends Node {
+        private final int arraySlot;
+        private final int indexSlot;
+
+        LoadArrayVar(int pc, int arraySlot, int indexSlot) {
+            super(pc);
+            this.arraySlot = arraySlot;
+            this.indexSlot = indexSlot;
+        }
+
+        Node exec() {
+            long array = runtime.load(arraySlot, pc);
+            long index = runtime.load(indexSlot, pc);
+            stack[sp++] = runtime.arrayLoad(array, index, pc);
+            return next;
+        }
+    }
+
+    private final class LoadArrayVarUnchecked extends Node {
+        private final int arraySlot;
+        private final int indexSlot;
+
+        LoadArrayVarUnchecked(int pc, int arraySlot, int indexSlot) {
+            super(pc);
+            this.arraySlot = arraySlot;
+            this.indexSlot = indexSlot;
+        }
+
+        Node exec() {
+            long array = runtime.load(arraySlot, pc);
+            long index = runtime.load(indexSlot, pc);
+            stack[sp++] = runtime.arrayLoadUnchecked(array, index);
+            return next;
+        }
+    }
+
+    private final class LoadArrayConst extends Node {
+        private final int arraySlot;
+        private final long index;
+
+        LoadArrayConst(int pc, int arraySlot, long index) {
+            super(pc);
+            this.arraySlot = arraySlot;
+            this.index = index;
+        }
+
+        Node exec() {
+            stack[sp++] = runtime.arrayLoad(runtime.load(arraySlot, pc), index, pc);
+            return next;
+        }
+    }
+
+    private final class AddConst extends Node {
+        private final long constant;
+
+        AddConst(int pc, long constant) {
+            super(pc);
+            this.constant = constant;
+        }
+
+        Node exec() {
+            stack[sp - 1] = runtime.add(stack[sp - 1], constant, pc);
+            return next;
+        }
+    }
+
+    private final class JltVarConst extends Branch {
+        private final int slot;
+        private final long constant;
+
+        JltVarConst(int pc, int slot, long constant) {
+            super(pc);
+            this.slot = slot;
+            this.constant = constant;
+        }
+
+        Node exec() {
+            long a = runtime.load(slot, pc);
+            return RuntimeState.less(a, constant, pc) ? next : target;
+        }
+    }
+
+    private final class JltVarVar extends Branch {
+        private final int slot1;
+        private final int slot2;
+
+        JltVarVar(int pc, int slot1, int slot2) {
+            super(pc);
+            this.slot1 = slot1;
+            this.slot2 = slot2;
+        }
+
+        Node exec() {
+            long a = runtime.load(slot1, pc);
+            long b = runtime.load(slot2, pc);
+            return RuntimeState.less(a, b, pc) ? next : target;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package vm;
+
+import compiler.Isa;
+
+/**
+ * An execution engine for linked programs. Every engine must produce the same
+ * output and the same error messages as the reference switch interpreter ({@link VM}).
+ */
+public interface Engine {
+
+    void run();
+
+    /**
+     * Makes the engine count the instructions it dispatches, if it can; call
+     * before {@link #run}. Off by default, so runs do not pay for the count.
+     */
+    default void countInstructions() {
+    }
+
+    /** Instructions dispatched so far, or -1 if the engine is not counting them. */
+    default long executedInstructions() {
+        return -1;
+    }
+
+    /**
+     * Creates the engine selected by name:
+     *   vm      : switch-based interpreter with quickening (default)
+     *   closure : pre-linked node graph, see {@link ClosureEngine}
+     *   jvm     : translated to JVM bytecode, see {@link JvmEngine}
+     * Register code runs only on the {@link RegisterVM}, selected as "vm".
+     */
+    static Engine create(String name, Program program) {
+        return create(name, program, OutputSink.stdout());
+    }
+
+    /** Creates the engine selected by name, printing to out. */
+    static Engine create(String name, Program program, OutputSink out) {
+        if (program.isa() == Isa.REGISTER) {
+            if (!name.equals("vm")) {
+                throw new IllegalArgumentException("Engine '" + name + "' runs stack code only; register code runs on vm");
+            }
+            return new RegisterVM(program, out);
+        }
+        switch (name) {
+            case "vm":      return new VM(program, out);
+            case "closure": return new ClosureEngine(program, out);
+            case "jvm":     return new JvmEngine(program, out);
+            default:
+                throw new IllegalArgumentException("Unknown engine '" + name + "' (expected vm, closure or jvm)");
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package vm;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Side table for the values that cannot be NaN-boxed: strings and arrays.
+ * A {@link Value} ref is an index into this table.
+ *
+ * Entries are reclaimed by a simple non-moving mark-sweep: when the table is
+ * full, the owner's roots are marked, unreachable entries are put on a free
+ * list, and the table doubles if it is still more than half full.
+ *
+ * An owner that cannot enumerate its roots at every allocation (compiled code
+ * keeps values in JVM locals) can defer collection: the heap then only flags
+ * that a collection is due, the owner runs it at its next safepoint, and a table
+ * that fills up before then simply grows.
+ */
+final class Heap {
+    /** Supplies the root set (operand stack, variables, constants) to the collector. */
+    interface Roots {
+        void markRoots(Heap heap);
+    }
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final Roots roots;
+    private Object[] objects = new Object[INITIAL_CAPACITY];
+    private boolean[] marked = new boolean[INITIAL_CAPACITY];
+    private int[] freeList = new int[INITIAL_CAPACITY];
+    private int freeCount = 0;
+    private int top = 0;        // entries [top, capacity) have never been used
+    private final Deque<ArrayValue> grey = new ArrayDeque<>();
+    private boolean deferred = false;
+    private boolean collectionPending = false;
+
+    Heap(Roots roots) {
+        this.roots = roots;
+    }
+
+    // ── Allocation ──────────────────────────────────────────
+
+    long allocString(String s) {
+        return Value.ref(alloc(s));
+    }
+
+    long allocArray(ArrayValue array) {
+        return Value.ref(alloc(array));
+    }
+
+    private int alloc(Object obj) {
+        if (freeCount == 0 && top == objects.length) {
+            if (deferred) {
+                grow();
+            } else {
+                collect(obj);
+            }
+        }
+        int index = freeCount > 0 ? freeList[--freeCount] : top++;
+        objects[index] = obj;
+        if (deferred && freeCount == 0 && top > objects.length / 4 * 3) {
+            collectionPending = true;   // ask early, so the next safepoint collects before the table fills
+        }
+        return index;
+    }
+
+    // ── Access ──────────────────────────────────────────────
+
+    Object get(long ref) {
+        return objects[Value.refIndex(ref)];
+    }
+
+    boolean isString(long v) {
+        return Value.isRef(v) && get(v) instanceof String;
+    }
+
+    /** Returns the array behind v, or null if v is not an array. */
+    ArrayValue array(long v) {
+        if (!Value.isRef(v)) return null;
+        Object obj = get(v);
+        return obj instanceof ArrayValue ? (ArrayValue) obj : null;
+    }
+
+    // ── Value semantics that need the heap ──────────────────
+
+    String stringify(long v) {
+        if (Value.isNumber(v)) return Value.formatNumber(Value.asNumber(v));
+        if (v == Value.NULL) return "null";
+        if (v == Value.TRUE) return "true";
+        if (v == Value.FALSE) return "false";
+        if (Value.isChar(v)) return String.valueOf(Value.asChar(v));
+
+        Object obj = get(v);
+        if (obj instanceof ArrayValue) {
+            ArrayValue array = (ArrayValue) obj;
+            StringBuilder sb = new StringBuilder("[");
+            for (int i = 0; i < array.length(); i++) {
+                if (i > 0) sb.append(", ");
+                sb.append(stringify(array.get(i)));
+            }
+            sb.append("]");
+            return sb.toString();
+        }
+        return (String) obj;
+    }
+
+    /** Writes stringify(v) to out, without building the string for numbers and arrays. */
+    void print(long v, OutputSink out) {
+        if (Value.isNumber(v)) {
+            out.printNumber(Value.asNumber(v));
+            return;
+        }
+        if (Value.isChar(v)) {
+            out.print(Value.asChar(v));
+            return;
+        }
+        Object obj = Value.isRef(v) ? get(v) : null;
+        if (obj instanceof ArrayValue) {
+            ArrayValue array = (ArrayValue) obj;
+            out.print('[');
+            for (int i = 0; i < array.length(); i++) {
+                if (i > 0) out.print(", ");
+                print(array.get(i), out);
+            }
+            out.print(']');
+            return;
+        }
+        out.print(stringify(v));
+    }
+
+    /**
+     * Structural equality: numbers compare by their (canonical) bits, like
+     * Double.equals; strings by content; arrays element-wise.
+     */
+    boolean isEqual(long a, long b) {
+        if (a == b) return true;
+        if (!Value.isRef(a) || !Value.isRef(b)) return false;
+
+        Object x = get(a);
+        Object y = get(b);
+        if (x instanceof String) return x.equals(y);
+        if (!(y instanceof ArrayValue)) return false;
+
+        ArrayValue xs = (ArrayValue) x;
+        ArrayValue ys = (ArrayValue) y;
+        if (xs.length() != ys.length()) return false;
+        if (xs.kind == ys.kind && !xs.mayHoldRefs()) {
+            return xs.kind == ArrayValue.CHARS ? Arrays.equals(xs.chars, ys.chars)
+                                               : Arrays.equals(xs.elements, ys.elements);
+        }
+        for (int i = 0; i < xs.length(); i++) {
+            if (!isEqual(xs.get(i), ys.get(i))) return false;
+        }
+        return true;
+    }
+
+    // ── Garbage collection ──────────────────────────────────
+
+    /** From now on, collect only when the owner calls {@link #collectPending()}. */
+    void deferCollection() {
+        deferred = true;
+    }
+
+    /** True if the table is nearly full and should be collected at the next safepoint. */
+    boolean collectionPending() {
+        return collectionPending;
+    }
+
+    /** Runs a deferred collection; the owner's roots must be complete at this point. */
+    void collectPending() {
+        collectionPending = false;
+        collect(null);
+    }
+
+    /** Marks v (and everything reachable from it) as live. Called by Roots. */
+    void mark(long v) {
+        if (!Value.isRef(v)) return;
+        int index = Value.refIndex(v);
+        if (marked[index]) return;
+        marked[index] = true;
+        if (objects[index] instanceof ArrayValue) trace((ArrayValue) objects[index]);
+    }
+
+    private void collect(Object pending) {
+        roots.markRoots(this);
+        if (pending instanceof ArrayValue) trace((ArrayValue) pending);
+        while (!grey.isEmpty()) {
+            for (long element : grey.pop().elements) {
+                mark(element);
+            }
+        }
+
+        for (int i = 0; i < top; i++) {
+            if (marked[i]) {
+                marked[i] = false;
+            } else if (objects[i] != null) {
+                objects[i] = null;
+                freeList[freeCount++] = i;
+            }
+        }
+
+        int available = freeCount + (objects.length - top);
+        if (available < objects.length / 2) {
+            grow();
+        }
+    }
+
+    /** Queues an array for scanning; arrays of numbers or characters hold no refs. */
+    private void trace(ArrayValue array) {
+        if (array.mayHoldRefs()) grey.push(array);
+    }
+
+    private void grow() {
+        int capacity = objects.length * 2;
+        objects = Arrays.copyOf(objects, capacity);
+        marked = Arrays.copyOf(marked, capacity);
+        freeList = Arrays.copyOf(freeList, capacity);
+    }
+}
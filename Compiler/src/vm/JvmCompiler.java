@@ -0,0 +1,574 @@
+package vm;
+
+import compiler.Instruction;
+import compiler.OpCode;
+import compiler.StackDepth;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+import static vm.ClassFileWriter.*;
+
+/**
+ * Translates a linked program into a JVM class with one static method,
+ *
+ *   static void run(RuntimeState rt)
+ *
+ * and loads it as a hidden class. Every operand stack position and every
+ * variable becomes a long local holding a NaN-boxed {@link Value}, and jumps
+ * become JVM branches, so the JIT sees the whole program as ordinary code.
+ *
+ * Operations that can fail or need the heap call the static helpers in
+ * {@link JvmEngine}, which delegate to {@link RuntimeState}; each call carries
+ * the instruction index so errors read exactly as they do in the VM.
+ *
+ * Garbage collection: values in JVM locals are invisible to the collector, so
+ * the heap defers collection and the code polls for it on backward jumps taken
+ * with an empty operand stack. At such a safepoint the variables are copied
+ * into the runtime frame, which then holds every live value.
+ *
+ * Programs this translator cannot handle (unknown opcodes, inconsistent stack
+ * depths, methods over the JVM's size limits) are rejected with an
+ * UnsupportedOperationException; the engine then falls back to the VM. So are
+ * methods over HotSpot's huge-method limit: the JIT never compiles those, and
+ * interpreted JVM bytecode is several times slower than the VM (a 1000-element
+ * array literal alone is past the limit).
+ */
+final class JvmCompiler {
+    private static final String CLASS_NAME = "vm/CompiledProgram";
+    private static final String HELPERS = "vm/JvmEngine";
+    private static final String VALUE = "vm/Value";
+    private static final String RUNTIME = "vm/RuntimeState";
+    private static final String RT = "L" + RUNTIME + ";";
+
+    private static final int JVM_MAX_STACK = 16;   // deepest helper call (arrayStore) needs 9
+    private static final int HUGE_METHOD_LIMIT = 8000;   // HotSpot's -XX:+DontCompileHugeMethods bound
+
+    private final Program program;
+    private final ClassFileWriter out = new ClassFileWriter();
+    private final int[] depthAt;
+    private final int[] labels;
+    private final int slotCount;
+
+    private JvmCompiler(Program program) {
+        this.program = program;
+        this.slotCount = program.slotNames.length;
+        this.depthAt = stackDepths(program);
+        this.labels = new int[program.code.length + 1];
+        for (int i = 0; i < labels.length; i++) labels[i] = out.newLabel();
+    }
+
+    /** Compiles the program and returns a handle to its (RuntimeState)void entry point. */
+    static MethodHandle compile(Program program) {
+        JvmCompiler compiler = new JvmCompiler(program);
+        byte[] classFile = compiler.translate();
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classFile, true);
+            return lookup.findStatic(lookup.lookupClass(), "run",
+                    MethodType.methodType(void.class, RuntimeState.class));
+        } catch (ReflectiveOperationException | LinkageError e) {
+            throw new IllegalStateException("JVM backend produced an invalid class: " + e, e);
+        }
+    }
+
+    // ── Translation ─────────────────────────────────────────
+
+    private byte[] translate() {
+        int maxDepth = 0;
+        for (int depth : depthAt) maxDepth = Math.max(maxDepth, depth + 1);
+        int maxLocals = stackLocal(maxDepth);
+        if (maxLocals > 65535) throw new UnsupportedOperationException("too many locals");
+
+        for (int slot = 0; slot < slotCount; slot++) {
+            out.pushLong(Value.UNDEFINED);
+            out.lstore(varLocal(slot));
+        }
+        for (int pc = 0; pc < program.code.length; pc++) {
+            out.bind(labels[pc]);
+            if (depthAt[pc] >= 0) instruction(pc, depthAt[pc]);   // unreachable code is dropped
+        }
+        out.bind(labels[program.code.length]);
+        out.op(RETURN);
+        if (out.codeSize() > HUGE_METHOD_LIMIT) {
+            throw new UnsupportedOperationException("method too large to JIT (" + out.codeSize() + " bytes)");
+        }
+
+        return out.toClassFile(CLASS_NAME, "run", "(" + RT + ")V", JVM_MAX_STACK, maxLocals);
+    }
+
+    private void instruction(int pc, int depth) {
+        int operand = program.operands[pc];
+        int operand2 = program.operands2[pc];
+        int top = depth - 1;
+
+        switch (program.code[pc]) {
+            case CONST_NUM:
+            case CONST_STR:
+            case CONST_CHAR:
+            case CONST_BOOL:
+                pushConstant(pc);
+                out.lstore(stackLocal(depth));
+                break;
+            case CONST_NULL:
+                out.pushLong(Value.NULL);
+                out.lstore(stackLocal(depth));
+                break;
+
+            case LOAD_SLOT:
+                loadVar(operand, pc);
+                out.lstore(stackLocal(depth));
+                break;
+            case STORE_SLOT:
+                out.lload(stackLocal(top));
+                out.lstore(varLocal(operand));
+                break;
+            case POP:
+                break;   // the value stays in its stack local until overwritten
+            case DUP:
+                out.lload(stackLocal(top));
+                out.lstore(stackLocal(depth));
+                break;
+
+            case ADD:
+            case ADD_NUM:
+            case ADD_STR:
+                out.op(ALOAD_0);
+                binary(top, pc, "add", "(" + RT + "JJI)J");
+                break;
+            case CONCAT:
+                out.op(ALOAD_0);
+                out.lload(stackLocal(top - 1));
+                out.lload(stackLocal(top));
+                out.invokeStatic(HELPERS, "concat", "(" + RT + "JJ)J");
+                out.lstore(stackLocal(top - 1));
+                break;
+            case SUB:    binary(top, pc, "sub", "(JJI)J"); break;
+            case MUL:    binary(top, pc, "mul", "(JJI)J"); break;
+            case DIV:    binary(top, pc, "div", "(JJI)J"); break;
+            case GT:
+            case GT_NUM:  binary(top, pc, "gt", "(JJI)J"); break;
+            case GTE:
+            case GTE_NUM: binary(top, pc, "gte", "(JJI)J"); break;
+            case LT:
+            case LT_NUM:  binary(top, pc, "lt", "(JJI)J"); break;
+            case LTE:
+            case LTE_NUM: binary(top, pc, "lte", "(JJI)J"); break;
+            case ARRAY_LOAD:
+            case ARRAY_LOAD_NUM:
+                out.op(ALOAD_0);
+                binary(top, pc, "arrayLoad", "(" + RT + "JJI)J");
+                break;
+            case ARRAY_LOAD_UNCHECKED:
+                out.op(ALOAD_0);
+                out.lload(stackLocal(top - 1));
+                out.lload(stackLocal(top));
+                out.invokeStatic(HELPERS, "arrayLoadUnchecked", "(" + RT + "JJ)J");
+                out.lstore(stackLocal(top - 1));
+                break;
+            case EQ:
+            case NEQ:
+                out.op(ALOAD_0);
+                out.lload(stackLocal(top - 1));
+                out.lload(stackLocal(top));
+                out.invokeStatic(HELPERS, program.code[pc] == OpCode.EQ ? "eq" : "neq", "(" + RT + "JJ)J");
+                out.lstore(stackLocal(top - 1));
+                break;
+            case AND:
+            case OR:
+                out.lload(stackLocal(top - 1));
+                out.lload(stackLocal(top));
+                out.invokeStatic(HELPERS, program.code[pc] == OpCode.AND ? "and" : "or", "(JJ)J");
+                out.lstore(stackLocal(top - 1));
+                break;
+
+            case NEG:
+                out.lload(stackLocal(top));
+                out.pushInt(pc);
+                out.invokeStatic(HELPERS, "neg", "(JI)J");
+                out.lstore(stackLocal(top));
+                break;
+            case NOT:
+                out.lload(stackLocal(top));
+                out.invokeStatic(HELPERS, "not", "(J)J");
+                out.lstore(stackLocal(top));
+                break;
+
+            case JUMP:
+                jump(pc, program.targets[pc], depth);
+                break;
+            case JUMP_IF_FALSE:
+            case JUMP_IF_FALSE_BOOL:
+                out.lload(stackLocal(top));
+                out.invokeStatic(VALUE, "isTruthy", "(J)Z");
+                branchUnless(pc, program.targets[pc], top);
+                break;
+            case JUMP_IF_TRUE:
+                out.lload(stackLocal(top));
+                out.invokeStatic(VALUE, "isTruthy", "(J)Z");
+                branchIf(pc, program.targets[pc], top);
+                break;
+            case JEQ:
+            case JNEQ:
+                out.op(ALOAD_0);
+                out.lload(stackLocal(top - 1));
+                out.lload(stackLocal(top));
+                out.invokeStatic(HELPERS, program.code[pc] == OpCode.JEQ ? "equal" : "notEqual", "(" + RT + "JJ)Z");
+                branchUnless(pc, program.targets[pc], top - 1);
+                break;
+            case JGT:  compareBranch(top, pc, "greater"); break;
+            case JGTE: compareBranch(top, pc, "greaterEqual"); break;
+            case JLT:  compareBranch(top, pc, "less"); break;
+            case JLTE: compareBranch(top, pc, "lessEqual"); break;
+
+            // ── Typed forms: operands proven numbers ──
+            case ADD_NUM_UNCHECKED: numeric(top, "addNum"); break;
+            case SUB_NUM_UNCHECKED: numeric(top, "subNum"); break;
+            case MUL_NUM_UNCHECKED: numeric(top, "mulNum"); break;
+            case DIV_NUM_UNCHECKED: binary(top, pc, "divNum", "(JJI)J"); break;
+            case GT_NUM_UNCHECKED:  numeric(top, "gtNum"); break;
+            case GTE_NUM_UNCHECKED: numeric(top, "gteNum"); break;
+            case LT_NUM_UNCHECKED:  numeric(top, "ltNum"); break;
+            case LTE_NUM_UNCHECKED: numeric(top, "lteNum"); break;
+            case NEG_NUM_UNCHECKED:
+                out.lload(stackLocal(top));
+                out.invokeStatic(HELPERS, "negNum", "(J)J");
+                out.lstore(stackLocal(top));
+                break;
+            case JGT_NUM_UNCHECKED:  numericBranch(top, pc, "greaterNum"); break;
+            case JGTE_NUM_UNCHECKED: numericBranch(top, pc, "greaterEqualNum"); break;
+            case JLT_NUM_UNCHECKED:  numericBranch(top, pc, "lessNum"); break;
+            case JLTE_NUM_UNCHECKED: numericBranch(top, pc, "lessEqualNum"); break;
+
+            case PRINT:
+                out.op(ALOAD_0);
+                out.lload(stackLocal(top));
+                out.invokeStatic(HELPERS, "print", "(" + RT + "J)V");
+                break;
+
+            case MAKE_ARRAY: {
+                int base = depth - operand;
+                out.op(ALOAD_0);
+                out.pushInt(operand);
+                out.newLongArray();
+                for (int i = 0; i < operand; i++) {
+                    out.op(DUP);
+                    out.pushInt(i);
+                    out.lload(stackLocal(base + i));
+                    out.op(LASTORE);
+                }
+                out.invokeStatic(HELPERS, "makeArray", "(" + RT + "[J)J");
+                out.lstore(stackLocal(base));
+                break;
+            }
+            case ARRAY_STORE_SLOT:
+                out.op(ALOAD_0);
+                out.lload(varLocal(operand));
+                out.pushInt(operand);
+                out.lload(stackLocal(top));        // index
+                out.lload(stackLocal(top - 1));    // value
+                out.pushInt(pc);
+                out.invokeStatic(HELPERS, "arrayStore", "(" + RT + "JIJJI)V");
+                break;
+
+            case ARRAY_STORE_UNCHECKED:
+                out.op(ALOAD_0);
+                out.lload(varLocal(operand));
+                out.lload(stackLocal(top));        // index
+                out.lload(stackLocal(top - 1));    // value
+                out.invokeStatic(HELPERS, "arrayStoreUnchecked", "(" + RT + "JJJ)V");
+                break;
+            case GUARD_INDEX_VAR:
+            case GUARD_INDEX_CONST:
+                out.op(ALOAD_0);
+                out.lload(varLocal(operand));
+                if (program.code[pc] == OpCode.GUARD_INDEX_VAR) {
+                    out.lload(varLocal(operand2));
+                } else {
+                    out.pushLong(Value.number(0));
+                }
+                pushConstant(pc);
+                out.invokeStatic(HELPERS, "indexFits", "(" + RT + "JJJ)J");
+                out.lstore(stackLocal(depth));
+                break;
+
+            case HALT:
+                out.op(RETURN);
+                break;
+
+            // ── Superinstructions ──
+            case INC_VAR:
+                out.op(ALOAD_0);
+                loadVar(operand, pc);
+                pushConstant(pc);
+                out.pushInt(pc);
+                out.invokeStatic(HELPERS, "add", "(" + RT + "JJI)J");
+                out.lstore(varLocal(operand));
+                break;
+            case LOAD_CONST_ADD:
+                out.op(ALOAD_0);
+                loadVar(operand, pc);
+                pushConstant(pc);
+                out.pushInt(pc);
+                out.invokeStatic(HELPERS, "add", "(" + RT + "JJI)J");
+                out.lstore(stackLocal(depth));
+                break;
+            case LOAD_CONST_MUL:
+                loadVar(operand, pc);
+                pushConstant(pc);
+                out.pushInt(pc);
+                out.invokeStatic(HELPERS, "mul", "(JJI)J");
+                out.lstore(stackLocal(depth));
+                break;
+            case LOAD_LOAD_ADD:
+                out.op(ALOAD_0);
+                loadVar(operand, pc);
+                loadVar(operand2, pc);
+                out.pushInt(pc);
+                out.invokeStatic(HELPERS, "add", "(" + RT + "JJI)J");
+                out.lstore(stackLocal(depth));
+                break;
+            case LOAD_ARRAY_VAR:
+                out.op(ALOAD_0);
+                loadVar(operand, pc);
+                loadVar(operand2, pc);
+                out.pushInt(pc);
+                out.invokeStatic(HELPERS, "arrayLoad", "(" + RT + "JJI)J");
+                out.lstore(stackLocal(depth));
+                break;
+            case LOAD_ARRAY_VAR_UNCHECKED:
+                out.op(ALOAD_0);
+                loadVar(operand, pc);
+                loadVar(operand2, pc);
+                out.invokeStatic(HELPERS, "arrayLoadUnchecked", "(" + RT + "JJ)J");
+                out.lstore(stackLocal(depth));
+                break;
+            case LOAD_ARRAY_CONST:
+                out.op(ALOAD_0);
+                loadVar(operand, pc);
+                pushConstant(pc);
+                out.pushInt(pc);
+                out.invokeStatic(HELPERS, "arrayLoad", "(" + RT + "JJI)J");
+                out.lstore(stackLocal(depth));
+                break;
+            case ADD_CONST:
+                out.op(ALOAD_0);
+                out.lload(stackLocal(top));
+                pushConstant(pc);
+                out.pushInt(pc);
+                out.invokeStatic(HELPERS, "add", "(" + RT + "JJI)J");
+                out.lstore(stackLocal(top));
+                break;
+            case JLT_VAR_CONST:
+                loadVar(operand, pc);
+                pushConstant(pc);
+                out.pushInt(pc);
+                out.invokeStatic(HELPERS, "less", "(JJI)Z");
+                branchUnless(pc, program.targets[pc], depth);
+                break;
+            case JLT_VAR_VAR:
+                loadVar(operand, pc);
+                loadVar(operand2, pc);
+                out.pushInt(pc);
+                out.invokeStatic(HELPERS, "less", "(JJI)Z");
+                branchUnless(pc, program.targets[pc], depth);
+                break;
+
+            default:
+                throw new UnsupportedOperationException("opcode " + program.code[pc]);
+        }
+    }
+
+    // ── Emit helpers ────────────────────────────────────────
+
+    /** Pops the two topmost stack locals, calls a (..., a, b, pc) helper and stores the result. */
+    private void binary(int top, int pc, String helper, String descriptor) {
+        out.lload(stackLocal(top - 1));
+        out.lload(stackLocal(top));
+        out.pushInt(pc);
+        out.invokeStatic(HELPERS, helper, descriptor);
+        out.lstore(stackLocal(top - 1));
+    }
+
+    /** Pops the two topmost stack locals and branches unless the (a, b, pc) test holds. */
+    private void compareBranch(int top, int pc, String test) {
+        out.lload(stackLocal(top - 1));
+        out.lload(stackLocal(top));
+        out.pushInt(pc);
+        out.invokeStatic(HELPERS, test, "(JJI)Z");
+        branchUnless(pc, program.targets[pc], top - 1);
+    }
+
+    /** Pops the two topmost stack locals, calls a (long, long)long helper that cannot fail, and stores the result. */
+    private void numeric(int top, String helper) {
+        out.lload(stackLocal(top - 1));
+        out.lload(stackLocal(top));
+        out.invokeStatic(HELPERS, helper, "(JJ)J");
+        out.lstore(stackLocal(top - 1));
+    }
+
+    /** Pops the two topmost stack locals and branches unless the (a, b) test, which cannot fail, holds. */
+    private void numericBranch(int top, int pc, String test) {
+        out.lload(stackLocal(top - 1));
+        out.lload(stackLocal(top));
+        out.invokeStatic(HELPERS, test, "(JJ)Z");
+        branchUnless(pc, program.targets[pc], top - 1);
+    }
+
+    /** Pushes the value of a variable, failing like the VM if it is undefined. */
+    private void loadVar(int slot, int pc) {
+        out.lload(varLocal(slot));
+        out.op(ALOAD_0);
+        out.pushInt(slot);
+        out.pushInt(pc);
+        out.invokeStatic(HELPERS, "defined", "(J" + RT + "II)J");
+    }
+
+    /**
+     * Pushes the NaN-boxed constant of an instruction. Numbers, characters and
+     * booleans are plain bit patterns; strings are heap refs, so they are read
+     * from the runtime's constant table.
+     */
+    private void pushConstant(int pc) {
+        Object constant = program.constants[pc];
+        if (constant instanceof Double) {
+            out.pushLong(Value.number((Double) constant));
+        } else if (constant instanceof Character) {
+            out.pushLong(Value.character((Character) constant));
+        } else if (constant instanceof Boolean) {
+            out.pushLong(Value.bool((Boolean) constant));
+        } else {
+            out.op(ALOAD_0);
+            out.getField(RUNTIME, "constants", "[J");
+            out.pushInt(pc);
+            out.op(LALOAD);
+        }
+    }
+
+    /** Consumes a boolean on the JVM stack: falls through if true, else jumps to target. */
+    private void branchUnless(int pc, int target, int depthAfter) {
+        if (isSafepoint(pc, target, depthAfter)) {
+            out.branch(IFNE, labels[pc + 1]);
+            jump(pc, target, depthAfter);
+        } else {
+            out.branch(IFEQ, labels[target]);
+        }
+    }
+
+    /** Consumes a boolean on the JVM stack: jumps to target if true, else falls through. */
+    private void branchIf(int pc, int target, int depthAfter) {
+        if (isSafepoint(pc, target, depthAfter)) {
+            out.branch(IFEQ, labels[pc + 1]);
+            jump(pc, target, depthAfter);
+        } else {
+            out.branch(IFNE, labels[target]);
+        }
+    }
+
+    private void jump(int pc, int target, int depthAfter) {
+        if (isSafepoint(pc, target, depthAfter)) safepoint();
+        out.branch(GOTO, labels[target]);
+    }
+
+    /** Backward jumps with an empty operand stack poll for a pending collection. */
+    private boolean isSafepoint(int pc, int target, int depthAfter) {
+        return target <= pc && depthAfter == 0;
+    }
+
+    private void safepoint() {
+        int skip = out.newLabel();
+        out.op(ALOAD_0);
+        out.invokeStatic(HELPERS, "collectionPending", "(" + RT + ")Z");
+        out.branch(IFEQ, skip);
+        for (int slot = 0; slot < slotCount; slot++) {
+            out.op(ALOAD_0);
+            out.getField(RUNTIME, "frame", "[J");
+            out.pushInt(slot);
+            out.lload(varLocal(slot));
+            out.op(LASTORE);
+        }
+        out.op(ALOAD_0);
+        out.invokeStatic(HELPERS, "collect", "(" + RT + ")V");
+        out.bind(skip);
+    }
+
+    // ── Local variable layout ───────────────────────────────
+    // Local 0 is the RuntimeState; every value takes two slots (a long).
+
+    private int varLocal(int slot) {
+        return 1 + 2 * slot;
+    }
+
+    private int stackLocal(int depth) {
+        return 1 + 2 * (slotCount + depth);
+    }
+
+    // ── Stack depth analysis ────────────────────────────────
+
+    /**
+     * Operand stack depth before each instruction, -1 if unreachable. Unlike the
+     * VM, compiled code needs a fixed depth at every instruction, so anything
+     * else is rejected as unsupported.
+     */
+    private static int[] stackDepths(Program program) {
+        int n = program.code.length;
+        int[] depthAt = new int[n];
+        Arrays.fill(depthAt, -1);
+        Deque<Integer> worklist = new ArrayDeque<>();
+        if (n > 0) {
+            depthAt[0] = 0;
+            worklist.push(0);
+        }
+
+        while (!worklist.isEmpty()) {
+            int pc = worklist.pop();
+            OpCode op = program.code[pc];
+            int pops = op == OpCode.MAKE_ARRAY ? program.operands[pc] : popsOf(op);
+            if (depthAt[pc] < pops) throw new UnsupportedOperationException("stack underflow at " + pc);
+            int after = depthAt[pc] - pops + StackDepth.pushes(op);
+
+            switch (op) {
+                case HALT:
+                    break;
+                case JUMP:
+                    flow(depthAt, worklist, program.targets[pc], after);
+                    break;
+                case JUMP_IF_FALSE:
+                case JUMP_IF_FALSE_BOOL:
+                case JUMP_IF_TRUE:
+                case JEQ: case JNEQ: case JGT: case JGTE: case JLT: case JLTE:
+                case JGT_NUM_UNCHECKED: case JGTE_NUM_UNCHECKED: case JLT_NUM_UNCHECKED: case JLTE_NUM_UNCHECKED:
+                case JLT_VAR_CONST:
+                case JLT_VAR_VAR:
+                    flow(depthAt, worklist, program.targets[pc], after);
+                    flow(depthAt, worklist, pc + 1, after);
+                    break;
+                default:
+                    flow(depthAt, worklist, pc + 1, after);
+                    break;
+            }
+        }
+        return depthAt;
+    }
+
+    private static int popsOf(OpCode op) {
+        try {
+            return StackDepth.pops(new Instruction(op));
+        } catch (IllegalArgumentException e) {
+            throw new UnsupportedOperationException("opcode " + op);
+        }
+    }
+
+    private static void flow(int[] depthAt, Deque<Integer> worklist, int to, int depth) {
+        if (to >= depthAt.length) return;
+        if (depthAt[to] == -1) {
+            depthAt[to] = depth;
+            worklist.push(to);
+        } else if (depthAt[to] != depth) {
+            throw new UnsupportedOperationException("inconsistent stack depth at " + to);
+        }
+    }
+}
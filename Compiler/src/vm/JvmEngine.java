@@ -0,0 +1,275 @@
+package vm;
+
+import java.lang.invoke.MethodHandle;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.WeakHashMap;
+
+/**
+ * Execution engine that runs a program as JVM bytecode: the program is
+ * translated by {@link JvmCompiler} into a hidden class, which the JVM's own
+ * JIT then compiles to machine code. Best suited to long-running programs;
+ * translating and loading the class costs more than interpreting a short one.
+ *
+ * Translation happens once per program and is reused by every engine created
+ * for it. Programs the translator does not support, or whose method would be
+ * too large for the JIT, run on the {@link VM}.
+ *
+ * The static methods at the bottom are the operations the generated code calls;
+ * they keep semantics and error messages identical to the VM.
+ */
+public class JvmEngine implements Engine {
+    private static final Map<Program, Optional<MethodHandle>> compiled =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final MethodHandle entry;   // null: not compilable, run the fallback
+    private final RuntimeState runtime;
+    private final Engine fallback;
+
+    public JvmEngine(Program program) {
+        this(program, OutputSink.stdout());
+    }
+
+    public JvmEngine(Program program, OutputSink out) {
+        program.linkAll();   // translation needs the whole program
+        this.entry = compiled.computeIfAbsent(program, JvmEngine::translate).orElse(null);
+        if (entry != null) {
+            // Compiled code keeps values in JVM locals, so collection only happens at
+            // the safepoints it polls, where every live value is in the frame.
+            this.runtime = new RuntimeState(program, heap -> { }, out);
+            this.runtime.heap.deferCollection();
+            this.fallback = null;
+        } else {
+            this.runtime = null;
+            this.fallback = new VM(program, out);
+        }
+    }
+
+    private static Optional<MethodHandle> translate(Program program) {
+        try {
+            return Optional.of(JvmCompiler.compile(program));
+        } catch (UnsupportedOperationException e) {
+            return Optional.empty();
+        }
+    }
+
+    // ── Public API ──────────────────────────────────────────
+
+    /** True if the program runs as JVM bytecode, false if it fell back to the VM. */
+    public boolean isCompiled() {
+        return entry != null;
+    }
+
+    @Override
+    public void countInstructions() {
+        if (fallback != null) fallback.countInstructions();
+    }
+
+    @Override
+    public long executedInstructions() {
+        return fallback != null ? fallback.executedInstructions() : -1;
+    }
+
+    @Override
+    public void run() {
+        if (fallback != null) {
+            fallback.run();
+            return;
+        }
+        try {
+            entry.invokeExact(runtime);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        } finally {
+            runtime.out.flush();
+        }
+    }
+
+    // ── Operations called from compiled code ────────────────
+
+    static long defined(long value, RuntimeState rt, int slot, int pc) {
+        if (value == Value.UNDEFINED) {
+            throw RuntimeState.error(pc, "Undefined variable '" + rt.slotNames[slot] + "'");
+        }
+        return value;
+    }
+
+    static long add(RuntimeState rt, long a, long b, int pc) {
+        return rt.add(a, b, pc);
+    }
+
+    static long sub(long a, long b, int pc) {
+        return RuntimeState.sub(a, b, pc);
+    }
+
+    static long mul(long a, long b, int pc) {
+        return RuntimeState.mul(a, b, pc);
+    }
+
+    static long div(long a, long b, int pc) {
+        return RuntimeState.div(a, b, pc);
+    }
+
+    static long neg(long a, int pc) {
+        return RuntimeState.neg(a, pc);
+    }
+
+    static long not(long a) {
+        return Value.bool(!Value.isTruthy(a));
+    }
+
+    static long eq(RuntimeState rt, long a, long b) {
+        return Value.bool(rt.heap.isEqual(a, b));
+    }
+
+    static long neq(RuntimeState rt, long a, long b) {
+        return Value.bool(!rt.heap.isEqual(a, b));
+    }
+
+    static long gt(long a, long b, int pc) {
+        return RuntimeState.gt(a, b, pc);
+    }
+
+    static long gte(long a, long b, int pc) {
+        return RuntimeState.gte(a, b, pc);
+    }
+
+    static long lt(long a, long b, int pc) {
+        return RuntimeState.lt(a, b, pc);
+    }
+
+    static long lte(long a, long b, int pc) {
+        return RuntimeState.lte(a, b, pc);
+    }
+
+    // The tests of the compare-and-branch instructions (less also of JLT_VAR_CONST / JLT_VAR_VAR)
+
+    static boolean equal(RuntimeState rt, long a, long b) {
+        return rt.heap.isEqual(a, b);
+    }
+
+    static boolean notEqual(RuntimeState rt, long a, long b) {
+        return !rt.heap.isEqual(a, b);
+    }
+
+    static boolean greater(long a, long b, int pc) {
+        return RuntimeState.greater(a, b, pc);
+    }
+
+    static boolean greaterEqual(long a, long b, int pc) {
+        return RuntimeState.greaterEqual(a, b, pc);
+    }
+
+    static boolean less(long a, long b, int pc) {
+        return RuntimeState.less(a, b, pc);
+    }
+
+    static boolean lessEqual(long a, long b, int pc) {
+        return RuntimeState.lessEqual(a, b, pc);
+    }
+
+    // The typed forms: operands proven numbers
+
+    static long addNum(long a, long b) {
+        return RuntimeState.addNum(a, b);
+    }
+
+    static long subNum(long a, long b) {
+        return RuntimeState.subNum(a, b);
+    }
+
+    static long mulNum(long a, long b) {
+        return RuntimeState.mulNum(a, b);
+    }
+
+    static long divNum(long a, long b, int pc) {
+        return RuntimeState.divNum(a, b, pc);
+    }
+
+    static long negNum(long a) {
+        return RuntimeState.negNum(a);
+    }
+
+    static long gtNum(long a, long b) {
+        return Value.bool(RuntimeState.greaterNum(a, b));
+    }
+
+    static long gteNum(long a, long b) {
+        return Value.bool(RuntimeState.greaterEqualNum(a, b));
+    }
+
+    static long ltNum(long a, long b) {
+        return Value.bool(RuntimeState.lessNum(a, b));
+    }
+
+    static long lteNum(long a, long b) {
+        return Value.bool(RuntimeState.lessEqualNum(a, b));
+    }
+
+    static boolean greaterNum(long a, long b) {
+        return RuntimeState.greaterNum(a, b);
+    }
+
+    static boolean greaterEqualNum(long a, long b) {
+        return RuntimeState.greaterEqualNum(a, b);
+    }
+
+    static boolean lessNum(long a, long b) {
+        return RuntimeState.lessNum(a, b);
+    }
+
+    static boolean lessEqualNum(long a, long b) {
+        return RuntimeState.lessEqualNum(a, b);
+    }
+
+    static long and(long a, long b) {
+        return Value.bool(Value.isTruthy(a) && Value.isTruthy(b));
+    }
+
+    static long or(long a, long b) {
+        return Value.bool(Value.isTruthy(a) || Value.isTruthy(b));
+    }
+
+    static void print(RuntimeState rt, long value) {
+        rt.print(value);
+    }
+
+    static long makeArray(RuntimeState rt, long[] elements) {
+        return rt.heap.allocArray(new ArrayValue(elements));
+    }
+
+    static long concat(RuntimeState rt, long a, long b) {
+        return rt.concat(a, b);
+    }
+
+    static long arrayLoad(RuntimeState rt, long array, long index, int pc) {
+        return rt.arrayLoad(array, index, pc);
+    }
+
+    static void arrayStore(RuntimeState rt, long array, int slot, long index, long value, int pc) {
+        rt.arrayStore(array, slot, index, value, pc);
+    }
+
+    static long arrayLoadUnchecked(RuntimeState rt, long array, long index) {
+        return rt.arrayLoadUnchecked(array, index);
+    }
+
+    static void arrayStoreUnchecked(RuntimeState rt, long array, long index, long value) {
+        rt.arrayStoreUnchecked(array, index, value);
+    }
+
+    static long indexFits(RuntimeState rt, long array, long bound, long offset) {
+        return Value.bool(rt.indexFits(array, bound, offset));
+    }
+
+    static boolean collectionPending(RuntimeState rt) {
+        return rt.heap.collectionPending();
+    }
+
+    static void collect(RuntimeState rt) {
+        rt.heap.collectPending();
+    }
+}
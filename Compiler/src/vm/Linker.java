@@ -0,0 +1,411 @@
+package vm;
+
+import compiler.Chunk;
+import compiler.Instruction;
+import compiler.Isa;
+import compiler.MappedChunk;
+import compiler.OpCode;
+import compiler.RegisterOperands;
+import compiler.StackDepth;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns a Chunk (as produced by BytecodeCompiler or BytecodeReader) into an
+ * immutable {@link Program} with typed operands: jump targets, counts and
+ * slots become ints (superinstructions carry up to three operands), constants
+ * are boxed exactly once and strings are interned.
+ * Name-addressed LOAD/STORE/ARRAY_STORE from v1.0 files are rewritten to their
+ * slot-addressed forms, so the VM only ever sees slots; their missing max
+ * stack depth is computed here.
+ *
+ * Register code is decoded by its operand layout (see RegisterOperands) and
+ * sized to the highest register it uses.
+ *
+ * Linked stack code is verified (see {@link Verifier}), so a malformed file is
+ * rejected before it runs.
+ *
+ * A mapped binary file can instead be linked lazily (see {@link #linkLazily}):
+ * each block is linked the first time the program reaches it, so a link error
+ * in a block is reported only if the program gets there. It is verified first,
+ * from just its opcodes and integer operands; only trusted files should skip
+ * that.
+ */
+public class Linker {
+    private static final int MAX_REGISTERS = 1 << 16;
+
+    public static Program link(Chunk chunk) {
+        if (chunk.isa == Isa.REGISTER) return linkRegisters(chunk);
+
+        List<Instruction> instructions = chunk.code;
+        List<String> slotNames = new ArrayList<>(chunk.slotNames);
+        Map<String, Integer> slotsByName = slotsByName(slotNames);
+        // Name-addressed instructions get slots after the named ones
+        for (Instruction instr : instructions) {
+            if (isNameAddressed(instr.opCode) && instr.operand != null && !slotsByName.containsKey(instr.operand)) {
+                slotsByName.put(instr.operand, slotNames.size());
+                slotNames.add(instr.operand);
+            }
+        }
+
+        int n = instructions.size();
+        int maxStack = chunk.maxStack >= 0 ? chunk.maxStack : StackDepth.compute(instructions);
+        Program program = new Program(new OpCode[n], new int[n], new int[n], new int[n], new Object[n],
+                slotNames.toArray(new String[0]), maxStack);
+        for (int i = 0; i < n; i++) linkInstruction(program, instructions.get(i), i, slotsByName);
+        program.assignedLoads = Verifier.verify(program);
+        return program;
+    }
+
+    /**
+     * Links a mapped file block by block, as the program first reaches each
+     * block (see {@link Program#link}), so running it starts without decoding
+     * its constants or building its instructions. If verify is set, the
+     * program is verified first (see {@link #verifyMapped}), which reads the
+     * opcodes and integer operands of the whole file: verified startup grows
+     * with the size of the code, unverified startup does not. Register code,
+     * stack code without a recorded max stack depth, and code with
+     * name-addressed instructions need all of their code up front and are
+     * linked eagerly.
+     */
+    public static Program linkLazily(MappedChunk chunk, boolean verify) throws IOException {
+        if (chunk.isa == Isa.REGISTER || chunk.maxStack < 0) return link(chunk.toChunk());
+        int n = chunk.size();
+        boolean[] assignedLoads = null;
+        if (verify) {
+            assignedLoads = verifyMapped(chunk);
+            if (assignedLoads == null) return link(chunk.toChunk());
+        }
+        Program program = new Program(new OpCode[n], new int[n], new int[n], new int[n], new Object[n],
+                chunk.slotNames.toArray(new String[0]), chunk.maxStack, chunk);
+        program.assignedLoads = assignedLoads;
+        return program;
+    }
+
+    /**
+     * Verifies a mapped program from its opcodes and integer operands, before
+     * any of it is linked: checks the slots and counts the {@link Verifier}
+     * relies on, then runs it. Returns its result, or null if the program has
+     * name-addressed instructions, which only the eager linker resolves.
+     */
+    private static boolean[] verifyMapped(MappedChunk chunk) throws IOException {
+        int n = chunk.size();
+        int slotCount = chunk.slotNames.size();
+        OpCode[] code = new OpCode[n];
+        int[][] ints = { new int[n], new int[n], new int[n] };
+        chunk.decodeIntegers(code, ints);
+
+        int[] targets = new int[n];
+        for (int i = 0; i < n; i++) {
+            switch (code[i]) {
+                case LOAD:
+                case STORE:
+                case ARRAY_STORE:
+                    return null;
+                case LOAD_SLOT:
+                case STORE_SLOT:
+                    checkSlot(ints[0][i], slotCount, i);
+                    break;
+                case MAKE_ARRAY:
+                    if (ints[0][i] < 0) throw error(i, "negative array size " + ints[0][i]);
+                    break;
+                case JUMP:
+                case JUMP_IF_FALSE:
+                case JUMP_IF_FALSE_BOOL:
+                case JUMP_IF_TRUE:
+                case JEQ: case JNEQ: case JGT: case JGTE: case JLT: case JLTE:
+                case JGT_NUM_UNCHECKED: case JGTE_NUM_UNCHECKED: case JLT_NUM_UNCHECKED: case JLTE_NUM_UNCHECKED:
+                    targets[i] = ints[0][i];
+                    break;
+                case JLT_VAR_CONST:
+                    targets[i] = ints[1][i];   // the constant is not among the ints
+                    break;
+                case JLT_VAR_VAR:
+                    targets[i] = ints[2][i];
+                    break;
+                default:
+                    break;
+            }
+        }
+        return Verifier.verify(code, ints[0], targets, chunk.maxStack);
+    }
+
+    /** Decodes and links block b of a lazily linked program; called by Program with its lock held. */
+    static void linkBlock(Program program, int b) {
+        List<Instruction> block;
+        try {
+            block = program.source.block(b);
+        } catch (IOException e) {
+            throw error(b * program.source.blockSize(), e.getMessage());
+        }
+        if (program.slotsByName == null) program.slotsByName = slotsByName(Arrays.asList(program.slotNames));
+        int first = b * program.source.blockSize();
+        for (int i = 0; i < block.size(); i++) linkInstruction(program, block.get(i), first + i, program.slotsByName);
+    }
+
+    private static Map<String, Integer> slotsByName(List<String> slotNames) {
+        Map<String, Integer> slotsByName = new HashMap<>();
+        for (int s = 0; s < slotNames.size(); s++) {
+            slotsByName.putIfAbsent(slotNames.get(s), s);
+        }
+        return slotsByName;
+    }
+
+    private static boolean isNameAddressed(OpCode op) {
+        return op == OpCode.LOAD || op == OpCode.STORE || op == OpCode.ARRAY_STORE;
+    }
+
+    /** Links stack instruction i into program's arrays. */
+    private static void linkInstruction(Program program, Instruction instr, int i, Map<String, Integer> slotsByName) {
+        int slotCount = program.slotNames.length;
+        int n = program.code.length;
+        OpCode[] code = program.code;
+        int[] operands = program.operands;
+        int[] operands2 = program.operands2;
+        int[] targets = program.targets;
+        Object[] constants = program.constants;
+        code[i] = instr.opCode;
+        switch (instr.opCode) {
+            case CONST_NUM:
+            case ADD_CONST:
+                constants[i] = Double.valueOf(parseNumber(instr, i));
+                break;
+            case CONST_STR:
+                constants[i] = requireOperand(instr, i).intern();
+                break;
+            case CONST_CHAR: {
+                String operand = requireOperand(instr, i);
+                if (operand.isEmpty()) throw error(i, "CONST_CHAR requires a character");
+                constants[i] = Character.valueOf(operand.charAt(0));
+                break;
+            }
+            case CONST_BOOL:
+                constants[i] = Boolean.valueOf(requireOperand(instr, i));
+                break;
+            case LOAD_SLOT:
+            case STORE_SLOT:
+            case ARRAY_STORE_SLOT:
+            case ARRAY_STORE_UNCHECKED:
+                operands[i] = checkSlot(parseInt(instr, i), slotCount, i);
+                break;
+            case LOAD:
+            case STORE:
+            case ARRAY_STORE: {
+                String name = requireOperand(instr, i);
+                Integer slot = slotsByName.get(name);
+                if (slot == null) throw error(i, "unknown variable '" + name + "'");
+                code[i] = instr.opCode == OpCode.LOAD ? OpCode.LOAD_SLOT
+                        : instr.opCode == OpCode.STORE ? OpCode.STORE_SLOT
+                        : OpCode.ARRAY_STORE_SLOT;
+                operands[i] = slot;
+                break;
+            }
+            case JUMP:
+            case JUMP_IF_FALSE:
+            case JUMP_IF_FALSE_BOOL:
+            case JUMP_IF_TRUE:
+            case JEQ: case JNEQ: case JGT: case JGTE: case JLT: case JLTE:
+            case JGT_NUM_UNCHECKED: case JGTE_NUM_UNCHECKED: case JLT_NUM_UNCHECKED: case JLTE_NUM_UNCHECKED:
+                targets[i] = checkTarget(parseInt(instr, i), n, i);
+                break;
+
+            // ── Superinstructions ──
+            case INC_VAR:
+            case LOAD_CONST_ADD:
+            case LOAD_CONST_MUL:
+            case LOAD_ARRAY_CONST: {
+                String[] parts = split(instr, i, 2);
+                operands[i] = checkSlot(parseInt(parts[0], i), slotCount, i);
+                constants[i] = Double.valueOf(parseNumber(parts[1], i));
+                break;
+            }
+            case LOAD_LOAD_ADD:
+            case LOAD_ARRAY_VAR:
+            case LOAD_ARRAY_VAR_UNCHECKED: {
+                String[] parts = split(instr, i, 2);
+                operands[i] = checkSlot(parseInt(parts[0], i), slotCount, i);
+                operands2[i] = checkSlot(parseInt(parts[1], i), slotCount, i);
+                break;
+            }
+            case JLT_VAR_CONST: {
+                String[] parts = split(instr, i, 3);
+                operands[i] = checkSlot(parseInt(parts[0], i), slotCount, i);
+                constants[i] = Double.valueOf(parseNumber(parts[1], i));
+                targets[i] = checkTarget(parseInt(parts[2], i), n, i);
+                break;
+            }
+            case JLT_VAR_VAR: {
+                String[] parts = split(instr, i, 3);
+                operands[i] = checkSlot(parseInt(parts[0], i), slotCount, i);
+                operands2[i] = checkSlot(parseInt(parts[1], i), slotCount, i);
+                targets[i] = checkTarget(parseInt(parts[2], i), n, i);
+                break;
+            }
+            case GUARD_INDEX_VAR: {
+                String[] parts = split(instr, i, 3);
+                operands[i] = checkSlot(parseInt(parts[0], i), slotCount, i);
+                operands2[i] = checkSlot(parseInt(parts[1], i), slotCount, i);
+                constants[i] = Double.valueOf(parseNumber(parts[2], i));
+                break;
+            }
+            case GUARD_INDEX_CONST: {
+                String[] parts = split(instr, i, 2);
+                operands[i] = checkSlot(parseInt(parts[0], i), slotCount, i);
+                constants[i] = Double.valueOf(parseNumber(parts[1], i));
+                break;
+            }
+            case MAKE_ARRAY: {
+                int count = parseInt(instr, i);
+                if (count < 0) throw error(i, "negative array size " + count);
+                operands[i] = count;
+                break;
+            }
+            case LOAD_SLOT_UNCHECKED:
+                throw error(i, instr.opCode + " is internal to the VM");
+            default:
+                if (RegisterOperands.isRegisterOp(instr.opCode)) {
+                    throw error(i, instr.opCode + " is a register instruction, in stack code");
+                }
+                break;
+        }
+    }
+
+    // ── Register code ───────────────────────────────────────
+
+    private static Program linkRegisters(Chunk chunk) {
+        List<Instruction> instructions = chunk.code;
+        int n = instructions.size();
+        OpCode[] code = new OpCode[n];
+        int[][] registers = { new int[n], new int[n], new int[n] };
+        int[] targets = new int[n];
+        Object[] constants = new Object[n];
+        int[][] lists = new int[n][];
+        int frameSize = chunk.slotNames.size();
+
+        for (int i = 0; i < n; i++) {
+            Instruction instr = instructions.get(i);
+            code[i] = instr.opCode;
+            if (!RegisterOperands.isRegisterOp(instr.opCode)) {
+                throw error(i, instr.opCode + " is a stack instruction, in register code");
+            }
+            String layout = RegisterOperands.layout(instr.opCode);
+            String[] parts = RegisterOperands.split(instr);
+            boolean variadic = layout.endsWith("*");
+            int fixed = variadic ? layout.length() - 1 : layout.length();
+            if (variadic ? parts.length < fixed : parts.length != fixed) {
+                throw error(i, instr.opCode + " requires " + (variadic ? "at least " : "") + fixed
+                        + " operands, got '" + (instr.operand != null ? instr.operand : "") + "'");
+            }
+
+            int register = 0;
+            for (int p = 0; p < fixed; p++) {
+                switch (layout.charAt(p)) {
+                    case 'd':
+                    case 's':
+                        registers[register++][i] = checkRegister(parseInt(parts[p], i), i);
+                        break;
+                    case 'k':
+                        constants[i] = registerConstant(instr.opCode, parts[p], i);
+                        break;
+                    case 't':
+                        targets[i] = checkTarget(parseInt(parts[p], i), n, i);
+                        break;
+                    default:
+                        throw new IllegalStateException("Bad operand layout " + layout);
+                }
+            }
+            if (variadic) {
+                int[] list = new int[parts.length - fixed];
+                for (int p = fixed; p < parts.length; p++) list[p - fixed] = checkRegister(parseInt(parts[p], i), i);
+                lists[i] = list;
+            }
+            for (int r = 0; r < register; r++) frameSize = Math.max(frameSize, registers[r][i] + 1);
+            if (lists[i] != null) {
+                for (int reg : lists[i]) frameSize = Math.max(frameSize, reg + 1);
+            }
+        }
+
+        return new Program(Isa.REGISTER, code, registers[0], registers[1], registers[2], targets, constants, lists,
+                chunk.slotNames.toArray(new String[0]), 0, frameSize);
+    }
+
+    private static Object registerConstant(OpCode op, String text, int index) {
+        switch (op) {
+            case R_NUM:
+            case R_ADDK:
+                return Double.valueOf(parseNumber(text, index));
+            case R_STR:
+                return text.intern();
+            case R_CHAR:
+                if (text.isEmpty()) throw error(index, "R_CHAR requires a character");
+                return Character.valueOf(text.charAt(0));
+            case R_BOOL:
+                return Boolean.valueOf(text);
+            default:
+                throw error(index, op + " takes no constant");
+        }
+    }
+
+    private static int checkRegister(int register, int index) {
+        if (register < 0 || register >= MAX_REGISTERS) throw error(index, "register " + register + " out of range");
+        return register;
+    }
+
+    // ── Helpers ─────────────────────────────────────────────
+
+    private static String requireOperand(Instruction instr, int index) {
+        if (instr.operand == null) throw error(index, instr.opCode + " requires an operand");
+        return instr.operand;
+    }
+
+    private static String[] split(Instruction instr, int index, int count) {
+        String[] parts = requireOperand(instr, index).split(" ");
+        if (parts.length != count) {
+            throw error(index, instr.opCode + " requires " + count + " operands, got '" + instr.operand + "'");
+        }
+        return parts;
+    }
+
+    private static double parseNumber(Instruction instr, int index) {
+        return parseNumber(requireOperand(instr, index), index);
+    }
+
+    private static double parseNumber(String text, int index) {
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw error(index, "invalid number '" + text + "'");
+        }
+    }
+
+    private static int parseInt(Instruction instr, int index) {
+        return parseInt(requireOperand(instr, index), index);
+    }
+
+    private static int parseInt(String text, int index) {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw error(index, "invalid integer '" + text + "'");
+        }
+    }
+
+    private static int checkSlot(int slot, int slotCount, int index) {
+        if (slot < 0 || slot >= slotCount) throw error(index, "slot " + slot + " out of range");
+        return slot;
+    }
+
+    private static int checkTarget(int target, int size, int index) {
+        if (target < 0 || target > size) throw error(index, "jump target " + target + " out of range");
+        return target;
+    }
+
+    private static RuntimeException error(int index, String message) {
+        return new RuntimeException("Link error at instruction " + index + ": " + message);
+    }
+}
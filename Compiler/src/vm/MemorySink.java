@@ -0,0 +1,29 @@
+package vm;
+
+/**
+ * Sink that keeps all output in memory, for embedding the VM and for tests.
+ */
+public final class MemorySink extends OutputSink {
+    private final StringBuilder text = new StringBuilder();
+
+    MemorySink(int bufferSize) {
+        super(bufferSize);
+    }
+
+    /** Everything printed so far. */
+    public String contents() {
+        flush();
+        return text.toString();
+    }
+
+    /** Discards everything printed so far. */
+    public void clear() {
+        flush();
+        text.setLength(0);
+    }
+
+    @Override
+    protected void write(char[] chars, int length) {
+        text.append(chars, 0, length);
+    }
+}
@@ -0,0 +1,145 @@
+package vm;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Destination of PRINT output. Text is collected in a char buffer and handed to
+ * the concrete sink only when the buffer fills up or on {@link #flush()}, which
+ * every engine calls when the program ends (HALT, end of code, or an error).
+ *
+ * Integral numbers are formatted straight into the buffer, so printing them
+ * allocates nothing.
+ *
+ * Available sinks:
+ *   stdout  : System.out, encoded in the platform charset
+ *   file    : a file written through a FileChannel
+ *   memory  : an in-memory {@link MemorySink}, for embedding and tests
+ *   discard : drops everything (benchmarks)
+ */
+public abstract class OutputSink {
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    private static final int MAX_LONG_CHARS = 20;   // "-9223372036854775808"
+
+    private final char[] buffer;
+    private int count = 0;
+
+    protected OutputSink(int bufferSize) {
+        if (bufferSize < 1) throw new IllegalArgumentException("Output buffer size must be positive: " + bufferSize);
+        this.buffer = new char[bufferSize];
+    }
+
+    // ── Factories ───────────────────────────────────────────
+
+    public static OutputSink stdout() {
+        return stdout(DEFAULT_BUFFER_SIZE);
+    }
+
+    public static OutputSink stdout(int bufferSize) {
+        return new ChannelSink(Channels.newChannel(System.out), System.out, bufferSize, false);
+    }
+
+    /** Creates (or truncates) path; close the sink to release the file. */
+    public static OutputSink file(Path path, int bufferSize) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        return new ChannelSink(channel, null, bufferSize, true);
+    }
+
+    public static MemorySink memory() {
+        return new MemorySink(DEFAULT_BUFFER_SIZE);
+    }
+
+    public static OutputSink discard() {
+        return new OutputSink(DEFAULT_BUFFER_SIZE) {
+            protected void write(char[] chars, int length) { }
+        };
+    }
+
+    // ── Writing ─────────────────────────────────────────────
+
+    public final void print(String s) {
+        int n = s.length();
+        for (int i = 0; i < n; ) {
+            if (count == buffer.length) drain(false);
+            int chunk = Math.min(n - i, buffer.length - count);
+            s.getChars(i, i + chunk, buffer, count);
+            count += chunk;
+            i += chunk;
+        }
+    }
+
+    public final void print(char c) {
+        if (count == buffer.length) drain(false);
+        buffer[count++] = c;
+    }
+
+    /** Prints a number exactly like {@link Value#formatNumber}. */
+    public final void printNumber(double d) {
+        long whole = (long) d;
+        // Double.toString switches to E notation at 1e7; -0.0 prints as "-0"
+        if (whole == d && Math.abs(d) < 1e7 && !(whole == 0 && 1 / d < 0)) {
+            printLong(whole);
+        } else {
+            print(Value.formatNumber(d));
+        }
+    }
+
+    public final void println() {
+        print(LINE_SEPARATOR);
+    }
+
+    /** Writes out everything buffered so far. */
+    public final void flush() {
+        drain(true);
+        flushTarget();
+    }
+
+    /** Flushes and releases the underlying target. */
+    public void close() {
+        flush();
+    }
+
+    private void printLong(long v) {
+        if (buffer.length - count < MAX_LONG_CHARS) drain(false);
+        if (buffer.length - count < MAX_LONG_CHARS) {      // buffer smaller than a number
+            print(Long.toString(v));
+            return;
+        }
+        if (v < 0) {
+            buffer[count++] = '-';
+            v = -v;
+        }
+        int end = count;
+        for (long rest = v; rest != 0 || end == count; rest /= 10) end++;
+        for (int pos = end; pos > count; v /= 10) {
+            buffer[--pos] = (char) ('0' + v % 10);
+        }
+        count = end;
+    }
+
+    /**
+     * Hands the buffer to the sink. A partial drain keeps a trailing high
+     * surrogate back so a character pair is never split between two writes.
+     */
+    private void drain(boolean complete) {
+        int length = count;
+        if (!complete && length > 1 && Character.isHighSurrogate(buffer[length - 1])) length--;
+        write(buffer, length);
+        System.arraycopy(buffer, length, buffer, 0, count - length);
+        count -= length;
+    }
+
+    // ── Sink implementation ─────────────────────────────────
+
+    /** Consumes chars[0, length). */
+    protected abstract void write(char[] chars, int length);
+
+    /** Pushes written data through to its destination. */
+    protected void flushTarget() { }
+}
@@ -0,0 +1,147 @@
+package vm;
+
+import compiler.Isa;
+import compiler.MappedChunk;
+import compiler.OpCode;
+
+import java.util.Map;
+
+/**
+ * Executable ("linked") form of a bytecode program.
+ *
+ * Operands are decoded once by the {@link Linker} into parallel arrays indexed
+ * by instruction, so the VM never parses operand strings while running:
+ *   - code      : opcode of each instruction
+ *   - operands  : int operand (element count, slot), 0 if unused
+ *   - operands2 : second slot of two-variable superinstructions
+ *   - targets   : jump target of branching instructions
+ *   - constants : boxed constant (Double, String, Character, Boolean), null if unused
+ * slotNames maps each variable slot back to its source name for error messages;
+ * maxStack is the operand stack size the VM preallocates.
+ *
+ * Register code ({@link Isa#REGISTER}) puts an instruction's registers, in
+ * operand order, in operands, operands2 and operands3, and the register list
+ * of R_MAKE_ARRAY in lists. frameSize is the number of variables, or for
+ * register code the size of the register file (variables come first).
+ *
+ * A lazily linked program (see {@link Linker#linkLazily}) starts with every
+ * entry of the arrays unset and fills in a block of instructions from source
+ * on the first {@link #link} of an instruction in it. An engine must link an
+ * instruction before it reads its entries, or call {@link #linkAll} first.
+ * Linking is synchronized, so engines in several threads may share a program.
+ *
+ * Stack code is also verified (see {@link Verifier}), a lazily linked program
+ * unless linked with verification off: assignedLoads marks the loads of
+ * variables assigned on every path to them.
+ */
+public final class Program {
+    final Isa isa;
+    final OpCode[] code;
+    final int[] operands;
+    final int[] operands2;
+    final int[] operands3;
+    final int[] targets;
+    final Object[] constants;
+    final int[][] lists;
+    final String[] slotNames;
+    final int maxStack;
+    final int frameSize;
+
+    // Lazily linked programs only: the mapped file, and which of its blocks are linked
+    final MappedChunk source;
+    private final boolean[] linked;
+    private int unlinked;
+    Map<String, Integer> slotsByName;   // for name-addressed instructions, built on first use
+
+    boolean[] assignedLoads;   // null unless verified
+
+    Program(OpCode[] code, int[] operands, int[] operands2, int[] targets, Object[] constants,
+            String[] slotNames, int maxStack) {
+        this(code, operands, operands2, targets, constants, slotNames, maxStack, null);
+    }
+
+    Program(OpCode[] code, int[] operands, int[] operands2, int[] targets, Object[] constants,
+            String[] slotNames, int maxStack, MappedChunk source) {
+        this(Isa.STACK, code, operands, operands2, new int[code.length], targets, constants,
+             new int[code.length][], slotNames, maxStack, slotNames.length, source);
+    }
+
+    Program(Isa isa, OpCode[] code, int[] operands, int[] operands2, int[] operands3, int[] targets,
+            Object[] constants, int[][] lists, String[] slotNames, int maxStack, int frameSize) {
+        this(isa, code, operands, operands2, operands3, targets, constants, lists, slotNames, maxStack, frameSize, null);
+    }
+
+    private Program(Isa isa, OpCode[] code, int[] operands, int[] operands2, int[] operands3, int[] targets,
+                    Object[] constants, int[][] lists, String[] slotNames, int maxStack, int frameSize,
+                    MappedChunk source) {
+        this.isa = isa;
+        this.code = code;
+        this.operands = operands;
+        this.operands2 = operands2;
+        this.operands3 = operands3;
+        this.targets = targets;
+        this.constants = constants;
+        this.lists = lists;
+        this.slotNames = slotNames;
+        this.maxStack = maxStack;
+        this.frameSize = frameSize;
+        this.source = source;
+        this.linked = source != null ? new boolean[source.blocks()] : new boolean[0];
+        this.unlinked = linked.length;
+    }
+
+    // ── Lazy linking ────────────────────────────────────────
+
+    /** True once every instruction is linked (always, unless the program is linked lazily). */
+    synchronized boolean isLinked() {
+        return unlinked == 0;
+    }
+
+    /** Links the block holding instruction pc if needed; returns the block's bounds as {first, end}. */
+    synchronized int[] link(int pc) {
+        int size = source.blockSize();
+        int block = pc / size;
+        if (!linked[block]) {
+            Linker.linkBlock(this, block);
+            linked[block] = true;
+            unlinked--;
+        }
+        return new int[] { block * size, Math.min(code.length, (block + 1) * size) };
+    }
+
+    /** Links every instruction not linked yet. */
+    synchronized void linkAll() {
+        for (int block = 0; block < linked.length && unlinked > 0; block++) {
+            if (!linked[block]) link(block * source.blockSize());
+        }
+    }
+
+    /** True if the program passed the {@link Verifier}, so the VM may run it without checks. */
+    public boolean isVerified() {
+        return assignedLoads != null;
+    }
+
+    public Isa isa() {
+        return isa;
+    }
+
+    public int size() {
+        return code.length;
+    }
+
+    public OpCode opCode(int index) {
+        return code[index];
+    }
+
+    public int slotCount() {
+        return slotNames.length;
+    }
+
+    public String slotName(int slot) {
+        return slotNames[slot];
+    }
+
+    public int maxStack() {
+        return maxStack;
+    }
+}
@@ -0,0 +1,264 @@
+package vm;
+
+import compiler.OpCode;
+
+/**
+ * Register-based virtual machine for three-address register code (the R_*
+ * instructions produced by compiler.RegisterCompiler).
+ *
+ * Architecture:
+ *   - Register file : one flat array holding the variables (registers below
+ *                     the slot count), the program's constants and expression
+ *                     temporaries; it is the frame of the shared {@link RuntimeState}
+ *   - Program counter: index into the instruction list
+ *
+ * An instruction names its operand and destination registers directly, so
+ * "c = a + b" is one dispatch (R_ADD c a b) instead of four on the stack
+ * machine. Value semantics and error messages are those of {@link RuntimeState},
+ * shared with the stack engines.
+ *
+ * The register file is the whole garbage-collection root set: every live
+ * value is in a register.
+ */
+public class RegisterVM implements Engine {
+    private final OpCode[] code;
+    private final int[] operands;   // per instruction: ra, rb, rc, jump target
+    private final int[][] lists;
+    private final long[] constants;
+    private final long[] regs;
+    private final int slotCount;
+    private int pc = 0;
+    private boolean counting;   // see countInstructions
+    private long executed = 0;
+
+    private final RuntimeState runtime;
+    private final Heap heap;
+
+    public RegisterVM(Program program) {
+        this(program, OutputSink.stdout());
+    }
+
+    public RegisterVM(Program program, OutputSink out) {
+        this.code = program.code;
+        this.lists = program.lists;
+        // Interleaved, so one instruction's operands share a cache line
+        this.operands = new int[code.length * 4];
+        for (int i = 0; i < code.length; i++) {
+            operands[4 * i]     = program.operands[i];
+            operands[4 * i + 1] = program.operands2[i];
+            operands[4 * i + 2] = program.operands3[i];
+            operands[4 * i + 3] = program.targets[i];
+        }
+        this.slotCount = program.slotNames.length;
+        this.runtime = new RuntimeState(program, heap -> { }, out);
+        this.heap = runtime.heap;
+        this.regs = runtime.frame;
+        this.constants = runtime.constants;
+    }
+
+    // ── Public API ──────────────────────────────────────────
+
+    @Override
+    public void run() {
+        try {
+            if (counting) {
+                while (pc < code.length) {
+                    executed++;
+                    if (!execute(code[pc])) break;
+                }
+            } else {
+                while (pc < code.length) {
+                    if (!execute(code[pc])) break;
+                }
+            }
+        } finally {
+            runtime.out.flush();
+        }
+    }
+
+    @Override
+    public void countInstructions() {
+        counting = true;
+    }
+
+    @Override
+    public long executedInstructions() {
+        return counting ? executed : -1;
+    }
+
+    // ── Instruction dispatch ────────────────────────────────
+
+    /** Executes the instruction at pc; returns false on R_HALT. */
+    private boolean execute(OpCode op) {
+        long[] regs = this.regs;
+        switch (op) {
+            // ── Moves and constants ──
+            case R_MOVE: {
+                int source = operands[4 * pc + 1];
+                regs[operands[4 * pc]] = source < slotCount ? runtime.load(source, pc) : regs[source];
+                pc++;
+                break;
+            }
+            case R_NUM:
+            case R_STR:
+            case R_CHAR:
+            case R_BOOL:
+                regs[operands[4 * pc]] = constants[pc];
+                pc++;
+                break;
+            case R_NULL:
+                regs[operands[4 * pc]] = Value.NULL;
+                pc++;
+                break;
+
+            // ── Arithmetic ──
+            case R_ADD: {
+                long a = regs[operands[4 * pc + 1]];
+                long b = regs[operands[4 * pc + 2]];
+                regs[operands[4 * pc]] = Value.isNumber(a) && Value.isNumber(b)
+                        ? Value.number(Value.asNumber(a) + Value.asNumber(b))
+                        : runtime.add(a, b, pc);
+                pc++;
+                break;
+            }
+            case R_ADDK: {
+                long a = regs[operands[4 * pc + 1]];
+                regs[operands[4 * pc]] = Value.isNumber(a)
+                        ? Value.number(Value.asNumber(a) + Value.asNumber(constants[pc]))
+                        : runtime.add(a, constants[pc], pc);
+                pc++;
+                break;
+            }
+            case R_SUB: {
+                long a = regs[operands[4 * pc + 1]];
+                long b = regs[operands[4 * pc + 2]];
+                regs[operands[4 * pc]] = RuntimeState.sub(a, b, pc);
+                pc++;
+                break;
+            }
+            case R_MUL: {
+                long a = regs[operands[4 * pc + 1]];
+                long b = regs[operands[4 * pc + 2]];
+                regs[operands[4 * pc]] = RuntimeState.mul(a, b, pc);
+                pc++;
+                break;
+            }
+            case R_DIV: {
+                long a = regs[operands[4 * pc + 1]];
+                long b = regs[operands[4 * pc + 2]];
+                regs[operands[4 * pc]] = RuntimeState.div(a, b, pc);
+                pc++;
+                break;
+            }
+
+            // ── Unary ──
+            case R_NEG: {
+                long a = regs[operands[4 * pc + 1]];
+                regs[operands[4 * pc]] = RuntimeState.neg(a, pc);
+                pc++;
+                break;
+            }
+            case R_NOT:
+                regs[operands[4 * pc]] = Value.bool(!Value.isTruthy(regs[operands[4 * pc + 1]]));
+                pc++;
+                break;
+
+            // ── Comparison ──
+            case R_EQ:
+                regs[operands[4 * pc]] = Value.bool(heap.isEqual(regs[operands[4 * pc + 1]], regs[operands[4 * pc + 2]]));
+                pc++;
+                break;
+            case R_NEQ:
+                regs[operands[4 * pc]] = Value.bool(!heap.isEqual(regs[operands[4 * pc + 1]], regs[operands[4 * pc + 2]]));
+                pc++;
+                break;
+            case R_GT: {
+                long a = regs[operands[4 * pc + 1]];
+                long b = regs[operands[4 * pc + 2]];
+                regs[operands[4 * pc]] = RuntimeState.gt(a, b, pc);
+                pc++;
+                break;
+            }
+            case R_GTE: {
+                long a = regs[operands[4 * pc + 1]];
+                long b = regs[operands[4 * pc + 2]];
+                regs[operands[4 * pc]] = RuntimeState.gte(a, b, pc);
+                pc++;
+                break;
+            }
+            case R_LT: {
+                long a = regs[operands[4 * pc + 1]];
+                long b = regs[operands[4 * pc + 2]];
+                regs[operands[4 * pc]] = RuntimeState.lt(a, b, pc);
+                pc++;
+                break;
+            }
+            case R_LTE: {
+                long a = regs[operands[4 * pc + 1]];
+                long b = regs[operands[4 * pc + 2]];
+                regs[operands[4 * pc]] = RuntimeState.lte(a, b, pc);
+                pc++;
+                break;
+            }
+
+            // ── Logical ──
+            case R_AND:
+                regs[operands[4 * pc]] = Value.bool(Value.isTruthy(regs[operands[4 * pc + 1]]) && Value.isTruthy(regs[operands[4 * pc + 2]]));
+                pc++;
+                break;
+            case R_OR:
+                regs[operands[4 * pc]] = Value.bool(Value.isTruthy(regs[operands[4 * pc + 1]]) || Value.isTruthy(regs[operands[4 * pc + 2]]));
+                pc++;
+                break;
+
+            // ── Control flow ──
+            case R_JUMP:
+                pc = operands[4 * pc + 3];
+                break;
+            case R_JUMP_IF_FALSE:
+                pc = Value.isTruthy(regs[operands[4 * pc]]) ? pc + 1 : operands[4 * pc + 3];
+                break;
+            case R_JUMP_IF_TRUE:
+                pc = Value.isTruthy(regs[operands[4 * pc]]) ? operands[4 * pc + 3] : pc + 1;
+                break;
+            case R_JLT: {
+                long a = regs[operands[4 * pc]];
+                long b = regs[operands[4 * pc + 1]];
+                pc = RuntimeState.less(a, b, pc) ? pc + 1 : operands[4 * pc + 3];
+                break;
+            }
+
+            // ── I/O ──
+            case R_PRINT:
+                runtime.print(regs[operands[4 * pc]]);
+                pc++;
+                break;
+
+            // ── Arrays ──
+            case R_MAKE_ARRAY: {
+                int[] list = lists[pc];
+                long[] elements = new long[list.length];
+                for (int i = 0; i < list.length; i++) elements[i] = regs[list[i]];
+                regs[operands[4 * pc]] = heap.allocArray(new ArrayValue(elements));
+                pc++;
+                break;
+            }
+            case R_ARRAY_LOAD:
+                regs[operands[4 * pc]] = runtime.arrayLoad(regs[operands[4 * pc + 1]], regs[operands[4 * pc + 2]], pc);
+                pc++;
+                break;
+            case R_ARRAY_STORE:
+                runtime.arrayStore(regs[operands[4 * pc]], operands[4 * pc], regs[operands[4 * pc + 1]], regs[operands[4 * pc + 2]], pc);
+                pc++;
+                break;
+
+            // ── Program ──
+            case R_HALT:
+                return false;
+
+            default:
+                throw RuntimeState.error(pc, "Unknown opcode: " + op);
+        }
+        return true;
+    }
+}
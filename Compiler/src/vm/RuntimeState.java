@@ -0,0 +1,254 @@
+package vm;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * State and value semantics shared by the execution engines
+ * ({@link VM}, {@link ClosureEngine}, {@link JvmEngine}): the heap, the variable
+ * frame, the NaN-boxed constants, the output sink, and the operations whose
+ * behaviour and error messages must be identical in every engine.
+ *
+ * Each engine owns its operand stack and reports it to the garbage collector
+ * through the Roots it passes in.
+ */
+final class RuntimeState {
+    final Heap heap;
+    final long[] frame;
+    final long[] constants;   // NaN-boxed constant of each instruction
+    final String[] slotNames;
+    final OutputSink out;
+    private final Map<String, Long> strings = new HashMap<>();
+
+    RuntimeState(Program program, Heap.Roots stackRoots, OutputSink out) {
+        this.slotNames = program.slotNames;
+        this.out = out;
+        this.frame = new long[program.frameSize];
+        Arrays.fill(frame, Value.UNDEFINED);
+        this.constants = new long[program.code.length];
+        this.heap = new Heap(heap -> {
+            stackRoots.markRoots(heap);
+            for (long value : frame) heap.mark(value);
+            for (long value : constants) heap.mark(value);   // string literals stay pinned
+        });
+
+        if (program.isLinked()) {
+            for (int i = 0; i < constants.length; i++) link(program, i);
+        }
+    }
+
+    /** Boxes the constant of instruction i once it is linked; each distinct string literal gets one heap entry. */
+    void link(Program program, int i) {
+        Object constant = program.constants[i];
+        if (constant instanceof Double) {
+            constants[i] = Value.number((Double) constant);
+        } else if (constant instanceof Boolean) {
+            constants[i] = Value.bool((Boolean) constant);
+        } else if (constant instanceof Character) {
+            constants[i] = Value.character((Character) constant);
+        } else if (constant instanceof String) {
+            constants[i] = strings.computeIfAbsent((String) constant, heap::allocString);
+        }
+    }
+
+    // ── Operations ──────────────────────────────────────────
+    // pc is the index of the executing instruction, used only for error messages.
+
+    long load(int slot, int pc) {
+        long value = frame[slot];
+        if (value == Value.UNDEFINED) {
+            throw error(pc, "Undefined variable '" + slotNames[slot] + "'");
+        }
+        return value;
+    }
+
+    long add(long a, long b, int pc) {
+        if (Value.isNumber(a) && Value.isNumber(b)) {
+            return Value.number(Value.asNumber(a) + Value.asNumber(b));
+        }
+        if (heap.isString(a) || heap.isString(b)) return concat(a, b);
+        throw error(pc, "ADD requires two numbers or at least one string");
+    }
+
+    long concat(long a, long b) {
+        return heap.allocString(heap.stringify(a) + heap.stringify(b));
+    }
+
+    long arrayLoad(long arrVal, long idxVal, int pc) {
+        ArrayValue array = heap.array(arrVal);
+        if (array == null) throw error(pc, "ARRAY_LOAD: not an array");
+        int idx = toIndex(idxVal, pc);
+        if (idx < 0 || idx >= array.length()) {
+            throw outOfBounds(idx, array, pc);
+        }
+        return array.get(idx);
+    }
+
+    void arrayStore(int slot, long idxVal, long value, int pc) {
+        arrayStore(frame[slot], slot, idxVal, value, pc);
+    }
+
+    /** Stores into arrVal, the current value of variable slot (named in errors). */
+    void arrayStore(long arrVal, int slot, long idxVal, long value, int pc) {
+        ArrayValue array = heap.array(arrVal);
+        if (array == null) {
+            throw error(pc, "ARRAY_STORE: '" + slotNames[slot] + "' is not an array");
+        }
+        int idx = toIndex(idxVal, pc);
+        if (idx < 0 || idx >= array.length()) {
+            throw outOfBounds(idx, array, pc);
+        }
+        array.set(idx, value);
+    }
+
+    // The unchecked forms are only emitted where the compiler proved arrVal an
+    // array and the index a whole number in range (see BoundsCheckEliminator)
+
+    long arrayLoadUnchecked(long arrVal, long idxVal) {
+        return ((ArrayValue) heap.get(arrVal)).get((int) Value.asNumber(idxVal));
+    }
+
+    void arrayStoreUnchecked(long arrVal, long idxVal, long value) {
+        ((ArrayValue) heap.get(arrVal)).set((int) Value.asNumber(idxVal), value);
+    }
+
+    /** The test of GUARD_INDEX_VAR / GUARD_INDEX_CONST; never fails. */
+    boolean indexFits(long arrVal, long bound, long offset) {
+        ArrayValue array = heap.array(arrVal);
+        if (array == null || !Value.isNumber(bound)) return false;
+        double last = Value.asNumber(bound) + Value.asNumber(offset);
+        return last == Math.rint(last) && last < array.length();
+    }
+
+    void print(long value) {
+        heap.print(value, out);
+        out.println();
+    }
+
+    // Number operations need no state. Each checks its operands and fails
+    // with the name of the generic instruction.
+
+    static long sub(long a, long b, int pc) {
+        checkNumbers("SUB", a, b, pc);
+        return Value.number(Value.asNumber(a) - Value.asNumber(b));
+    }
+
+    static long mul(long a, long b, int pc) {
+        checkNumbers("MUL", a, b, pc);
+        return Value.number(Value.asNumber(a) * Value.asNumber(b));
+    }
+
+    static long div(long a, long b, int pc) {
+        checkNumbers("DIV", a, b, pc);
+        if (Value.asNumber(b) == 0) throw error(pc, "Division by zero");
+        return Value.number(Value.asNumber(a) / Value.asNumber(b));
+    }
+
+    static long neg(long a, int pc) {
+        checkNumber("NEG", a, pc);
+        return Value.number(-Value.asNumber(a));
+    }
+
+    // The comparisons, as tests (for the compare-and-branch instructions) and as values
+
+    static boolean greater(long a, long b, int pc) {
+        checkNumbers("GT", a, b, pc);
+        return Value.asNumber(a) > Value.asNumber(b);
+    }
+
+    static boolean greaterEqual(long a, long b, int pc) {
+        checkNumbers("GTE", a, b, pc);
+        return Value.asNumber(a) >= Value.asNumber(b);
+    }
+
+    static boolean less(long a, long b, int pc) {
+        checkNumbers("LT", a, b, pc);
+        return Value.asNumber(a) < Value.asNumber(b);
+    }
+
+    static boolean lessEqual(long a, long b, int pc) {
+        checkNumbers("LTE", a, b, pc);
+        return Value.asNumber(a) <= Value.asNumber(b);
+    }
+
+    static long gt(long a, long b, int pc) {
+        return Value.bool(greater(a, b, pc));
+    }
+
+    static long gte(long a, long b, int pc) {
+        return Value.bool(greaterEqual(a, b, pc));
+    }
+
+    static long lt(long a, long b, int pc) {
+        return Value.bool(less(a, b, pc));
+    }
+
+    static long lte(long a, long b, int pc) {
+        return Value.bool(lessEqual(a, b, pc));
+    }
+
+    // The typed forms: the compiler proved the operands numbers, so there is no
+    // type test (a quickened form calls these once its guard has passed)
+
+    static long addNum(long a, long b) {
+        return Value.number(Value.asNumber(a) + Value.asNumber(b));
+    }
+
+    static long subNum(long a, long b) {
+        return Value.number(Value.asNumber(a) - Value.asNumber(b));
+    }
+
+    static long mulNum(long a, long b) {
+        return Value.number(Value.asNumber(a) * Value.asNumber(b));
+    }
+
+    static long divNum(long a, long b, int pc) {
+        if (Value.asNumber(b) == 0) throw error(pc, "Division by zero");
+        return Value.number(Value.asNumber(a) / Value.asNumber(b));
+    }
+
+    static long negNum(long a) {
+        return Value.number(-Value.asNumber(a));
+    }
+
+    static boolean greaterNum(long a, long b) {
+        return Value.asNumber(a) > Value.asNumber(b);
+    }
+
+    static boolean greaterEqualNum(long a, long b) {
+        return Value.asNumber(a) >= Value.asNumber(b);
+    }
+
+    static boolean lessNum(long a, long b) {
+        return Value.asNumber(a) < Value.asNumber(b);
+    }
+
+    static boolean lessEqualNum(long a, long b) {
+        return Value.asNumber(a) <= Value.asNumber(b);
+    }
+
+    // ── Checks and errors ───────────────────────────────────
+
+    static int toIndex(long value, int pc) {
+        if (!Value.isNumber(value)) throw error(pc, "Array index must be a number");
+        return (int) Value.asNumber(value);
+    }
+
+    private static void checkNumbers(String op, long a, long b, int pc) {
+        if (Value.isNumber(a) && Value.isNumber(b)) return;
+        throw error(pc, op + " requires two numbers");
+    }
+
+    private static void checkNumber(String op, long value, int pc) {
+        if (!Value.isNumber(value)) throw error(pc, op + " requires a number");
+    }
+
+    static RuntimeException outOfBounds(int idx, ArrayValue array, int pc) {
+        return error(pc, "Array index " + idx + " out of bounds (size " + array.length() + ")");
+    }
+
+    static RuntimeException error(int pc, String message) {
+        return new RuntimeException("VM error at instruction " + pc + ": " + message);
+    }
+}
@@ -1,336 +1,726 @@
 package vm;
 
-import compiler.Instruction;
 import compiler.OpCode;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Stack;
+import java.util.Arrays;
 
 /**
  * Stack-based virtual machine that executes compiled CPY bytecode.
  *
  * Architecture:
- *   - Operand stack  : holds intermediate values
- *   - Environment    : maps variable names to values
+ *   - Program        : linked instructions with pre-decoded operands (see Linker)
+ *   - Operand stack  : holds intermediate values; preallocated to the
+ *                      program's max stack depth, with an int stack pointer
+ *   - Frame          : flat array of variables, indexed by slot
  *   - Program counter: index into the instruction list
+ *
+ * Stack entries, variables and array elements are NaN-boxed longs (see
+ * {@link Value}); strings and arrays live in the {@link Heap}. Value semantics
+ * shared with the other engines are in {@link RuntimeState}.
+ *
+ * Quickening: type-dispatching instructions (ADD, LT, ARRAY_LOAD, JUMP_IF_FALSE...)
+ * rewrite themselves in the VM's private copy of the code to a specialized form
+ * (ADD_NUM, LT_NUM, ...) after they first run. The specialized form checks a
+ * cheap guard and, if it fails, de-quickens back to the generic instruction.
+ * An instruction that de-quickens MAX_DEOPTS times stays generic.
+ *
+ * A verified program (see {@link Verifier}) runs without checks on the code:
+ * the VM's copy loads variables assigned on every path with
+ * LOAD_SLOT_UNCHECKED. A lazily linked program (see {@link Linker#linkLazily})
+ * is linked block by block as the VM first reaches each one.
  */
-public class VM {
-    private final List<Instruction> program;
-    private final Stack<Object> stack = new Stack<>();
-    private final Map<String, Object> env = new HashMap<>();
+public class VM implements Engine {
+    private final Program program;
+    private final OpCode[] code;   // null for an instruction of a lazily linked program not linked yet
+    private final int[] operands;
+    private final int[] operands2;
+    private final int[] targets;
+    private final long[] constants;
+    private final long[] stack;
+    private int sp = 0;  // stack pointer: index of the next free stack entry
+    private final long[] frame;
     private int pc = 0;  // program counter
+    private final byte[] deopts;  // de-quickening count per instruction
+    private final boolean lazy;   // linked as it runs: code has null entries
+    private boolean counting;     // see countInstructions
+    private long executed = 0;
 
-    public VM(List<Instruction> program) {
+    private static final int MAX_DEOPTS = 4;
+
+    private final RuntimeState runtime;
+    private final Heap heap;
+
+    public VM(Program program) {
+        this(program, OutputSink.stdout());
+    }
+
+    public VM(Program program, OutputSink out) {
         this.program = program;
+        // Private copy: quickening rewrites it
+        this.lazy = !program.isLinked();
+        this.code = lazy ? new OpCode[program.code.length] : program.code.clone();
+        if (!lazy) {
+            for (int i = 0; i < code.length; i++) code[i] = verified(i);
+        }
+        this.deopts = new byte[code.length];
+        this.operands = program.operands;
+        this.operands2 = program.operands2;
+        this.targets = program.targets;
+        this.stack = new long[program.maxStack];
+        this.runtime = new RuntimeState(program, this::markRoots, out);
+        this.heap = runtime.heap;
+        this.frame = runtime.frame;
+        this.constants = runtime.constants;
     }
 
     // ── Public API ──────────────────────────────────────────
 
+    @Override
     public void run() {
-        while (pc < program.size()) {
-            Instruction instr = program.get(pc);
-            execute(instr);
-            if (instr.opCode == OpCode.HALT) break;
+        try {
+            if (counting) {
+                while (pc < code.length) {
+                    OpCode op = code[pc];
+                    if (op == null) op = link(pc);
+                    executed++;
+                    execute(op);
+                    if (op == OpCode.HALT) break;
+                }
+            } else if (!lazy) {
+                while (pc < code.length) {
+                    OpCode op = code[pc];
+                    execute(op);
+                    if (op == OpCode.HALT) break;
+                }
+            } else {
+                while (pc < code.length) {
+                    OpCode op = code[pc];
+                    if (op == null) op = link(pc);
+                    execute(op);
+                    if (op == OpCode.HALT) break;
+                }
+            }
+        } finally {
+            runtime.out.flush();   // also on errors, so output precedes the message
         }
     }
 
+    @Override
+    public void countInstructions() {
+        counting = true;
+    }
+
+    @Override
+    public long executedInstructions() {
+        return counting ? executed : -1;
+    }
+
+    /** Links the block of a lazily linked program that holds pc, and copies it into this VM. */
+    private OpCode link(int pc) {
+        int[] block = program.link(pc);
+        for (int i = block[0]; i < block[1]; i++) {
+            code[i] = verified(i);
+            runtime.link(program, i);
+        }
+        return code[pc];
+    }
+
+    /** The program's instruction i, as this VM runs it: unchecked where the Verifier allows. */
+    private OpCode verified(int i) {
+        return program.isVerified() && program.assignedLoads[i] ? OpCode.LOAD_SLOT_UNCHECKED : program.code[i];
+    }
+
     // ── Instruction dispatch ────────────────────────────────
 
-    private void execute(Instruction instr) {
-        switch (instr.opCode) {
+    private void execute(OpCode op) {
+        switch (op) {
             // ── Constants ──
             case CONST_NUM:
-                stack.push(Double.parseDouble(instr.operand));
+            case CONST_STR:
+            case CONST_CHAR:
+            case CONST_BOOL:
+                push(constants[pc]);
                 pc++;
                 break;
 
-            case CONST_STR:
-                stack.push(instr.operand);
+            case CONST_NULL:
+                push(Value.NULL);
                 pc++;
                 break;
 
-            case CONST_CHAR:
-                stack.push(instr.operand.charAt(0));
+            // ── Variables ──
+            case LOAD_SLOT:
+                push(load(operands[pc]));
                 pc++;
                 break;
 
-            case CONST_BOOL:
-                stack.push(Boolean.parseBoolean(instr.operand));
+            case LOAD_SLOT_UNCHECKED:
+                push(frame[operands[pc]]);
                 pc++;
                 break;
 
-            case CONST_NULL:
-                stack.push(null);
+            case STORE_SLOT:
+                frame[operands[pc]] = pop();
                 pc++;
                 break;
 
-            // ── Variables ──
-            case LOAD:
-                if (!env.containsKey(instr.operand)) {
-                    throw error("Undefined variable '" + instr.operand + "'");
-                }
-                stack.push(env.get(instr.operand));
+            case POP:
+                sp--;
                 pc++;
                 break;
-
-            case STORE:
-                env.put(instr.operand, stack.pop());
+            case DUP:
+                push(stack[sp - 1]);
                 pc++;
                 break;
 
             // ── Arithmetic ──
             case ADD: {
-                Object b = stack.pop();
-                Object a = stack.pop();
-                if (a instanceof Double && b instanceof Double) {
-                    stack.push((double) a + (double) b);
-                } else if (a instanceof String || b instanceof String) {
-                    stack.push(stringify(a) + stringify(b));
-                } else {
-                    throw error("ADD requires two numbers or at least one string");
+                long b = pop();
+                long a = pop();
+                if (Value.isNumber(a) && Value.isNumber(b)) {
+                    quicken(OpCode.ADD_NUM);
+                } else if (heap.isString(a) || heap.isString(b)) {
+                    quicken(OpCode.ADD_STR);
                 }
+                push(add(a, b));
                 pc++;
                 break;
             }
             case SUB: {
-                Object b = stack.pop();
-                Object a = stack.pop();
-                checkNumbers("SUB", a, b);
-                stack.push((double) a - (double) b);
+                long b = pop();
+                long a = pop();
+                push(RuntimeState.sub(a, b, pc));
                 pc++;
                 break;
             }
             case MUL: {
-                Object b = stack.pop();
-                Object a = stack.pop();
-                checkNumbers("MUL", a, b);
-                stack.push((double) a * (double) b);
+                long b = pop();
+                long a = pop();
+                push(RuntimeState.mul(a, b, pc));
                 pc++;
                 break;
             }
             case DIV: {
-                Object b = stack.pop();
-                Object a = stack.pop();
-                checkNumbers("DIV", a, b);
-                if ((double) b == 0) throw error("Division by zero");
-                stack.push((double) a / (double) b);
+                long b = pop();
+                long a = pop();
+                push(RuntimeState.div(a, b, pc));
                 pc++;
                 break;
             }
 
             // ── Unary ──
             case NEG: {
-                Object val = stack.pop();
-                if (!(val instanceof Double)) throw error("NEG requires a number");
-                stack.push(-(double) val);
+                long val = pop();
+                push(RuntimeState.neg(val, pc));
                 pc++;
                 break;
             }
             case NOT: {
-                Object val = stack.pop();
-                stack.push(!isTruthy(val));
+                long val = pop();
+                push(Value.bool(!Value.isTruthy(val)));
                 pc++;
                 break;
             }
 
             // ── Comparison ──
             case EQ: {
-                Object b = stack.pop();
-                Object a = stack.pop();
-                stack.push(isEqual(a, b));
+                long b = pop();
+                long a = pop();
+                push(Value.bool(heap.isEqual(a, b)));
                 pc++;
                 break;
             }
             case NEQ: {
-                Object b = stack.pop();
-                Object a = stack.pop();
-                stack.push(!isEqual(a, b));
+                long b = pop();
+                long a = pop();
+                push(Value.bool(!heap.isEqual(a, b)));
                 pc++;
                 break;
             }
             case GT: {
-                Object b = stack.pop();
-                Object a = stack.pop();
-                checkNumbers("GT", a, b);
-                stack.push((double) a > (double) b);
+                long b = pop();
+                long a = pop();
+                push(RuntimeState.gt(a, b, pc));
+                quicken(OpCode.GT_NUM);
                 pc++;
                 break;
             }
             case GTE: {
-                Object b = stack.pop();
-                Object a = stack.pop();
-                checkNumbers("GTE", a, b);
-                stack.push((double) a >= (double) b);
+                long b = pop();
+                long a = pop();
+                push(RuntimeState.gte(a, b, pc));
+                quicken(OpCode.GTE_NUM);
                 pc++;
                 break;
             }
             case LT: {
-                Object b = stack.pop();
-                Object a = stack.pop();
-                checkNumbers("LT", a, b);
-                stack.push((double) a < (double) b);
+                long b = pop();
+                long a = pop();
+                push(RuntimeState.lt(a, b, pc));
+                quicken(OpCode.LT_NUM);
                 pc++;
                 break;
             }
             case LTE: {
-                Object b = stack.pop();
-                Object a = stack.pop();
-                checkNumbers("LTE", a, b);
-                stack.push((double) a <= (double) b);
+                long b = pop();
+                long a = pop();
+                push(RuntimeState.lte(a, b, pc));
+                quicken(OpCode.LTE_NUM);
                 pc++;
                 break;
             }
 
             // ── Logical ──
             case AND: {
-                Object b = stack.pop();
-                Object a = stack.pop();
-                stack.push(isTruthy(a) && isTruthy(b));
+                long b = pop();
+                long a = pop();
+                push(Value.bool(Value.isTruthy(a) && Value.isTruthy(b)));
                 pc++;
                 break;
             }
             case OR: {
-                Object b = stack.pop();
-                Object a = stack.pop();
-                stack.push(isTruthy(a) || isTruthy(b));
+                long b = pop();
+                long a = pop();
+                push(Value.bool(Value.isTruthy(a) || Value.isTruthy(b)));
                 pc++;
                 break;
             }
 
             // ── Control flow ──
             case JUMP:
-                pc = Integer.parseInt(instr.operand);
+                pc = targets[pc];
                 break;
 
             case JUMP_IF_FALSE: {
-                Object condition = stack.pop();
-                if (!isTruthy(condition)) {
-                    pc = Integer.parseInt(instr.operand);
+                long condition = pop();
+                if (Value.isBool(condition)) quicken(OpCode.JUMP_IF_FALSE_BOOL);
+                if (!Value.isTruthy(condition)) {
+                    pc = targets[pc];
                 } else {
                     pc++;
                 }
                 break;
             }
+            case JUMP_IF_TRUE:
+                pc = Value.isTruthy(pop()) ? targets[pc] : pc + 1;
+                break;
+            case JEQ: {
+                long b = pop();
+                long a = pop();
+                pc = heap.isEqual(a, b) ? pc + 1 : targets[pc];
+                break;
+            }
+            case JNEQ: {
+                long b = pop();
+                long a = pop();
+                pc = heap.isEqual(a, b) ? targets[pc] : pc + 1;
+                break;
+            }
+            case JGT: {
+                long b = pop();
+                long a = pop();
+                pc = RuntimeState.greater(a, b, pc) ? pc + 1 : targets[pc];
+                break;
+            }
+            case JGTE: {
+                long b = pop();
+                long a = pop();
+                pc = RuntimeState.greaterEqual(a, b, pc) ? pc + 1 : targets[pc];
+                break;
+            }
+            case JLT: {
+                long b = pop();
+                long a = pop();
+                pc = RuntimeState.less(a, b, pc) ? pc + 1 : targets[pc];
+                break;
+            }
+            case JLTE: {
+                long b = pop();
+                long a = pop();
+                pc = RuntimeState.lessEqual(a, b, pc) ? pc + 1 : targets[pc];
+                break;
+            }
 
             // ── I/O ──
             case PRINT:
-                System.out.println(stringify(stack.pop()));
+                runtime.print(pop());
                 pc++;
                 break;
 
             // ── Arrays ──
             case MAKE_ARRAY: {
-                int count = Integer.parseInt(instr.operand);
-                List<Object> array = new ArrayList<>();
-                // Elements were pushed left-to-right, so they're on the stack
-                // with the last element on top. We need to reverse.
-                Object[] temp = new Object[count];
-                for (int i = count - 1; i >= 0; i--) {
-                    temp[i] = stack.pop();
-                }
-                for (Object o : temp) {
-                    array.add(o);
-                }
-                stack.push(array);
+                int count = operands[pc];
+                // Elements were pushed left-to-right, so the last element is on top.
+                // They stay on the stack (and so stay reachable) until the array exists.
+                long[] elements = Arrays.copyOfRange(stack, sp - count, sp);
+                long array = heap.allocArray(new ArrayValue(elements));
+                sp -= count;
+                push(array);
                 pc++;
                 break;
             }
 
             case ARRAY_LOAD: {
-                Object idxVal = stack.pop();
-                Object arrVal = stack.pop();
-                if (!(arrVal instanceof List)) throw error("ARRAY_LOAD: not an array");
-                int idx = toIndex(idxVal);
-                @SuppressWarnings("unchecked")
-                List<Object> list = (List<Object>) arrVal;
-                if (idx < 0 || idx >= list.size()) {
-                    throw error("Array index " + idx + " out of bounds (size " + list.size() + ")");
+                long idxVal = pop();
+                long arrVal = pop();
+                ArrayValue array = heap.array(arrVal);
+                if (array != null && array.isNumeric() && Value.isNumber(idxVal)) {
+                    quicken(OpCode.ARRAY_LOAD_NUM);
                 }
-                stack.push(list.get(idx));
+                push(arrayLoad(arrVal, idxVal));
                 pc++;
                 break;
             }
 
-            case ARRAY_STORE: {
-                Object idxVal = stack.pop();
-                Object value = stack.pop();
-                Object arrVal = env.get(instr.operand);
-                if (!(arrVal instanceof List)) throw error("ARRAY_STORE: '" + instr.operand + "' is not an array");
-                int idx = toIndex(idxVal);
-                @SuppressWarnings("unchecked")
-                List<Object> list = (List<Object>) arrVal;
-                if (idx < 0 || idx >= list.size()) {
-                    throw error("Array index " + idx + " out of bounds (size " + list.size() + ")");
-                }
-                list.set(idx, value);
+            case ARRAY_STORE_SLOT: {
+                long idxVal = pop();
+                long value = pop();
+                runtime.arrayStore(operands[pc], idxVal, value, pc);
+                pc++;
+                break;
+            }
+
+            // ── Bounds-check elimination ──
+            case ARRAY_LOAD_UNCHECKED: {
+                long idxVal = pop();
+                long arrVal = pop();
+                push(runtime.arrayLoadUnchecked(arrVal, idxVal));
+                pc++;
+                break;
+            }
+            case ARRAY_STORE_UNCHECKED: {
+                long idxVal = pop();
+                long value = pop();
+                runtime.arrayStoreUnchecked(frame[operands[pc]], idxVal, value);
                 pc++;
                 break;
             }
+            case GUARD_INDEX_VAR:
+                push(Value.bool(runtime.indexFits(frame[operands[pc]], frame[operands2[pc]], constants[pc])));
+                pc++;
+                break;
+            case GUARD_INDEX_CONST:
+                push(Value.bool(runtime.indexFits(frame[operands[pc]], Value.number(0), constants[pc])));
+                pc++;
+                break;
 
             // ── Program ──
             case HALT:
                 break;
 
+            // ── Superinstructions ──
+            case INC_VAR: {
+                int slot = operands[pc];
+                frame[slot] = add(load(slot), constants[pc]);
+                pc++;
+                break;
+            }
+            case LOAD_CONST_ADD:
+                push(add(load(operands[pc]), constants[pc]));
+                pc++;
+                break;
+
+            case LOAD_CONST_MUL: {
+                long a = load(operands[pc]);
+                long b = constants[pc];
+                push(RuntimeState.mul(a, b, pc));
+                pc++;
+                break;
+            }
+            case ADD_CONST: {
+                long a = pop();
+                push(add(a, constants[pc]));
+                pc++;
+                break;
+            }
+            case LOAD_LOAD_ADD: {
+                long a = load(operands[pc]);
+                long b = load(operands2[pc]);
+                push(add(a, b));
+                pc++;
+                break;
+            }
+            case LOAD_ARRAY_VAR: {
+                long arrVal = load(operands[pc]);
+                long idxVal = load(operands2[pc]);
+                push(arrayLoad(arrVal, idxVal));
+                pc++;
+                break;
+            }
+            case LOAD_ARRAY_VAR_UNCHECKED: {
+                long arrVal = load(operands[pc]);
+                long idxVal = load(operands2[pc]);
+                push(runtime.arrayLoadUnchecked(arrVal, idxVal));
+                pc++;
+                break;
+            }
+            case LOAD_ARRAY_CONST:
+                push(arrayLoad(load(operands[pc]), constants[pc]));
+                pc++;
+                break;
+
+            case JLT_VAR_CONST: {
+                long a = load(operands[pc]);
+                long b = constants[pc];
+                pc = RuntimeState.less(a, b, pc) ? pc + 1 : targets[pc];
+                break;
+            }
+            case JLT_VAR_VAR: {
+                long a = load(operands[pc]);
+                long b = load(operands2[pc]);
+                pc = RuntimeState.less(a, b, pc) ? pc + 1 : targets[pc];
+                break;
+            }
+
+            // ── Quickened forms ──
+            // Operands are peeked, not popped, so a failed guard can hand the
+            // untouched stack to the generic instruction.
+            case ADD_NUM: {
+                long b = stack[sp - 1];
+                long a = stack[sp - 2];
+                if (!(Value.isNumber(a) && Value.isNumber(b))) {
+                    dequicken(OpCode.ADD);
+                    break;
+                }
+                sp -= 2;
+                push(RuntimeState.addNum(a, b));
+                pc++;
+                break;
+            }
+            case CONCAT: {
+                long b = pop();
+                long a = pop();
+                push(runtime.concat(a, b));
+                pc++;
+                break;
+            }
+            case ADD_STR: {
+                long b = stack[sp - 1];
+                long a = stack[sp - 2];
+                if (!(heap.isString(a) || heap.isString(b))) {
+                    dequicken(OpCode.ADD);
+                    break;
+                }
+                String result = heap.stringify(a) + heap.stringify(b);
+                sp -= 2;
+                push(heap.allocString(result));
+                pc++;
+                break;
+            }
+            case GT_NUM: {
+                long b = stack[sp - 1];
+                long a = stack[sp - 2];
+                if (!(Value.isNumber(a) && Value.isNumber(b))) {
+                    dequicken(OpCode.GT);
+                    break;
+                }
+                sp -= 2;
+                push(Value.bool(RuntimeState.greaterNum(a, b)));
+                pc++;
+                break;
+            }
+            case GTE_NUM: {
+                long b = stack[sp - 1];
+                long a = stack[sp - 2];
+                if (!(Value.isNumber(a) && Value.isNumber(b))) {
+                    dequicken(OpCode.GTE);
+                    break;
+                }
+                sp -= 2;
+                push(Value.bool(RuntimeState.greaterEqualNum(a, b)));
+                pc++;
+                break;
+            }
+            case LT_NUM: {
+                long b = stack[sp - 1];
+                long a = stack[sp - 2];
+                if (!(Value.isNumber(a) && Value.isNumber(b))) {
+                    dequicken(OpCode.LT);
+                    break;
+                }
+                sp -= 2;
+                push(Value.bool(RuntimeState.lessNum(a, b)));
+                pc++;
+                break;
+            }
+            case LTE_NUM: {
+                long b = stack[sp - 1];
+                long a = stack[sp - 2];
+                if (!(Value.isNumber(a) && Value.isNumber(b))) {
+                    dequicken(OpCode.LTE);
+                    break;
+                }
+                sp -= 2;
+                push(Value.bool(RuntimeState.lessEqualNum(a, b)));
+                pc++;
+                break;
+            }
+            case ARRAY_LOAD_NUM: {
+                long idxVal = stack[sp - 1];
+                ArrayValue array = heap.array(stack[sp - 2]);
+                if (array == null || !array.isNumeric() || !Value.isNumber(idxVal)) {
+                    dequicken(OpCode.ARRAY_LOAD);
+                    break;
+                }
+                int idx = (int) Value.asNumber(idxVal);
+                if (idx < 0 || idx >= array.length()) throw RuntimeState.outOfBounds(idx, array, pc);
+                sp -= 2;
+                push(array.elements[idx]);
+                pc++;
+                break;
+            }
+            case JUMP_IF_FALSE_BOOL: {
+                long condition = stack[sp - 1];
+                if (condition == Value.FALSE) {
+                    sp--;
+                    pc = targets[pc];
+                } else if (condition == Value.TRUE) {
+                    sp--;
+                    pc++;
+                } else {
+                    dequicken(OpCode.JUMP_IF_FALSE);
+                }
+                break;
+            }
+
+            // ── Typed forms ──
+            // Emitted for operands the compiler proved numbers: no type test.
+            case ADD_NUM_UNCHECKED: {
+                long b = pop();
+                long a = pop();
+                push(RuntimeState.addNum(a, b));
+                pc++;
+                break;
+            }
+            case SUB_NUM_UNCHECKED: {
+                long b = pop();
+                long a = pop();
+                push(RuntimeState.subNum(a, b));
+                pc++;
+                break;
+            }
+            case MUL_NUM_UNCHECKED: {
+                long b = pop();
+                long a = pop();
+                push(RuntimeState.mulNum(a, b));
+                pc++;
+                break;
+            }
+            case DIV_NUM_UNCHECKED: {
+                long b = pop();
+                long a = pop();
+                push(RuntimeState.divNum(a, b, pc));
+                pc++;
+                break;
+            }
+            case NEG_NUM_UNCHECKED:
+                push(RuntimeState.negNum(pop()));
+                pc++;
+                break;
+            case GT_NUM_UNCHECKED: {
+                long b = pop();
+                long a = pop();
+                push(Value.bool(RuntimeState.greaterNum(a, b)));
+                pc++;
+                break;
+            }
+            case GTE_NUM_UNCHECKED: {
+                long b = pop();
+                long a = pop();
+                push(Value.bool(RuntimeState.greaterEqualNum(a, b)));
+                pc++;
+                break;
+            }
+            case LT_NUM_UNCHECKED: {
+                long b = pop();
+                long a = pop();
+                push(Value.bool(RuntimeState.lessNum(a, b)));
+                pc++;
+                break;
+            }
+            case LTE_NUM_UNCHECKED: {
+                long b = pop();
+                long a = pop();
+                push(Value.bool(RuntimeState.lessEqualNum(a, b)));
+                pc++;
+                break;
+            }
+            case JGT_NUM_UNCHECKED: {
+                long b = pop();
+                long a = pop();
+                pc = RuntimeState.greaterNum(a, b) ? pc + 1 : targets[pc];
+                break;
+            }
+            case JGTE_NUM_UNCHECKED: {
+                long b = pop();
+                long a = pop();
+                pc = RuntimeState.greaterEqualNum(a, b) ? pc + 1 : targets[pc];
+                break;
+            }
+            case JLT_NUM_UNCHECKED: {
+                long b = pop();
+                long a = pop();
+                pc = RuntimeState.lessNum(a, b) ? pc + 1 : targets[pc];
+                break;
+            }
+            case JLTE_NUM_UNCHECKED: {
+                long b = pop();
+                long a = pop();
+                pc = RuntimeState.lessEqualNum(a, b) ? pc + 1 : targets[pc];
+                break;
+            }
+
             default:
-                throw error("Unknown opcode: " + instr.opCode);
+                throw error("Unknown opcode: " + op);
         }
     }
 
+    // ── Garbage collection roots ────────────────────────────
+
+    /** The operand stack is this engine's only root; RuntimeState adds the rest. */
+    private void markRoots(Heap heap) {
+        for (int i = 0; i < sp; i++) heap.mark(stack[i]);
+    }
+
+    // ── Quickening ──────────────────────────────────────────
+
+    /** Rewrites the current instruction to its specialized form. */
+    private void quicken(OpCode quick) {
+        if (deopts[pc] < MAX_DEOPTS) code[pc] = quick;
+    }
+
+    /**
+     * Reverts the current instruction to its generic form; the caller must
+     * leave pc unchanged so the generic form re-executes it.
+     */
+    private void dequicken(OpCode generic) {
+        code[pc] = generic;
+        deopts[pc]++;
+    }
+
     // ── Helpers ─────────────────────────────────────────────
 
-    private boolean isTruthy(Object value) {
-        if (value == null) return false;
-        if (value instanceof Boolean) return (boolean) value;
-        if (value instanceof Double) return (double) value != 0;
-        return true;
+    private void push(long value) {
+        stack[sp++] = value;
     }
 
-    private boolean isEqual(Object a, Object b) {
-        if (a == null && b == null) return true;
-        if (a == null) return false;
-        return a.equals(b);
+    private long pop() {
+        return stack[--sp];
     }
 
-    private String stringify(Object value) {
-        if (value == null) return "null";
-        if (value instanceof Double) {
-            String text = value.toString();
-            if (text.endsWith(".0")) {
-                text = text.substring(0, text.length() - 2);
-            }
-            return text;
-        }
-        if (value instanceof Character) {
-            return value.toString();
-        }
-        if (value instanceof List) {
-            @SuppressWarnings("unchecked")
-            List<Object> list = (List<Object>) value;
-            StringBuilder sb = new StringBuilder("[");
-            for (int i = 0; i < list.size(); i++) {
-                if (i > 0) sb.append(", ");
-                sb.append(stringify(list.get(i)));
-            }
-            sb.append("]");
-            return sb.toString();
-        }
-        return value.toString();
+    private long load(int slot) {
+        return runtime.load(slot, pc);
     }
 
-    private int toIndex(Object value) {
-        if (!(value instanceof Double)) throw error("Array index must be a number");
-        return (int) (double) value;
+    private long add(long a, long b) {
+        return runtime.add(a, b, pc);
     }
 
-    private void checkNumbers(String op, Object a, Object b) {
-        if (a instanceof Double && b instanceof Double) return;
-        throw error(op + " requires two numbers");
+    private long arrayLoad(long arrVal, long idxVal) {
+        return runtime.arrayLoad(arrVal, idxVal, pc);
     }
 
     private RuntimeException error(String message) {
-        return new RuntimeException("VM error at instruction " + pc + ": " + message);
+        return RuntimeState.error(pc, message);
     }
 }
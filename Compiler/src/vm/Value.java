@@ -0,0 +1,104 @@
+package vm;
+
+/**
+ * NaN-boxed value representation used by the VM.
+ *
+ * Every runtime value is a single long:
+ *   - number : the IEEE-754 bits of the double (NaNs are canonicalized, so
+ *              no number ever has all of the QNAN bits set)
+ *   - null, true, false : fixed bit patterns inside the quiet-NaN space
+ *   - char   : QNAN | CHAR_TAG | 16-bit code unit
+ *   - ref    : SIGN_BIT | QNAN | index into the {@link Heap} (strings, arrays)
+ *
+ * Numbers, booleans, chars and null therefore never allocate.
+ */
+public final class Value {
+    static final long SIGN_BIT = 0x8000000000000000L;
+    static final long QNAN     = 0x7ffc000000000000L;
+    static final long CHAR_TAG = 0x0001000000000000L;
+    static final long REF_TAG  = SIGN_BIT | QNAN;
+
+    public static final long NULL  = QNAN | 1L;
+    public static final long FALSE = QNAN | 2L;
+    public static final long TRUE  = QNAN | 3L;
+
+    /** Marks a variable slot that has never been stored to; never visible to programs. */
+    static final long UNDEFINED = QNAN | 4L;
+
+    private Value() {
+    }
+
+    // ── Numbers ─────────────────────────────────────────────
+
+    public static long number(double d) {
+        // doubleToLongBits collapses every NaN to the canonical 0x7ff8000000000000
+        return Double.doubleToLongBits(d);
+    }
+
+    public static boolean isNumber(long v) {
+        return (v & QNAN) != QNAN;
+    }
+
+    public static double asNumber(long v) {
+        return Double.longBitsToDouble(v);
+    }
+
+    // ── Booleans and null ───────────────────────────────────
+
+    public static long bool(boolean b) {
+        return b ? TRUE : FALSE;
+    }
+
+    public static boolean isBool(long v) {
+        return (v | 1L) == TRUE;
+    }
+
+    public static boolean isNull(long v) {
+        return v == NULL;
+    }
+
+    // ── Chars ───────────────────────────────────────────────
+
+    public static long character(char c) {
+        return QNAN | CHAR_TAG | c;
+    }
+
+    public static boolean isChar(long v) {
+        return (v & (REF_TAG | CHAR_TAG)) == (QNAN | CHAR_TAG);
+    }
+
+    public static char asChar(long v) {
+        return (char) v;
+    }
+
+    // ── Heap references ─────────────────────────────────────
+
+    static long ref(int index) {
+        return REF_TAG | index;
+    }
+
+    public static boolean isRef(long v) {
+        return (v & REF_TAG) == REF_TAG;
+    }
+
+    static int refIndex(long v) {
+        return (int) v;
+    }
+
+    // ── Semantics ───────────────────────────────────────────
+
+    /** null and false are falsy, numbers are falsy when zero; everything else is truthy. */
+    public static boolean isTruthy(long v) {
+        if (isNumber(v)) return asNumber(v) != 0;
+        return v != FALSE && v != NULL;
+    }
+
+    /** Formats a number the way the VM prints it: integral values lose their ".0". */
+    public static String formatNumber(double d) {
+        String text = Double.toString(d);
+        if (text.endsWith(".0")) {
+            text = text.substring(0, text.length() - 2);
+        }
+        return text;
+    }
+}
@@ -0,0 +1,177 @@
+package vm;
+
+import compiler.Instruction;
+import compiler.OpCode;
+import compiler.StackDepth;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+
+/**
+ * Checks a linked stack program once, before it runs, so the {@link VM} can
+ * execute it without checks of its own. Walks every reachable instruction,
+ * propagating along fall-through and jump edges:
+ *   - the stack depth: never below what an instruction pops (MAKE_ARRAY pops
+ *     its element count), never above the program's max stack, and the same
+ *     on every path into a merge point
+ *   - jump targets: an instruction index, or the end of the program
+ *   - opcodes: every reachable one must be one the VM runs
+ *   - the variables definitely assigned: those stored to on every path from
+ *     the start (an intersection at merge points)
+ *
+ * A program that fails a check is rejected with the instruction and reason.
+ * A load of a variable that is not definitely assigned is not an error (the
+ * language reports it when it runs), so those loads keep their check; the
+ * others are returned.
+ *
+ * The checks are structural: they do not track what kind of value each stack
+ * entry holds. Every instruction that reaches the VM either checks its
+ * operands' kinds itself or runs safely on any value (the quickened forms
+ * guard and fall back, CONCAT stringifies, the GUARD_* tests answer false),
+ * except the unchecked instructions: the array forms rely on the compiler's
+ * proof that their operands are in range (see BoundsCheckEliminator), the
+ * number forms on its proof that their operands are numbers (see
+ * TypeInference). A program read from a file has no such proof, so
+ * BytecodeReader reads those as their checked forms; only code compiled in
+ * the same process keeps them.
+ */
+final class Verifier {
+
+    private Verifier() { }
+
+    /**
+     * Verifies program; returns, per instruction, whether it is a LOAD_SLOT of
+     * a definitely assigned variable.
+     */
+    static boolean[] verify(Program program) {
+        return verify(program.code, program.operands, program.targets, program.maxStack);
+    }
+
+    /**
+     * Verifies the stack code given by its opcodes, int operands and jump
+     * targets (as a Program holds them) and max stack depth; the results are
+     * as for {@link #verify(Program)}. Lets a lazily linked program be
+     * verified before it is linked.
+     */
+    static boolean[] verify(OpCode[] code, int[] operands, int[] targets, int maxStack) {
+        int n = code.length;
+        int[] depthAt = new int[n];
+        Arrays.fill(depthAt, -1);
+        BitSet[] assignedAt = new BitSet[n];
+
+        Deque<Integer> worklist = new ArrayDeque<>();
+        if (n > 0) {
+            depthAt[0] = 0;
+            assignedAt[0] = new BitSet();
+            worklist.push(0);
+        }
+
+        while (!worklist.isEmpty()) {
+            int pc = worklist.pop();
+            OpCode op = code[pc];
+            int depth = depthAt[pc];
+
+            int pops = op == OpCode.MAKE_ARRAY ? operands[pc] : pops(op, pc);
+            if (depth < pops) {
+                throw error(pc, op == OpCode.MAKE_ARRAY
+                        ? "MAKE_ARRAY of " + pops + " element(s) but the stack holds " + depth
+                        : op + " needs " + pops + " operand(s) but the stack holds " + depth);
+            }
+            int after = depth - pops + StackDepth.pushes(op);
+            if (after > maxStack) {
+                throw error(pc, "stack depth " + after + " exceeds the program's max stack " + maxStack);
+            }
+
+            BitSet assigned = assignedAt[pc];
+            if (op == OpCode.STORE_SLOT) {
+                assigned = (BitSet) assigned.clone();
+                assigned.set(operands[pc]);
+            }
+
+            switch (op) {
+                case HALT:
+                    break;
+                case JUMP:
+                    flow(code, depthAt, assignedAt, worklist, pc, target(code, targets, pc), after, assigned);
+                    break;
+                case JUMP_IF_FALSE:
+                case JUMP_IF_FALSE_BOOL:
+                case JUMP_IF_TRUE:
+                case JEQ: case JNEQ: case JGT: case JGTE: case JLT: case JLTE:
+                case JGT_NUM_UNCHECKED: case JGTE_NUM_UNCHECKED: case JLT_NUM_UNCHECKED: case JLTE_NUM_UNCHECKED:
+                case JLT_VAR_CONST:
+                case JLT_VAR_VAR:
+                    flow(code, depthAt, assignedAt, worklist, pc, target(code, targets, pc), after, assigned);
+                    flow(code, depthAt, assignedAt, worklist, pc, pc + 1, after, assigned);
+                    break;
+                default:
+                    flow(code, depthAt, assignedAt, worklist, pc, pc + 1, after, assigned);
+                    break;
+            }
+        }
+
+        boolean[] assignedLoads = new boolean[n];
+        for (int pc = 0; pc < n; pc++) {
+            assignedLoads[pc] = code[pc] == OpCode.LOAD_SLOT && assignedAt[pc] != null
+                    && assignedAt[pc].get(operands[pc]);
+        }
+        return assignedLoads;
+    }
+
+    // ── Helpers ─────────────────────────────────────────────
+
+    private static int pops(OpCode op, int pc) {
+        if (op == null) throw error(pc, "missing opcode");
+        switch (op) {
+            case LOAD:
+            case STORE:
+            case ARRAY_STORE:
+            case LOAD_SLOT_UNCHECKED:
+                throw error(pc, op + " cannot run in the VM");
+            default:
+                try {
+                    return StackDepth.pops(new Instruction(op));
+                } catch (IllegalArgumentException e) {
+                    throw error(pc, op + " cannot run in the VM");
+                }
+        }
+    }
+
+    private static int target(OpCode[] code, int[] targets, int pc) {
+        int target = targets[pc];
+        if (target < 0 || target > code.length) throw error(pc, "jump target " + target + " out of range");
+        return target;
+    }
+
+    /** Propagates the state after instruction from to instruction to. */
+    private static void flow(OpCode[] code, int[] depthAt, BitSet[] assignedAt, Deque<Integer> worklist,
+                             int from, int to, int depth, BitSet assigned) {
+        if (to >= code.length) return;   // falling off the end stops the program
+        if (depthAt[to] == -1) {
+            depthAt[to] = depth;
+            assignedAt[to] = assigned;
+            worklist.push(to);
+        } else if (depthAt[to] != depth) {
+            throw error(to, "inconsistent stack depth (" + depthAt[to] + " vs " + depth
+                    + " coming from instruction " + from + ")");
+        } else if (!contains(assigned, assignedAt[to])) {
+            BitSet joined = (BitSet) assignedAt[to].clone();
+            joined.and(assigned);
+            assignedAt[to] = joined;
+            worklist.push(to);
+        }
+    }
+
+    /** True if every variable in subset is also in set. */
+    private static boolean contains(BitSet set, BitSet subset) {
+        BitSet missing = (BitSet) subset.clone();
+        missing.andNot(set);
+        return missing.isEmpty();
+    }
+
+    private static RuntimeException error(int pc, String message) {
+        return new RuntimeException("Verify error at instruction " + pc + ": " + message);
+    }
+}
@@ -0,0 +1,103 @@
+package compiler;
+
+import vm.Engine;
+import vm.Linker;
+import vm.MemorySink;
+import vm.OutputSink;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Compiles a temporary directory of sources with the {@link BatchCompiler}
+ * and checks the results come back in source order, that the outputs print
+ * what the sources do, and which files a second build skips as up to date.
+ */
+public class BatchCompilerTest {
+    private static final Pipeline.Options OPTIONS = new Pipeline.Options(true, true, true, true, true, Isa.STACK);
+    private static final Pipeline.Options NO_FOLD = new Pipeline.Options(false, true, true, true, true, Isa.STACK);
+
+    public static void main(String[] args) throws IOException {
+        Path dir = Files.createTempDirectory("cpy-batch-test");
+        Path a = write(dir.resolve("a.cpy"), "print(6 * 7);\n");
+        Path bad = write(dir.resolve("bad.cpy"), "print(1 +);\n");
+        Path b = write(dir.resolve("lib/b.cpy"), "let s = \"b\";\nfor (let i = 0; i < 3; i = i + 1) { s = s + i; }\nprint(s);\n");
+        write(dir.resolve("notes.txt"), "not a source\n");
+
+        // A directory stands for the .cpy files under it, sorted
+        List<Path> sources = BatchCompiler.sources(Arrays.asList(dir.toString()));
+        check(sources.equals(Arrays.asList(a, bad, b)), "sources " + sources);
+
+        // Results are reported and returned in source order, whatever order they finish in
+        BatchCompiler binary = new BatchCompiler(OPTIONS, BytecodeWriter.Format.BINARY, false);
+        List<Path> reported = Collections.synchronizedList(new ArrayList<>());
+        List<BatchCompiler.Result> results = binary.compile(sources, 3, r -> reported.add(r.source));
+        check(reported.equals(sources), "reported in order " + reported);
+        expectStatuses(results, BatchCompiler.Status.COMPILED, BatchCompiler.Status.FAILED, BatchCompiler.Status.COMPILED);
+        check(results.get(1).message != null && !Files.exists(BatchCompiler.output(bad)), "failed file: " + results.get(1).message);
+        expectOutput(BatchCompiler.output(a), "42\n");
+        expectOutput(BatchCompiler.output(b), "b012\n");
+
+        // A second build skips binary outputs whose key still matches
+        expectStatuses(binary.compile(sources, 3, r -> { }),
+                BatchCompiler.Status.UP_TO_DATE, BatchCompiler.Status.FAILED, BatchCompiler.Status.UP_TO_DATE);
+
+        // A changed source, changed options or force compile again
+        write(a, "print(6 * 8);\n");
+        expectStatuses(binary.compile(sources, 3, r -> { }),
+                BatchCompiler.Status.COMPILED, BatchCompiler.Status.FAILED, BatchCompiler.Status.UP_TO_DATE);
+        expectOutput(BatchCompiler.output(a), "48\n");
+        expectStatuses(new BatchCompiler(NO_FOLD, BytecodeWriter.Format.BINARY, false).compile(sources, 3, r -> { }),
+                BatchCompiler.Status.COMPILED, BatchCompiler.Status.FAILED, BatchCompiler.Status.COMPILED);
+        expectStatuses(new BatchCompiler(NO_FOLD, BytecodeWriter.Format.BINARY, true).compile(sources, 3, r -> { }),
+                BatchCompiler.Status.COMPILED, BatchCompiler.Status.FAILED, BatchCompiler.Status.COMPILED);
+
+        // A text output is up to date while it is newer than its source
+        BatchCompiler text = new BatchCompiler(OPTIONS, BytecodeWriter.Format.TEXT, false);
+        List<Path> good = Arrays.asList(a, b);
+        expectStatuses(text.compile(good, 2, r -> { }), BatchCompiler.Status.COMPILED, BatchCompiler.Status.COMPILED);
+        expectOutput(BatchCompiler.output(b), "b012\n");
+        Files.setLastModifiedTime(b, FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+        expectStatuses(text.compile(good, 2, r -> { }), BatchCompiler.Status.UP_TO_DATE, BatchCompiler.Status.COMPILED);
+
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) Files.delete(file);
+        }
+        System.out.println("BatchCompilerTest: all checks passed");
+    }
+
+    // ── Checks ──────────────────────────────────────────────
+
+    private static void expectStatuses(List<BatchCompiler.Result> results, BatchCompiler.Status... statuses) {
+        List<BatchCompiler.Status> actual = new ArrayList<>();
+        for (BatchCompiler.Result result : results) actual.add(result.status);
+        check(actual.equals(Arrays.asList(statuses)), "expected " + Arrays.asList(statuses) + ", got " + actual);
+    }
+
+    private static void expectOutput(Path output, String expected) throws IOException {
+        MemorySink out = OutputSink.memory();
+        Engine.create("vm", Linker.link(BytecodeReader.read(output.toString())), out).run();
+        check(expected.equals(out.contents()), output + ": expected " + expected + "got " + out.contents());
+    }
+
+    // ── Helpers ─────────────────────────────────────────────
+
+    private static Path write(Path file, String text) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
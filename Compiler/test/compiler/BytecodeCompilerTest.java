@@ -0,0 +1,95 @@
+package compiler;
+
+import vm.Engine;
+import vm.Linker;
+import vm.MemorySink;
+import vm.OutputSink;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Checks how conditions compile: a comparison in a condition becomes one
+ * compare-and-branch jump, and "and"/"or" short-circuit, in conditions and in
+ * values, on every engine and in both instruction sets.
+ */
+public class BytecodeCompilerTest {
+    private static final String[] ENGINES = { "vm", "closure", "jvm" };
+
+    /** Comparisons that yield a boolean value, and the jumps that test one. */
+    private static final Set<OpCode> VALUE_TESTS = EnumSet.of(
+            OpCode.EQ, OpCode.NEQ, OpCode.GT, OpCode.GTE, OpCode.LT, OpCode.LTE,
+            OpCode.GT_NUM, OpCode.GTE_NUM, OpCode.LT_NUM, OpCode.LTE_NUM,
+            OpCode.GT_NUM_UNCHECKED, OpCode.GTE_NUM_UNCHECKED, OpCode.LT_NUM_UNCHECKED, OpCode.LTE_NUM_UNCHECKED,
+            OpCode.JUMP_IF_FALSE, OpCode.JUMP_IF_TRUE, OpCode.JUMP_IF_FALSE_BOOL);
+
+    /** The eager and/or, which evaluate both operands. */
+    private static final Set<OpCode> EAGER = EnumSet.of(OpCode.AND, OpCode.OR, OpCode.R_AND, OpCode.R_OR);
+
+    public static void main(String[] args) {
+        // Comparisons in conditions branch directly, without a boolean in between
+        String loops =
+                "let a = [5, 3, 8];\n"
+              + "let n = 3;\n"
+              + "let best = 0;\n"
+              + "let i = 0;\n"
+              + "while (i < n) { if (a[i] > best) { best = a[i]; } i = i + 1; }\n"
+              + "for (let j = 0; j <= 2; j = j + 1) { if (a[j] == best) { print(j); } if (a[j] != 3) { print(a[j]); } }\n";
+        Chunk chunk = Pipeline.compile(loops, options(Isa.STACK));
+        for (Instruction instr : chunk.code) {
+            check(!VALUE_TESTS.contains(instr.opCode), "condition compiled to a value: " + instr);
+        }
+        expectOutput("loops", loops, "5\n2\n8\n");
+
+        // The right operand runs only when the left one does not decide: a[2] and 1 / 0 never run
+        String shortCircuit =
+                "let a = [1, 2];\n"
+              + "let zero = 0;\n"
+              + "let no = 1 > 2;\n"
+              + "let i = 0;\n"
+              + "while (i < 2 and a[i] > 0) { i = i + 1; }\n"
+              + "if (i == 2 or a[i] > 0) { print(i); }\n"
+              + "print(no and 1 / zero > 0);\n"
+              + "print(i > 1 or 1 / zero > 0);\n"
+              + "let yes = not no;\n"
+              + "print(yes and i);\n";
+        for (Isa isa : Isa.values()) {
+            for (Instruction instr : Pipeline.compile(shortCircuit, options(isa)).code) {
+                check(!EAGER.contains(instr.opCode), isa.directive() + ": eager " + instr);
+            }
+        }
+        expectOutput("short-circuit", shortCircuit, "2\nfalse\ntrue\ntrue\n");
+
+        System.out.println("BytecodeCompilerTest: all checks passed");
+    }
+
+    // ── Checks ──────────────────────────────────────────────
+
+    /** Expects source, compiled without the optional passes, to print output on every engine and instruction set. */
+    private static void expectOutput(String name, String source, String output) {
+        for (Isa isa : Isa.values()) {
+            Chunk chunk = Pipeline.compile(source, options(isa));
+            for (String engine : isa == Isa.STACK ? ENGINES : new String[] { "vm" }) {
+                MemorySink out = OutputSink.memory();
+                try {
+                    Engine.create(engine, Linker.link(chunk), out).run();
+                } catch (RuntimeException e) {
+                    check(false, name + " on " + engine + " (" + isa.directive() + "): " + e.getMessage());
+                }
+                check(output.equals(out.contents()),
+                        name + " on " + engine + " (" + isa.directive() + "): expected\n" + output + "got\n" + out.contents());
+            }
+        }
+    }
+
+    // ── Helpers ─────────────────────────────────────────────
+
+    /** No optional passes, so nothing is folded away before it compiles. */
+    private static Pipeline.Options options(Isa isa) {
+        return new Pipeline.Options(false, false, false, false, false, isa);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
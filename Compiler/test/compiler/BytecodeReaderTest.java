@@ -0,0 +1,118 @@
+package compiler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Writes compiled programs as .cpyc files, binary (v2.3) and text, and checks
+ * that reading them back, or mapping them, gives the same program, with the
+ * unchecked instructions in their checked forms. Also checks the binary
+ * header and that a corrupted file fails its checksum.
+ */
+public class BytecodeReaderTest {
+    private static final String[] PROGRAMS = {
+            // Unchecked array and number forms, superinstructions and jumps
+            "let a = [3, 1, 4, 1, 5, 9, 2, 6];\n"
+          + "let sum = 0;\n"
+          + "for (let i = 1; i < 7; i = i + 1) { sum = sum + a[i - 1] * a[i + 1] - -a[i]; }\n"
+          + "if (sum > 10 and sum <= 1000) { print(sum / 4); } else { print(0.1); }\n",
+            // Strings a text file must escape, chars, and numbers Double.toString does not round-trip
+            "let s = \"C:\\new\\table\n newline\tté€\";\n"
+          + "let c = 'x';\n"
+          + "let big = 123456789012345678901234 * 10;\n"
+          + "let tiny = 0.000001;\n"
+          + "print(s + c);\n"
+          + "print(big);\n"
+          + "print(tiny * 3);\n"
+          + "print(-0);\n",
+            // Long enough for several INDEX blocks
+            "let n = 0;\n"
+          + "while (n < 100) { n = n + 1; if (n == 50) { print(\"half\"); } }\n"
+          + "let m = [n, n + 1, n + 2];\n"
+          + "m[0] = m[1] + m[2];\n"
+          + "print(m[0]); print(m[1]); print(m[2]); print(n); print(n * 2); print(n * 3); print(n - 4);\n"
+          + "print(n == 100 or n < 0); print(n != 100); print(\"done\");\n",
+    };
+
+    public static void main(String[] args) throws IOException {
+        Path dir = Files.createTempDirectory("cpy-reader-test");
+
+        boolean sawUnchecked = false;
+        for (int p = 0; p < PROGRAMS.length; p++) {
+            for (Isa isa : Isa.values()) {
+                Chunk chunk = Pipeline.compile(PROGRAMS[p], new Pipeline.Options(true, true, true, true, true, isa));
+                for (Instruction instr : chunk.code) sawUnchecked |= instr.opCode.name().endsWith("_UNCHECKED");
+                for (BytecodeWriter.Format format : BytecodeWriter.Format.values()) {
+                    String name = "program" + p + "-" + isa.directive() + "-" + format.name().toLowerCase();
+                    String file = dir.resolve(name + ".cpyc").toString();
+                    BytecodeWriter.write(chunk, file, format);
+                    expectSame(name + " read", chunk, BytecodeReader.read(file));
+
+                    MappedChunk mapped = BytecodeReader.map(file);
+                    check((mapped != null) == (format == BytecodeWriter.Format.BINARY), name + ": mapped a text file, or not a binary one");
+                    if (mapped == null) continue;
+                    expectSame(name + " mapped", chunk, mapped.toChunk());
+                    List<Instruction> blocks = new ArrayList<>();
+                    for (int b = 0; b < mapped.blocks(); b++) blocks.addAll(mapped.block(b));
+                    expectSame(name + " blocks", chunk, new Chunk(blocks, mapped.slotNames, mapped.maxStack, mapped.isa));
+                }
+            }
+        }
+        check(sawUnchecked, "no unchecked instructions to read back");
+
+        // Writing is deterministic, and the header names version 2.3
+        Chunk chunk = Pipeline.compile(PROGRAMS[0], new Pipeline.Options(true, true, true, true, true, Isa.STACK));
+        byte[] bytes = BytecodeWriter.toBinary(chunk);
+        check(Arrays.equals(bytes, BytecodeWriter.toBinary(chunk)), "two writes differ");
+        check(BytecodeFormat.isBinary(ByteBuffer.wrap(bytes)), "no magic number");
+        check(bytes[4] == 2 && bytes[5] == 3, "version " + bytes[4] + "." + bytes[5]);
+
+        // A flipped byte in CODE fails the checksum
+        ByteBuffer header = ByteBuffer.wrap(bytes);
+        int codeOffset = -1;
+        for (int s = 0, count = bytes[6]; s < count; s++) {
+            int at = 7 + 9 * s;
+            if (bytes[at] == BytecodeFormat.CODE) codeOffset = header.getInt(at + 1);
+        }
+        check(codeOffset > 0, "no CODE section");
+        bytes[codeOffset + 2] ^= 1;
+        try {
+            BytecodeReader.readBinary(ByteBuffer.wrap(bytes));
+            check(false, "corrupted file read without an error");
+        } catch (IOException e) {
+            check("Invalid bytecode file: checksum mismatch".equals(e.getMessage()), "expected a checksum mismatch, got " + e);
+        }
+
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) Files.delete(file);
+        }
+        System.out.println("BytecodeReaderTest: all checks passed");
+    }
+
+    // ── Checks ──────────────────────────────────────────────
+
+    /** Expects read to be written, with each unchecked instruction in its checked form. */
+    private static void expectSame(String name, Chunk written, Chunk read) {
+        check(written.isa == read.isa, name + ": isa " + read.isa);
+        check(written.maxStack == read.maxStack, name + ": max stack " + read.maxStack);
+        check(written.slotNames.equals(read.slotNames), name + ": slots " + read.slotNames);
+        check(written.code.size() == read.code.size(), name + ": " + read.code.size() + " instructions");
+        for (int i = 0; i < written.code.size(); i++) {
+            Instruction w = written.code.get(i);
+            Instruction r = read.code.get(i);
+            String expected = new Instruction(BytecodeReader.checkedForm(w.opCode), w.operand).toString();
+            check(expected.equals(r.toString()), name + " at " + i + ": expected " + expected + ", got " + r);
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
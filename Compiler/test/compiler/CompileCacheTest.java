@@ -0,0 +1,88 @@
+package compiler;
+
+import vm.Engine;
+import vm.Linker;
+import vm.MemorySink;
+import vm.OutputSink;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Stores programs in a {@link CompileCache} in a temporary directory and
+ * checks the keys, that a hit loads a program printing what the source does,
+ * and that the least recently used entries are evicted.
+ */
+public class CompileCacheTest {
+    private static final Pipeline.Options OPTIONS = new Pipeline.Options(true, true, true, true, true, Isa.STACK);
+    private static final Pipeline.Options NO_FOLD = new Pipeline.Options(false, true, true, true, true, Isa.STACK);
+
+    private static final String SQUARES =
+            "let a = [1, 2, 3, 4];\n"
+          + "let sum = 0;\n"
+          + "for (let i = 0; i < 4; i = i + 1) { sum = sum + a[i] * a[i]; }\n"
+          + "print(sum);\n";
+    private static final String GREETING = "let name = \"cache\";\nprint(\"hello \" + name);\n";
+
+    public static void main(String[] args) throws IOException {
+        Path dir = Files.createTempDirectory("cpy-cache-test");
+
+        // A key names the source, the compiler and the options
+        String key = CompileCache.key(SQUARES, OPTIONS);
+        check(key.equals(CompileCache.key(SQUARES, OPTIONS)), "equal inputs gave different keys");
+        check(!key.equals(CompileCache.key(SQUARES + "\n", OPTIONS)), "a changed source kept its key");
+        check(!key.equals(CompileCache.key(SQUARES, NO_FOLD)), "changed options kept the key");
+
+        // A miss, then a store, then a hit on the same entry
+        CompileCache cache = new CompileCache(dir.resolve("cpy"), CompileCache.DEFAULT_MAX_BYTES);
+        check(cache.lookup(key) == null, "empty cache hit");
+        Path stored = cache.store(key, Pipeline.compile(SQUARES, OPTIONS));
+        Path hit = cache.lookup(key);
+        check(stored.equals(hit), "stored " + stored + " but looked up " + hit);
+        check(BytecodeFormat.isBinary(ByteBuffer.wrap(Files.readAllBytes(hit))), "entry is not a binary file");
+        expectOutput(hit, "30\n");
+
+        // Entries over the bound are evicted least recently used first, never the one just stored
+        long entrySize = Files.size(hit);
+        Path small = dir.resolve("small");
+        CompileCache bounded = new CompileCache(small, entrySize * 2);
+        String first = CompileCache.key(SQUARES, OPTIONS);
+        String second = CompileCache.key(SQUARES, NO_FOLD);
+        String third = CompileCache.key(GREETING, OPTIONS);
+        bounded.store(first, Pipeline.compile(SQUARES, OPTIONS));
+        bounded.store(second, Pipeline.compile(SQUARES, NO_FOLD));
+        age(bounded.lookup(second), 2);
+        age(bounded.lookup(first), 1);
+        Path newest = bounded.store(third, Pipeline.compile(GREETING, OPTIONS));
+        check(bounded.lookup(second) == null, "least recently used entry kept");
+        check(bounded.lookup(first) != null, "recently used entry evicted");
+        expectOutput(newest, "hello cache\n");
+
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) Files.delete(file);
+        }
+        System.out.println("CompileCacheTest: all checks passed");
+    }
+
+    // ── Helpers ─────────────────────────────────────────────
+
+    /** Marks entry as last used the given number of hours ago. */
+    private static void age(Path entry, int hours) throws IOException {
+        Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis() - hours * 3_600_000L));
+    }
+
+    private static void expectOutput(Path entry, String output) throws IOException {
+        MemorySink out = OutputSink.memory();
+        Engine.create("vm", Linker.link(BytecodeReader.read(entry.toString())), out).run();
+        check(output.equals(out.contents()), entry + ": expected " + output + "got " + out.contents());
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,146 @@
+package optimizer;
+
+import ast.*;
+import compiler.Isa;
+import compiler.Pipeline;
+import lexer.Lexer;
+import parser.Parser;
+import semantic.SemanticAnalyzer;
+import vm.Engine;
+import vm.Linker;
+import vm.MemorySink;
+import vm.OutputSink;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Helpers for the optimizer tests: parses and analyzes a program, prints an
+ * AST back as one line of source-like text, so a test can compare a pass's
+ * output with the program it should have written, and runs a program.
+ */
+final class AstText {
+    /** A parsed program and the analyzer that checked it (its SymbolTable gets the passes' temporaries). */
+    static final class Parsed {
+        final List<Stmt> statements;
+        final SemanticAnalyzer analyzer;
+
+        Parsed(List<Stmt> statements, SemanticAnalyzer analyzer) {
+            this.statements = statements;
+            this.analyzer = analyzer;
+        }
+    }
+
+    private AstText() { }
+
+    static Parsed parse(String source) {
+        List<Stmt> statements = new Parser(new Lexer(source).scanTokens()).parse();
+        SemanticAnalyzer analyzer = new SemanticAnalyzer();
+        analyzer.analyze(statements);
+        return new Parsed(statements, analyzer);
+    }
+
+    /**
+     * What source prints, compiled with options to stack code and run on the
+     * VM, followed by the error it stops with, if any. The error's instruction
+     * is left out: passes change where in the code it is.
+     */
+    static String run(String source, Pipeline.Options options) {
+        MemorySink out = OutputSink.memory();
+        try {
+            Engine.create("vm", Linker.link(Pipeline.compile(source, options)), out).run();
+            return out.contents();
+        } catch (RuntimeException e) {
+            return out.contents() + "error: " + e.getMessage().replaceFirst("at instruction \\d+: ", "");
+        }
+    }
+
+    /** Options with every pass off but the named ones ("fold", "hoist", "iv", "bce", "cse"). */
+    static Pipeline.Options only(String... passes) {
+        List<String> on = Arrays.asList(passes);
+        return new Pipeline.Options(on.contains("fold"), on.contains("hoist"), on.contains("iv"),
+                on.contains("bce"), on.contains("cse"), Isa.STACK);
+    }
+
+    // ── Printing ────────────────────────────────────────────
+
+    static String show(List<Stmt> statements) {
+        StringBuilder text = new StringBuilder();
+        for (Stmt stmt : statements) {
+            if (text.length() > 0) text.append(' ');
+            text.append(show(stmt));
+        }
+        return text.toString();
+    }
+
+    static String show(Stmt stmt) {
+        if (stmt instanceof VarDecl) {
+            VarDecl d = (VarDecl) stmt;
+            return "let " + d.name.lexeme + (d.initializer == null ? "" : " = " + show(d.initializer)) + ";";
+        } else if (stmt instanceof Assignment) {
+            Assignment a = (Assignment) stmt;
+            return a.name.lexeme + " = " + show(a.value) + ";";
+        } else if (stmt instanceof ArrayAssignment) {
+            ArrayAssignment a = (ArrayAssignment) stmt;
+            return a.name.lexeme + "[" + show(a.index) + "] = " + show(a.value) + ";";
+        } else if (stmt instanceof PrintStmt) {
+            return "print(" + show(((PrintStmt) stmt).expression) + ");";
+        } else if (stmt instanceof Block) {
+            String body = show(((Block) stmt).statements);
+            return body.isEmpty() ? "{ }" : "{ " + body + " }";
+        } else if (stmt instanceof IfStmt) {
+            IfStmt s = (IfStmt) stmt;
+            return "if (" + show(s.condition) + ") " + show(s.thenBranch)
+                    + (s.elseBranch == null ? "" : " else " + show(s.elseBranch));
+        } else if (stmt instanceof WhileStmt) {
+            WhileStmt s = (WhileStmt) stmt;
+            return "while (" + show(s.condition) + ") " + show(s.body);
+        } else if (stmt instanceof ForStmt) {
+            ForStmt s = (ForStmt) stmt;
+            return "for (" + (s.init == null ? ";" : show(s.init))
+                    + " " + (s.condition == null ? "" : show(s.condition)) + ";"
+                    + " " + (s.increment == null ? "" : strip(show(s.increment))) + ") " + show(s.body);
+        }
+        throw new IllegalArgumentException("Unknown statement " + stmt.getClass().getSimpleName());
+    }
+
+    static String show(Expr expr) {
+        if (expr instanceof Literal) {
+            Object value = ((Literal) expr).value;
+            if (value instanceof Double) return vm.Value.formatNumber((Double) value);
+            if (value instanceof String) return "\"" + value + "\"";
+            if (value instanceof Character) return "'" + value + "'";
+            return String.valueOf(value);
+        } else if (expr instanceof Variable) {
+            return ((Variable) expr).name.lexeme;
+        } else if (expr instanceof BinaryExpr) {
+            BinaryExpr b = (BinaryExpr) expr;
+            return "(" + show(b.left) + " " + b.operator.lexeme + " " + show(b.right) + ")";
+        } else if (expr instanceof UnaryExpr) {
+            UnaryExpr u = (UnaryExpr) expr;
+            return "(" + u.operator.lexeme + show(u.operand) + ")";
+        } else if (expr instanceof ArrayAccess) {
+            ArrayAccess a = (ArrayAccess) expr;
+            return a.name.lexeme + "[" + show(a.index) + "]";
+        } else if (expr instanceof ArrayExpr) {
+            StringBuilder text = new StringBuilder("[");
+            for (Expr element : ((ArrayExpr) expr).elements) {
+                if (text.length() > 1) text.append(", ");
+                text.append(show(element));
+            }
+            return text.append("]").toString();
+        } else if (expr instanceof Memo) {
+            Memo m = (Memo) expr;
+            return "(" + m.temp.lexeme + " := " + show(m.value) + ")";
+        } else if (expr instanceof BoundsGuard) {
+            BoundsGuard g = (BoundsGuard) expr;
+            return "guard(" + g.array.lexeme + ", " + (g.bound == null ? "" : g.bound.lexeme + " + ")
+                    + vm.Value.formatNumber(g.offset) + ")";
+        }
+        throw new IllegalArgumentException("Unknown expression " + expr.getClass().getSimpleName());
+    }
+
+    private static String strip(String stmt) {
+        return stmt.endsWith(";") ? stmt.substring(0, stmt.length() - 1) : stmt;
+    }
+}
@@ -0,0 +1,136 @@
+package optimizer;
+
+import compiler.Chunk;
+import compiler.Instruction;
+import compiler.Isa;
+import compiler.Pipeline;
+import vm.Engine;
+import vm.Linker;
+import vm.MemorySink;
+import vm.OutputSink;
+
+/**
+ * Compiles counted loops with and without bounds-check elimination, and checks
+ * every engine prints the same with the checks removed as with them: also when
+ * a versioned loop's BoundsGuard fails at run time and the checked copy runs.
+ */
+public class BoundsCheckEliminatorTest {
+    private static final String[] ENGINES = { "vm", "closure", "jvm" };
+
+    private static final Pipeline.Options BCE = new Pipeline.Options(true, true, true, true, true, Isa.STACK);
+    private static final Pipeline.Options NO_BCE = new Pipeline.Options(true, true, true, false, true, Isa.STACK);
+
+    public static void main(String[] args) {
+        // Literal bound: decided at compile time, no guard
+        expectSame("literal-bound",
+                "let a = [1, 2, 3, 4];\n"
+              + "let sum = 0;\n"
+              + "for (let i = 0; i < 4; i = i + 1) { sum = sum + a[i]; }\n"
+              + "print(sum);\n",
+                true, false, "10\n");
+
+        // Neighbours a[i - 1] and a[i + 1], and a store
+        expectSame("neighbours",
+                "let a = [1, 2, 3, 4, 5];\n"
+              + "let b = [0, 0, 0, 0, 0];\n"
+              + "for (let i = 1; i < 4; i = i + 1) { b[i] = a[i - 1] + a[i] + a[i + 1]; }\n"
+              + "print(b[1]); print(b[2]); print(b[3]);\n",
+                true, false, "6\n9\n12\n");
+
+        // A bound unknown until run time that fits: the guard passes
+        expectSame("guard-passes",
+                "let a = [1, 2, 3, 4];\n"
+              + "let sizes = [3];\n"
+              + "let n = sizes[0];\n"
+              + "let sum = 0;\n"
+              + "for (let i = 0; i < n; i = i + 1) { sum = sum + a[i]; }\n"
+              + "print(sum);\n",
+                true, true, "6\n");
+
+        // One that does not: the guard fails and the checked loop runs to the end
+        expectSame("guard-fails",
+                "let a = [1, 2, 3, 4];\n"
+              + "let sizes = [9];\n"
+              + "let n = sizes[0];\n"
+              + "let sum = 0;\n"
+              + "for (let i = 0; i < n; i = i + 1) { if (i < 4) { sum = sum + a[i]; } }\n"
+              + "print(sum);\n",
+                true, true, "10\n");
+
+        // The guard fails and the checked loop reads past the end
+        expectSameError("guard-fails-out-of-range",
+                "let a = [1, 2, 3, 4];\n"
+              + "let sizes = [6];\n"
+              + "let n = sizes[0];\n"
+              + "let sum = 0;\n"
+              + "for (let i = 0; i < n; i = i + 1) { sum = sum + a[i]; print(sum); }\n",
+                "1\n3\n6\n10\n", "Array index 4 out of bounds");
+
+        System.out.println("BoundsCheckEliminatorTest: all checks passed");
+    }
+
+    // ── Checks ──────────────────────────────────────────────
+
+    /**
+     * Expects source to print output on every engine, with and without BCE, and
+     * the BCE code to hold unchecked accesses and (if guarded) a GUARD_* test.
+     */
+    private static void expectSame(String name, String source, boolean unchecked, boolean guarded, String output) {
+        Chunk optimized = Pipeline.compile(source, BCE);
+        Chunk plain = Pipeline.compile(source, NO_BCE);
+        check(uncheckedAccess(optimized) == unchecked, name + ": unchecked accesses " + (unchecked ? "missing" : "present"));
+        check(has(optimized, "GUARD_") == guarded, name + ": guard " + (guarded ? "missing" : "present"));
+        check(!uncheckedAccess(plain) && !has(plain, "GUARD_"), name + ": --no-bce code has checks removed");
+        for (String engine : ENGINES) {
+            check(output.equals(run(optimized, engine)), name + " on " + engine + ": wrong output with BCE");
+            check(output.equals(run(plain, engine)), name + " on " + engine + ": wrong output without BCE");
+        }
+    }
+
+    /** Expects source to print output and then fail with message on every engine, with and without BCE. */
+    private static void expectSameError(String name, String source, String output, String message) {
+        Chunk optimized = Pipeline.compile(source, BCE);
+        check(has(optimized, "GUARD_"), name + ": guard missing");
+        for (Chunk chunk : new Chunk[] { optimized, Pipeline.compile(source, NO_BCE) }) {
+            String label = name + (chunk == optimized ? "" : " (--no-bce)");
+            for (String engine : ENGINES) {
+                MemorySink out = OutputSink.memory();
+                try {
+                    Engine.create(engine, Linker.link(chunk), out).run();
+                    check(false, label + " on " + engine + ": ran without an error");
+                } catch (RuntimeException e) {
+                    check(e.getMessage() != null && e.getMessage().contains(message),
+                            label + " on " + engine + ": expected \"" + message + "\", got " + e);
+                }
+                check(output.equals(out.contents()), label + " on " + engine + ": wrong output before the error");
+            }
+        }
+    }
+
+    // ── Helpers ─────────────────────────────────────────────
+
+    private static String run(Chunk chunk, String engine) {
+        MemorySink out = OutputSink.memory();
+        Engine.create(engine, Linker.link(chunk), out).run();
+        return out.contents();
+    }
+
+    private static boolean uncheckedAccess(Chunk chunk) {
+        for (Instruction instr : chunk.code) {
+            String name = instr.opCode.name();
+            if (name.contains("ARRAY") && name.endsWith("_UNCHECKED")) return true;
+        }
+        return false;
+    }
+
+    private static boolean has(Chunk chunk, String opCodePart) {
+        for (Instruction instr : chunk.code) {
+            if (instr.opCode.name().contains(opCodePart)) return true;
+        }
+        return false;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,76 @@
+package optimizer;
+
+import ast.Stmt;
+
+import java.util.List;
+
+/**
+ * Runs the {@link CommonSubexpressionEliminator} on small programs, at the
+ * stack and the register minimum cost, and checks which expressions it
+ * computes once, and that the program still prints what the original did.
+ */
+public class CommonSubexpressionEliminatorTest {
+    private static final String PROGRAM =
+            "let a = [1, 2, 3];\n"
+          + "let i = 1;\n"
+          + "let x = 2;\n"
+          + "let y = 3;\n"
+          + "print(a[i] * a[i] + a[i]);\n"
+          + "print((x + y) * (x + y));\n"
+          + "x = 4;\n"
+          + "print(x + y);\n"
+          + "print(a[i + 1] - a[i + 1]);\n"
+          + "a[0] = 5;\n"
+          + "print(a[i + 1]);\n";
+
+    public static void main(String[] args) {
+        // Stack code: a checked element read is worth saving, x + y and i + 1 are not;
+        // after a[0] = 5 the element must be read again
+        expectEliminated(PROGRAM, CommonSubexpressionEliminator.STACK_MINIMUM_COST,
+                "let a = [1, 2, 3]; let i = 1; let x = 2; let y = 3;"
+              + " print(((($cse0 := a[i]) * $cse0) + $cse0));"
+              + " print(((x + y) * (x + y)));"
+              + " x = 4; print((x + y));"
+              + " print((($cse1 := a[(i + 1)]) - $cse1));"
+              + " a[0] = 5; print(a[(i + 1)]);");
+
+        // Register code shares every operation; x + y is stale once x is assigned, i + 1 is not
+        expectEliminated(PROGRAM, CommonSubexpressionEliminator.REGISTER_MINIMUM_COST,
+                "let a = [1, 2, 3]; let i = 1; let x = 2; let y = 3;"
+              + " print(((($cse0 := a[i]) * $cse0) + $cse0));"
+              + " print((($cse1 := (x + y)) * $cse1));"
+              + " x = 4; print((x + y));"
+              + " print((($cse3 := a[($cse2 := (i + 1))]) - $cse3));"
+              + " a[0] = 5; print(a[$cse2]);");
+
+        // The right operand of "and" may not run, so nothing in it is shared outside it
+        expectEliminated(
+                "let flags = [1];\n"
+              + "let x = 2;\n"
+              + "let y = 3;\n"
+              + "if (flags[0] > 0 and x * y > 3) { print(x * y); }\n"
+              + "print(x * y);\n",
+                CommonSubexpressionEliminator.REGISTER_MINIMUM_COST,
+                "let flags = [1]; let x = 2; let y = 3;"
+              + " if (((flags[0] > 0) and ((x * y) > 3))) { print((x * y)); } print((x * y));");
+
+        System.out.println("CommonSubexpressionEliminatorTest: all checks passed");
+    }
+
+    // ── Checks ──────────────────────────────────────────────
+
+    /** Eliminates in source and expects the text eliminated; both programs must print the same. */
+    private static void expectEliminated(String source, int minimumCost, String eliminated) {
+        AstText.Parsed parsed = AstText.parse(source);
+        List<Stmt> result = new CommonSubexpressionEliminator(parsed.analyzer.getSymbolTable(), minimumCost)
+                .eliminate(parsed.statements);
+        String text = AstText.show(result);
+        check(eliminated.equals(text), "expected\n  " + eliminated + "\ngot\n  " + text);
+        check(AstText.run(source, AstText.only()).equals(AstText.run(source, AstText.only("cse"))),
+                "eliminating common subexpressions changed the output of\n" + source);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
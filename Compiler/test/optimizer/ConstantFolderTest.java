@@ -0,0 +1,83 @@
+package optimizer;
+
+import ast.Stmt;
+
+import java.util.List;
+
+/**
+ * Runs the {@link ConstantFolder} on small programs and checks the folded
+ * program, printed back as text, and that it prints what the original did.
+ */
+public class ConstantFolderTest {
+
+    public static void main(String[] args) {
+        // Operators over literals, and variables known to hold one
+        expectFolded(
+                "let secondsPerDay = 60 * 60 * 24;\n"
+              + "let hours = secondsPerDay / 3600;\n"
+              + "let name = \"day\" + 's';\n"
+              + "print(hours - 1 < 24);\n"
+              + "print(name + hours);\n",
+                "let secondsPerDay = 86400; let hours = 24; let name = \"days\";"
+              + " print(true); print(\"days24\");");
+
+        // An if whose condition folds keeps only the branch taken; a decided "and" drops its right operand
+        expectFolded(
+                "let debug = 1 > 2;\n"
+              + "let a = [1, 2];\n"
+              + "if (debug) { print(\"debug\"); } else { print(a[0]); }\n"
+              + "print(debug and a[5]);\n",
+                "let debug = false; let a = [1, 2]; { print(a[0]); } print(false);");
+
+        // A division by zero is left to fail at run time
+        expectFolded(
+                "let zero = 0;\n"
+              + "print(1 / zero);\n",
+                "let zero = 0; print((1 / 0));");
+
+        // Both branches of an if set a to 3 but b differently
+        expectFolded(
+                "let flags = [1, 2];\n"
+              + "let a = 1;\n"
+              + "let b = 2;\n"
+              + "if (flags[0] > 1) { a = 3; b = 5; } else { a = 3; b = 6; }\n"
+              + "print(a + b);\n",
+                "let flags = [1, 2]; let a = 1; let b = 2;"
+              + " if ((flags[0] > 1)) { a = 3; b = 5; } else { a = 3; b = 6; } print((3 + b));");
+
+        // Variables a loop assigns are unknown in it and after it; the others stay known
+        expectFolded(
+                "let step = 2;\n"
+              + "let total = 0;\n"
+              + "for (let i = 0; i < 3; i = i + 1) { total = total + i * step; }\n"
+              + "print(total + step);\n",
+                "let step = 2; let total = 0;"
+              + " for (let i = 0; (i < 3); i = (i + 1)) { total = (total + (i * 2)); } print((total + 2));");
+
+        // A loop whose condition folds to false is removed; one that assigns its condition's variable is not
+        expectFolded(
+                "let verbose = 1 > 2;\n"
+              + "while (verbose) { print(\"again\"); }\n"
+              + "let n = 2;\n"
+              + "while (n > 0) { n = n - 1; }\n"
+              + "print(n);\n",
+                "let verbose = false; let n = 2; while ((n > 0)) { n = (n - 1); } print(n);");
+
+        System.out.println("ConstantFolderTest: all checks passed");
+    }
+
+    // ── Checks ──────────────────────────────────────────────
+
+    /** Folds source and expects the text folded; both programs must print the same. */
+    private static void expectFolded(String source, String folded) {
+        List<Stmt> result = new ConstantFolder().fold(AstText.parse(source).statements);
+        String text = AstText.show(result);
+        check(folded.equals(text), "expected\n  " + folded + "\ngot\n  " + text);
+        check(AstText.run(source, AstText.only()).equals(AstText.run(source, AstText.only("fold"))),
+                "folding changed the output of\n" + source);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
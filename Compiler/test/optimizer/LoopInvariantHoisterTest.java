@@ -0,0 +1,81 @@
+package optimizer;
+
+import ast.Stmt;
+
+import java.util.List;
+
+/**
+ * Runs the {@link LoopInvariantHoister} on small programs and checks which
+ * expressions it moved out of their loops, and that the program still prints
+ * what the original did.
+ */
+public class LoopInvariantHoisterTest {
+
+    public static void main(String[] args) {
+        // x * y moves out of the while loop; a[i] reads the counter and stays
+        expectHoisted(
+                "let a = [1, 2, 3];\n"
+              + "let x = 4;\n"
+              + "let y = 5;\n"
+              + "let s = 0;\n"
+              + "let i = 0;\n"
+              + "while (i < 3) { s = s + x * y + a[i]; i = i + 1; }\n"
+              + "print(s);\n",
+                "let a = [1, 2, 3]; let x = 4; let y = 5; let s = 0; let i = 0;"
+              + " { let $inv0 = (x * y); while ((i < 3)) { s = ((s + $inv0) + a[i]); i = (i + 1); } }"
+              + " print(s);");
+
+        // In a for loop, also out of the condition; a[1] stays, since the loop stores into an array
+        expectHoisted(
+                "let a = [1, 2, 3];\n"
+              + "let x = 4;\n"
+              + "let y = 5;\n"
+              + "let k = 0;\n"
+              + "for (let j = 0; j < x * y; j = j + 1) { k = k + a[1] + (x - y); a[0] = k; }\n"
+              + "print(k);\n",
+                "let a = [1, 2, 3]; let x = 4; let y = 5; let k = 0;"
+              + " { let j = 0; { let $inv0 = (x * y); let $inv1 = (x - y);"
+              + " for (; (j < $inv0); j = (j + 1)) { k = ((k + a[1]) + $inv1); a[0] = k; } } }"
+              + " print(k);");
+
+        // x / z may fail, so it stays where it fails: the loop does not run
+        expectHoisted(
+                "let x = 4;\n"
+              + "let z = 0;\n"
+              + "let s = 0;\n"
+              + "for (let p = 0; p < s; p = p + 1) { s = s + x / z; }\n"
+              + "print(s);\n",
+                "let x = 4; let z = 0; let s = 0;"
+              + " for (let p = 0; (p < s); p = (p + 1)) { s = (s + (x / z)); } print(s);");
+
+        // Invariant in both loops: out of the inner one, then out of the outer one
+        expectHoisted(
+                "let x = 4;\n"
+              + "let y = 5;\n"
+              + "let s = 0;\n"
+              + "for (let q = 0; q < 3; q = q + 1) { for (let m = 0; m < 2; m = m + 1) { s = s + x * 2 + q * y; } }\n"
+              + "print(s);\n",
+                "let x = 4; let y = 5; let s = 0;"
+              + " { let q = 0; { let $inv1 = (x * 2); for (; (q < 3); q = (q + 1)) {"
+              + " { let m = 0; { let $inv0 = $inv1; for (; (m < 2); m = (m + 1)) { s = ((s + $inv0) + (q * y)); } } } } } }"
+              + " print(s);");
+
+        System.out.println("LoopInvariantHoisterTest: all checks passed");
+    }
+
+    // ── Checks ──────────────────────────────────────────────
+
+    /** Hoists source and expects the text hoisted; both programs must print the same. */
+    private static void expectHoisted(String source, String hoisted) {
+        AstText.Parsed parsed = AstText.parse(source);
+        List<Stmt> result = new LoopInvariantHoister(parsed.analyzer.getSymbolTable()).hoist(parsed.statements);
+        String text = AstText.show(result);
+        check(hoisted.equals(text), "expected\n  " + hoisted + "\ngot\n  " + text);
+        check(AstText.run(source, AstText.only()).equals(AstText.run(source, AstText.only("hoist"))),
+                "hoisting changed the output of\n" + source);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,10 @@
+#!/bin/sh
+# Compiles the compiler and the tests, then runs every *Test class.
+set -e
+cd "$(dirname "$0")/.."
+classes=$(mktemp -d)
+trap 'rm -rf "$classes"' EXIT
+javac -encoding UTF-8 -d "$classes" $(find src test -name '*.java')
+for test in $(cd test && find . -name '*Test.java' | sed 's|^\./||; s|\.java$||; s|/|.|g'); do
+    java -cp "$classes" "$test"
+done
@@ -0,0 +1,113 @@
+package vm;
+
+import compiler.Chunk;
+import compiler.Isa;
+import compiler.Pipeline;
+
+/**
+ * Compiles programs to register code and checks the {@link RegisterVM} prints
+ * what the stack {@link VM} does, stops with the same errors, and dispatches
+ * fewer instructions doing it.
+ */
+public class RegisterVMTest {
+    private static final Pipeline.Options STACK = new Pipeline.Options(true, true, true, true, true, Isa.STACK);
+    private static final Pipeline.Options REGISTER = new Pipeline.Options(true, true, true, true, true, Isa.REGISTER);
+
+    public static void main(String[] args) {
+        // Arithmetic, comparisons and short-circuit and/or in a counted loop
+        expectSame("loop",
+                "let sum = 0;\n"
+              + "let odd = 0;\n"
+              + "for (let i = 0; i < 1000; i = i + 1) {\n"
+              + "    sum = sum + i * 2 - i / 4;\n"
+              + "    if (i > 10 and i <= 20 or i == 999) { odd = odd + 1; }\n"
+              + "}\n"
+              + "print(sum); print(odd); print(-sum); print(not (sum > odd));\n",
+                "874125\n11\n-874125\nfalse\n", true);
+
+        // Strings, chars, and an array of numbers generalized by a string store
+        expectSame("values",
+                "let name = \"reg\";\n"
+              + "let c = 'x';\n"
+              + "let a = [1, 2, 3];\n"
+              + "a[1] = name + c;\n"
+              + "print(a[0] + a[2]); print(a[1]); print(c == 'x'); print(name != \"reg\");\n"
+              + "let w = 0;\n"
+              + "while (w < 3) { print(name + w); w = w + 1; }\n",
+                "4\nregx\ntrue\nfalse\nreg0\nreg1\nreg2\n", false);
+
+        // Many short-lived arrays: the register file is the collector's root set
+        expectSame("garbage",
+                "let s = 0;\n"
+              + "for (let i = 0; i < 200000; i = i + 1) { let t = [i, i + 1, \"x\"]; s = s + t[1]; }\n"
+              + "print(s);\n",
+                "2.00001E10\n", false);
+
+        // Run-time errors, after the output before them
+        expectSame("division",
+                "let zero = [0];\nprint(1);\nprint(2 / zero[0]);\n",
+                "1\nerror: Division by zero", false);
+        expectSame("bounds",
+                "let a = [1, 2];\nlet i = 0;\nwhile (i < 5) { print(a[i]); i = i + 1; }\n",
+                "1\n2\nerror: Array index 2 out of bounds (size 2)", false);
+        expectSame("types",
+                "let a = [1, \"x\"];\nprint(a[0] - a[1]);\n",
+                "error: SUB requires two numbers", false);
+
+        // Register code runs on no other engine
+        Program program = Linker.link(Pipeline.compile("print(1);", REGISTER));
+        for (String engine : new String[] { "closure", "jvm" }) {
+            try {
+                Engine.create(engine, program, OutputSink.discard());
+                check(false, engine + " accepted register code");
+            } catch (IllegalArgumentException e) {
+                check(e.getMessage().contains("register code runs on vm"), engine + ": " + e.getMessage());
+            }
+        }
+
+        System.out.println("RegisterVMTest: all checks passed");
+    }
+
+    // ── Checks ──────────────────────────────────────────────
+
+    /**
+     * Expects source to print output (an error as "error: " and its message
+     * up to the instruction) on the register and the stack VM; if fewer is
+     * set, the register VM must also dispatch fewer instructions.
+     */
+    private static void expectSame(String name, String source, String output, boolean fewer) {
+        Chunk registerCode = Pipeline.compile(source, REGISTER);
+        check(registerCode.isa == Isa.REGISTER, name + ": compiled to " + registerCode.isa);
+        MemorySink registerOut = OutputSink.memory();
+        Engine register = Engine.create("vm", Linker.link(registerCode), registerOut);
+        check(register instanceof RegisterVM, name + ": ran on " + register.getClass().getSimpleName());
+        MemorySink stackOut = OutputSink.memory();
+        Engine stack = Engine.create("vm", Linker.link(Pipeline.compile(source, STACK)), stackOut);
+
+        String registerOutput = run(register, registerOut);
+        String stackOutput = run(stack, stackOut);
+        check(output.equals(registerOutput), name + ": expected\n" + output + "\ngot\n" + registerOutput);
+        check(output.equals(stackOutput), name + " on the stack VM: expected\n" + output + "\ngot\n" + stackOutput);
+        if (fewer) {
+            check(register.executedInstructions() < stack.executedInstructions(), name + ": register code dispatched "
+                    + register.executedInstructions() + " instructions, stack code " + stack.executedInstructions());
+        }
+    }
+
+    // ── Helpers ─────────────────────────────────────────────
+
+    private static String run(Engine engine, MemorySink out) {
+        engine.countInstructions();
+        try {
+            engine.run();
+            return out.contents();
+        } catch (RuntimeException e) {
+            String message = e.getMessage().replaceFirst("^VM error at instruction \\d+: ", "");
+            return out.contents() + "error: " + message;
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,157 @@
+package vm;
+
+import compiler.BytecodeReader;
+import compiler.BytecodeWriter;
+import compiler.Chunk;
+import compiler.Instruction;
+import compiler.MappedChunk;
+import compiler.OpCode;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Loads hand-made .cpyc files that a compiler would never write, and checks
+ * each one is either rejected by the {@link Verifier} or runs to a VM error
+ * in every engine: never to a raw Java exception.
+ */
+public class VerifierTest {
+    private static final String[] ENGINES = { "vm", "closure", "jvm" };
+
+    public static void main(String[] args) throws IOException {
+        Path dir = Files.createTempDirectory("cpy-verifier-test");
+
+        // a = [1, 2]; print a[7] with the bounds check removed
+        Chunk outOfRange = chunk(2, "a",
+                new Instruction(OpCode.CONST_NUM, "1"),
+                new Instruction(OpCode.CONST_NUM, "2"),
+                new Instruction(OpCode.MAKE_ARRAY, "2"),
+                new Instruction(OpCode.STORE_SLOT, "0"),
+                new Instruction(OpCode.LOAD_SLOT, "0"),
+                new Instruction(OpCode.CONST_NUM, "7"),
+                new Instruction(OpCode.ARRAY_LOAD_UNCHECKED),
+                new Instruction(OpCode.PRINT),
+                new Instruction(OpCode.HALT));
+        expectVmError(dir, "out-of-range", outOfRange, "VM error at instruction 6: Array index 7 out of bounds");
+
+        // 5[0] with the type check removed
+        Chunk notArray = chunk(2, "a",
+                new Instruction(OpCode.CONST_NUM, "5"),
+                new Instruction(OpCode.CONST_NUM, "0"),
+                new Instruction(OpCode.ARRAY_LOAD_UNCHECKED),
+                new Instruction(OpCode.PRINT),
+                new Instruction(OpCode.HALT));
+        expectVmError(dir, "not-array", notArray, "VM error at instruction 2: ARRAY_LOAD: not an array");
+
+        // a = 5; i = 0; print a[i] fused, and a[i] = 1, both unchecked
+        Chunk fused = chunk(2, "a i",
+                new Instruction(OpCode.CONST_NUM, "5"),
+                new Instruction(OpCode.STORE_SLOT, "0"),
+                new Instruction(OpCode.CONST_NUM, "0"),
+                new Instruction(OpCode.STORE_SLOT, "1"),
+                new Instruction(OpCode.LOAD_ARRAY_VAR_UNCHECKED, "0 1"),
+                new Instruction(OpCode.PRINT),
+                new Instruction(OpCode.HALT));
+        expectVmError(dir, "fused-load", fused, "VM error at instruction 4: ARRAY_LOAD: not an array");
+
+        Chunk store = chunk(2, "a",
+                new Instruction(OpCode.CONST_NUM, "5"),
+                new Instruction(OpCode.STORE_SLOT, "0"),
+                new Instruction(OpCode.CONST_NUM, "1"),
+                new Instruction(OpCode.CONST_NUM, "3"),
+                new Instruction(OpCode.ARRAY_STORE_UNCHECKED, "0"),
+                new Instruction(OpCode.HALT));
+        expectVmError(dir, "store", store, "VM error at instruction 4: ARRAY_STORE: 'a' is not an array");
+
+        // PRINT with nothing on the stack
+        Chunk underflow = chunk(1, "",
+                new Instruction(OpCode.CONST_NUM, "1"),
+                new Instruction(OpCode.POP),
+                new Instruction(OpCode.PRINT),
+                new Instruction(OpCode.HALT));
+        expectVerifyError(dir, "underflow", underflow,
+                "Verify error at instruction 2: PRINT needs 1 operand(s) but the stack holds 0");
+
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) Files.delete(file);
+        }
+        Files.delete(dir);
+        System.out.println("VerifierTest: all checks passed");
+    }
+
+    // ── Checks ──────────────────────────────────────────────
+
+    /** Writes chunk in both formats and expects every load of it to run to the VM error message. */
+    private static void expectVmError(Path dir, String name, Chunk chunk, String message) throws IOException {
+        for (BytecodeWriter.Format format : BytecodeWriter.Format.values()) {
+            String file = write(dir, name, chunk, format);
+            for (Program program : load(file)) {
+                for (int pc = 0; pc < program.size(); pc++) {
+                    OpCode op = program.opCode(pc);
+                    check(op == null || !op.name().endsWith("_UNCHECKED"), file + ": " + op + " at " + pc + " survived loading");
+                }
+                for (String engine : ENGINES) {
+                    try {
+                        Engine.create(engine, program, OutputSink.discard()).run();
+                        check(false, file + " on " + engine + ": ran without an error");
+                    } catch (RuntimeException e) {
+                        check(e.getClass() == RuntimeException.class && e.getMessage().startsWith(message),
+                                file + " on " + engine + ": expected \"" + message + "\", got " + e);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Writes chunk in both formats and expects every load of it to be rejected with message. */
+    private static void expectVerifyError(Path dir, String name, Chunk chunk, String message) throws IOException {
+        for (BytecodeWriter.Format format : BytecodeWriter.Format.values()) {
+            String file = write(dir, name, chunk, format);
+            try {
+                Linker.link(BytecodeReader.read(file));
+                check(false, file + ": read without an error");
+            } catch (RuntimeException e) {
+                check(message.equals(e.getMessage()), file + ": expected \"" + message + "\", got " + e);
+            }
+            MappedChunk mapped = BytecodeReader.map(file);
+            if (mapped == null) continue;
+            try {
+                Linker.linkLazily(mapped, true);
+                check(false, file + ": mapped without an error");
+            } catch (RuntimeException e) {
+                check(message.equals(e.getMessage()), file + ": expected \"" + message + "\", got " + e);
+            }
+        }
+    }
+
+    // ── Helpers ─────────────────────────────────────────────
+
+    private static Chunk chunk(int maxStack, String slots, Instruction... code) {
+        List<String> slotNames = slots.isEmpty() ? Arrays.asList() : Arrays.asList(slots.split(" "));
+        return new Chunk(Arrays.asList(code), slotNames, maxStack);
+    }
+
+    private static String write(Path dir, String name, Chunk chunk, BytecodeWriter.Format format) throws IOException {
+        String file = dir.resolve(name + "-" + format.name().toLowerCase() + ".cpyc").toString();
+        BytecodeWriter.write(chunk, file, format);
+        return file;
+    }
+
+    /** The program in file, read and linked, and for binary files also mapped and linked lazily, verified. */
+    private static List<Program> load(String file) throws IOException {
+        Program read = Linker.link(BytecodeReader.read(file));
+        MappedChunk mapped = BytecodeReader.map(file);
+        if (mapped == null) return Arrays.asList(read);
+        Program lazy = Linker.linkLazily(mapped, true);
+        check(lazy.isVerified(), file + ": mapped program not verified");
+        return Arrays.asList(read, lazy);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}